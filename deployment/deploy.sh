@@ -341,8 +341,9 @@ function check_health() {
     local env=$1
     log_info "Checking health for $env environment..."
     
+    # The gateway's actuator is on its unpublished management port, so check its own /api/health
     local services=(
-        "api-gateway:3000"
+        "api-gateway:3000:/api/health"
         "user-service:4020"
         "group-service:4040"
         "transaction-service:4080"
@@ -354,8 +355,9 @@ function check_health() {
         IFS=':' read -ra ADDR <<< "$service"
         local name=${ADDR[0]}
         local port=${ADDR[1]}
+        local path=${ADDR[2]:-/actuator/health}
         
-        if curl -f http://localhost:$port/actuator/health >/dev/null 2>&1; then
+        if curl -f http://localhost:$port$path >/dev/null 2>&1; then
             log_success "$name is healthy"
         else
             log_error "$name is not healthy"
@@ -0,0 +1,138 @@
+package com.stockfellow.loadtest;
+
+import com.stockfellow.loadtest.scenario.Scenario;
+import com.stockfellow.loadtest.scenario.Scenarios;
+import com.stockfellow.loadtest.scenario.VirtualUser;
+import com.stockfellow.loadtest.standin.StandIns;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+
+/**
+ * Load test entry point: starts the stand-ins, launches the target against
+ * them, drives the scenario mix open-loop and writes the report.
+ *
+ * See load_testing/README.md for usage.
+ */
+public final class LoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTest.class);
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options;
+        try {
+            options = LoadTestOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(LoadTestOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+        if (options.isHelp()) {
+            System.out.println(LoadTestOptions.USAGE);
+            return;
+        }
+
+        String target = options.getTarget();
+        List<String> missing = StandIns.requiredEnvironment(target).stream()
+                .filter(name -> System.getenv(name) == null)
+                .collect(Collectors.toList());
+        if (!missing.isEmpty() && !options.isStandInsOnly()) {
+            System.err.println(target + " reads its database from " + missing + "; set them before running");
+            System.exit(2);
+        }
+
+        Path out = options.getOut();
+        Files.createDirectories(out);
+        try (StandIns standIns = new StandIns(options.getUpstreamLatencyMs())) {
+            standIns.start(target);
+            int port = freePort();
+            Map<String, String> environment = standIns.environmentFor(target, port, out);
+
+            if (options.isStandInsOnly()) {
+                waitWithEnvironment(environment);
+                return;
+            }
+
+            Path jar = options.getJar() != null ? options.getJar() : TargetProcess.findJar(Paths.get(""), target);
+            try (TargetProcess process = TargetProcess.launch(jar, options.getJvmArgs(), environment, port,
+                    out.resolve("target.log"))) {
+                process.awaitReady(Duration.ofMinutes(3));
+                run(options, standIns, process.getBaseUrl());
+            }
+        }
+    }
+
+    private static void run(LoadTestOptions options, StandIns standIns, String baseUrl)
+            throws InterruptedException, IOException {
+        String target = options.getTarget();
+        boolean direct = !LoadTestOptions.GATEWAY.equals(target);
+
+        List<Scenario> scenarios = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        for (Scenario scenario : Scenarios.all(options.getGroupIds())) {
+            Integer weight = options.getMix().get(scenario.getName());
+            if (weight == null || weight <= 0) {
+                continue;
+            }
+            Scenario forTarget = direct ? scenario.onlyFor(target) : scenario;
+            if (forTarget.getSteps().isEmpty()) {
+                logger.info("Skipping {}: no steps served by {}", scenario.getName(), target);
+                continue;
+            }
+            scenarios.add(forTarget);
+            weights.add(weight);
+        }
+        if (scenarios.isEmpty()) {
+            throw new IllegalStateException("No scenario in the mix has steps served by " + target);
+        }
+
+        // Members are signed in before the run; login is measured by its own scenario
+        List<VirtualUser> users = new ArrayList<>();
+        for (int i = 0; i < options.getUsers(); i++) {
+            VirtualUser user = VirtualUser.member(i);
+            user.setAccessToken(standIns.getKeycloak().mintAccessToken(user));
+            users.add(user);
+        }
+
+        Report report = new Report(scenarios);
+        logger.info("Driving {} at {}/s for {}s after {}s warm-up, seed {}", baseUrl, options.getRate(),
+                options.getDuration().toSeconds(), options.getWarmup().toSeconds(), options.getSeed());
+        new OpenLoopDriver(baseUrl, direct, scenarios, weights, users, options, report).run();
+
+        double measuredSeconds = options.getDuration().toMillis() / 1000.0;
+        report.write(options.getOut(), measuredSeconds, options.describe());
+        report.print(System.out, measuredSeconds);
+        System.out.println("Report written to " + options.getOut().toAbsolutePath());
+    }
+
+    private static void waitWithEnvironment(Map<String, String> environment) throws InterruptedException {
+        System.out.println("# Stand-ins are up. Start the target with:");
+        environment.forEach((name, value) -> System.out.println("export " + name + "='" + value + "'"));
+        System.out.println("# Ctrl-C to stop");
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(stopped::countDown));
+        stopped.await();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+}
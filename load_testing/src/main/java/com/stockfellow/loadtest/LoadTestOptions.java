@@ -0,0 +1,254 @@
+package com.stockfellow.loadtest;
+
+import com.stockfellow.loadtest.scenario.Scenarios;
+import com.stockfellow.loadtest.standin.ServiceStubs;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command line options, as {@code --name value} or {@code --name=value}.
+ */
+public class LoadTestOptions {
+
+    public static final String GATEWAY = "gateway";
+    public static final List<String> TARGETS = List.of(GATEWAY, ServiceStubs.USER_SERVICE,
+            ServiceStubs.GROUP_SERVICE, ServiceStubs.TRANSACTION_SERVICE, ServiceStubs.NOTIFICATION_SERVICE);
+
+    static final String USAGE = String.join("\n",
+            "Usage: java -jar load_testing/target/load-testing.jar [options]",
+            "",
+            "  --target <name>             gateway (default), user-service, group-service,",
+            "                              transaction-service or notification-service",
+            "  --jar <path>                target jar (default: services/<target>/target/*.jar)",
+            "  --jvm-args \"<args>\"         JVM options for the target, e.g. \"-Xmx512m\"",
+            "  --rate <n>                  scenario arrivals per second (default 20)",
+            "  --duration <seconds>        measured run length (default 60)",
+            "  --warmup <seconds>          unmeasured load before it (default 15)",
+            "  --mix <name=weight,...>     scenario weights (default login=10,dashboard=60,join-group=15,pay=15)",
+            "  --users <n>                 signed-in members to act as (default 500)",
+            "  --group-ids <id,...>        groups to view and join (default: generated)",
+            "  --upstream-latency-ms <n>   median stand-in latency (default 5)",
+            "  --max-in-flight <n>         scenarios running at once before arrivals are dropped (default 1000)",
+            "  --seed <n>                  random seed for arrivals and choices (default 42)",
+            "  --out <dir>                 report directory (default load_testing/results/<target>)",
+            "  --standins-only             start the stand-ins, print the target's environment and wait",
+            "  --help");
+
+    private String target = GATEWAY;
+    private Path jar;
+    private List<String> jvmArgs = Collections.emptyList();
+    private double rate = 20;
+    private Duration duration = Duration.ofSeconds(60);
+    private Duration warmup = Duration.ofSeconds(15);
+    private Map<String, Integer> mix = parseMix("login=10,dashboard=60,join-group=15,pay=15");
+    private int users = 500;
+    private List<String> groupIds;
+    private double upstreamLatencyMs = 5;
+    private int maxInFlight = 1000;
+    private long seed = 42;
+    private Path out;
+    private boolean standInsOnly;
+    private boolean help;
+
+    public static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            String name = arg.substring(2);
+            String value = null;
+            int eq = name.indexOf('=');
+            if (eq >= 0) {
+                value = name.substring(eq + 1);
+                name = name.substring(0, eq);
+            }
+            if ("help".equals(name)) {
+                options.help = true;
+                continue;
+            }
+            if ("standins-only".equals(name)) {
+                options.standInsOnly = true;
+                continue;
+            }
+            if (value == null) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for --" + name);
+                }
+                value = args[++i];
+            }
+            options.set(name, value);
+        }
+        options.validate();
+        return options;
+    }
+
+    private void set(String name, String value) {
+        switch (name) {
+            case "target":
+                target = value;
+                break;
+            case "jar":
+                jar = Paths.get(value);
+                break;
+            case "jvm-args":
+                jvmArgs = value.isBlank() ? Collections.emptyList() : Arrays.asList(value.trim().split("\\s+"));
+                break;
+            case "rate":
+                rate = Double.parseDouble(value);
+                break;
+            case "duration":
+                duration = Duration.ofSeconds(Long.parseLong(value));
+                break;
+            case "warmup":
+                warmup = Duration.ofSeconds(Long.parseLong(value));
+                break;
+            case "mix":
+                mix = parseMix(value);
+                break;
+            case "users":
+                users = Integer.parseInt(value);
+                break;
+            case "group-ids":
+                groupIds = Arrays.asList(value.split(","));
+                break;
+            case "upstream-latency-ms":
+                upstreamLatencyMs = Double.parseDouble(value);
+                break;
+            case "max-in-flight":
+                maxInFlight = Integer.parseInt(value);
+                break;
+            case "seed":
+                seed = Long.parseLong(value);
+                break;
+            case "out":
+                out = Paths.get(value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option --" + name);
+        }
+    }
+
+    private void validate() {
+        if (!TARGETS.contains(target)) {
+            throw new IllegalArgumentException("--target must be one of " + TARGETS);
+        }
+        if (rate <= 0 || users <= 0 || maxInFlight <= 0 || duration.isZero()) {
+            throw new IllegalArgumentException("--rate, --users, --max-in-flight and --duration must be positive");
+        }
+        List<String> known = List.of(Scenarios.LOGIN, Scenarios.DASHBOARD, Scenarios.JOIN_GROUP, Scenarios.PAY);
+        for (String scenario : mix.keySet()) {
+            if (!known.contains(scenario)) {
+                throw new IllegalArgumentException("Unknown scenario in --mix: " + scenario + "; known: " + known);
+            }
+        }
+    }
+
+    private static Map<String, Integer> parseMix(String value) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String entry : value.split(",")) {
+            String[] parts = entry.split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("--mix entries are name=weight, got: " + entry);
+            }
+            mix.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+        }
+        return mix;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public Path getJar() {
+        return jar;
+    }
+
+    public List<String> getJvmArgs() {
+        return jvmArgs;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public Duration getWarmup() {
+        return warmup;
+    }
+
+    public Map<String, Integer> getMix() {
+        return mix;
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public List<String> getGroupIds() {
+        if (groupIds != null) {
+            return groupIds;
+        }
+        List<String> generated = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) {
+            generated.add(String.format("grp-%06d", i));
+        }
+        return generated;
+    }
+
+    public double getUpstreamLatencyMs() {
+        return upstreamLatencyMs;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public Path getOut() {
+        return out != null ? out : Paths.get("load_testing", "results", target);
+    }
+
+    public boolean isStandInsOnly() {
+        return standInsOnly;
+    }
+
+    public boolean isHelp() {
+        return help;
+    }
+
+    /**
+     * The options as {@code name=value} lines, written next to the report so a
+     * run can be repeated exactly.
+     */
+    public List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        lines.add("target=" + target);
+        lines.add("rate=" + rate);
+        lines.add("duration=" + duration.toSeconds());
+        lines.add("warmup=" + warmup.toSeconds());
+        lines.add("mix=" + mix.toString().replaceAll("[{} ]", ""));
+        lines.add("users=" + users);
+        lines.add("group-ids=" + String.join(",", getGroupIds()));
+        lines.add("upstream-latency-ms=" + upstreamLatencyMs);
+        lines.add("max-in-flight=" + maxInFlight);
+        lines.add("seed=" + seed);
+        lines.add("jvm-args=" + String.join(" ", jvmArgs));
+        return lines;
+    }
+}
@@ -0,0 +1,237 @@
+package com.stockfellow.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stockfellow.loadtest.scenario.Scenario;
+import com.stockfellow.loadtest.scenario.Session;
+import com.stockfellow.loadtest.scenario.Step;
+import com.stockfellow.loadtest.scenario.VirtualUser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Starts scenario runs on a Poisson schedule at the target rate, whether or
+ * not earlier runs have finished, as independent app users would.
+ *
+ * Each step's latency is measured from when it was due: the arrival time for
+ * a journey's first step, the previous answer for later steps. A target (or
+ * driver) that falls behind therefore shows up as latency rather than as a
+ * quietly lower request rate. When the in-flight cap is reached, arrivals are
+ * dropped and counted instead of queued.
+ *
+ * The schedule, scenario and user choices and each session's own choices come
+ * from the seed alone, so the same options replay the same load.
+ */
+public class OpenLoopDriver {
+
+    private static final Logger logger = LoggerFactory.getLogger(OpenLoopDriver.class);
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final String USER_AGENT = "StockFellow-LoadTest/1.0";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final String baseUrl;
+    private final boolean direct;
+    private final List<Scenario> scenarios;
+    private final int[] cumulativeWeights;
+    private final List<VirtualUser> users;
+    private final LoadTestOptions options;
+    private final Report report;
+
+    /**
+     * @param direct whether the target is a service rather than the gateway,
+     *               in which case requests carry the identity headers the
+     *               gateway would have added
+     * @param weights each scenario's share of arrivals, in scenario order
+     */
+    public OpenLoopDriver(String baseUrl, boolean direct, List<Scenario> scenarios, List<Integer> weights,
+                          List<VirtualUser> users, LoadTestOptions options, Report report) {
+        this.baseUrl = baseUrl;
+        this.direct = direct;
+        this.scenarios = scenarios;
+        this.users = users;
+        this.options = options;
+        this.report = report;
+        this.cumulativeWeights = new int[weights.size()];
+        int total = 0;
+        for (int i = 0; i < weights.size(); i++) {
+            total += weights.get(i);
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    public void run() throws InterruptedException {
+        Random random = new Random(options.getSeed());
+        double meanGapNanos = TimeUnit.SECONDS.toNanos(1) / options.getRate();
+        long start = System.nanoTime();
+        long measureFrom = start + options.getWarmup().toNanos();
+        long end = measureFrom + options.getDuration().toNanos();
+
+        long due = start;
+        long arrival = 0;
+        long nextProgress = measureFrom;
+        while (true) {
+            // Draw everything for this arrival before waiting, so the sequence depends only on the seed
+            due += (long) (-Math.log(1 - random.nextDouble()) * meanGapNanos);
+            Scenario scenario = pick(random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]));
+            VirtualUser member = users.get(random.nextInt(users.size()));
+            long sessionSeed = random.nextLong();
+            arrival++;
+            if (due >= end) {
+                break;
+            }
+
+            waitUntil(due);
+            boolean measured = due >= measureFrom;
+            if (due >= nextProgress) {
+                logger.info("{}s measured, {} journeys in flight",
+                        TimeUnit.NANOSECONDS.toSeconds(due - measureFrom), inFlight.get());
+                nextProgress += TimeUnit.SECONDS.toNanos(10);
+            }
+            if (inFlight.get() >= options.getMaxInFlight()) {
+                if (measured) {
+                    report.journey(scenario).drop();
+                }
+                continue;
+            }
+
+            VirtualUser user = scenario.isNewUser()
+                    ? VirtualUser.forUsername(String.format("loadtest-login-%08d", arrival))
+                    : member;
+            Session session = new Session(user, clientIp(arrival), sessionSeed);
+            inFlight.incrementAndGet();
+            runStep(scenario, session, 0, due, due, measured);
+        }
+
+        long drainDeadline = System.nanoTime() + REQUEST_TIMEOUT.toNanos() * 2;
+        while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(50);
+        }
+        if (inFlight.get() > 0) {
+            logger.warn("{} journeys still in flight at the end of the run", inFlight.get());
+        }
+    }
+
+    private void runStep(Scenario scenario, Session session, int index, long due, long journeyStart,
+                         boolean measured) {
+        List<Step> steps = scenario.getSteps();
+        while (index < steps.size() && !steps.get(index).appliesTo(session)) {
+            index++;
+        }
+        if (index == steps.size()) {
+            finish(scenario, journeyStart, 200, measured);
+            return;
+        }
+
+        Step step = steps.get(index);
+        int next = index + 1;
+        HttpRequest request;
+        try {
+            request = buildRequest(step, session);
+        } catch (RuntimeException e) {
+            logger.warn("Could not build {} {}: {}", scenario.getName(), step.getName(), e.getMessage());
+            finish(scenario, journeyStart, 0, measured);
+            return;
+        }
+
+        client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, failure) -> {
+            long now = System.nanoTime();
+            int status = failure == null ? response.statusCode() : 0;
+            if (measured) {
+                report.step(scenario, step).record(TimeUnit.NANOSECONDS.toMicros(now - due), status);
+            }
+            if (status < 200 || status >= 300) {
+                finish(scenario, journeyStart, status, measured);
+                return;
+            }
+            try {
+                step.succeeded(session, response.body());
+            } catch (RuntimeException e) {
+                finish(scenario, journeyStart, 0, measured);
+                return;
+            }
+            runStep(scenario, session, next, now, journeyStart, measured);
+        });
+    }
+
+    private void finish(Scenario scenario, long journeyStart, int status, boolean measured) {
+        if (measured) {
+            long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - journeyStart);
+            report.journey(scenario).record(latencyMicros, status);
+        }
+        inFlight.decrementAndGet();
+    }
+
+    private HttpRequest buildRequest(Step step, Session session) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + step.path(session)))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Accept", "application/json")
+                .header("User-Agent", USER_AGENT)
+                .header("X-Forwarded-For", session.getClientIp());
+
+        VirtualUser user = session.getUser();
+        if (step.isAuthenticated()) {
+            builder.header("Authorization", "Bearer " + user.getAccessToken());
+            if (direct) {
+                builder.header("X-User-Id", user.getUserId())
+                        .header("X-User-Name", user.getUsername())
+                        .header("X-Username", user.getUsername())
+                        .header("X-User-Roles", "user,offline_access");
+            }
+        }
+
+        Object body = step.body(session);
+        if (body == null) {
+            return builder.method(step.getMethod(), HttpRequest.BodyPublishers.noBody()).build();
+        }
+        return builder.header("Content-Type", "application/json")
+                .method(step.getMethod(), HttpRequest.BodyPublishers.ofString(toJson(body)))
+                .build();
+    }
+
+    private Scenario pick(int ticket) {
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (ticket < cumulativeWeights[i]) {
+                return scenarios.get(i);
+            }
+        }
+        return scenarios.get(scenarios.size() - 1);
+    }
+
+    // One address per journey: the gateway limits per client address, and real traffic comes from many
+    private static String clientIp(long arrival) {
+        return String.format("10.%d.%d.%d", (arrival >> 16) & 0xff, (arrival >> 8) & 0xff, arrival & 0xff);
+    }
+
+    private static void waitUntil(long due) {
+        long remaining;
+        while ((remaining = due - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private String toJson(Object body) {
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.stockfellow.loadtest;
+
+import com.stockfellow.loadtest.scenario.Scenario;
+import com.stockfellow.loadtest.scenario.Step;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and outcome counts per scenario step and per whole journey, over the
+ * measured part of a run.
+ *
+ * Written as {@code summary.csv}, one row per step and journey in the order
+ * the scenarios declare them so two runs diff line by line, and as one
+ * HdrHistogram percentile distribution ({@code .hgrm}, in milliseconds) per
+ * row for plotting and for comparing tails. Latencies are recorded in
+ * microseconds from when the request was due, not when it was sent.
+ */
+public class Report {
+
+    static final String CSV_HEADER = "scenario,step,service,requests,errors,rate_limited,dropped,"
+            + "throughput_per_s,p50_ms,p90_ms,p99_ms,p99_9_ms,max_ms";
+    static final String JOURNEY = "journey";
+
+    private final Map<String, Row> rows = new LinkedHashMap<>();
+
+    public Report(List<Scenario> scenarios) {
+        for (Scenario scenario : scenarios) {
+            for (Step step : scenario.getSteps()) {
+                rows.put(key(scenario.getName(), step.getName()),
+                        new Row(scenario.getName(), step.getName(), step.getService()));
+            }
+            rows.put(key(scenario.getName(), JOURNEY), new Row(scenario.getName(), JOURNEY, "-"));
+        }
+    }
+
+    public Row step(Scenario scenario, Step step) {
+        return rows.get(key(scenario.getName(), step.getName()));
+    }
+
+    public Row journey(Scenario scenario) {
+        return rows.get(key(scenario.getName(), JOURNEY));
+    }
+
+    public void write(Path directory, double measuredSeconds, List<String> runDescription) throws IOException {
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, "*.hgrm")) {
+            for (Path file : stale) {
+                Files.delete(file);
+            }
+        }
+
+        List<String> csv = new ArrayList<>();
+        csv.add(CSV_HEADER);
+        for (Row row : rows.values()) {
+            csv.add(row.toCsv(measuredSeconds));
+            try (PrintStream out = new PrintStream(
+                    Files.newOutputStream(directory.resolve(row.scenario + "." + row.step + ".hgrm")),
+                    false, StandardCharsets.UTF_8)) {
+                // Recorded in microseconds; scaled to milliseconds like the CSV
+                row.histogram.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+        Files.write(directory.resolve("summary.csv"), csv, StandardCharsets.UTF_8);
+        Files.write(directory.resolve("run.properties"), runDescription, StandardCharsets.UTF_8);
+    }
+
+    public void print(PrintStream out, double measuredSeconds) {
+        out.printf("%-12s %-20s %9s %7s %7s %7s %9s %9s %9s %9s %9s%n", "Scenario", "Step", "Requests",
+                "Errors", "429s", "Dropped", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Row row : rows.values()) {
+            Histogram histogram = row.histogram;
+            out.printf(Locale.ROOT, "%-12s %-20s %9d %7d %7d %7d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    row.scenario, row.step, row.requests(), row.errors.sum(), row.rateLimited.sum(),
+                    row.dropped.sum(), millis(histogram, 50), millis(histogram, 90), millis(histogram, 99),
+                    millis(histogram, 99.9), histogram.getMaxValue() / 1000.0);
+        }
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private static String key(String scenario, String step) {
+        return scenario + "/" + step;
+    }
+
+    /**
+     * One step, or a whole journey, of one scenario.
+     */
+    public static class Row {
+
+        private final String scenario;
+        private final String step;
+        private final String service;
+        private final Histogram histogram = new ConcurrentHistogram(3);
+        private final LongAdder ok = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rateLimited = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+
+        Row(String scenario, String step, String service) {
+            this.scenario = scenario;
+            this.step = step;
+            this.service = service;
+        }
+
+        /**
+         * @param status the HTTP status, or 0 when no response came back
+         */
+        public void record(long latencyMicros, int status) {
+            histogram.recordValue(Math.max(latencyMicros, 0));
+            if (status == 429) {
+                rateLimited.increment();
+            } else if (status >= 200 && status < 300) {
+                ok.increment();
+            } else {
+                errors.increment();
+            }
+        }
+
+        /**
+         * An arrival not started because too many journeys were in flight.
+         */
+        public void drop() {
+            dropped.increment();
+        }
+
+        long requests() {
+            return ok.sum() + errors.sum() + rateLimited.sum();
+        }
+
+        String toCsv(double measuredSeconds) {
+            return String.format(Locale.ROOT, "%s,%s,%s,%d,%d,%d,%d,%.2f,%.3f,%.3f,%.3f,%.3f,%.3f",
+                    scenario, step, service, requests(), errors.sum(), rateLimited.sum(), dropped.sum(),
+                    requests() / measuredSeconds, millis(histogram, 50), millis(histogram, 90),
+                    millis(histogram, 99), millis(histogram, 99.9), histogram.getMaxValue() / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.stockfellow.loadtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The gateway or service under test, run from its packaged jar in a child JVM
+ * with the stand-ins' environment. The child's output goes to
+ * {@code target.log} in the output directory.
+ *
+ * A separate process rather than an in-process context: the gateway and the
+ * services are on different Spring Boot generations and cannot share a
+ * classpath, and a separate JVM keeps the harness's own allocation and GC out
+ * of the target's latency.
+ */
+public class TargetProcess implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TargetProcess.class);
+
+    private final Process process;
+    private final int port;
+    private final Path logFile;
+
+    private TargetProcess(Process process, int port, Path logFile) {
+        this.process = process;
+        this.port = port;
+        this.logFile = logFile;
+    }
+
+    public static TargetProcess launch(Path jar, List<String> jvmArgs, Map<String, String> environment, int port,
+                                       Path logFile) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.add("-jar");
+        command.add(jar.toString());
+
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(logFile.toFile());
+        builder.environment().putAll(environment);
+        logger.info("Starting {} on port {} (log: {})", jar.getFileName(), port, logFile);
+        return new TargetProcess(builder.start(), port, logFile);
+    }
+
+    /**
+     * The service's packaged Spring Boot jar under {@code services/<target>/target}.
+     */
+    public static Path findJar(Path repoRoot, String target) throws IOException {
+        String module = LoadTestOptions.GATEWAY.equals(target) ? "api-gateway" : target;
+        Path targetDir = repoRoot.resolve("services").resolve(module).resolve("target");
+        if (!Files.isDirectory(targetDir)) {
+            throw new IllegalStateException("No build output at " + targetDir
+                    + "; run mvn -pl services/" + module + " package -DskipTests first, or pass --jar");
+        }
+        try (Stream<Path> files = Files.list(targetDir)) {
+            return files
+                    .filter(file -> file.getFileName().toString().endsWith(".jar"))
+                    .filter(file -> !file.getFileName().toString().endsWith("-plain.jar"))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("No jar in " + targetDir
+                            + "; run mvn -pl services/" + module + " package -DskipTests first, or pass --jar"));
+        }
+    }
+
+    /**
+     * Waits until the target answers HTTP. Ready is a healthy actuator, or any
+     * non-5xx answer from a service that does not expose one.
+     */
+    public void awaitReady(Duration timeout) throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+        HttpRequest health = HttpRequest.newBuilder(URI.create(getBaseUrl() + "/actuator/health"))
+                .timeout(Duration.ofSeconds(5))
+                .build();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Target exited with " + process.exitValue() + "; see " + logFile);
+            }
+            try {
+                HttpResponse<Void> response = client.send(health, HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() < 500) {
+                    logger.info("Target ready at {}", getBaseUrl());
+                    return;
+                }
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            Thread.sleep(500);
+        }
+        throw new IllegalStateException("Target not ready after " + timeout.toSeconds() + "s; see " + logFile);
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + port;
+    }
+
+    @Override
+    public void close() {
+        process.destroy();
+        try {
+            if (!process.waitFor(15, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor(5, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
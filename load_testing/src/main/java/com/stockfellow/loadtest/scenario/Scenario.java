@@ -0,0 +1,46 @@
+package com.stockfellow.loadtest.scenario;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A user journey: steps run in order, each starting when the previous one
+ * answers, and the journey stops at the first failed step.
+ */
+public class Scenario {
+
+    private final String name;
+    private final boolean newUser;
+    private final List<Step> steps;
+
+    /**
+     * @param newUser whether each run signs in a user of its own rather than
+     *                acting as a member of the pre-authenticated population
+     */
+    public Scenario(String name, boolean newUser, List<Step> steps) {
+        this.name = name;
+        this.newUser = newUser;
+        this.steps = List.copyOf(steps);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isNewUser() {
+        return newUser;
+    }
+
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    /**
+     * This scenario with only the steps the given service serves.
+     */
+    public Scenario onlyFor(String service) {
+        return new Scenario(name, newUser, steps.stream()
+                .filter(step -> step.getService().equals(service))
+                .collect(Collectors.toList()));
+    }
+}
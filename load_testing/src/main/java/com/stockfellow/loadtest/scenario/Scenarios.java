@@ -0,0 +1,94 @@
+package com.stockfellow.loadtest.scenario;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stockfellow.loadtest.LoadTestOptions;
+import com.stockfellow.loadtest.standin.ServiceStubs;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The journeys the mobile app drives, by the paths it calls through the gateway.
+ *
+ * <ul>
+ *   <li>login: password login, then the MFA code (skipped when the login
+ *       response carries tokens directly)</li>
+ *   <li>dashboard: the home screen's profile, groups, unread count and
+ *       payment methods</li>
+ *   <li>join-group: search, open a group, ask to join it</li>
+ *   <li>pay: check saved cards, then start adding a card through Paystack</li>
+ * </ul>
+ */
+public final class Scenarios {
+
+    public static final String LOGIN = "login";
+    public static final String DASHBOARD = "dashboard";
+    public static final String JOIN_GROUP = "join-group";
+    public static final String PAY = "pay";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final List<String> SEARCH_TERMS = List.of("savers", "grocery", "burial", "holiday", "school",
+            "stokvel", "investment", "christmas");
+
+    private Scenarios() {
+    }
+
+    public static List<Scenario> all(List<String> groupIds) {
+        return List.of(
+                new Scenario(LOGIN, true, List.of(
+                        Step.post("login", LoadTestOptions.GATEWAY, session -> "/api/auth/login",
+                                        session -> Map.of(
+                                                "username", session.getUser().getUsername(),
+                                                "password", VirtualUser.PASSWORD))
+                                .anonymous()
+                                .onSuccess((session, body) -> {
+                                    JsonNode response = read(body);
+                                    if (response.hasNonNull("temp_session")) {
+                                        session.put("email", response.path("email").asText());
+                                        session.put("tempSession", response.path("temp_session").asText());
+                                    }
+                                }),
+                        Step.post("verify-mfa", LoadTestOptions.GATEWAY, session -> "/api/auth/verify-mfa",
+                                        session -> Map.of(
+                                                "email", session.get("email"),
+                                                "otpCode", "123456",
+                                                "tempSession", session.get("tempSession")))
+                                .anonymous()
+                                .onlyIf(session -> session.get("tempSession") != null))),
+                new Scenario(DASHBOARD, false, List.of(
+                        Step.get("profile", ServiceStubs.USER_SERVICE, session -> "/api/users/profile"),
+                        Step.get("my-groups", ServiceStubs.GROUP_SERVICE, session -> "/api/groups/user"),
+                        Step.get("unread-count", ServiceStubs.NOTIFICATION_SERVICE,
+                                session -> "/api/notifications/user/count"),
+                        Step.get("payment-methods", ServiceStubs.TRANSACTION_SERVICE,
+                                session -> "/api/transaction/payment-methods/payer/user"))),
+                new Scenario(JOIN_GROUP, false, List.of(
+                        Step.get("search", ServiceStubs.GROUP_SERVICE,
+                                session -> "/api/groups/search?query=" + session.pick(SEARCH_TERMS)),
+                        Step.get("view", ServiceStubs.GROUP_SERVICE, session -> {
+                            session.put("groupId", session.pick(groupIds));
+                            return "/api/groups/" + session.get("groupId") + "/view";
+                        }),
+                        Step.get("join", ServiceStubs.GROUP_SERVICE,
+                                session -> "/api/groups/" + session.get("groupId") + "/join"))),
+                new Scenario(PAY, false, List.of(
+                        Step.get("payment-methods", ServiceStubs.TRANSACTION_SERVICE,
+                                session -> "/api/transaction/payment-methods/payer/user"),
+                        Step.post("initialize-card", ServiceStubs.TRANSACTION_SERVICE,
+                                session -> "/api/transaction/payment-methods/payer/initialize",
+                                session -> Map.of(
+                                        "userId", session.getUser().getUserId(),
+                                        "email", session.getUser().getEmail(),
+                                        "type", "CARD")))));
+    }
+
+    private static JsonNode read(String body) {
+        try {
+            return objectMapper.readTree(body);
+        } catch (IOException e) {
+            return objectMapper.createObjectNode();
+        }
+    }
+}
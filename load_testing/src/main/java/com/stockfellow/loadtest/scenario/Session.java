@@ -0,0 +1,45 @@
+package com.stockfellow.loadtest.scenario;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * One run of a scenario by one user: the values its steps pass along (a temp
+ * session from login, the group a user viewed) and a random source seeded by
+ * the driver, so a run with the same seed makes the same choices.
+ */
+public class Session {
+
+    private final VirtualUser user;
+    private final String clientIp;
+    private final SplittableRandom random;
+    private final Map<String, String> values = new HashMap<>();
+
+    public Session(VirtualUser user, String clientIp, long seed) {
+        this.user = user;
+        this.clientIp = clientIp;
+        this.random = new SplittableRandom(seed);
+    }
+
+    public VirtualUser getUser() {
+        return user;
+    }
+
+    public String getClientIp() {
+        return clientIp;
+    }
+
+    public String get(String key) {
+        return values.get(key);
+    }
+
+    public void put(String key, String value) {
+        values.put(key, value);
+    }
+
+    public <T> T pick(List<T> choices) {
+        return choices.get(random.nextInt(choices.size()));
+    }
+}
@@ -0,0 +1,93 @@
+package com.stockfellow.loadtest.scenario;
+
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * One request in a scenario, tagged with the service that serves it so a run
+ * against a single service keeps only that service's steps.
+ *
+ * Steps send the user's access token unless marked {@link #anonymous()}; a
+ * step can read the response body into the session for later steps and can
+ * be skipped when an earlier response made it unnecessary.
+ */
+public class Step {
+
+    private final String name;
+    private final String service;
+    private final String method;
+    private final Function<Session, String> path;
+    private final Function<Session, Object> body;
+    private boolean authenticated = true;
+    private Predicate<Session> condition = session -> true;
+    private BiConsumer<Session, String> onSuccess = (session, responseBody) -> { };
+
+    private Step(String name, String service, String method, Function<Session, String> path,
+                 Function<Session, Object> body) {
+        this.name = name;
+        this.service = service;
+        this.method = method;
+        this.path = path;
+        this.body = body;
+    }
+
+    public static Step get(String name, String service, Function<Session, String> path) {
+        return new Step(name, service, "GET", path, null);
+    }
+
+    public static Step post(String name, String service, Function<Session, String> path,
+                            Function<Session, Object> body) {
+        return new Step(name, service, "POST", path, body);
+    }
+
+    public Step anonymous() {
+        this.authenticated = false;
+        return this;
+    }
+
+    public Step onlyIf(Predicate<Session> condition) {
+        this.condition = condition;
+        return this;
+    }
+
+    public Step onSuccess(BiConsumer<Session, String> onSuccess) {
+        this.onSuccess = onSuccess;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public boolean isAuthenticated() {
+        return authenticated;
+    }
+
+    public boolean appliesTo(Session session) {
+        return condition.test(session);
+    }
+
+    public String path(Session session) {
+        return path.apply(session);
+    }
+
+    /**
+     * The request body for this session, or null for none; serialised as JSON.
+     */
+    public Object body(Session session) {
+        return body == null ? null : body.apply(session);
+    }
+
+    public void succeeded(Session session, String responseBody) {
+        onSuccess.accept(session, responseBody);
+    }
+}
@@ -0,0 +1,54 @@
+package com.stockfellow.loadtest.scenario;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * A simulated member. Everything about the user follows from the username, so
+ * the Keycloak stand-in can mint a token for any username it is sent and the
+ * driver can pre-mint tokens for the population without the two sharing state.
+ */
+public class VirtualUser {
+
+    public static final String PASSWORD = "loadtest";
+    private static final String EMAIL_DOMAIN = "@loadtest.stockfellow.co.za";
+
+    private final String username;
+    private final String userId;
+    private final String email;
+    private String accessToken;
+
+    private VirtualUser(String username) {
+        this.username = username;
+        this.userId = UUID.nameUUIDFromBytes(username.getBytes(StandardCharsets.UTF_8)).toString();
+        this.email = username + EMAIL_DOMAIN;
+    }
+
+    public static VirtualUser forUsername(String username) {
+        return new VirtualUser(username);
+    }
+
+    public static VirtualUser member(int index) {
+        return new VirtualUser(String.format("loadtest-member-%05d", index));
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getAccessToken() {
+        return accessToken;
+    }
+
+    public void setAccessToken(String accessToken) {
+        this.accessToken = accessToken;
+    }
+}
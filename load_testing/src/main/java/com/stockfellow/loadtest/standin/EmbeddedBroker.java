@@ -0,0 +1,45 @@
+package com.stockfellow.loadtest.standin;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.TransportConnector;
+
+import java.io.Closeable;
+
+/**
+ * A non-persistent ActiveMQ broker on a local port, standing in for the
+ * broker the notification service sends and consumes its queue through.
+ * It accepts any user and password.
+ */
+public class EmbeddedBroker implements Closeable {
+
+    private BrokerService broker;
+    private TransportConnector connector;
+
+    public void start() throws Exception {
+        broker = new BrokerService();
+        broker.setBrokerName("loadtest");
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.setUseShutdownHook(false);
+        connector = broker.addConnector("tcp://127.0.0.1:0");
+        broker.start();
+        broker.waitUntilStarted();
+    }
+
+    public String getUrl() throws Exception {
+        return "tcp://127.0.0.1:" + connector.getConnectUri().getPort();
+    }
+
+    @Override
+    public void close() {
+        if (broker == null) {
+            return;
+        }
+        try {
+            broker.stop();
+            broker.waitUntilStopped();
+        } catch (Exception e) {
+            // Nothing to do at shutdown
+        }
+    }
+}
@@ -0,0 +1,552 @@
+package com.stockfellow.loadtest.standin;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Redis replacement that speaks RESP2 on a local port and keeps everything in
+ * memory, so a service under test can use its normal Redis client without a
+ * Redis server.
+ *
+ * It covers what the services send: connection set-up (PING, AUTH, SELECT,
+ * CLIENT, INFO; HELLO is refused so clients stay on RESP2), strings with
+ * expiry (GET, SET with EX/PX/NX/XX/KEEPTTL/GET, SETEX, PSETEX, DEL,
+ * EXISTS, PTTL, TTL, SCAN), pub/sub (PUBLISH, SUBSCRIBE, UNSUBSCRIBE) and the
+ * gateway's GCRA rate limit script through EVAL and EVALSHA. The script is
+ * recognised by its text and run in Java with the same arithmetic as
+ * {@code scripts/gcra.lua}; other scripts and commands get an error reply.
+ */
+public class InMemoryRedisServer implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryRedisServer.class);
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, String> scripts = new ConcurrentHashMap<>();
+    private final Map<String, Set<Connection>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "redis-standin-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ServerSocket serverSocket;
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "redis-standin-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        // Expired keys are also dropped when read; this bounds memory for keys nobody reads again
+        sweeper.scheduleWithFixedDelay(() -> {
+            long now = System.currentTimeMillis();
+            entries.values().removeIf(entry -> entry.isExpired(now));
+        }, 1, 1, TimeUnit.SECONDS);
+        logger.info("In-memory Redis listening on port {}", getPort());
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        sweeper.shutdownNow();
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Connection connection = new Connection(socket);
+                Thread thread = new Thread(connection, "redis-standin-" + connections.incrementAndGet());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    logger.warn("In-memory Redis failed to accept a connection", e);
+                }
+            }
+        }
+    }
+
+    private final class Connection implements Runnable {
+
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private final Set<String> channels = ConcurrentHashMap.newKeySet();
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        @Override
+        public void run() {
+            try (socket) {
+                while (true) {
+                    List<String> command = readCommand();
+                    if (command == null) {
+                        return;
+                    }
+                    if (command.isEmpty()) {
+                        continue;
+                    }
+                    synchronized (out) {
+                        execute(command);
+                        // Flush once a pipelined batch has been answered
+                        if (in.available() == 0) {
+                            out.flush();
+                        }
+                    }
+                }
+            } catch (EOFException e) {
+                // Client closed the connection
+            } catch (IOException e) {
+                logger.debug("In-memory Redis connection closed: {}", e.getMessage());
+            } finally {
+                for (String channel : channels) {
+                    subscribers.getOrDefault(channel, Set.of()).remove(this);
+                }
+            }
+        }
+
+        private void execute(List<String> command) throws IOException {
+            String name = command.get(0).toUpperCase(Locale.ROOT);
+            List<String> args = command.subList(1, command.size());
+            switch (name) {
+                case "PING":
+                    if (!channels.isEmpty()) {
+                        array(List.of("pong", args.isEmpty() ? "" : args.get(0)));
+                    } else if (args.isEmpty()) {
+                        simple("PONG");
+                    } else {
+                        bulk(args.get(0));
+                    }
+                    break;
+                case "HELLO":
+                    error("ERR unknown command 'HELLO'");
+                    break;
+                case "AUTH":
+                case "SELECT":
+                case "CLIENT":
+                case "READONLY":
+                    simple("OK");
+                    break;
+                case "QUIT":
+                    simple("OK");
+                    out.flush();
+                    socket.close();
+                    break;
+                case "INFO":
+                    bulk("# Server\r\nredis_version:7.0.0\r\nredis_mode:standalone\r\n");
+                    break;
+                case "DBSIZE":
+                    integer(entries.size());
+                    break;
+                case "FLUSHALL":
+                case "FLUSHDB":
+                    entries.clear();
+                    simple("OK");
+                    break;
+                case "GET":
+                    bulk(get(args.get(0)));
+                    break;
+                case "SET":
+                    set(args);
+                    break;
+                case "SETEX":
+                    entries.put(args.get(0), new Entry(args.get(2), now() + Long.parseLong(args.get(1)) * 1000));
+                    simple("OK");
+                    break;
+                case "PSETEX":
+                    entries.put(args.get(0), new Entry(args.get(2), now() + Long.parseLong(args.get(1))));
+                    simple("OK");
+                    break;
+                case "DEL":
+                case "UNLINK":
+                    int deleted = 0;
+                    for (String key : args) {
+                        if (get(key) != null && entries.remove(key) != null) {
+                            deleted++;
+                        }
+                    }
+                    integer(deleted);
+                    break;
+                case "EXISTS":
+                    int existing = 0;
+                    for (String key : args) {
+                        if (get(key) != null) {
+                            existing++;
+                        }
+                    }
+                    integer(existing);
+                    break;
+                case "PTTL":
+                    integer(ttlMillis(args.get(0)));
+                    break;
+                case "TTL":
+                    long ttl = ttlMillis(args.get(0));
+                    integer(ttl < 0 ? ttl : (ttl + 999) / 1000);
+                    break;
+                case "SCAN":
+                    scan(args);
+                    break;
+                case "PUBLISH":
+                    integer(publish(args.get(0), args.get(1)));
+                    break;
+                case "SUBSCRIBE":
+                    for (String channel : args) {
+                        channels.add(channel);
+                        subscribers.computeIfAbsent(channel, key -> new CopyOnWriteArraySet<>()).add(this);
+                        subscription("subscribe", channel);
+                    }
+                    break;
+                case "UNSUBSCRIBE":
+                    for (String channel : args.isEmpty() ? new ArrayList<>(channels) : args) {
+                        channels.remove(channel);
+                        subscribers.getOrDefault(channel, Set.of()).remove(this);
+                        subscription("unsubscribe", channel);
+                    }
+                    break;
+                case "SCRIPT":
+                    if ("LOAD".equalsIgnoreCase(args.get(0))) {
+                        bulk(load(args.get(1)));
+                    } else {
+                        error("ERR only SCRIPT LOAD is supported");
+                    }
+                    break;
+                case "EVAL":
+                    eval(load(args.get(0)), args.subList(1, args.size()));
+                    break;
+                case "EVALSHA":
+                    eval(args.get(0).toLowerCase(Locale.ROOT), args.subList(1, args.size()));
+                    break;
+                default:
+                    error("ERR unknown command '" + command.get(0) + "'");
+            }
+        }
+
+        private void set(List<String> args) throws IOException {
+            String key = args.get(0);
+            String value = args.get(1);
+            long expiresAt = 0;
+            boolean nx = false;
+            boolean xx = false;
+            boolean keepTtl = false;
+            boolean returnOld = false;
+            for (int i = 2; i < args.size(); i++) {
+                switch (args.get(i).toUpperCase(Locale.ROOT)) {
+                    case "EX":
+                        expiresAt = now() + Long.parseLong(args.get(++i)) * 1000;
+                        break;
+                    case "PX":
+                        expiresAt = now() + Long.parseLong(args.get(++i));
+                        break;
+                    case "NX":
+                        nx = true;
+                        break;
+                    case "XX":
+                        xx = true;
+                        break;
+                    case "KEEPTTL":
+                        keepTtl = true;
+                        break;
+                    case "GET":
+                        returnOld = true;
+                        break;
+                    default:
+                        error("ERR syntax error");
+                        return;
+                }
+            }
+
+            // compute() so SET NX is atomic for concurrent clients
+            String[] old = new String[1];
+            boolean[] written = new boolean[1];
+            long newExpiresAt = expiresAt;
+            boolean onlyIfAbsent = nx;
+            boolean onlyIfPresent = xx;
+            boolean keep = keepTtl;
+            entries.compute(key, (k, entry) -> {
+                Entry live = entry == null || entry.isExpired(now()) ? null : entry;
+                old[0] = live == null ? null : live.value;
+                if ((onlyIfAbsent && live != null) || (onlyIfPresent && live == null)) {
+                    return live;
+                }
+                written[0] = true;
+                return new Entry(value, keep && live != null ? live.expiresAt : newExpiresAt);
+            });
+
+            if (returnOld) {
+                bulk(old[0]);
+            } else if (written[0]) {
+                simple("OK");
+            } else {
+                bulk(null);
+            }
+        }
+
+        // One pass over the keyspace; a SCAN that returns cursor 0 is complete
+        private void scan(List<String> args) throws IOException {
+            Pattern match = null;
+            for (int i = 1; i < args.size(); i++) {
+                if ("MATCH".equalsIgnoreCase(args.get(i))) {
+                    match = glob(args.get(++i));
+                } else {
+                    i++;
+                }
+            }
+            List<String> keys = new ArrayList<>();
+            long now = now();
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                if (!entry.getValue().isExpired(now) && (match == null || match.matcher(entry.getKey()).matches())) {
+                    keys.add(entry.getKey());
+                }
+            }
+            out.write(("*2\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            bulk("0");
+            array(keys);
+        }
+
+        private void eval(String sha, List<String> args) throws IOException {
+            String script = scripts.get(sha);
+            if (script == null) {
+                error("NOSCRIPT No matching script. Please use EVAL.");
+                return;
+            }
+            if (!script.contains("GCRA")) {
+                error("ERR only the gateway's GCRA rate limit script is supported");
+                return;
+            }
+            int keyCount = Integer.parseInt(args.get(0));
+            List<String> keys = args.subList(1, 1 + keyCount);
+            List<String> argv = args.subList(1 + keyCount, args.size());
+            long[] result = gcra(keys.get(0), Double.parseDouble(argv.get(0)), Double.parseDouble(argv.get(1)),
+                    Integer.parseInt(argv.get(2)));
+            out.write(("*2\r\n:" + result[0] + "\r\n:" + result[1] + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        private void subscription(String kind, String channel) throws IOException {
+            out.write("*3\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            bulk(kind);
+            bulk(channel);
+            integer(channels.size());
+        }
+
+        void message(String channel, String message) {
+            try {
+                synchronized (out) {
+                    out.write("*3\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                    bulk("message");
+                    bulk(channel);
+                    bulk(message);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                logger.debug("Dropped a message to a closed subscriber: {}", e.getMessage());
+            }
+        }
+
+        // Arrays of bulk strings, as every client sends; null at end of stream
+        private List<String> readCommand() throws IOException {
+            int type = in.read();
+            if (type == -1) {
+                return null;
+            }
+            if (type != '*') {
+                // Inline command, as typed into telnet
+                String line = (char) type + readLine();
+                return line.isBlank() ? List.of() : List.of(line.trim().split("\\s+"));
+            }
+            int count = Integer.parseInt(readLine());
+            List<String> command = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                if (in.read() != '$') {
+                    throw new IOException("Expected a bulk string");
+                }
+                int length = Integer.parseInt(readLine());
+                byte[] bytes = in.readNBytes(length);
+                if (bytes.length < length) {
+                    throw new EOFException();
+                }
+                readLine();
+                command.add(new String(bytes, StandardCharsets.ISO_8859_1));
+            }
+            return command;
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            int b;
+            while ((b = in.read()) != '\r') {
+                if (b == -1) {
+                    throw new EOFException();
+                }
+                line.append((char) b);
+            }
+            in.read();
+            return line.toString();
+        }
+
+        private void simple(String value) throws IOException {
+            out.write(("+" + value + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        private void error(String message) throws IOException {
+            out.write(("-" + message + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        private void integer(long value) throws IOException {
+            out.write((":" + value + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        private void bulk(String value) throws IOException {
+            if (value == null) {
+                out.write("$-1\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+            out.write(("$" + bytes.length + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            out.write(bytes);
+            out.write('\r');
+            out.write('\n');
+        }
+
+        private void array(List<String> values) throws IOException {
+            out.write(("*" + values.size() + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            for (String value : values) {
+                bulk(value);
+            }
+        }
+    }
+
+    private String get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(now())) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    private long ttlMillis(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.isExpired(now())) {
+            return -2;
+        }
+        return entry.expiresAt == 0 ? -1 : entry.expiresAt - now();
+    }
+
+    private int publish(String channel, String message) {
+        Set<Connection> receivers = subscribers.getOrDefault(channel, Set.of());
+        for (Connection receiver : receivers) {
+            receiver.message(channel, message);
+        }
+        return receivers.size();
+    }
+
+    private String load(String script) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.ISO_8859_1));
+            String sha = HexFormat.of().formatHex(digest);
+            scripts.put(sha, script);
+            return sha;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // scripts/gcra.lua: grants as many of the requested tokens as fit; {granted, retryAfterMs}
+    private long[] gcra(String key, double interval, double tolerance, int requested) {
+        long[] result = new long[2];
+        entries.compute(key, (k, entry) -> {
+            long now = now();
+            double tat = entry == null || entry.isExpired(now) ? now : Math.max(now, Double.parseDouble(entry.value));
+
+            long available = (long) Math.floor((tolerance - (tat - now)) / interval) + 1;
+            if (available <= 0) {
+                result[1] = (long) Math.ceil(tat - tolerance - now);
+                return entry;
+            }
+
+            long granted = Math.min(requested, available);
+            tat += granted * interval;
+            result[0] = granted;
+            return new Entry(String.format(Locale.ROOT, "%.3f", tat), now + (long) Math.ceil(tat - now));
+        });
+        return result;
+    }
+
+    private static Pattern glob(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : pattern.toCharArray()) {
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private static long now() {
+        return System.currentTimeMillis();
+    }
+
+    private static final class Entry {
+        private final String value;
+        // Epoch millis; 0 for no expiry
+        private final long expiresAt;
+
+        Entry(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return expiresAt != 0 && expiresAt <= now;
+        }
+    }
+}
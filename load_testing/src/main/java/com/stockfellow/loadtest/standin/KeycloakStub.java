@@ -0,0 +1,261 @@
+package com.stockfellow.loadtest.standin;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.github.tomakehurst.wiremock.extension.ResponseDefinitionTransformer;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.stockfellow.loadtest.scenario.VirtualUser;
+
+import java.io.Closeable;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+
+/**
+ * Keycloak's OpenID Connect endpoints for one realm, enough for the gateway's
+ * login, refresh, local validation and introspection paths.
+ *
+ * The token endpoint accepts any username and password (password grant) or
+ * any refresh token it issued, and mints RS256 tokens signed with a key
+ * generated at start-up and published on the certs endpoint. Introspection
+ * verifies the signature and expiry and returns the token's claims, which
+ * include the email the gateway needs to start MFA.
+ */
+public class KeycloakStub implements Closeable {
+
+    public static final String REALM = "stockfellow";
+
+    private static final String TOKEN_TRANSFORMER = "keycloak-token";
+    private static final String INTROSPECT_TRANSFORMER = "keycloak-introspect";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Duration accessTokenLifetime;
+    private final double medianLatencyMs;
+    private RSAKey signingKey;
+    private WireMockServer server;
+
+    public KeycloakStub(Duration accessTokenLifetime, double medianLatencyMs) {
+        this.accessTokenLifetime = accessTokenLifetime;
+        this.medianLatencyMs = medianLatencyMs;
+    }
+
+    public void start() throws JOSEException {
+        signingKey = new RSAKeyGenerator(2048).keyID("loadtest-" + UUID.randomUUID()).generate();
+        server = new WireMockServer(ServiceStubs.serverOptions()
+                .extensions(new TokenTransformer(), new IntrospectTransformer()));
+        server.start();
+
+        String oidc = "/realms/" + REALM + "/protocol/openid-connect";
+        server.stubFor(post(urlPathEqualTo(oidc + "/token"))
+                .willReturn(delayed(aResponse().withTransformers(TOKEN_TRANSFORMER))));
+        server.stubFor(post(urlPathEqualTo(oidc + "/token/introspect"))
+                .willReturn(delayed(aResponse().withTransformers(INTROSPECT_TRANSFORMER))));
+        server.stubFor(get(urlPathEqualTo(oidc + "/certs"))
+                .willReturn(delayed(ServiceStubs.json(new JWKSet(signingKey.toPublicJWK()).toString()))));
+    }
+
+    public String getUrl() {
+        return server.baseUrl();
+    }
+
+    public String getIssuer() {
+        return getUrl() + "/realms/" + REALM;
+    }
+
+    public String getJwksUri() {
+        return getIssuer() + "/protocol/openid-connect/certs";
+    }
+
+    /**
+     * An access token for the user, as the token endpoint would issue it.
+     */
+    public String mintAccessToken(VirtualUser user) {
+        return sign(user, "Bearer", accessTokenLifetime);
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private ResponseDefinitionBuilder delayed(ResponseDefinitionBuilder response) {
+        return medianLatencyMs > 0 ? response.withLogNormalRandomDelay(medianLatencyMs, 0.5) : response;
+    }
+
+    private String sign(VirtualUser user, String type, Duration lifetime) {
+        long now = System.currentTimeMillis();
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .jwtID(UUID.randomUUID().toString())
+                .issuer(getIssuer())
+                .subject(user.getUserId())
+                .audience("account")
+                .issueTime(new Date(now))
+                .expirationTime(new Date(now + lifetime.toMillis()))
+                .claim("typ", type)
+                .claim("azp", "public-client")
+                .claim("preferred_username", user.getUsername())
+                .claim("email", user.getEmail())
+                .claim("email_verified", true)
+                .claim("realm_access", Map.of("roles", List.of("user", "offline_access")))
+                .build();
+        try {
+            SignedJWT jwt = new SignedJWT(
+                    new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(signingKey.getKeyID()).build(), claims);
+            jwt.sign(new RSASSASigner(signingKey));
+            return jwt.serialize();
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Could not sign a stand-in token", e);
+        }
+    }
+
+    // Claims of a token this stub signed and that has not expired, or null
+    private Map<String, Object> verify(String token) {
+        try {
+            SignedJWT jwt = SignedJWT.parse(token);
+            if (!jwt.verify(new RSASSAVerifier(signingKey.toRSAPublicKey()))) {
+                return null;
+            }
+            Date exp = jwt.getJWTClaimsSet().getExpirationTime();
+            if (exp == null || exp.getTime() < System.currentTimeMillis()) {
+                return null;
+            }
+            return jwt.getJWTClaimsSet().toJSONObject();
+        } catch (ParseException | JOSEException e) {
+            return null;
+        }
+    }
+
+    private String toJson(Object body) {
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Map<String, String> form(Request request) {
+        Map<String, String> form = new HashMap<>();
+        for (String pair : request.getBodyAsString().split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                form.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return form;
+    }
+
+    private class TokenTransformer extends ResponseDefinitionTransformer {
+
+        @Override
+        public ResponseDefinition transform(Request request, ResponseDefinition responseDefinition,
+                                            FileSource files, Parameters parameters) {
+            Map<String, String> form = form(request);
+            VirtualUser user;
+            if ("refresh_token".equals(form.get("grant_type"))) {
+                Map<String, Object> claims = verify(form.getOrDefault("refresh_token", ""));
+                if (claims == null) {
+                    return error(responseDefinition, 400, "invalid_grant", "Invalid refresh token");
+                }
+                user = VirtualUser.forUsername((String) claims.get("preferred_username"));
+            } else if (form.get("username") != null && form.get("password") != null) {
+                user = VirtualUser.forUsername(form.get("username"));
+            } else {
+                return error(responseDefinition, 401, "invalid_grant", "Invalid user credentials");
+            }
+
+            Duration refreshLifetime = Duration.ofMinutes(30);
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("access_token", sign(user, "Bearer", accessTokenLifetime));
+            body.put("expires_in", accessTokenLifetime.toSeconds());
+            body.put("refresh_expires_in", refreshLifetime.toSeconds());
+            body.put("refresh_token", sign(user, "Refresh", refreshLifetime));
+            body.put("token_type", "Bearer");
+            body.put("not-before-policy", 0);
+            body.put("session_state", UUID.randomUUID().toString());
+            body.put("scope", "email profile");
+            return ResponseDefinitionBuilder.like(responseDefinition).but()
+                    .withStatus(200)
+                    .withHeader("Content-Type", "application/json")
+                    .withBody(toJson(body))
+                    .build();
+        }
+
+        private ResponseDefinition error(ResponseDefinition responseDefinition, int status, String error,
+                                         String description) {
+            return ResponseDefinitionBuilder.like(responseDefinition).but()
+                    .withStatus(status)
+                    .withHeader("Content-Type", "application/json")
+                    .withBody(toJson(Map.of("error", error, "error_description", description)))
+                    .build();
+        }
+
+        @Override
+        public String getName() {
+            return TOKEN_TRANSFORMER;
+        }
+
+        @Override
+        public boolean applyGlobally() {
+            return false;
+        }
+    }
+
+    private class IntrospectTransformer extends ResponseDefinitionTransformer {
+
+        @Override
+        public ResponseDefinition transform(Request request, ResponseDefinition responseDefinition,
+                                            FileSource files, Parameters parameters) {
+            Map<String, Object> claims = verify(form(request).getOrDefault("token", ""));
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("active", claims != null);
+            if (claims != null) {
+                body.putAll(claims);
+            }
+            return ResponseDefinitionBuilder.like(responseDefinition).but()
+                    .withStatus(200)
+                    .withHeader("Content-Type", "application/json")
+                    .withBody(toJson(body))
+                    .build();
+        }
+
+        @Override
+        public String getName() {
+            return INTROSPECT_TRANSFORMER;
+        }
+
+        @Override
+        public boolean applyGlobally() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.stockfellow.loadtest.standin;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.MappingBuilder;
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+
+import java.io.Closeable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.any;
+import static com.github.tomakehurst.wiremock.client.WireMock.anyUrl;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
+
+/**
+ * Stand-ins for the services a target calls: the other StockFellow services
+ * and Paystack, one WireMock server each so every base URL is distinct.
+ *
+ * Each answers the endpoints the scenarios reach with a canned body of
+ * realistic size, after a log-normal delay around the configured median so
+ * the target sees upstream latency with a tail. Anything else gets 200 with
+ * an empty object, so a target calling an endpoint the stubs don't know
+ * keeps working and the call shows up in the target's own logs.
+ */
+public class ServiceStubs implements Closeable {
+
+    public static final String USER_SERVICE = "user-service";
+    public static final String GROUP_SERVICE = "group-service";
+    public static final String TRANSACTION_SERVICE = "transaction-service";
+    public static final String NOTIFICATION_SERVICE = "notification-service";
+    public static final String MFA_SERVICE = "mfa-service";
+    public static final String PAYSTACK = "paystack";
+
+    private static final String USER_BODY = "{\"userId\":\"b7c1c6a2-3f0e-4d6c-9f7a-2e1d5c8b9a10\","
+            + "\"username\":\"loadtest-member\",\"email\":\"member@loadtest.stockfellow.co.za\","
+            + "\"firstName\":\"Thandi\",\"lastName\":\"Mokoena\",\"phoneNumber\":\"+27821234567\","
+            + "\"idVerified\":true,\"affordabilityTier\":3,\"createdAt\":\"2025-06-01T09:00:00Z\"}";
+    private static final String GROUP_BODY = "{\"groupId\":\"grp-000001\",\"name\":\"Soweto Savers\","
+            + "\"description\":\"Monthly stokvel for household groceries\",\"visibility\":\"Public\","
+            + "\"minContribution\":500.0,\"maxMembers\":12,\"contributionFrequency\":\"Monthly\","
+            + "\"payoutFrequency\":\"Monthly\",\"tier\":3,\"balance\":18500.0,"
+            + "\"members\":[{\"userId\":\"b7c1c6a2-3f0e-4d6c-9f7a-2e1d5c8b9a10\",\"role\":\"admin\"},"
+            + "{\"userId\":\"c2d4e6f8-1a3b-4c5d-8e9f-0a1b2c3d4e5f\",\"role\":\"member\"}],"
+            + "\"createdAt\":\"2025-05-14T08:30:00Z\"}";
+
+    private final double medianLatencyMs;
+    private final Map<String, WireMockServer> servers = new LinkedHashMap<>();
+
+    public ServiceStubs(double medianLatencyMs) {
+        this.medianLatencyMs = medianLatencyMs;
+    }
+
+    public void start() {
+        WireMockServer user = server(USER_SERVICE);
+        user.stubFor(get(urlPathEqualTo("/api/users/profile")).willReturn(delayed(json(USER_BODY))));
+        user.stubFor(post(urlPathEqualTo("/api/users/register"))
+                .willReturn(delayed(json("{\"success\":true,\"message\":\"User registered\"}"))));
+        user.stubFor(get(urlPathMatching("/api/users/[^/]+")).atPriority(6).willReturn(delayed(json(USER_BODY))));
+
+        WireMockServer group = server(GROUP_SERVICE);
+        group.stubFor(get(urlPathEqualTo("/api/groups/user"))
+                .willReturn(delayed(json("[" + GROUP_BODY + "," + GROUP_BODY + "]"))));
+        group.stubFor(get(urlPathEqualTo("/api/groups/search"))
+                .willReturn(delayed(json("[" + GROUP_BODY + "," + GROUP_BODY + "," + GROUP_BODY + "]"))));
+        group.stubFor(get(urlPathMatching("/api/groups/[^/]+/view")).willReturn(delayed(json(GROUP_BODY))));
+        group.stubFor(get(urlPathMatching("/api/groups/[^/]+/join"))
+                .willReturn(delayed(json("{\"success\":true,\"message\":\"Join request sent\"}"))));
+
+        WireMockServer transaction = server(TRANSACTION_SERVICE);
+        transaction.stubFor(get(urlPathEqualTo("/api/transaction/payment-methods/payer/user"))
+                .willReturn(delayed(json("[{\"payerId\":\"6f1e2d3c-4b5a-4987-8a6b-5c4d3e2f1a0b\","
+                        + "\"type\":\"CARD\",\"last4\":\"4081\",\"bank\":\"TEST BANK\",\"isActive\":true}]"))));
+        transaction.stubFor(post(urlPathEqualTo("/api/transaction/payment-methods/payer/initialize"))
+                .willReturn(delayed(json("{\"authorizationUrl\":\"https://checkout.paystack.com/loadtest\","
+                        + "\"reference\":\"loadtest-ref\",\"accessCode\":\"loadtest-access\"}"))));
+        transaction.stubFor(post(urlPathEqualTo("/api/users/sync")).willReturn(delayed(json("{\"synced\":true}"))));
+
+        WireMockServer notification = server(NOTIFICATION_SERVICE);
+        notification.stubFor(get(urlPathEqualTo("/api/notifications/user/count"))
+                .willReturn(delayed(json("{\"unreadCount\":3}"))));
+        notification.stubFor(get(urlPathEqualTo("/api/notifications/user/unread")).willReturn(delayed(json("[]"))));
+        notification.stubFor(post(urlPathEqualTo("/api/notifications/send"))
+                .willReturn(delayed(json("{\"notificationId\":\"notif_loadtest\",\"status\":\"PENDING\"}"))));
+
+        WireMockServer mfa = server(MFA_SERVICE);
+        mfa.stubFor(post(urlPathEqualTo("/api/mfa/send-otp"))
+                .willReturn(delayed(json("{\"success\":true,\"message\":\"OTP sent\"}"))));
+        mfa.stubFor(post(urlPathEqualTo("/api/mfa/verify-otp")).willReturn(delayed(json("{\"success\":true}"))));
+
+        WireMockServer paystack = server(PAYSTACK);
+        paystack.stubFor(post(urlPathEqualTo("/transaction/initialize"))
+                .willReturn(delayed(json("{\"status\":true,\"message\":\"Authorization URL created\",\"data\":"
+                        + "{\"authorization_url\":\"https://checkout.paystack.com/loadtest\","
+                        + "\"access_code\":\"loadtest-access\",\"reference\":\"loadtest-ref\"}}"))));
+        paystack.stubFor(get(urlPathMatching("/transaction/verify/.*"))
+                .willReturn(delayed(json("{\"status\":true,\"message\":\"Verification successful\",\"data\":"
+                        + "{\"status\":\"success\",\"reference\":\"loadtest-ref\",\"amount\":50000}}"))));
+        paystack.stubFor(post(urlPathEqualTo("/transaction/charge_authorization"))
+                .willReturn(delayed(json("{\"status\":true,\"message\":\"Charge attempted\",\"data\":"
+                        + "{\"status\":\"success\",\"reference\":\"loadtest-ref\",\"amount\":50000}}"))));
+        paystack.stubFor(post(urlPathEqualTo("/transferrecipient"))
+                .willReturn(delayed(json("{\"status\":true,\"message\":\"Transfer recipient created\",\"data\":"
+                        + "{\"recipient_code\":\"RCP_loadtest\"}}"))));
+    }
+
+    public String getUrl(String service) {
+        return servers.get(service).baseUrl();
+    }
+
+    @Override
+    public void close() {
+        servers.values().forEach(WireMockServer::stop);
+    }
+
+    static WireMockConfiguration serverOptions() {
+        return WireMockConfiguration.options()
+                .bindAddress("127.0.0.1")
+                .dynamicPort()
+                .containerThreads(200)
+                .asynchronousResponseEnabled(true)
+                .asynchronousResponseThreads(32)
+                // The journal keeps every request; a long run would fill the heap
+                .disableRequestJournal();
+    }
+
+    static ResponseDefinitionBuilder json(String body) {
+        return aResponse().withStatus(200).withHeader("Content-Type", "application/json").withBody(body);
+    }
+
+    private WireMockServer server(String service) {
+        WireMockServer server = new WireMockServer(serverOptions());
+        server.start();
+        server.stubFor(fallback());
+        servers.put(service, server);
+        return server;
+    }
+
+    private MappingBuilder fallback() {
+        return any(anyUrl()).atPriority(10).willReturn(delayed(json("{}")));
+    }
+
+    private ResponseDefinitionBuilder delayed(ResponseDefinitionBuilder response) {
+        return medianLatencyMs > 0 ? response.withLogNormalRandomDelay(medianLatencyMs, 0.5) : response;
+    }
+}
@@ -0,0 +1,133 @@
+package com.stockfellow.loadtest.standin;
+
+import com.stockfellow.loadtest.LoadTestOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything a target talks to, started together, and the environment that
+ * points the target at them. Each service binds its own port from the
+ * environment variable its application.yml reads, so the overrides here follow
+ * those names.
+ *
+ * Databases are not stood in for: the gateway has none, and the services read
+ * theirs from the same variables as in deployment, which must be set when one
+ * of them is the target (see {@link #requiredEnvironment(String)}).
+ */
+public class StandIns implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(StandIns.class);
+
+    private final InMemoryRedisServer redis = new InMemoryRedisServer();
+    private final KeycloakStub keycloak;
+    private final ServiceStubs services;
+    private final EmbeddedBroker broker = new EmbeddedBroker();
+    private final List<Closeable> started = new ArrayList<>();
+
+    public StandIns(double upstreamLatencyMs) {
+        this.keycloak = new KeycloakStub(Duration.ofMinutes(30), upstreamLatencyMs);
+        this.services = new ServiceStubs(upstreamLatencyMs);
+    }
+
+    public void start(String target) throws Exception {
+        redis.start();
+        started.add(redis);
+        keycloak.start();
+        started.add(keycloak);
+        services.start();
+        started.add(services);
+        if (ServiceStubs.NOTIFICATION_SERVICE.equals(target)) {
+            broker.start();
+            started.add(broker);
+        }
+        logger.info("Stand-ins up: redis 127.0.0.1:{}, keycloak {}", redis.getPort(), keycloak.getUrl());
+    }
+
+    public KeycloakStub getKeycloak() {
+        return keycloak;
+    }
+
+    /**
+     * Variables the target needs and the harness cannot supply.
+     */
+    public static List<String> requiredEnvironment(String target) {
+        switch (target) {
+            case ServiceStubs.USER_SERVICE:
+                return List.of("DROPLET1_IP", "POSTGRES_USER", "POSTGRES_PASSWORD");
+            case ServiceStubs.GROUP_SERVICE:
+                return List.of("MONGODB_URI");
+            case ServiceStubs.TRANSACTION_SERVICE:
+                return List.of("TRANSACTIONDB_URI", "TRANSACTIONDB_USER", "TRANSACTIONDB_PASS");
+            case ServiceStubs.NOTIFICATION_SERVICE:
+                return List.of("DROPLET1_IP", "POSTGRES_USER", "POSTGRES_PASSWORD");
+            default:
+                return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Environment for the target process, on top of the harness's own.
+     */
+    public Map<String, String> environmentFor(String target, int port, Path workDir) throws Exception {
+        Map<String, String> env = new LinkedHashMap<>();
+        env.put("SERVER_PORT", String.valueOf(port));
+        env.put("USER_SERVICE_URL", services.getUrl(ServiceStubs.USER_SERVICE));
+        env.put("GROUP_SERVICE_URL", services.getUrl(ServiceStubs.GROUP_SERVICE));
+        env.put("TRANSACTION_SERVICE_URL", services.getUrl(ServiceStubs.TRANSACTION_SERVICE));
+        env.put("NOTIFICATION_SERVICE_URL", services.getUrl(ServiceStubs.NOTIFICATION_SERVICE));
+        env.put("MFA_SERVICE_URL", services.getUrl(ServiceStubs.MFA_SERVICE));
+        env.put("KEYCLOAK_AUTH_SERVER_URL", keycloak.getUrl());
+        env.put("KEYCLOAK_REALM", KeycloakStub.REALM);
+        env.put("KEYCLOAK_ISSUER", keycloak.getIssuer());
+        env.put("KEYCLOAK_JWKS_URI", keycloak.getJwksUri());
+
+        switch (target) {
+            case LoadTestOptions.GATEWAY:
+                env.put("REDIS_HOST", "127.0.0.1");
+                env.put("REDIS_PORT", String.valueOf(redis.getPort()));
+                env.put("REDIS_PASSWORD", "");
+                env.put("KEYCLOAK_GATEWAY_CLIENT_SECRET", "loadtest");
+                env.put("REGISTRATION_QUEUE_FILE", workDir.resolve("registration-queue.jsonl").toString());
+                break;
+            case ServiceStubs.USER_SERVICE:
+                env.put("USER_SERVICE_PORT", String.valueOf(port));
+                break;
+            case ServiceStubs.GROUP_SERVICE:
+                env.put("GROUP_SERVICE_PORT", String.valueOf(port));
+                env.put("LOG_FILE", workDir.resolve("group-service.log").toString());
+                break;
+            case ServiceStubs.TRANSACTION_SERVICE:
+                env.put("PAYSTACK_API_URL", services.getUrl(ServiceStubs.PAYSTACK));
+                env.put("PAYSTACK_TEST_API_KEY", "sk_test_loadtest");
+                env.put("CALLBACK_BASE_URL", "http://127.0.0.1:" + port);
+                break;
+            case ServiceStubs.NOTIFICATION_SERVICE:
+                // The yml builds the broker URL from the database host; override it whole
+                env.put("SPRING_ACTIVEMQ_BROKER_URL", broker.getUrl());
+                env.put("ACTIVEMQ_USER", "loadtest");
+                env.put("ACTIVEMQ_PASSWORD", "loadtest");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown target: " + target);
+        }
+        return env;
+    }
+
+    @Override
+    public void close() throws IOException {
+        Collections.reverse(started);
+        for (Closeable closeable : started) {
+            closeable.close();
+        }
+    }
+}
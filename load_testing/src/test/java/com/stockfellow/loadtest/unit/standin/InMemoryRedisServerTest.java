@@ -0,0 +1,194 @@
+package com.stockfellow.loadtest.unit.standin;
+
+import com.stockfellow.loadtest.standin.InMemoryRedisServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryRedisServerTest {
+
+    // Same shape as the gateway's scripts/gcra.lua; the server recognises the script by its text
+    private static final String GCRA_SCRIPT = "-- GCRA rate limit check\nreturn redis.call('TIME')";
+
+    private InMemoryRedisServer server;
+    private Client client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new InMemoryRedisServer();
+        server.start();
+        client = new Client(server.getPort());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    void shouldSetOnlyIfAbsentAndExpire() throws Exception {
+        assertEquals("OK", client.call("SET", "temp_session:a", "one", "PX", "200", "NX"));
+        assertNull(client.call("SET", "temp_session:a", "two", "PX", "200", "NX"));
+        assertEquals("one", client.call("GET", "temp_session:a"));
+        long ttl = (Long) client.call("PTTL", "temp_session:a");
+        assertTrue(ttl > 0 && ttl <= 200, "ttl " + ttl);
+
+        Thread.sleep(250);
+
+        assertNull(client.call("GET", "temp_session:a"));
+        assertEquals(-2L, client.call("PTTL", "temp_session:a"));
+    }
+
+    @Test
+    void shouldCountDeletedAndExistingKeys() throws Exception {
+        client.call("SET", "a", "1");
+        client.call("SET", "b", "2");
+
+        assertEquals(2L, client.call("EXISTS", "a", "b", "c"));
+        assertEquals(1L, client.call("DEL", "a", "c"));
+        assertEquals(-1L, client.call("PTTL", "b"));
+    }
+
+    @Test
+    void shouldScanKeysMatchingAPattern() throws Exception {
+        client.call("SET", "revoked:1", "x", "EX", "60");
+        client.call("SET", "revoked:2", "x");
+        client.call("SET", "token:1", "x");
+
+        List<?> reply = (List<?>) client.call("SCAN", "0", "MATCH", "revoked:*", "COUNT", "100");
+
+        assertEquals("0", reply.get(0));
+        List<?> keys = (List<?>) reply.get(1);
+        assertEquals(2, keys.size());
+        assertTrue(keys.containsAll(List.of("revoked:1", "revoked:2")));
+    }
+
+    @Test
+    void shouldGrantUpToTheBurstThenReportRetryAfter() throws Exception {
+        assertTrue(((String) client.error("EVALSHA", "0123456789abcdef0123456789abcdef01234567", "1", "rl:k",
+                "1000", "2000", "1")).startsWith("NOSCRIPT"));
+
+        // 1 per second with a burst of 3
+        for (int i = 0; i < 3; i++) {
+            assertEquals(List.of(1L, 0L), client.call("EVAL", GCRA_SCRIPT, "1", "rl:k", "1000", "2000", "1"));
+        }
+        List<?> limited = (List<?>) client.call("EVAL", GCRA_SCRIPT, "1", "rl:k", "1000", "2000", "1");
+
+        assertEquals(0L, limited.get(0));
+        long retryAfter = (Long) limited.get(1);
+        assertTrue(retryAfter > 0 && retryAfter <= 1000, "retryAfter " + retryAfter);
+    }
+
+    @Test
+    void shouldGrantPartOfAPrefetchThatDoesNotFit() throws Exception {
+        assertEquals(List.of(3L, 0L), client.call("EVAL", GCRA_SCRIPT, "1", "rl:p", "1000", "2000", "5"));
+    }
+
+    @Test
+    void shouldDeliverPublishedMessagesToSubscribers() throws Exception {
+        try (Client subscriber = new Client(server.getPort())) {
+            assertEquals(List.of("subscribe", "token_revocations", 1L),
+                    subscriber.call("SUBSCRIBE", "token_revocations"));
+
+            assertEquals(1L, client.call("PUBLISH", "token_revocations", "jti-1"));
+
+            assertEquals(List.of("message", "token_revocations", "jti-1"), subscriber.read());
+        }
+    }
+
+    @Test
+    void shouldRefuseHelloSoClientsStayOnResp2() throws Exception {
+        assertTrue(((String) client.error("HELLO", "3")).startsWith("ERR"));
+        assertEquals("PONG", client.call("PING"));
+    }
+
+    /**
+     * Minimal RESP2 client; errors come back as {@link RuntimeException}.
+     */
+    private static final class Client implements AutoCloseable {
+
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+
+        Client(int port) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setSoTimeout(2000);
+            in = new BufferedInputStream(socket.getInputStream());
+            out = socket.getOutputStream();
+        }
+
+        Object call(String... command) throws IOException {
+            StringBuilder request = new StringBuilder("*").append(command.length).append("\r\n");
+            for (String part : command) {
+                request.append('$').append(part.getBytes(StandardCharsets.UTF_8).length).append("\r\n")
+                        .append(part).append("\r\n");
+            }
+            out.write(request.toString().getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            return read();
+        }
+
+        Object error(String... command) throws IOException {
+            RuntimeException error = assertThrows(RuntimeException.class, () -> call(command));
+            return error.getMessage();
+        }
+
+        Object read() throws IOException {
+            int type = in.read();
+            String line = readLine();
+            switch (type) {
+                case '+':
+                    return line;
+                case '-':
+                    throw new RuntimeException(line);
+                case ':':
+                    return Long.parseLong(line);
+                case '$':
+                    int length = Integer.parseInt(line);
+                    if (length < 0) {
+                        return null;
+                    }
+                    String value = new String(in.readNBytes(length), StandardCharsets.UTF_8);
+                    readLine();
+                    return value;
+                case '*':
+                    List<Object> values = new ArrayList<>();
+                    for (int i = Integer.parseInt(line); i > 0; i--) {
+                        values.add(read());
+                    }
+                    return values;
+                default:
+                    throw new IOException("Unexpected reply type " + (char) type);
+            }
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            int b;
+            while ((b = in.read()) != '\r') {
+                line.append((char) b);
+            }
+            in.read();
+            return line.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -3,17 +3,22 @@ package com.stockfellow.gateway;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.client.RestTemplate;
 
 @SpringBootApplication
+@EnableScheduling
 public class GatewayApplication {
     
     public static void main(String[] args) {
         SpringApplication.run(GatewayApplication.class, args);
     }
     
+    // Proxied traffic uses the pooled proxyRestTemplate from ProxyClientConfig
     @Bean
+    @Primary
     public RestTemplate restTemplate() {
         return new RestTemplate();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,352 @@
+package com.stockfellow.gateway.cache;
+
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.routing.PathPattern;
+import com.stockfellow.gateway.routing.RouteTable;
+import com.stockfellow.gateway.util.ExpiringCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gateway-side cache of successful GET responses for routes that opt in with a
+ * {@link Route.ResponseCache}.
+ *
+ * Entries are keyed by route, path and query, plus the caller's user id on
+ * per-user routes. The upstream's {@code Cache-Control} can shorten the route's
+ * TTL ({@code max-age}) or forbid storing ({@code no-store}, {@code no-cache},
+ * and {@code private} on shared routes). Each entry carries a strong ETag, the
+ * upstream's when it sent one, otherwise a hash of the body.
+ *
+ * Storage is split into segments, each an LRU bounded by bytes, so total
+ * memory stays under {@code max-bytes}. A write through a cached route bumps
+ * the caller's generation for that route, so their later reads miss instead
+ * of seeing their own stale data.
+ */
+@Component
+public class HttpResponseCache {
+
+    private static final int SEGMENTS = 16;
+    // Rough per-entry cost beyond the body: key, headers, bookkeeping
+    private static final int ENTRY_OVERHEAD_BYTES = 512;
+
+    private final RouteTable routeTable;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.proxy.cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    @Value("${app.proxy.cache.max-entry-bytes:1048576}")
+    private int maxEntryBytes;
+
+    private Segment[] segments;
+    private final Map<Route, PathPattern[]> cacheablePaths = new IdentityHashMap<>();
+    private final Map<String, RouteMeters> routeMeters = new ConcurrentHashMap<>();
+    private final AtomicLong evictions = new AtomicLong();
+    private ExpiringCache<String, Long> generations;
+
+    public HttpResponseCache(RouteTable routeTable, MeterRegistry meterRegistry) {
+        this.routeTable = routeTable;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.max(1, maxBytes / SEGMENTS));
+        }
+        generations = new ExpiringCache<>(100_000);
+
+        for (Route route : routeTable.routes()) {
+            Route.ResponseCache config = route.getResponseCache();
+            if (config == null || config.getTtlMs() <= 0) {
+                continue;
+            }
+            cacheablePaths.put(route, PathPattern.compileAll(config.getPaths()));
+        }
+
+        Gauge.builder("gateway.cache.size", this, HttpResponseCache::bytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("gateway.cache.entries", this, HttpResponseCache::entries).register(meterRegistry);
+        FunctionCounter.builder("gateway.cache.evictions", evictions, AtomicLong::get).register(meterRegistry);
+    }
+
+    /** Whether GETs of this path on this route go through the cache. */
+    public boolean isCacheable(Route route, String path) {
+        PathPattern[] patterns = cacheablePaths.get(route);
+        return patterns != null && PathPattern.matchesAny(patterns, path);
+    }
+
+    public String key(Route route, String userId, String path, String query) {
+        String scope = scope(route, userId);
+        Long generation = generations.get(scope);
+        StringBuilder key = new StringBuilder(scope.length() + path.length() + 32)
+                .append(scope).append('\n');
+        if (generation != null) {
+            key.append(generation);
+        }
+        key.append('\n').append(path);
+        if (query != null && !query.isEmpty()) {
+            key.append('?').append(query);
+        }
+        return key.toString();
+    }
+
+    /** Fresh entry for the key, or null; records a hit or miss for the route. */
+    public CachedResponse get(Route route, String key) {
+        CachedResponse entry = segment(key).get(key, System.currentTimeMillis());
+        RouteMeters meters = meters(route);
+        if (entry != null) {
+            meters.hits.increment();
+            meters.bytesSaved.increment(entry.getBody().length);
+        } else {
+            meters.misses.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Stores a 200 response unless its headers or size forbid it.
+     *
+     * @return the stored entry (with its ETag), or null when it was not cacheable
+     */
+    public CachedResponse put(Route route, String key, HttpHeaders headers, byte[] body) {
+        long ttlMs = ttlMs(route.getResponseCache(), headers);
+        byte[] content = body != null ? body : new byte[0];
+        if (ttlMs <= 0 || content.length > maxEntryBytes) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        CachedResponse entry = new CachedResponse(headers, content, etag(headers, content), now, now + ttlMs);
+        return segment(key).put(key, entry) ? entry : null;
+    }
+
+    /** Drops the caller's cached responses for the route after a write through it. */
+    public void invalidate(Route route, String userId) {
+        if (!cacheablePaths.containsKey(route)) {
+            return;
+        }
+        long ttlMs = route.getResponseCache().getTtlMs();
+        generations.put(scope(route, userId), System.nanoTime(), ttlMs);
+    }
+
+    public long bytes() {
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.bytes();
+        }
+        return total;
+    }
+
+    public int entries() {
+        int total = 0;
+        for (Segment segment : segments) {
+            total += segment.size();
+        }
+        return total;
+    }
+
+    /** True if an If-None-Match header value matches the ETag (weak comparison, as RFC 7232 asks). */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        String opaque = opaque(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.equals("*") || opaque(trimmed).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String scope(Route route, String userId) {
+        boolean perUser = route.getResponseCache().isPerUser();
+        return perUser && userId != null ? route.getUrl() + '\n' + userId : route.getUrl();
+    }
+
+    private long ttlMs(Route.ResponseCache config, HttpHeaders headers) {
+        if (headers.containsKey(HttpHeaders.SET_COOKIE) || "*".equals(headers.getFirst(HttpHeaders.VARY))) {
+            return 0;
+        }
+        long ttlMs = config.getTtlMs();
+        List<String> cacheControl = headers.get(HttpHeaders.CACHE_CONTROL);
+        if (cacheControl == null) {
+            return ttlMs;
+        }
+        for (String header : cacheControl) {
+            for (String directive : header.split(",")) {
+                String name = directive.trim().toLowerCase();
+                if (name.equals("no-store") || name.equals("no-cache")) {
+                    return 0;
+                }
+                if (name.equals("private") && !config.isPerUser()) {
+                    return 0;
+                }
+                if (name.startsWith("max-age=") || name.startsWith("s-maxage=")) {
+                    try {
+                        long seconds = Long.parseLong(name.substring(name.indexOf('=') + 1));
+                        ttlMs = Math.min(ttlMs, seconds * 1000);
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                }
+            }
+        }
+        return ttlMs;
+    }
+
+    private static String etag(HttpHeaders headers, byte[] body) {
+        String upstream = headers.getETag();
+        if (upstream != null && !upstream.startsWith("W/")) {
+            return upstream;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 27) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String opaque(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private Segment segment(String key) {
+        return segments[(key.hashCode() & 0x7fffffff) % SEGMENTS];
+    }
+
+    private RouteMeters meters(Route route) {
+        return routeMeters.computeIfAbsent(route.getUrl(), url -> new RouteMeters(url, meterRegistry));
+    }
+
+    /** A stored response; headers and body are shared between requests and must not be modified. */
+    public static final class CachedResponse {
+        private final HttpHeaders headers;
+        private final byte[] body;
+        private final String etag;
+        private final long storedAt;
+        private final long expiresAt;
+
+        CachedResponse(HttpHeaders headers, byte[] body, String etag, long storedAt, long expiresAt) {
+            this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+            this.body = body;
+            this.etag = etag;
+            this.storedAt = storedAt;
+            this.expiresAt = expiresAt;
+        }
+
+        public HttpHeaders getHeaders() { return headers; }
+
+        public byte[] getBody() { return body; }
+
+        public String getEtag() { return etag; }
+
+        /** Seconds since the entry was stored, for the Age header. */
+        public long getAgeSeconds() { return (System.currentTimeMillis() - storedAt) / 1000; }
+
+        /** Remaining freshness, for the Cache-Control sent to clients. */
+        public CacheControl getCacheControl() {
+            long remaining = Math.max(0, (expiresAt - System.currentTimeMillis()) / 1000);
+            return CacheControl.maxAge(Duration.ofSeconds(remaining)).cachePrivate();
+        }
+
+        int weight(String key) {
+            return body.length + key.length() * 2 + ENTRY_OVERHEAD_BYTES;
+        }
+    }
+
+    private final class Segment {
+        private final long maxBytes;
+        private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes;
+
+        Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized CachedResponse get(String key, long now) {
+            CachedResponse entry = entries.get(key);
+            if (entry != null && entry.expiresAt <= now) {
+                entries.remove(key);
+                bytes -= entry.weight(key);
+                return null;
+            }
+            return entry;
+        }
+
+        // False, keeping nothing for the key, when the entry alone is over this segment's share
+        synchronized boolean put(String key, CachedResponse entry) {
+            boolean fits = entry.weight(key) <= maxBytes;
+            CachedResponse previous = fits ? entries.put(key, entry) : entries.remove(key);
+            if (previous != null) {
+                bytes -= previous.weight(key);
+            }
+            if (!fits) {
+                return false;
+            }
+            bytes += entry.weight(key);
+
+            // Least recently used first; the entry just added is the most recent and fits
+            while (bytes > maxBytes) {
+                Iterator<Map.Entry<String, CachedResponse>> it = entries.entrySet().iterator();
+                Map.Entry<String, CachedResponse> eldest = it.next();
+                it.remove();
+                bytes -= eldest.getValue().weight(eldest.getKey());
+                evictions.incrementAndGet();
+            }
+            return true;
+        }
+
+        synchronized long bytes() {
+            return bytes;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    private static final class RouteMeters {
+        private final Counter hits;
+        private final Counter misses;
+        private final Counter bytesSaved;
+
+        RouteMeters(String route, MeterRegistry meterRegistry) {
+            hits = Counter.builder("gateway.cache.requests")
+                    .tag("route", route).tag("result", "hit")
+                    .register(meterRegistry);
+            misses = Counter.builder("gateway.cache.requests")
+                    .tag("route", route).tag("result", "miss")
+                    .register(meterRegistry);
+            bytesSaved = Counter.builder("gateway.cache.bytes.saved")
+                    .baseUnit("bytes")
+                    .description("Response bytes served from the cache instead of the upstream")
+                    .tag("route", route)
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.stockfellow.gateway.cache;
+
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.routing.PathPattern;
+import com.stockfellow.gateway.routing.RouteTable;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight for upstream GETs on routes with a {@link Route.Coalescing}.
+ *
+ * The first request for a key (route, path, query and, on per-user routes, the
+ * caller's user id) calls the upstream; identical requests arriving while that
+ * call is in flight wait for it and each get their own copy of its response.
+ * A waiter gives up after {@code max-wait-ms} and calls the upstream itself,
+ * so a slow leader cannot hold followers longer than that. If the leader's
+ * call fails, its waiters fail with it.
+ */
+@Component
+public class RequestCoalescer {
+
+    private final RouteTable routeTable;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.proxy.coalescing.max-wait-ms:2000}")
+    private long maxWaitMs;
+
+    private final Map<Route, PathPattern[]> coalescedPaths = new IdentityHashMap<>();
+    private final Map<String, CompletableFuture<ResponseEntity<byte[]>>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, RouteMeters> routeMeters = new ConcurrentHashMap<>();
+
+    public RequestCoalescer(RouteTable routeTable, MeterRegistry meterRegistry) {
+        this.routeTable = routeTable;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        for (Route route : routeTable.routes()) {
+            if (route.getCoalescing() != null) {
+                coalescedPaths.put(route, PathPattern.compileAll(route.getCoalescing().getPaths()));
+            }
+        }
+        Gauge.builder("gateway.coalescing.inflight", inFlight, Map::size).register(meterRegistry);
+    }
+
+    /** Whether GETs of this path on this route share in-flight upstream calls. */
+    public boolean isCoalesced(Route route, String path) {
+        PathPattern[] patterns = coalescedPaths.get(route);
+        return patterns != null && PathPattern.matchesAny(patterns, path);
+    }
+
+    public String key(Route route, String userId, String path, String query) {
+        StringBuilder key = new StringBuilder(route.getUrl()).append('\n');
+        if (route.getCoalescing().isPerUser() && userId != null) {
+            key.append(userId);
+        }
+        key.append('\n').append(path);
+        if (query != null && !query.isEmpty()) {
+            key.append('?').append(query);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Runs {@code upstreamCall} unless an identical call is already in flight,
+     * in which case that call's response is shared.
+     */
+    public ResponseEntity<byte[]> execute(Route route, String key, Supplier<ResponseEntity<byte[]>> upstreamCall) {
+        RouteMeters meters = meters(route);
+        CompletableFuture<ResponseEntity<byte[]>> call = new CompletableFuture<>();
+        CompletableFuture<ResponseEntity<byte[]>> leader = inFlight.putIfAbsent(key, call);
+
+        if (leader == null) {
+            meters.leaders.increment();
+            try {
+                ResponseEntity<byte[]> response = upstreamCall.get();
+                call.complete(response);
+                return response;
+            } catch (RuntimeException e) {
+                call.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, call);
+            }
+        }
+
+        try {
+            ResponseEntity<byte[]> shared = leader.get(maxWaitMs, TimeUnit.MILLISECONDS);
+            meters.coalesced.increment();
+            return copy(shared);
+        } catch (TimeoutException e) {
+            meters.timeouts.increment();
+            return upstreamCall.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a coalesced upstream call", e);
+        }
+    }
+
+    // Headers are copied so each waiter can adjust its own; the body is only ever read
+    private static ResponseEntity<byte[]> copy(ResponseEntity<byte[]> response) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(response.getHeaders());
+        return ResponseEntity.status(response.getStatusCode()).headers(headers).body(response.getBody());
+    }
+
+    private RouteMeters meters(Route route) {
+        return routeMeters.computeIfAbsent(route.getUrl(), url -> new RouteMeters(url, meterRegistry));
+    }
+
+    private static final class RouteMeters {
+        private final Counter leaders;
+        private final Counter coalesced;
+        private final Counter timeouts;
+
+        RouteMeters(String route, MeterRegistry meterRegistry) {
+            leaders = Counter.builder("gateway.coalescing.requests")
+                    .tag("route", route).tag("result", "upstream")
+                    .register(meterRegistry);
+            coalesced = Counter.builder("gateway.coalescing.requests")
+                    .tag("route", route).tag("result", "coalesced")
+                    .register(meterRegistry);
+            timeouts = Counter.builder("gateway.coalescing.requests")
+                    .tag("route", route).tag("result", "timeout")
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package com.stockfellow.gateway.compression;
+
+import com.stockfellow.gateway.model.Route;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * gzip for proxied responses, negotiated from the client's {@code Accept-Encoding}.
+ *
+ * A response is compressed when its content type is in {@code mime-types}, it
+ * is at least {@code min-size-bytes} long (or of unknown length), and the
+ * upstream has not already encoded it or asked for {@code no-transform}. The
+ * gateway asks upstreams for identity bodies, so every response is encoded in
+ * one place and cached bodies can be stored compressed.
+ *
+ * Per route, {@code gateway.compression.bytes} counts bytes before
+ * ({@code stage=in}) and after ({@code stage=out}) compression and
+ * {@code gateway.compression.time} the time spent in the deflater, which is
+ * CPU time, since it does no I/O.
+ */
+@Component
+public class ResponseCompressor {
+
+    public static final String GZIP = "gzip";
+
+    private final MeterRegistry meterRegistry;
+
+    // Off: responses pass through as the upstream sent them
+    @Value("${app.compression.enabled:true}")
+    private boolean enabled;
+
+    // Smaller bodies gain less than the gzip framing and CPU cost
+    @Value("${app.compression.min-size-bytes:1024}")
+    private int minSizeBytes;
+
+    @Value("${app.compression.mime-types:application/json,application/problem+json,text/plain,text/html,text/css,text/csv,application/javascript,application/xml,text/xml}")
+    private List<String> mimeTypes;
+
+    // Deflate level, 1 (fastest) to 9 (smallest)
+    @Value("${app.compression.level:6}")
+    private int level;
+
+    private final Set<String> compressibleTypes = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    private final Map<String, RouteMeters> routeMeters = new ConcurrentHashMap<>();
+
+    public ResponseCompressor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        for (String type : mimeTypes) {
+            compressibleTypes.add(type.trim());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Whether the client takes gzip: listed with a non-zero q, or covered by {@code *}. */
+    public boolean acceptsGzip(HttpServletRequest request) {
+        if (!enabled || "HEAD".equals(request.getMethod())) {
+            return false;
+        }
+        double gzipQuality = -1;
+        double anyQuality = -1;
+        Enumeration<String> headers = request.getHeaders(HttpHeaders.ACCEPT_ENCODING);
+        while (headers != null && headers.hasMoreElements()) {
+            for (String coding : headers.nextElement().split(",")) {
+                int semicolon = coding.indexOf(';');
+                String name = (semicolon >= 0 ? coding.substring(0, semicolon) : coding).trim();
+                double quality = semicolon >= 0 ? quality(coding.substring(semicolon + 1)) : 1;
+                if (name.equalsIgnoreCase(GZIP) || name.equalsIgnoreCase("x-gzip")) {
+                    gzipQuality = Math.max(gzipQuality, quality);
+                } else if (name.equals("*")) {
+                    anyQuality = Math.max(anyQuality, quality);
+                }
+            }
+        }
+        return gzipQuality >= 0 ? gzipQuality > 0 : anyQuality > 0;
+    }
+
+    /**
+     * Whether a response with these headers is worth compressing.
+     *
+     * @param length body length, or -1 to use the Content-Length header (unknown
+     *               lengths are compressed)
+     */
+    public boolean isCompressible(int status, HttpHeaders headers, long length) {
+        if (!enabled || status < 200 || status >= 300
+                || status == HttpStatus.NO_CONTENT.value() || status == HttpStatus.PARTIAL_CONTENT.value()) {
+            return false;
+        }
+        String encoding = headers.getFirst(HttpHeaders.CONTENT_ENCODING);
+        if (encoding != null && !encoding.equalsIgnoreCase("identity")) {
+            return false;
+        }
+        String cacheControl = headers.getFirst(HttpHeaders.CACHE_CONTROL);
+        if (cacheControl != null && cacheControl.toLowerCase(Locale.ROOT).contains("no-transform")) {
+            return false;
+        }
+        String contentType = headers.getFirst(HttpHeaders.CONTENT_TYPE);
+        if (contentType == null) {
+            return false;
+        }
+        int semicolon = contentType.indexOf(';');
+        if (!compressibleTypes.contains((semicolon >= 0 ? contentType.substring(0, semicolon) : contentType).trim())) {
+            return false;
+        }
+        long size = length >= 0 ? length : headers.getContentLength();
+        return size < 0 || size >= minSizeBytes;
+    }
+
+    /** gzip of a whole body. */
+    public byte[] compress(Route route, byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GzipOutputStream gzip = compressingStream(route, out)) {
+            gzip.write(body, 0, body.length);
+        } catch (IOException e) {
+            // A ByteArrayOutputStream does not throw
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /** The original body of a stored gzip one, for clients that do not take gzip. */
+    public static byte[] decompress(byte[] gzip) {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Stream that gzips into {@code out}. Close it after the last write, in a
+     * try-with-resources so the native deflater is freed even when a write
+     * fails; closing leaves {@code out} open.
+     */
+    public GzipOutputStream compressingStream(Route route, OutputStream out) {
+        return new GzipOutputStream(out, level, meters(route));
+    }
+
+    /**
+     * Marks headers as describing the gzip form: Content-Encoding, Vary, and
+     * Content-Length when known. A strong ETag is made weak, since it was given to
+     * the identity bytes.
+     *
+     * @param length compressed length, or -1 when it is not known up front
+     */
+    public static void markCompressed(HttpHeaders headers, long length) {
+        headers.set(HttpHeaders.CONTENT_ENCODING, GZIP);
+        addVary(headers);
+        if (length >= 0) {
+            headers.setContentLength(length);
+        } else {
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+        }
+        String etag = headers.getETag();
+        if (etag != null && !etag.startsWith("W/")) {
+            headers.setETag("W/" + etag);
+        }
+    }
+
+    /** Whether headers describe a gzip body, as for compressed cache entries. */
+    public static boolean isCompressed(HttpHeaders headers) {
+        return GZIP.equalsIgnoreCase(headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    // Responses that could have been compressed differ by Accept-Encoding, whichever form was sent
+    public static void addVary(HttpHeaders headers) {
+        for (String vary : headers.getVary()) {
+            if (vary.equalsIgnoreCase(HttpHeaders.ACCEPT_ENCODING) || vary.equals("*")) {
+                return;
+            }
+        }
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    }
+
+    private static double quality(String parameters) {
+        for (String parameter : parameters.split(";")) {
+            String trimmed = parameter.trim();
+            if (trimmed.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(trimmed.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private RouteMeters meters(Route route) {
+        String name = route != null ? route.getUrl() : "none";
+        return routeMeters.computeIfAbsent(name, url -> new RouteMeters(url, meterRegistry));
+    }
+
+    /**
+     * gzip framing around a raw {@link Deflater}, so the time spent deflating
+     * can be told apart from the time spent writing to the client.
+     */
+    public static final class GzipOutputStream extends OutputStream {
+        // Magic, deflate, no flags, no mtime, no extra flags, unknown OS
+        private static final byte[] HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+        private final OutputStream out;
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+        private final byte[] buffer = new byte[8192];
+        private final RouteMeters meters;
+        private boolean started;
+        private boolean finished;
+        private boolean ended;
+        private long bytesIn;
+        private long bytesOut;
+        private long deflateNanos;
+
+        GzipOutputStream(OutputStream out, int level, RouteMeters meters) {
+            this.out = out;
+            this.deflater = new Deflater(level, true);
+            this.meters = meters;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return;
+            }
+            if (finished) {
+                throw new IOException("gzip stream already finished");
+            }
+            start();
+            crc.update(bytes, offset, length);
+            bytesIn += length;
+            deflater.setInput(bytes, offset, length);
+            while (!deflater.needsInput()) {
+                deflate(Deflater.NO_FLUSH);
+            }
+        }
+
+        /** Sends what has been compressed so far, so slow streams still reach the client as they go. */
+        @Override
+        public void flush() throws IOException {
+            if (started && !finished) {
+                while (deflate(Deflater.SYNC_FLUSH) == buffer.length) {
+                    // The buffer filled up, so there may be more
+                }
+            }
+            out.flush();
+        }
+
+        /** Writes the remaining data and the gzip trailer; the underlying stream stays open. */
+        public void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            try {
+                start();
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflate(Deflater.NO_FLUSH);
+                }
+            } finally {
+                end();
+            }
+
+            byte[] trailer = new byte[8];
+            writeIntLe(trailer, 0, crc.getValue());
+            writeIntLe(trailer, 4, bytesIn);
+            out.write(trailer);
+            bytesOut += trailer.length;
+            meters.record(bytesIn, bytesOut, deflateNanos);
+        }
+
+        /** Finishes the stream, and frees the deflater even when that fails. */
+        @Override
+        public void close() throws IOException {
+            try {
+                finish();
+            } finally {
+                end();
+            }
+        }
+
+        private void end() {
+            if (!ended) {
+                ended = true;
+                deflater.end();
+            }
+        }
+
+        private void start() throws IOException {
+            if (!started) {
+                started = true;
+                out.write(HEADER);
+                bytesOut += HEADER.length;
+            }
+        }
+
+        private int deflate(int flush) throws IOException {
+            long start = System.nanoTime();
+            int length = deflater.deflate(buffer, 0, buffer.length, flush);
+            deflateNanos += System.nanoTime() - start;
+            if (length > 0) {
+                out.write(buffer, 0, length);
+                bytesOut += length;
+            }
+            return length;
+        }
+
+        private static void writeIntLe(byte[] target, int offset, long value) {
+            target[offset] = (byte) value;
+            target[offset + 1] = (byte) (value >> 8);
+            target[offset + 2] = (byte) (value >> 16);
+            target[offset + 3] = (byte) (value >> 24);
+        }
+    }
+
+    private static final class RouteMeters {
+        private final Counter bytesIn;
+        private final Counter bytesOut;
+        private final Timer time;
+
+        RouteMeters(String route, MeterRegistry meterRegistry) {
+            bytesIn = Counter.builder("gateway.compression.bytes")
+                    .baseUnit("bytes")
+                    .tag("route", route).tag("stage", "in")
+                    .register(meterRegistry);
+            bytesOut = Counter.builder("gateway.compression.bytes")
+                    .baseUnit("bytes")
+                    .tag("route", route).tag("stage", "out")
+                    .register(meterRegistry);
+            time = Timer.builder("gateway.compression.time")
+                    .description("Time spent deflating response bodies")
+                    .tag("route", route)
+                    .register(meterRegistry);
+        }
+
+        void record(long in, long out, long nanos) {
+            bytesIn.increment(in);
+            bytesOut.increment(out);
+            time.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
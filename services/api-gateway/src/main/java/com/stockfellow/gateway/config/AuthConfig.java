@@ -2,6 +2,7 @@ package com.stockfellow.gateway.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.stockfellow.gateway.filter.AuthFilter;
+import com.stockfellow.gateway.routing.RouteTable;
 import com.stockfellow.gateway.service.TokenValidationService;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
@@ -11,10 +12,13 @@ import org.springframework.context.annotation.Configuration;
 public class AuthConfig {
 
     private final TokenValidationService tokenValidationService;
+    private final RouteTable routeTable;
     private final ObjectMapper objectMapper;
 
-    public AuthConfig(TokenValidationService tokenValidationService, ObjectMapper objectMapper) {
+    public AuthConfig(TokenValidationService tokenValidationService, RouteTable routeTable,
+            ObjectMapper objectMapper) {
         this.tokenValidationService = tokenValidationService;
+        this.routeTable = routeTable;
         this.objectMapper = objectMapper;
     }
 
@@ -22,7 +26,7 @@ public class AuthConfig {
     public FilterRegistrationBean<AuthFilter> authFilter() {
         FilterRegistrationBean<AuthFilter> registrationBean = new FilterRegistrationBean<>();
 
-        registrationBean.setFilter(new AuthFilter(tokenValidationService, objectMapper));
+        registrationBean.setFilter(new AuthFilter(tokenValidationService, routeTable, objectMapper));
         registrationBean.addUrlPatterns("/*");
         registrationBean.setOrder(1);
         registrationBean.setName("authFilter");
@@ -1,6 +1,8 @@
 package com.stockfellow.gateway.config;
 
 import com.stockfellow.gateway.filter.LoggingFilter;
+import com.stockfellow.gateway.logging.AsyncAccessLog;
+import com.stockfellow.gateway.metrics.RequestMetrics;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -8,11 +10,19 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class LoggingConfig {
     
+    private final RequestMetrics requestMetrics;
+    private final AsyncAccessLog accessLog;
+    
+    public LoggingConfig(RequestMetrics requestMetrics, AsyncAccessLog accessLog) {
+        this.requestMetrics = requestMetrics;
+        this.accessLog = accessLog;
+    }
+    
     @Bean
     public FilterRegistrationBean<LoggingFilter> loggingFilter() {
         FilterRegistrationBean<LoggingFilter> registrationBean = new FilterRegistrationBean<>();
         
-        registrationBean.setFilter(new LoggingFilter());
+        registrationBean.setFilter(new LoggingFilter(requestMetrics, accessLog.isEnabled() ? accessLog : null));
         registrationBean.addUrlPatterns("/*"); // Apply to all routes (like morgan)
         registrationBean.setOrder(0); // Execute first, before rate limiting
         registrationBean.setName("loggingFilter");
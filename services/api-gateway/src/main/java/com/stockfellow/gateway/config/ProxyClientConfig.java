@@ -0,0 +1,149 @@
+package com.stockfellow.gateway.config;
+
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.routing.RouteTable;
+import com.stockfellow.gateway.util.InstrumentedConnectionManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP client used by ProxyController: one pool of keep-alive connections per
+ * upstream, sized and timed by the {@link Route.ConnectionPool} next to each
+ * route's proxy target (or the app.proxy.pool defaults).
+ */
+@Configuration
+public class ProxyClientConfig {
+
+    @Value("${app.proxy.pool.max-total:200}")
+    private int maxTotal;
+
+    @Value("${app.proxy.pool.max-per-upstream:50}")
+    private int defaultMaxPerUpstream;
+
+    @Value("${app.proxy.pool.connect-timeout-ms:2000}")
+    private int defaultConnectTimeoutMs;
+
+    @Value("${app.proxy.pool.read-timeout-ms:30000}")
+    private int defaultReadTimeoutMs;
+
+    // How long a request waits for a free connection before failing
+    @Value("${app.proxy.pool.lease-timeout-ms:1000}")
+    private int leaseTimeoutMs;
+
+    @Value("${app.proxy.pool.idle-timeout-ms:30000}")
+    private long idleTimeoutMs;
+
+    // Connections idle for longer are checked for a server-side close before reuse
+    @Value("${app.proxy.pool.validate-after-inactivity-ms:2000}")
+    private int validateAfterInactivityMs;
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient proxyHttpClient(RouteTable routeTable, MeterRegistry meterRegistry) {
+        Map<HttpRoute, Integer> upstreams = new LinkedHashMap<>();
+        for (Route route : routeTable.routes()) {
+            Route.ConnectionPool pool = route.getProxy().getConnectionPool();
+            int maxConnections = pool != null ? pool.getMaxConnections() : defaultMaxPerUpstream;
+            // Routes sharing an upstream share its pool, sized for the largest of them
+            upstreams.merge(httpRoute(route.getProxy().getTarget()), maxConnections, Math::max);
+        }
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(defaultMaxPerUpstream);
+        connectionManager.setValidateAfterInactivity(validateAfterInactivityMs);
+        upstreams.forEach(connectionManager::setMaxPerRoute);
+
+        return HttpClients.custom()
+                .setConnectionManager(new InstrumentedConnectionManager(connectionManager, meterRegistry,
+                        upstreams.keySet()))
+                .setDefaultRequestConfig(requestConfig(defaultConnectTimeoutMs, defaultReadTimeoutMs))
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeoutMs, TimeUnit.MILLISECONDS)
+                // A proxy passes bodies, redirects and cookies through untouched
+                .disableContentCompression()
+                .disableRedirectHandling()
+                .disableCookieManagement()
+                .disableAuthCaching()
+                .build();
+    }
+
+    @Bean
+    public RestTemplate proxyRestTemplate(CloseableHttpClient proxyHttpClient, RouteTable routeTable) {
+        Map<String, RequestConfig> requestConfigs = new HashMap<>();
+        for (Route route : routeTable.routes()) {
+            Route.ConnectionPool pool = route.getProxy().getConnectionPool();
+            if (pool != null) {
+                requestConfigs.putIfAbsent(httpRoute(route.getProxy().getTarget()).getTargetHost().toHostString(),
+                        requestConfig(pool.getConnectTimeoutMs(), pool.getReadTimeoutMs()));
+            }
+        }
+
+        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(proxyHttpClient) {
+            @Override
+            protected HttpContext createHttpContext(HttpMethod httpMethod, URI uri) {
+                RequestConfig requestConfig = requestConfigs.get(uri.getHost() + ":" + port(uri));
+                if (requestConfig == null) {
+                    return null;
+                }
+                HttpClientContext context = HttpClientContext.create();
+                context.setRequestConfig(requestConfig);
+                return context;
+            }
+        };
+        // Stream request bodies instead of buffering them
+        requestFactory.setBufferRequestBody(false);
+
+        RestTemplate restTemplate = new RestTemplate(requestFactory);
+        // Hand every upstream status back to the client as-is
+        restTemplate.setErrorHandler(new DefaultResponseErrorHandler() {
+            @Override
+            public boolean hasError(ClientHttpResponse response) {
+                return false;
+            }
+        });
+        return restTemplate;
+    }
+
+    private RequestConfig requestConfig(int connectTimeoutMs, int readTimeoutMs) {
+        return RequestConfig.custom()
+                .setConnectionRequestTimeout(leaseTimeoutMs)
+                .setConnectTimeout(connectTimeoutMs)
+                .setSocketTimeout(readTimeoutMs)
+                .build();
+    }
+
+    // Same shape as the route HttpClient plans for a direct (no proxy) request
+    private static HttpRoute httpRoute(String target) {
+        URI uri = URI.create(target);
+        HttpHost host = new HttpHost(uri.getHost(), port(uri), uri.getScheme());
+        return new HttpRoute(host, null, "https".equalsIgnoreCase(uri.getScheme()));
+    }
+
+    private static int port(URI uri) {
+        if (uri.getPort() > 0) {
+            return uri.getPort();
+        }
+        return "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+    }
+}
@@ -1,25 +1,38 @@
 package com.stockfellow.gateway.config;
 
 import com.stockfellow.gateway.filter.RateLimitFilter;
-import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.ratelimit.LocalRateLimiter;
+import com.stockfellow.gateway.ratelimit.RateLimiter;
+import com.stockfellow.gateway.ratelimit.RedisRateLimiter;
+import com.stockfellow.gateway.routing.RouteTable;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.util.List;
-
 @Configuration
 public class RateLimitConfig {
     
     @Autowired
-    private List<Route> routes;
+    private RouteTable routeTable;
+    
+    @Autowired
+    private RedisRateLimiter redisRateLimiter;
+    
+    @Autowired
+    private LocalRateLimiter localRateLimiter;
+    
+    // redis: one limit shared by all instances; local: per-instance limits
+    @Value("${app.rate-limit.mode:redis}")
+    private String mode;
     
     @Bean
     public FilterRegistrationBean<RateLimitFilter> rateLimitFilter() {
         FilterRegistrationBean<RateLimitFilter> registrationBean = new FilterRegistrationBean<>();
         
-        registrationBean.setFilter(new RateLimitFilter(routes));
+        RateLimiter rateLimiter = "local".equalsIgnoreCase(mode) ? localRateLimiter : redisRateLimiter;
+        registrationBean.setFilter(new RateLimitFilter(routeTable, rateLimiter));
         registrationBean.addUrlPatterns("/api/*"); // Apply to all API routes
         registrationBean.setOrder(2); // Execute after auth filter
         registrationBean.setName("rateLimitFilter");
@@ -1,6 +1,8 @@
 package com.stockfellow.gateway.config;
 
 import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.resilience.RequestPriorities;
+import com.stockfellow.gateway.routing.RouteTable;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -29,55 +31,121 @@ public class RouteConfig {
     @Value("${services.mfa-service.url}")
     private String mfaServiceUrl;
 
+    // Endpoints (and everything below them) that don't require authentication
+    public static final List<String> PUBLIC_ENDPOINTS = List.of(
+        "/api/auth/login",
+        "/api/auth/test/login",
+        "/api/auth/verify-mfa",
+        "/api/auth/register",
+        "/api/auth/refresh",
+        "/auth/login",
+        "/auth/test/login",
+        "/auth/verify-mfa",
+        "/auth/register",
+        "/auth/refresh",
+        "/api/health",
+        "/actuator/health",
+        "/actuator/info",
+        "/health",
+        "/favicon.ico",
+        "/error");
+
+    // Shed last when an upstream is at its concurrency limit: sign-in and registration flows.
+    // Health checks and /api/auth are answered by the gateway itself and are never shed
+    public static final List<String> CRITICAL_ENDPOINTS = List.of(
+        "/api/users/register",
+        "/api/mfa/**");
+
+    // Shed first: heavy analysis and reporting that clients can retry later
+    public static final List<String> BULK_ENDPOINTS = List.of(
+        "/api/users/affordability/analyze",
+        "/api/users/affordability/analyze-pdf",
+        "/api/users/affordability/stats",
+        "/api/users/stats",
+        "/api/users/admin/analytics");
+
+    @Bean
+    public RequestPriorities requestPriorities() {
+        return new RequestPriorities(CRITICAL_ENDPOINTS, BULK_ENDPOINTS);
+    }
+
+    @Bean
+    public RouteTable routeTable() {
+        return RouteTable.compile(routes(), PUBLIC_ENDPOINTS);
+    }
+
     @Bean
     public List<Route> routes() {
+        // Connection pool per upstream: max connections, connect timeout ms, read timeout ms
+        Route.ConnectionPool userServicePool = new Route.ConnectionPool(50, 2000, 30000);
+        Route.ConnectionPool groupServicePool = new Route.ConnectionPool(50, 2000, 30000);
+        Route.ConnectionPool transactionServicePool = new Route.ConnectionPool(50, 2000, 60000); // waits on Paystack
+        Route.ConnectionPool notificationServicePool = new Route.ConnectionPool(20, 2000, 30000);
+        Route.ConnectionPool mfaServicePool = new Route.ConnectionPool(20, 2000, 30000);
+
+        // Bulkhead and breaker per upstream: max in flight, failure rate % that opens the breaker, slow call ms.
+        // Caps stay under Tomcat's 200 workers so one stuck upstream cannot hold them all
+        Route.Isolation userServiceIsolation = new Route.Isolation(40, 50, 20000); // PDF analysis is slow
+        Route.Isolation groupServiceIsolation = new Route.Isolation(40, 50, 5000);
+        Route.Isolation transactionServiceIsolation = new Route.Isolation(40, 50, 30000); // waits on Paystack
+        Route.Isolation notificationServiceIsolation = new Route.Isolation(20, 50, 5000);
+        Route.Isolation mfaServiceIsolation = new Route.Isolation(20, 50, 5000);
+
         return Arrays.asList(
                 // User service route
                 new Route(
                         "/api/users/register", // Registration endpoint (internal use by gateway)
                         false, // No auth required as it's called internally
                         new Route.RateLimit(15 * 60 * 1000L, 50), // More restrictive for registration
-                        new Route.Proxy(userServiceUrl, true)),
+                        new Route.Proxy(userServiceUrl, true, userServicePool, userServiceIsolation)),
 
                 new Route(
                         "/api/users/**",
                         true,
                         new Route.RateLimit(15 * 60 * 1000L, 100),
-                        new Route.Proxy(userServiceUrl, true)),
+                        new Route.Proxy(userServiceUrl, true, userServicePool, userServiceIsolation),
+                        new Route.ResponseCache(30 * 1000L, true, "/api/users/profile")),
 
                 // Group service route
                 new Route(
                         "/api/groups/**",
                         true,
                         new Route.RateLimit(15 * 60 * 1000L, 100),
-                        new Route.Proxy(groupServiceUrl, true)),
+                        new Route.Proxy(groupServiceUrl, true, groupServicePool, groupServiceIsolation),
+                        // Polled by the app; per user, since views depend on membership
+                        new Route.ResponseCache(5 * 1000L, true, "/api/groups/search", "/api/groups/*/view"),
+                        new Route.Coalescing(true, "/api/groups/search", "/api/groups/*/view"),
+                        // Reads only: resent after the p95 wait, for at most 5% of them
+                        new Route.Hedging(95, 5, "/api/groups/search", "/api/groups/*/view", "/api/groups/user")),
 
                 // Transaction service route (requires auth)
                 new Route(
                         "/api/transaction/**",
                         true,
                         new Route.RateLimit(15 * 60 * 1000L, 100),
-                        new Route.Proxy(transactionServiceUrl, true)),
+                        new Route.Proxy(transactionServiceUrl, true, transactionServicePool, transactionServiceIsolation)),
 
                 // Notification service route
                 new Route(
                         "/api/notifications/**",
                         true,
                         new Route.RateLimit(15 * 60 * 1000L, 100),
-                        new Route.Proxy(notificationServiceUrl, true)),
+                        new Route.Proxy(notificationServiceUrl, true, notificationServicePool, notificationServiceIsolation),
+                        new Route.ResponseCache(5 * 1000L, true, "/api/notifications/user/count"),
+                        new Route.Coalescing(true, "/api/notifications/user/count")),
 
                 // MFA routes
                 new Route(
                         "/api/mfa/**",
                         false,
                         new Route.RateLimit(15 * 60 * 1000L, 100),
-                        new Route.Proxy(mfaServiceUrl, true)),
+                        new Route.Proxy(mfaServiceUrl, true, mfaServicePool, mfaServiceIsolation)),
 
                 // Default api route
                 new Route(
                         "/api",
                         false,
                         new Route.RateLimit(15 * 60 * 1000L, 100),
-                        new Route.Proxy(userServiceUrl, true)));
+                        new Route.Proxy(userServiceUrl, true, userServicePool, userServiceIsolation)));
     }
 }
\ No newline at end of file
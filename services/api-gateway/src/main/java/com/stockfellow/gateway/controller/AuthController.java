@@ -1,6 +1,9 @@
 package com.stockfellow.gateway.controller;
 
+import com.stockfellow.gateway.registration.RegistrationJob;
+import com.stockfellow.gateway.registration.RegistrationPipeline;
 import com.stockfellow.gateway.service.KeycloakService;
+import com.stockfellow.gateway.service.TokenRefreshCoalescer;
 import com.stockfellow.gateway.service.TokenValidationService;
 import com.stockfellow.gateway.service.UserServiceClient;
 import com.stockfellow.gateway.service.UserServiceClient;
@@ -9,16 +12,18 @@ import com.stockfellow.gateway.model.RefreshTokenRequest;
 import com.stockfellow.gateway.service.UserServiceClient;
 import org.springframework.http.MediaType;
 import com.stockfellow.gateway.model.TokenValidationResult;
+import com.stockfellow.gateway.util.SizeLimitedInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.web.multipart.MultipartFile;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.apache.commons.codec.digest.DigestUtils;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.time.Instant;
@@ -38,6 +43,8 @@ public class AuthController {
     private final TokenValidationService tokenValidationService;
     private final RedisTemplate<String, String> redisTemplate;
     private final UserServiceClient userServiceClient;
+    private final TokenRefreshCoalescer tokenRefreshCoalescer;
+    private final RegistrationPipeline registrationPipeline;
 
     @Value("${keycloak.auth-server-url}")
     private String keycloakServerUrl;
@@ -48,12 +55,19 @@ public class AuthController {
     @Value("${app.keycloak.frontend.client-id}")
     private String frontendClientId;
 
+    // The user service's own upload limit; larger documents are cut off here before reaching it
+    @Value("${app.auth.verify-id.max-request-bytes:10485760}")
+    private long verifyIdMaxRequestBytes;
+
     public AuthController(KeycloakService keycloakService, TokenValidationService tokenValidationService, RedisTemplate<String, 
-    String> redisTemplate, UserServiceClient userServiceClient) {
+    String> redisTemplate, UserServiceClient userServiceClient, TokenRefreshCoalescer tokenRefreshCoalescer,
+    RegistrationPipeline registrationPipeline) {
         this.keycloakService = keycloakService;
         this.tokenValidationService = tokenValidationService;
         this.redisTemplate = redisTemplate;
         this.userServiceClient = userServiceClient;
+        this.tokenRefreshCoalescer = tokenRefreshCoalescer;
+        this.registrationPipeline = registrationPipeline;
     }
 
     // Redirects to KC login page where there is forgot password and aditional
@@ -182,37 +196,27 @@ public class AuthController {
 
             logger.info("Keycloak registration successful for user: {} with ID: {}", registerRequest.getUsername(), keycloakUserId);
 
-            // // Step 2: Forward user data to User Service
-            // try {
-            //     Map<String, Object> userServiceResponse = userServiceClient.createUser(
-            //         keycloakUserId,
-            //         registerRequest.getUsername(),
-            //         registerRequest.getEmail(),
-            //         registerRequest.getFirstName(),
-            //         registerRequest.getLastName()
-            //     );
-
-            //     if (userServiceResponse.containsKey("error")) {
-            //         logger.error("User service registration failed for user: {} - {}", 
-            //                    registerRequest.getUsername(), userServiceResponse.get("error"));
-                    
-            //         // TODO: Consider rolling back Keycloak user creation here
-            //         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-            //                 .body(Map.of(
-            //                     "error", "Registration partially failed",
-            //                     "message", "User created in identity provider but database creation failed",
-            //                     "details", userServiceResponse.get("error")
-            //                 ));
-            //     }
+            // Step 2: user-service record, transaction sync and welcome notification run after
+            // responding; the client can poll the returned status URL
+            RegistrationJob provisioning;
+            try {
+                provisioning = registrationPipeline.submit(keycloakUserId, registerRequest.getUsername(),
+                        registerRequest.getEmail(), registerRequest.getFirstName(), registerRequest.getLastName());
+            } catch (Exception e) {
+                logger.error("Could not queue provisioning for user: {}", registerRequest.getUsername(), e);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(Map.of(
+                            "error", "Registration partially failed",
+                            "message", "User created in identity provider but provisioning could not be queued"
+                        ));
+            }
 
-            
-            // } catch (Exception e) {
-            //     logger.error("Error creating user record in user service for user: {}", registerRequest.getUsername(), e);
-            // }
-          
+            Map<String, Object> response = new HashMap<>(registrationResponse);
+            response.put("registrationId", provisioning.getRegistrationId());
+            response.put("provisioningStatusUrl", "/api/auth/register/" + provisioning.getRegistrationId());
 
             System.out.println("User registered successfully: " + registerRequest.getUsername());
-            return ResponseEntity.ok(registrationResponse);
+            return ResponseEntity.ok(response);
 
 
         } catch (Exception e) {
@@ -225,6 +229,28 @@ public class AuthController {
         }
     }
 
+    // Progress of the provisioning started by a registration, on any instance
+    @GetMapping("/register/{registrationId}")
+    public ResponseEntity<?> registrationStatus(@PathVariable String registrationId) {
+        Map<String, Object> status;
+        try {
+            status = registrationPipeline.status(registrationId);
+        } catch (RegistrationPipeline.StatusUnavailableException e) {
+            logger.warn(e.getMessage(), e);
+            // Not the same as unknown: the registration may well exist, so the client should ask again
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .body(Map.of("error", "registration_status_unavailable",
+                            "message", "Registration status cannot be looked up right now"));
+        }
+        if (status == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", "registration_not_found",
+                            "message", "No registration with this ID is being tracked"));
+        }
+        return ResponseEntity.ok(status);
+    }
+
     @PostMapping("/refresh")
     public ResponseEntity<?> refreshToken(@RequestBody RefreshTokenRequest request) {
         try {
@@ -234,7 +260,8 @@ public class AuthController {
                                 "message", "Refresh token is required"));
             }
 
-            RefreshTokenResponse refreshResponse = keycloakService.refreshToken(request.getRefreshToken());
+            // Duplicates of this refresh, here or on another instance, get the same new tokens
+            RefreshTokenResponse refreshResponse = tokenRefreshCoalescer.refresh(request.getRefreshToken());
 
             if (refreshResponse.isSuccess()) {
                 // If there's an original request to retry, include it in response
@@ -308,11 +335,12 @@ public class AuthController {
     }
 
     /**
-     * Endpoint to handle ID verification - forwards the PDF to user service
+     * Endpoint to handle ID verification - streams the multipart upload to the
+     * user service as it arrives, refusing it once it passes the size limit
      */
     @PostMapping(value = "/verify-id", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<?> verifyUserID(
-            @RequestParam("file") MultipartFile file,
+            HttpServletRequest request,
             @RequestHeader("Authorization") String authHeader) {
         
         try {
@@ -328,10 +356,18 @@ public class AuthController {
             String username = validation.getTokenInfo().getUsername();
             
             logger.info("ID verification request from user: {} (ID: {})", username, userId);
+
+            // Declared too large: refuse before forwarding anything
+            long contentLength = request.getContentLengthLong();
+            if (contentLength > verifyIdMaxRequestBytes) {
+                return uploadTooLarge();
+            }
             
-            // Forward the PDF to user service for processing
+            // Forward the upload to user service for processing
             try {
-                Map<String, Object> verificationResult = userServiceClient.verifyUserID(file, userId, authHeader);
+                Map<String, Object> verificationResult = userServiceClient.verifyUserID(
+                        new SizeLimitedInputStream(request.getInputStream(), verifyIdMaxRequestBytes),
+                        request.getContentType(), contentLength, userId, authHeader);
                 
                 if (verificationResult.containsKey("error")) {
                     return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(verificationResult);
@@ -340,6 +376,9 @@ public class AuthController {
                 logger.info("ID verification completed successfully for user: {}", username);
                 return ResponseEntity.ok(verificationResult);
                 
+            } catch (SizeLimitedInputStream.LimitExceededException e) {
+                logger.warn("ID verification upload from user {} cut off at {} bytes", username, e.getMaxBytes());
+                return uploadTooLarge();
             } catch (Exception e) {
                 logger.error("Error communicating with user service for ID verification", e);
                 return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
@@ -359,6 +398,14 @@ public class AuthController {
         }
     }
 
+    private ResponseEntity<?> uploadTooLarge() {
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+            .body(Map.of(
+                "error", "file_too_large",
+                "message", "Upload exceeds " + verifyIdMaxRequestBytes + " bytes"
+            ));
+    }
+
     private void blacklistToken(String token) {
         // Add to Redis blacklist with expiration
         String key = "blacklisted_token:" + DigestUtils.sha256Hex(token);
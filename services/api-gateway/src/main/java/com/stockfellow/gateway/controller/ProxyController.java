@@ -1,24 +1,46 @@
 package com.stockfellow.gateway.controller;
 
-import com.stockfellow.gateway.config.RouteConfig;
+import com.stockfellow.gateway.cache.HttpResponseCache;
+import com.stockfellow.gateway.cache.RequestCoalescer;
+import com.stockfellow.gateway.compression.ResponseCompressor;
+import com.stockfellow.gateway.metrics.RequestTimings;
 import com.stockfellow.gateway.model.Route;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stockfellow.gateway.model.TokenInfo;
+import com.stockfellow.gateway.resilience.RequestHedger;
+import com.stockfellow.gateway.resilience.UpstreamGuard;
+import com.stockfellow.gateway.resilience.UpstreamRejectedException;
+import com.stockfellow.gateway.routing.RouteMatch;
+import com.stockfellow.gateway.routing.RouteTable;
+import com.stockfellow.gateway.service.AsyncProxyClient;
 
+import org.apache.catalina.connector.ClientAbortException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.util.Enumeration;
-import java.util.List;
-import java.util.Optional;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.Base64;
 
 @RestController
 @RequestMapping("/api")
@@ -26,107 +48,607 @@ public class ProxyController {
 
     private static final Logger logger = LoggerFactory.getLogger(ProxyController.class);
 
+    private static final String GATEWAY_ERROR_BODY =
+        "{\"error\":\"Gateway error\",\"message\":\"Request forwarding failed\"}";
+    
+    private static final String SERVICE_UNAVAILABLE_BODY =
+        "{\"error\":\"Service unavailable\",\"message\":\"The service is overloaded or failing, retry later\"}";
+
+    // Hop-by-hop headers, plus identity headers only the gateway may set
+    private static final Set<String> NOT_FORWARDED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    static {
+        NOT_FORWARDED_HEADERS.addAll(Set.of("host", "content-length", "connection", "keep-alive", "upgrade",
+            "proxy-connection", "proxy-authenticate", "proxy-authorization", "te", "trailers",
+            "transfer-encoding", "x-user-id", "x-user-name", "x-username", "x-user-roles"));
+    }
+
     private final RestTemplate restTemplate;
-    private final List<Route> routes;
+    private final RouteTable routeTable;
+    private final AsyncProxyClient asyncProxyClient;
+    private final HttpResponseCache responseCache;
+    private final RequestCoalescer requestCoalescer;
+    private final UpstreamGuard upstreamGuard;
+    private final RequestHedger requestHedger;
+    private final ResponseCompressor responseCompressor;
+
+    // "streaming" pipes bodies through; "buffered" reads each body fully into memory first
+    @Value("${app.proxy.mode:streaming}")
+    private String proxyMode;
+
+    // "blocking" holds the request thread until the upstream answers; "async" releases it
+    @Value("${app.proxy.engine:blocking}")
+    private String proxyEngine;
 
-    public ProxyController(RestTemplate restTemplate, RouteConfig routeConfig){
+    // Adds a Server-Timing header with the auth, rate-limit and upstream times to proxied responses
+    @Value("${app.metrics.server-timing.enabled:false}")
+    private boolean serverTimingEnabled;
+
+    public ProxyController(@Qualifier("proxyRestTemplate") RestTemplate restTemplate, RouteTable routeTable,
+            AsyncProxyClient asyncProxyClient, HttpResponseCache responseCache, RequestCoalescer requestCoalescer,
+            UpstreamGuard upstreamGuard, RequestHedger requestHedger, ResponseCompressor responseCompressor){
         this.restTemplate = restTemplate;
-        this.routes = routeConfig.routes();
+        this.routeTable = routeTable;
+        this.asyncProxyClient = asyncProxyClient;
+        this.responseCache = responseCache;
+        this.requestCoalescer = requestCoalescer;
+        this.upstreamGuard = upstreamGuard;
+        this.requestHedger = requestHedger;
+        this.responseCompressor = responseCompressor;
     }
     
     @GetMapping("/**")
-    public ResponseEntity<?> handleGetRequest(HttpServletRequest request) {
-        return proxyRequest(request, HttpMethod.GET, null);
+    public ResponseEntity<?> handleGetRequest(HttpServletRequest request, HttpServletResponse response) {
+        return proxyRequest(request, response, HttpMethod.GET);
     }
     
     // Handle all POST requests
     @PostMapping("/**")
-    public ResponseEntity<?> handlePostRequest(HttpServletRequest request, @RequestBody(required = false) Object body) {
-        return proxyRequest(request, HttpMethod.POST, body);
+    public ResponseEntity<?> handlePostRequest(HttpServletRequest request, HttpServletResponse response) {
+        return proxyRequest(request, response, HttpMethod.POST);
     }
     
     // Handle all PUT requests
     @PutMapping("/**")
-    public ResponseEntity<?> handlePutRequest(HttpServletRequest request, @RequestBody(required = false) Object body) {
-        return proxyRequest(request, HttpMethod.PUT, body);
+    public ResponseEntity<?> handlePutRequest(HttpServletRequest request, HttpServletResponse response) {
+        return proxyRequest(request, response, HttpMethod.PUT);
     }
     
     // Handle all DELETE requests
     @DeleteMapping("/**")
-    public ResponseEntity<?> handleDeleteRequest(HttpServletRequest request) {
-        return proxyRequest(request, HttpMethod.DELETE, null);
+    public ResponseEntity<?> handleDeleteRequest(HttpServletRequest request, HttpServletResponse response) {
+        return proxyRequest(request, response, HttpMethod.DELETE);
     }
     
     // Handle all PATCH requests
     @PatchMapping("/**")
-    public ResponseEntity<?> handlePatchRequest(HttpServletRequest request, @RequestBody(required = false) Object body) {
-        return proxyRequest(request, HttpMethod.PATCH, body);
+    public ResponseEntity<?> handlePatchRequest(HttpServletRequest request, HttpServletResponse response) {
+        return proxyRequest(request, response, HttpMethod.PATCH);
     }
     
-    private ResponseEntity<?> proxyRequest(HttpServletRequest request, HttpMethod method, Object body) {
+    private ResponseEntity<?> proxyRequest(HttpServletRequest request, HttpServletResponse response, HttpMethod method) {
+        Route route = null;
         try {
             String requestPath = request.getRequestURI();
             logger.debug("Proxying {} request to: {}", method, requestPath);
             
-            Optional<Route> matchingRoute = findMatchingRoute(requestPath);
+            // Matched by AuthFilter earlier in the chain
+            RouteMatch routeMatch = routeTable.match(request);
+            route = routeMatch.getRoute();
             
-            if (matchingRoute.isEmpty()) {
-                logger.warn("No route found for path: {}", requestPath);
+            if (route == null) {
+                logger.debug("No route found for path: {}", requestPath);
                 return ResponseEntity.notFound().build();
             }
             
-            Route route = matchingRoute.get();
-            
             String targetUrl = buildTargetUrl(route, request);
             
             HttpHeaders headers = buildProxyHeaders(request);
             
-            HttpEntity<Object> entity = new HttpEntity<>(body, headers);
-            
             logger.debug("Forwarding to: {} {}", method, targetUrl);
-            ResponseEntity<String> response = restTemplate.exchange(
-                targetUrl,
-                method,
-                entity,
-                String.class
-            );
+            if (method == HttpMethod.GET && responseCache.isCacheable(route, requestPath)) {
+                return forwardCached(request, route, targetUrl, headers);
+            }
+            if (method == HttpMethod.GET && (requestCoalescer.isCoalesced(route, requestPath)
+                    || requestHedger.isHedged(route, requestPath))) {
+                ResponseEntity<byte[]> upstreamResponse = fetch(request, route, targetUrl, headers);
+                return encoded(request, route, upstreamResponse.getStatusCode(),
+                    filterResponseHeaders(request, upstreamResponse.getHeaders()), upstreamResponse.getBody());
+            }
+            if (method != HttpMethod.GET && method != HttpMethod.HEAD) {
+                responseCache.invalidate(route, userId(request));
+            }
+            if ("async".equalsIgnoreCase(proxyEngine)) {
+                forwardAsync(request, response, route, method, targetUrl, headers);
+                return null;
+            }
+            if ("buffered".equalsIgnoreCase(proxyMode)) {
+                return forwardBuffered(request, route, method, targetUrl, headers);
+            }
             
-            return ResponseEntity.status(response.getStatusCode())
-                .headers(filterResponseHeaders(response.getHeaders()))
-                .body(response.getBody());
+            forwardStreaming(request, response, route, method, targetUrl, headers);
+            return null;
                 
+        } catch (UpstreamRejectedException e) {
+            logger.debug("Rejected {} {}: {}", method, request.getRequestURI(), e.getReason());
+            String fallbackBody = fallbackBody(route, method);
+            if (fallbackBody != null) {
+                return fallbackResponse(fallbackBody, e.getReason());
+            }
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(SERVICE_UNAVAILABLE_BODY);
         } catch (Exception e) {
             logger.error("Proxy request failed for {} {}", method, request.getRequestURI(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body("{\"error\":\"Gateway error\",\"message\":\"Request forwarding failed\"}");
+            if (response.isCommitted()) {
+                // Part of the upstream response already reached the client; nothing more to send
+                return null;
+            }
+            response.reset();
+            String fallbackBody = fallbackBody(route, method);
+            if (fallbackBody != null) {
+                return fallbackResponse(fallbackBody, "upstream_error");
+            }
+            return ResponseEntity.status(errorStatus(e))
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(GATEWAY_ERROR_BODY);
         }
     }
     
-    private Optional<Route> findMatchingRoute(String requestPath) {
-        return routes.stream()
-            .filter(route -> {
-                String routeUrl = route.getUrl();
-                
-                // Exact match
-                if (requestPath.equals(routeUrl)) {
-                    return true;
+    // Fallbacks only stand in for reads; a write the upstream never saw must not look successful
+    private String fallbackBody(Route route, HttpMethod method) {
+        return route != null && method == HttpMethod.GET ? upstreamGuard.fallbackBody(route) : null;
+    }
+    
+    private static ResponseEntity<String> fallbackResponse(String body, String reason) {
+        return ResponseEntity.ok()
+            .header("X-Gateway-Fallback", reason)
+            .cacheControl(CacheControl.noStore())
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(body);
+    }
+    
+    // Tomcat reports failed reads and writes on the client's connection this way
+    private static boolean clientAborted(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ClientAbortException) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // 504 when the upstream timed out, 502 when it could not be reached or broke off
+    private static HttpStatus errorStatus(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException || cause instanceof HttpTimeoutException) {
+                return HttpStatus.GATEWAY_TIMEOUT;
+            }
+            if (cause instanceof IOException) {
+                return HttpStatus.BAD_GATEWAY;
+            }
+        }
+        return HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+    
+    /**
+     * Same as {@link #forwardStreaming} but the request thread goes back to the
+     * container as soon as the upstream request is sent. The response is written
+     * from the proxy I/O pool once the upstream headers arrive, or shed with a
+     * 503 when that pool is backed up.
+     */
+    private void forwardAsync(HttpServletRequest request, HttpServletResponse response, Route route,
+            HttpMethod method, String targetUrl, HttpHeaders headers) throws IOException {
+        boolean hasBody = hasBody(request);
+        URI uri = restTemplate.getUriTemplateHandler().expand(targetUrl);
+        
+        // Rejections surface before the request goes async, so proxyRequest answers them
+        UpstreamGuard.Permit permit = upstreamGuard.acquire(route, request.getRequestURI());
+        RequestTimings timings = RequestTimings.of(request);
+        long upstreamStart = System.nanoTime();
+        AsyncContext asyncContext;
+        CompletableFuture<HttpResponse<InputStream>> upstreamCall;
+        try {
+            asyncContext = request.startAsync(request, response);
+            // The client's response timeout bounds the wait for headers; a container timeout
+            // would also cut off long downloads, so it is disabled
+            asyncContext.setTimeout(0);
+            
+            upstreamCall = asyncProxyClient.send(method, uri, headers,
+                    hasBody ? request.getInputStream() : null,
+                    hasBody ? request.getContentLengthLong() : -1, route);
+        } catch (IOException | RuntimeException e) {
+            permit.close();
+            throw e;
+        }
+        
+        upstreamCall.whenComplete((upstreamResponse, error) -> {
+            if (timings != null) {
+                timings.record(RequestTimings.Phase.UPSTREAM, System.nanoTime() - upstreamStart);
+            }
+            try {
+                asyncProxyClient.ioExecutor().execute(() ->
+                        completeAsync(request, response, route, method, upstreamResponse, error, permit, asyncContext));
+            } catch (RejectedExecutionException e) {
+                // Too many responses already wait for a copy; answering this one here is cheap
+                logger.debug("Rejected {} {}: proxy I/O pool is full", method, request.getRequestURI());
+                if (upstreamResponse != null) {
+                    permit.onResponse(upstreamResponse.statusCode());
+                    closeQuietly(upstreamResponse.body());
                 }
-                
-                // Path pattern match
-                if (routeUrl.endsWith("/**")) {
-                    String basePath = routeUrl.substring(0, routeUrl.length() - 3);
-                    return requestPath.startsWith(basePath);
+                permit.close();
+                writeUpstreamError(response, route, method, new UpstreamRejectedException(
+                        route.getProxy().getTarget(), UpstreamRejectedException.PROXY_BUSY, 1));
+                asyncContext.complete();
+            }
+        });
+    }
+    
+    private void completeAsync(HttpServletRequest request, HttpServletResponse response, Route route,
+            HttpMethod method, HttpResponse<InputStream> upstreamResponse, Throwable error,
+            UpstreamGuard.Permit permit, AsyncContext asyncContext) {
+        try {
+            if (error != null) {
+                if (clientAborted(error)) {
+                    permit.onClientAbort();
+                } else {
+                    permit.onError();
                 }
-                
-                if (routeUrl.endsWith("/*")) {
-                    String basePath = routeUrl.substring(0, routeUrl.length() - 2);
-                    return requestPath.startsWith(basePath) && 
-                           requestPath.substring(basePath.length()).indexOf('/') == -1;
+                logger.error("Proxy request failed for {} {}", method, request.getRequestURI(), error);
+                writeUpstreamError(response, route, method, error);
+                return;
+            }
+            permit.onResponse(upstreamResponse.statusCode());
+            copyResponse(request, route, upstreamResponse, response);
+        } catch (Exception e) {
+            logger.error("Proxy request failed for {} {}", method, request.getRequestURI(), e);
+            writeUpstreamError(response, route, method, e);
+        } finally {
+            permit.close();
+            asyncContext.complete();
+        }
+    }
+    
+    private void copyResponse(HttpServletRequest request, Route route, HttpResponse<InputStream> upstreamResponse,
+            HttpServletResponse response) throws IOException {
+        HttpHeaders upstreamHeaders = new HttpHeaders();
+        upstreamResponse.headers().map().forEach(upstreamHeaders::addAll);
+        
+        response.setStatus(upstreamResponse.statusCode());
+        HttpHeaders responseHeaders = filterResponseHeaders(request, upstreamHeaders);
+        boolean compress = streamCompressed(request, upstreamResponse.statusCode(), responseHeaders);
+        responseHeaders.forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+        
+        try (InputStream body = upstreamResponse.body()) {
+            copyBody(body, response, route, compress);
+        }
+        response.flushBuffer();
+    }
+    
+    // Decides on gzip for a streamed response, whose length is not known up front, and marks its headers
+    private boolean streamCompressed(HttpServletRequest request, int status, HttpHeaders headers) {
+        if (!responseCompressor.isCompressible(status, headers, -1)) {
+            return false;
+        }
+        if (!responseCompressor.acceptsGzip(request)) {
+            ResponseCompressor.addVary(headers);
+            return false;
+        }
+        ResponseCompressor.markCompressed(headers, -1);
+        return true;
+    }
+    
+    private void copyBody(InputStream body, HttpServletResponse response, Route route, boolean compress)
+            throws IOException {
+        if (!compress) {
+            StreamUtils.copy(body, response.getOutputStream());
+            return;
+        }
+        try (ResponseCompressor.GzipOutputStream gzip =
+                responseCompressor.compressingStream(route, response.getOutputStream())) {
+            body.transferTo(gzip);
+        }
+    }
+    
+    // gzip for a buffered response when the client takes it and the body is worth it
+    private ResponseEntity<byte[]> encoded(HttpServletRequest request, Route route, HttpStatus status,
+            HttpHeaders headers, byte[] body) {
+        if (body != null && responseCompressor.isCompressible(status.value(), headers, body.length)) {
+            if (responseCompressor.acceptsGzip(request)) {
+                body = responseCompressor.compress(route, body);
+                ResponseCompressor.markCompressed(headers, body.length);
+            } else {
+                ResponseCompressor.addVary(headers);
+            }
+        }
+        return ResponseEntity.status(status).headers(headers).body(body);
+    }
+    
+    private void writeUpstreamError(HttpServletResponse response, Route route, HttpMethod method, Throwable error) {
+        if (response.isCommitted()) {
+            // Part of the upstream response already reached the client; nothing more to send
+            return;
+        }
+        try {
+            response.reset();
+            UpstreamRejectedException rejected = error instanceof UpstreamRejectedException
+                ? (UpstreamRejectedException) error
+                : null;
+            String fallbackBody = fallbackBody(route, method);
+            String body;
+            if (fallbackBody != null) {
+                response.setStatus(HttpStatus.OK.value());
+                response.setHeader("X-Gateway-Fallback", rejected != null ? rejected.getReason() : "upstream_error");
+                response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+                body = fallbackBody;
+            } else if (rejected != null) {
+                response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+                response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(rejected.getRetryAfterSeconds()));
+                body = SERVICE_UNAVAILABLE_BODY;
+            } else {
+                response.setStatus(errorStatus(error).value());
+                body = GATEWAY_ERROR_BODY;
+            }
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write(body);
+            response.flushBuffer();
+        } catch (Exception e) {
+            logger.debug("Could not write gateway error response", e);
+        }
+    }
+    
+    /**
+     * Copies the raw request body to the upstream and the upstream response back
+     * to the client through fixed-size buffers; neither body is held in memory.
+     */
+    private void forwardStreaming(HttpServletRequest request, HttpServletResponse response, Route route,
+            HttpMethod method, String targetUrl, HttpHeaders headers) {
+        boolean hasBody = hasBody(request);
+        if (hasBody && request.getContentLengthLong() >= 0) {
+            // Lets the upstream request use fixed-length instead of chunked streaming
+            headers.setContentLength(request.getContentLengthLong());
+        }
+        
+        // Held until the body is copied, since the upstream connection is busy until then
+        try (UpstreamGuard.Permit permit = upstreamGuard.acquire(route, request.getRequestURI())) {
+            long upstreamStart = System.nanoTime();
+            try {
+                restTemplate.execute(targetUrl, method,
+                    upstreamRequest -> {
+                        upstreamRequest.getHeaders().putAll(headers);
+                        // Only touch the body when there is one; opening it turns a GET into a POST
+                        if (hasBody && upstreamRequest instanceof StreamingHttpOutputMessage) {
+                            // Unbuffered requests take the body as a callback, run while the request is sent
+                            ((StreamingHttpOutputMessage) upstreamRequest).setBody(
+                                    upstreamBody -> StreamUtils.copy(request.getInputStream(), upstreamBody));
+                        } else if (hasBody) {
+                            StreamUtils.copy(request.getInputStream(), upstreamRequest.getBody());
+                        }
+                    },
+                    upstreamResponse -> {
+                        RequestTimings.record(request, RequestTimings.Phase.UPSTREAM, System.nanoTime() - upstreamStart);
+                        permit.onResponse(upstreamResponse.getRawStatusCode());
+                        response.setStatus(upstreamResponse.getRawStatusCode());
+                        HttpHeaders responseHeaders = filterResponseHeaders(request, upstreamResponse.getHeaders());
+                        boolean compress = streamCompressed(request, upstreamResponse.getRawStatusCode(), responseHeaders);
+                        responseHeaders.forEach((name, values) ->
+                            values.forEach(value -> response.addHeader(name, value)));
+                    
+                        copyBody(upstreamResponse.getBody(), response, route, compress);
+                        response.flushBuffer();
+                        return null;
+                    });
+            } catch (RuntimeException e) {
+                if (clientAborted(e)) {
+                    permit.onClientAbort();
                 }
-                
-                return false;
-            })
-            .findFirst();
+                throw e;
+            }
+        }
+    }
+    
+    // Bodies are passed through as bytes, never parsed
+    private ResponseEntity<byte[]> forwardBuffered(HttpServletRequest request, Route route, HttpMethod method,
+            String targetUrl, HttpHeaders headers) throws IOException {
+        byte[] body = hasBody(request) ? StreamUtils.copyToByteArray(request.getInputStream()) : null;
+        
+        long upstreamStart = System.nanoTime();
+        ResponseEntity<byte[]> response;
+        try {
+            response = exchange(request, route, method, targetUrl, new HttpEntity<>(body, headers));
+        } finally {
+            RequestTimings.record(request, RequestTimings.Phase.UPSTREAM, System.nanoTime() - upstreamStart);
+        }
+        
+        return encoded(request, route, response.getStatusCode(),
+            filterResponseHeaders(request, response.getHeaders()), response.getBody());
+    }
+    
+    /**
+     * GET through the response cache: a fresh entry is served (or answered with
+     * 304 when If-None-Match matches its ETag) without calling the upstream;
+     * otherwise the full response is fetched and stored if cacheable. Compressible
+     * bodies are stored gzipped, so hits are not compressed again.
+     */
+    private ResponseEntity<byte[]> forwardCached(HttpServletRequest request, Route route, String targetUrl,
+            HttpHeaders headers) {
+        String cacheControl = request.getHeader(HttpHeaders.CACHE_CONTROL);
+        boolean noStore = cacheControl != null && cacheControl.contains("no-store");
+        boolean revalidate = cacheControl != null
+            && (cacheControl.contains("no-cache") || cacheControl.contains("max-age=0"));
+        
+        String key = responseCache.key(route, userId(request), request.getRequestURI(), request.getQueryString());
+        if (!noStore && !revalidate) {
+            HttpResponseCache.CachedResponse cached = responseCache.get(route, key);
+            if (cached != null) {
+                return cachedResponse(request, cached, "HIT");
+            }
+        }
+        
+        // Conditionals are answered here against the gateway's ETag; the upstream sends full bodies
+        headers.remove(HttpHeaders.IF_NONE_MATCH);
+        headers.remove(HttpHeaders.IF_MODIFIED_SINCE);
+        ResponseEntity<byte[]> upstreamResponse = fetch(request, route, targetUrl, headers);
+        HttpHeaders responseHeaders = filterResponseHeaders(request, upstreamResponse.getHeaders());
+        
+        if (!noStore && upstreamResponse.getStatusCode() == HttpStatus.OK) {
+            HttpResponseCache.CachedResponse stored = store(route, key, responseHeaders, upstreamResponse.getBody());
+            if (stored != null) {
+                return cachedResponse(request, stored, "MISS");
+            }
+        }
+        return encoded(request, route, upstreamResponse.getStatusCode(), responseHeaders, upstreamResponse.getBody());
+    }
+    
+    // The entry keeps the identity body's ETag; the gzip form is served with a weak copy of it
+    private HttpResponseCache.CachedResponse store(Route route, String key, HttpHeaders headers, byte[] body) {
+        if (body == null || !responseCompressor.isCompressible(HttpStatus.OK.value(), headers, body.length)) {
+            return responseCache.put(route, key, headers, body);
+        }
+        byte[] compressed = responseCompressor.compress(route, body);
+        HttpHeaders storedHeaders = new HttpHeaders();
+        storedHeaders.putAll(headers);
+        storedHeaders.set(HttpHeaders.CONTENT_ENCODING, ResponseCompressor.GZIP);
+        storedHeaders.setContentLength(compressed.length);
+        return responseCache.put(route, key, storedHeaders, compressed);
+    }
+    
+    // Buffered upstream GET, shared with identical concurrent requests and hedged where the route
+    // allows it. A request that joins another's call is timed for its wait, which is what its client sees
+    private ResponseEntity<byte[]> fetch(HttpServletRequest request, Route route, String targetUrl,
+            HttpHeaders headers) {
+        Supplier<ResponseEntity<byte[]>> upstreamCall = requestHedger.isHedged(route, request.getRequestURI())
+            ? () -> requestHedger.execute(route, hedge -> hedgeableGet(request, route, targetUrl, headers, hedge),
+                    upstreamResponse -> !upstreamResponse.getStatusCode().is5xxServerError())
+            : () -> exchange(request, route, HttpMethod.GET, targetUrl, new HttpEntity<>(headers));
+        long upstreamStart = System.nanoTime();
+        try {
+            if (!requestCoalescer.isCoalesced(route, request.getRequestURI())) {
+                return upstreamCall.get();
+            }
+            String key = requestCoalescer.key(route, userId(request), request.getRequestURI(), request.getQueryString());
+            return requestCoalescer.execute(route, key, upstreamCall);
+        } finally {
+            RequestTimings.record(request, RequestTimings.Phase.UPSTREAM, System.nanoTime() - upstreamStart);
+        }
+    }
+    
+    // Buffered upstream call inside the upstream's concurrency limit, bulkhead and circuit breaker
+    private ResponseEntity<byte[]> exchange(HttpServletRequest request, Route route, HttpMethod method,
+            String targetUrl, HttpEntity<?> entity) {
+        try (UpstreamGuard.Permit permit = upstreamGuard.acquire(route, request.getRequestURI())) {
+            ResponseEntity<byte[]> response = restTemplate.exchange(targetUrl, method, entity, byte[].class);
+            permit.onResponse(response.getStatusCodeValue());
+            return response;
+        }
+    }
+    
+    // One attempt of a hedged GET, each holding its own permit. It goes through the async client
+    // so the losing attempt can be cancelled; its connection is then closed rather than drained.
+    // The hedge gets a connection of its own, not a stream next to the first attempt's
+    private CompletableFuture<ResponseEntity<byte[]>> hedgeableGet(HttpServletRequest request, Route route,
+            String targetUrl, HttpHeaders headers, boolean hedge) {
+        UpstreamGuard.Permit permit = upstreamGuard.acquire(route, request.getRequestURI());
+        URI uri = restTemplate.getUriTemplateHandler().expand(targetUrl);
+        CompletableFuture<HttpResponse<InputStream>> sent;
+        try {
+            sent = hedge
+                ? asyncProxyClient.sendOnOwnConnection(HttpMethod.GET, uri, headers, route)
+                : asyncProxyClient.send(HttpMethod.GET, uri, headers, null, -1, route);
+        } catch (RuntimeException e) {
+            permit.close();
+            throw e;
+        }
+        
+        CompletableFuture<ResponseEntity<byte[]>> attempt = new CompletableFuture<>();
+        sent.whenComplete((upstreamResponse, error) -> {
+            if (error != null) {
+                attempt.completeExceptionally(error);
+                return;
+            }
+            permit.onResponse(upstreamResponse.statusCode());
+            try {
+                asyncProxyClient.ioExecutor().execute(() -> {
+                    try (InputStream body = upstreamResponse.body()) {
+                        if (attempt.isDone()) {
+                            // Cancelled while queued
+                            return;
+                        }
+                        HttpHeaders upstreamHeaders = new HttpHeaders();
+                        upstreamResponse.headers().map().forEach(upstreamHeaders::addAll);
+                        attempt.complete(ResponseEntity.status(upstreamResponse.statusCode())
+                            .headers(upstreamHeaders)
+                            .body(StreamUtils.copyToByteArray(body)));
+                    } catch (IOException | RuntimeException e) {
+                        attempt.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                closeQuietly(upstreamResponse.body());
+                attempt.completeExceptionally(new UpstreamRejectedException(
+                        route.getProxy().getTarget(), UpstreamRejectedException.PROXY_BUSY, 1));
+            }
+        });
+        
+        attempt.whenComplete((upstreamResponse, error) -> {
+            if (attempt.isCancelled()) {
+                permit.onCancelled();
+                sent.cancel(true);
+                // Headers that arrive after all the same: close the body instead of reading it
+                sent.thenAccept(late -> closeQuietly(late.body()));
+            } else if (error != null) {
+                permit.onError();
+            }
+            permit.close();
+        });
+        return attempt;
+    }
+    
+    private static void closeQuietly(InputStream body) {
+        try {
+            body.close();
+        } catch (IOException e) {
+            logger.debug("Could not close abandoned upstream response", e);
+        }
+    }
+    
+    private ResponseEntity<byte[]> cachedResponse(HttpServletRequest request,
+            HttpResponseCache.CachedResponse cached, String cacheStatus) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(cached.getHeaders());
+        headers.setETag(cached.getEtag());
+        byte[] body = cached.getBody();
+        if (ResponseCompressor.isCompressed(headers)) {
+            if (responseCompressor.acceptsGzip(request)) {
+                ResponseCompressor.markCompressed(headers, body.length);
+            } else {
+                body = ResponseCompressor.decompress(body);
+                headers.remove(HttpHeaders.CONTENT_ENCODING);
+                headers.setContentLength(body.length);
+                ResponseCompressor.addVary(headers);
+            }
+        }
+        headers.setCacheControl(cached.getCacheControl());
+        headers.set(HttpHeaders.AGE, String.valueOf(cached.getAgeSeconds()));
+        headers.set("X-Cache", cacheStatus);
+        // The stored headers carry the timing of the request that filled the entry
+        setTimingHeaders(request, headers);
+        
+        if (HttpResponseCache.matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), cached.getEtag())) {
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+            headers.remove(HttpHeaders.CONTENT_TYPE);
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+        }
+        return ResponseEntity.ok().headers(headers).body(body);
+    }
+    
+    private static String userId(HttpServletRequest request) {
+        TokenInfo tokenInfo = (TokenInfo) request.getAttribute(TokenInfo.ATTRIBUTE);
+        return tokenInfo != null ? tokenInfo.getUserId() : null;
+    }
+    
+    private boolean hasBody(HttpServletRequest request) {
+        return request.getContentLengthLong() > 0 || request.getHeader(HttpHeaders.TRANSFER_ENCODING) != null;
     }
     
     private String buildTargetUrl(Route route, HttpServletRequest request) {
@@ -147,20 +669,6 @@ public class ProxyController {
     
     private HttpHeaders buildProxyHeaders(HttpServletRequest request) {
         HttpHeaders headers = new HttpHeaders();
-
-        String token = extractTokenFromRequest(request);
-        if (token != null) {
-            String sub = extractClaimFromToken(token, "sub");
-            String username = extractClaimFromToken(token, "preferred_username");
-            
-            // Set user context headers
-            if (sub != null) {
-                headers.set("X-User-Id", sub);
-            }
-            if (username != null) {
-                headers.set("X-User-Name", username);
-            }
-        }
         
         // Copy headers from original request, excluding some
         Enumeration<String> headerNames = request.getHeaderNames();
@@ -179,30 +687,36 @@ public class ProxyController {
         headers.set("X-Forwarded-Proto", request.getScheme());
         headers.set("X-Forwarded-Host", request.getHeader("Host"));
         headers.set("X-Gateway-Request-Id", generateRequestId());
+        // Upstreams send identity bodies; the gateway compresses for the client
+        if (responseCompressor.isEnabled()) {
+            headers.remove(HttpHeaders.ACCEPT_ENCODING);
+        }
         
-        // User context headers are already added by AuthFilter if authenticated
-        // X-User-Id, X-Username, X-User-Roles
+        // User context from the token AuthFilter validated
+        TokenInfo tokenInfo = (TokenInfo) request.getAttribute(TokenInfo.ATTRIBUTE);
+        if (tokenInfo != null) {
+            setIfPresent(headers, "X-User-Id", tokenInfo.getUserId());
+            setIfPresent(headers, "X-User-Name", tokenInfo.getUsername());
+            // Older name, still read by group-service
+            setIfPresent(headers, "X-Username", tokenInfo.getUsername());
+            setIfPresent(headers, "X-User-Roles", tokenInfo.getRolesHeader());
+        }
         
         return headers;
     }
     
+    private static void setIfPresent(HttpHeaders headers, String name, String value) {
+        if (value != null) {
+            headers.set(name, value);
+        }
+    }
+    
     private boolean shouldForwardHeader(String headerName) {
-        String lowerHeaderName = headerName.toLowerCase();
-        
-        // Headers that should NOT be forwarded
-        return !lowerHeaderName.equals("host") &&
-               !lowerHeaderName.equals("content-length") &&
-               !lowerHeaderName.equals("connection") &&
-               !lowerHeaderName.equals("upgrade") &&
-               !lowerHeaderName.equals("proxy-connection") &&
-               !lowerHeaderName.equals("proxy-authenticate") &&
-               !lowerHeaderName.equals("proxy-authorization") &&
-               !lowerHeaderName.equals("te") &&
-               !lowerHeaderName.equals("trailers") &&
-               !lowerHeaderName.equals("transfer-encoding");
-    }
-    
-    private HttpHeaders filterResponseHeaders(HttpHeaders responseHeaders) {
+        // Case-insensitive set, so no lower-cased copy per header
+        return !NOT_FORWARDED_HEADERS.contains(headerName);
+    }
+    
+    private HttpHeaders filterResponseHeaders(HttpServletRequest request, HttpHeaders responseHeaders) {
         HttpHeaders filteredHeaders = new HttpHeaders();
         
         responseHeaders.forEach((key, values) -> {
@@ -220,11 +734,23 @@ public class ProxyController {
         
         // Add gateway-specific headers
         filteredHeaders.set("X-Gateway", "stockfellow-gateway");
-        filteredHeaders.set("X-Response-Time", String.valueOf(System.currentTimeMillis()));
+        setTimingHeaders(request, filteredHeaders);
         
         return filteredHeaders;
     }
     
+    // Time from the request's arrival until its response headers are written
+    private void setTimingHeaders(HttpServletRequest request, HttpHeaders headers) {
+        RequestTimings timings = RequestTimings.of(request);
+        if (timings == null) {
+            return;
+        }
+        headers.set("X-Response-Time", RequestTimings.formatMillis(timings.elapsedNanos()) + "ms");
+        if (serverTimingEnabled) {
+            headers.set("Server-Timing", timings.serverTiming());
+        }
+    }
+    
     private String getClientIp(HttpServletRequest request) {
         String xForwardedFor = request.getHeader("X-Forwarded-For");
         if (xForwardedFor != null && !xForwardedFor.isEmpty()) {
@@ -244,39 +770,6 @@ public class ProxyController {
                Integer.toHexString((int) (Math.random() * 0x10000));
     }
 
-    private String extractTokenFromRequest(HttpServletRequest request) {
-        String authHeader = request.getHeader("Authorization");
-        if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            return authHeader.substring(7);
-        }
-        return null;
-    }
-
-    private String extractClaimFromToken(String token, String claimName) {
-        try {
-            // Split the JWT token into its three parts
-            String[] parts = token.split("\\.");
-            if (parts.length != 3) {
-                logger.warn("Invalid JWT token format");
-                return null;
-            }
-            
-            // Decode the payload (second part)
-            String payload = new String(Base64.getUrlDecoder().decode(parts[1]));
-            
-            // Parse JSON to extract the claim
-            ObjectMapper mapper = new ObjectMapper();
-            JsonNode claims = mapper.readTree(payload);
-            
-            JsonNode claimNode = claims.get(claimName);
-            return claimNode != null ? claimNode.asText() : null;
-            
-        } catch (Exception e) {
-            logger.error("Error extracting claim '{}' from JWT token", claimName, e);
-            return null;
-        }
-    }
-    
     // Health check endpoint that doesn't require authentication
     @GetMapping("/health")
     public ResponseEntity<?> healthCheck() {
@@ -289,13 +782,13 @@ public class ProxyController {
     @GetMapping("/routes")
     public ResponseEntity<?> getRoutes(HttpServletRequest request) {
         // Only show routes if user has admin role
-        String userRoles = request.getHeader("X-User-Roles");
-        if (userRoles == null || !userRoles.contains("admin")) {
+        TokenInfo tokenInfo = (TokenInfo) request.getAttribute(TokenInfo.ATTRIBUTE);
+        if (tokenInfo == null || tokenInfo.getRoles() == null || !tokenInfo.getRoles().contains("admin")) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                 .body("{\"error\":\"Insufficient permissions\"}");
         }
         
-        return ResponseEntity.ok(routes.stream()
+        return ResponseEntity.ok(routeTable.routes().stream()
             .map(route -> Map.of(
                 "url", route.getUrl(),
                 "target", route.getProxy().getTarget(),
@@ -1,9 +1,12 @@
 package com.stockfellow.gateway.filter;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stockfellow.gateway.metrics.RequestTimings;
 import com.stockfellow.gateway.service.TokenValidationService;
 import com.stockfellow.gateway.model.TokenInfo;
 import com.stockfellow.gateway.model.TokenValidationResult;
+import com.stockfellow.gateway.routing.RouteMatch;
+import com.stockfellow.gateway.routing.RouteTable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
@@ -11,19 +14,20 @@ import org.springframework.http.HttpStatus;
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpServletRequestWrapper;
 import java.io.IOException;
 import java.time.Instant;
-import java.util.*;
+import java.util.Map;
 
 public class AuthFilter implements Filter {
     private static final Logger logger = LoggerFactory.getLogger(AuthFilter.class);
     
     private final TokenValidationService tokenValidationService;
+    private final RouteTable routeTable;
     private final ObjectMapper objectMapper;
     
-    public AuthFilter(TokenValidationService tokenValidationService, ObjectMapper objectMapper) {
+    public AuthFilter(TokenValidationService tokenValidationService, RouteTable routeTable, ObjectMapper objectMapper) {
         this.tokenValidationService = tokenValidationService;
+        this.routeTable = routeTable;
         this.objectMapper = objectMapper;
     }
 
@@ -34,17 +38,25 @@ public class AuthFilter implements Filter {
         HttpServletRequest httpRequest = (HttpServletRequest) request;
         HttpServletResponse httpResponse = (HttpServletResponse) response;
         
-        String path = httpRequest.getRequestURI();
         String authHeader = httpRequest.getHeader("Authorization");
         
-        logger.debug("Processing request: {} {}", httpRequest.getMethod(), path);
+        logger.debug("Processing request: {} {}", httpRequest.getMethod(), httpRequest.getRequestURI());
+        
+        // Matched once here and kept on the request for the rate limiter and proxy
+        RouteMatch routeMatch = routeTable.match(httpRequest);
         
         // Validate token
-        TokenValidationResult validationResult = tokenValidationService.validateRequest(path, authHeader);
+        long validationStart = System.nanoTime();
+        TokenValidationResult validationResult = tokenValidationService.validateRequest(routeMatch, authHeader);
+        RequestTimings.record(httpRequest, RequestTimings.Phase.AUTH, System.nanoTime() - validationStart);
         
         if (validationResult.isSuccess()) {
-            HttpServletRequest enrichedRequest = enrichRequestWithUserInfo(httpRequest, validationResult.getTokenInfo());
-            chain.doFilter(enrichedRequest, response);
+            TokenInfo tokenInfo = validationResult.getTokenInfo();
+            if (tokenInfo != null) {
+                // Identity for the proxy's X-User-* headers, so the token is not parsed again
+                httpRequest.setAttribute(TokenInfo.ATTRIBUTE, tokenInfo);
+            }
+            chain.doFilter(request, response);
             
         } else if (validationResult.isExpired()) {
             sendTokenExpiredResponse(httpResponse);
@@ -54,42 +66,6 @@ public class AuthFilter implements Filter {
         }
     }
 
-    private HttpServletRequest enrichRequestWithUserInfo(HttpServletRequest request, TokenInfo tokenInfo) {
-        return new HttpServletRequestWrapper(request) {
-            @Override
-            public String getHeader(String name) {
-                // Add user context headers for downstream services
-                switch (name.toLowerCase()) {
-                    case "x-user-id":
-                        return tokenInfo != null ? tokenInfo.getUserId() : null;
-                    case "x-username":
-                        return tokenInfo != null ? tokenInfo.getUsername() : null;
-                    case "x-user-roles":
-                        return tokenInfo != null && tokenInfo.getRoles() != null ? 
-                               String.join(",", tokenInfo.getRoles()) : null;
-                    default:
-                        return super.getHeader(name);
-                }
-            }
-            
-            @Override
-            public Enumeration<String> getHeaderNames() {
-                Set<String> headers = new HashSet<>();
-                Enumeration<String> originalHeaders = super.getHeaderNames();
-                while (originalHeaders.hasMoreElements()) {
-                    headers.add(originalHeaders.nextElement());
-                }
-                // Add our custom headers
-                if (tokenInfo != null) {
-                    headers.add("X-User-Id");
-                    headers.add("X-Username");
-                    headers.add("X-User-Roles");
-                }
-                return Collections.enumeration(headers);
-            }
-        };
-    }
-    
     private void sendTokenExpiredResponse(HttpServletResponse response) throws IOException {
         response.setStatus(HttpStatus.UNAUTHORIZED.value());
         response.setContentType("application/json");
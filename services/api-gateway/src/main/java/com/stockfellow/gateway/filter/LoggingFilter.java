@@ -1,5 +1,8 @@
 package com.stockfellow.gateway.filter;
 
+import com.stockfellow.gateway.logging.AsyncAccessLog;
+import com.stockfellow.gateway.metrics.RequestMetrics;
+import com.stockfellow.gateway.metrics.RequestTimings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,6 +15,25 @@ public class LoggingFilter implements Filter {
     
     private static final Logger logger = LoggerFactory.getLogger(LoggingFilter.class);
     
+    // Null when only logging, e.g. in tests
+    private final RequestMetrics requestMetrics;
+    
+    // Null: each request is logged synchronously through SLF4J
+    private final AsyncAccessLog accessLog;
+    
+    public LoggingFilter() {
+        this(null, null);
+    }
+    
+    public LoggingFilter(RequestMetrics requestMetrics) {
+        this(requestMetrics, null);
+    }
+    
+    public LoggingFilter(RequestMetrics requestMetrics, AsyncAccessLog accessLog) {
+        this.requestMetrics = requestMetrics;
+        this.accessLog = accessLog;
+    }
+    
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) 
             throws IOException, ServletException {
@@ -19,14 +41,47 @@ public class LoggingFilter implements Filter {
         HttpServletRequest httpRequest = (HttpServletRequest) request;
         HttpServletResponse httpResponse = (HttpServletResponse) response;
         
-        long startTime = System.currentTimeMillis();
+        // First filter in the chain, so the timings cover everything the gateway does
+        RequestTimings timings = RequestTimings.start(httpRequest);
         
         try {
             // Continue with the request
             chain.doFilter(request, response);
         } finally {
-            long duration = System.currentTimeMillis() - startTime;
-            logRequest(httpRequest, httpResponse, duration);
+            if (httpRequest.isAsyncStarted()) {
+                // Proxied asynchronously: the response is only complete once the async context is
+                httpRequest.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        complete(httpRequest, httpResponse, timings);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                complete(httpRequest, httpResponse, timings);
+            }
+        }
+    }
+    
+    private void complete(HttpServletRequest request, HttpServletResponse response, RequestTimings timings) {
+        if (requestMetrics != null) {
+            requestMetrics.record(request, response.getStatus(), timings);
+        }
+        if (accessLog != null) {
+            accessLog.log(request, response.getStatus(), timings);
+        } else {
+            logRequest(request, response, timings.elapsedNanos() / 1_000_000);
         }
     }
     
@@ -1,6 +1,11 @@
 package com.stockfellow.gateway.filter;
 
+import com.stockfellow.gateway.metrics.RequestTimings;
 import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.ratelimit.LocalRateLimiter;
+import com.stockfellow.gateway.ratelimit.RateLimiter;
+import com.stockfellow.gateway.routing.RouteMatch;
+import com.stockfellow.gateway.routing.RouteTable;
 
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
@@ -8,28 +13,34 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class RateLimitFilter implements Filter {
     
-    private List<Route> routes;
+    private RouteTable routeTable;
     
-    // In-memory storage for rate limiting (Will switch to Redis in production)
-    private final Map<String, RateLimitBucket> clientBuckets = new ConcurrentHashMap<>();
+    private final RateLimiter rateLimiter;
     
     // Default constructor
     public RateLimitFilter() {
-        this.routes = new ArrayList<>();
+        this(RouteTable.compile(new ArrayList<>()));
+    }
+    
+    public RateLimitFilter(RouteTable routeTable) {
+        this(routeTable, new LocalRateLimiter());
     }
     
     // Constructor for dependency injection
+    public RateLimitFilter(RouteTable routeTable, RateLimiter rateLimiter) {
+        this.routeTable = routeTable;
+        this.rateLimiter = rateLimiter;
+    }
+    
     public RateLimitFilter(List<Route> routes) {
-        this.routes = routes;
+        this(RouteTable.compile(routes));
     }
     
     public void setRoutes(List<Route> routes) {
-        this.routes = routes;
+        this.routeTable = RouteTable.compile(routes);
     }
     
     @Override
@@ -39,15 +50,18 @@ public class RateLimitFilter implements Filter {
         HttpServletRequest httpRequest = (HttpServletRequest) request;
         HttpServletResponse httpResponse = (HttpServletResponse) response;
         
-        String requestPath = httpRequest.getRequestURI();
         String clientId = getClientId(httpRequest);
     
-        Route matchingRoute = findMatchingRoute(requestPath);
+        // Usually already matched by AuthFilter
+        RouteMatch routeMatch = routeTable.match(httpRequest);
+        Route.RateLimit rateLimit = routeMatch.getRateLimit();
         
-        if (matchingRoute != null && matchingRoute.getRateLimit() != null) {
-            Route.RateLimit rateLimit = matchingRoute.getRateLimit();
-            
-            if (!isAllowed(clientId + ":" + requestPath, rateLimit)) {
+        if (rateLimit != null) {
+            // One bucket per client and route, however many distinct paths the route covers
+            long checkStart = System.nanoTime();
+            boolean allowed = rateLimiter.tryAcquire(clientId + ":" + routeMatch.getRateLimitPattern(), rateLimit);
+            RequestTimings.record(httpRequest, RequestTimings.Phase.RATE_LIMIT, System.nanoTime() - checkStart);
+            if (!allowed) {
                 httpResponse.setStatus(429); // Too Many Requests
                 httpResponse.getWriter().write("{\"error\": \"Rate limit exceeded\"}");
                 return;
@@ -56,13 +70,6 @@ public class RateLimitFilter implements Filter {
         chain.doFilter(request, response);
     }
     
-    private boolean isAllowed(String key, Route.RateLimit rateLimit) {
-        RateLimitBucket bucket = clientBuckets.computeIfAbsent(key, 
-            k -> new RateLimitBucket(rateLimit.getMax(), rateLimit.getWindowMs()));
-        
-        return bucket.tryConsume();
-    }
-    
     private String getClientId(HttpServletRequest request) {
         String xForwardedFor = request.getHeader("X-Forwarded-For");
         if (xForwardedFor != null && !xForwardedFor.isEmpty()) {
@@ -70,45 +77,4 @@ public class RateLimitFilter implements Filter {
         }
         return request.getRemoteAddr();
     }
-    
-    private Route findMatchingRoute(String requestPath) {
-        for (Route route : routes) {
-            String routePattern = route.getUrl().replace("*", "");
-            if (requestPath.startsWith(routePattern)) {
-                return route;
-            }
-        }
-        return null;
-    }
-    
-    private static class RateLimitBucket {
-        private final int maxRequests;
-        private final long windowMs;
-        private int requestCount;
-        private long windowStart;
-        
-        public RateLimitBucket(int maxRequests, long windowMs) {
-            this.maxRequests = maxRequests;
-            this.windowMs = windowMs;
-            this.windowStart = System.currentTimeMillis();
-            this.requestCount = 0;
-        }
-        
-        public synchronized boolean tryConsume() {
-            long now = System.currentTimeMillis();
-            
-            // Reset window if expired
-            if (now - windowStart >= windowMs) {
-                windowStart = now;
-                requestCount = 0;
-            }
-            
-            if (requestCount < maxRequests) {
-                requestCount++;
-                return true;
-            }
-            
-            return false;
-        }
-    }
 }
\ No newline at end of file
@@ -0,0 +1,348 @@
+package com.stockfellow.gateway.logging;
+
+import com.stockfellow.gateway.metrics.RequestTimings;
+import com.stockfellow.gateway.model.TokenInfo;
+import com.stockfellow.gateway.routing.RouteMatch;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Access log written off the request threads, one JSON object per line:
+ *
+ * <pre>{"ts":1760000000000,"method":"GET","path":"/api/groups/user","status":200,"duration_us":1834,
+ * "upstream_us":1502,"route":"/api/groups/**","client":"203.0.113.7","user":"8c4f2a6e-..."}</pre>
+ *
+ * Request threads copy field references into a preallocated slot of a ring
+ * buffer: a compare-and-set claims a sequence number and a store publishes it,
+ * so they never lock, wait or allocate. One writer thread formats published
+ * slots into a reused byte buffer and writes whole lines to stdout or
+ * {@code app.access-log.file}. When the ring is full the event is dropped and
+ * counted in {@code gateway.accesslog.dropped}; a slow disk costs log lines,
+ * never request latency.
+ *
+ * Query strings are left out, since they can carry tokens or personal data.
+ */
+@Component
+public class AsyncAccessLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncAccessLog.class);
+
+    // Longer values are cut, so a line always fits the write buffer
+    private static final int MAX_FIELD_CHARS = 1024;
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+    // Worst case per line: six string fields at their limit, every char escaped as \\uXXXX
+    private static final int MAX_LINE_BYTES = 6 * (6 * MAX_FIELD_CHARS + 16) + 256;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private final MeterRegistry meterRegistry;
+
+    // Off: LoggingFilter logs each request synchronously through SLF4J instead
+    @Value("${app.access-log.enabled:true}")
+    private boolean enabled;
+
+    // Events that may wait for the writer; rounded up to a power of two
+    @Value("${app.access-log.buffer-size:8192}")
+    private int bufferSize;
+
+    // Empty: stdout, next to the application log
+    @Value("${app.access-log.file:}")
+    private String file;
+
+    // How long the writer sleeps when the ring is empty
+    @Value("${app.access-log.idle-park-ms:1}")
+    private long idleParkMs;
+
+    private Event[] events;
+    private int mask;
+    // Sequence number stored in each slot once its event is complete
+    private AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong();
+    // Everything below this sequence has been written and its slot may be reused
+    private final AtomicLong consumed = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong written = new AtomicLong();
+
+    private Thread writerThread;
+    private volatile boolean running;
+    private OutputStream out;
+    private final byte[] buffer = new byte[WRITE_BUFFER_BYTES];
+    private int position;
+
+    public AsyncAccessLog(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        start(file == null || file.isEmpty() ? System.out : new FileOutputStream(file, true));
+    }
+
+    /** Allocates the ring and starts the writer on {@code out}; {@link #init()} passes stdout or the file. */
+    public void start(OutputStream out) {
+        int capacity = Integer.highestOneBit(Math.max(2, bufferSize - 1)) << 1;
+        events = new Event[capacity];
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            events[i] = new Event();
+            published.set(i, -1);
+        }
+        mask = capacity - 1;
+        this.out = out;
+        enabled = true;
+
+        FunctionCounter.builder("gateway.accesslog.dropped", dropped, LongAdder::sum).register(meterRegistry);
+        FunctionCounter.builder("gateway.accesslog.written", written, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("gateway.accesslog.pending", this, AsyncAccessLog::pending).register(meterRegistry);
+
+        running = true;
+        writerThread = new Thread(this::writeLoop, "access-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /** Writes what is still queued, then stops the writer. */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (writerThread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writerThread);
+        writerThread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues the request's access log line.
+     *
+     * @return false if the ring was full and the line was dropped
+     */
+    public boolean log(HttpServletRequest request, int status, RequestTimings timings) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed.get() >= events.length) {
+                dropped.increment();
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & mask;
+        Event event = events[slot];
+        event.timestamp = System.currentTimeMillis();
+        event.method = request.getMethod();
+        event.path = request.getRequestURI();
+        event.status = status;
+        event.durationNanos = timings.elapsedNanos();
+        event.upstreamNanos = timings.nanos(RequestTimings.Phase.UPSTREAM);
+        Object routeMatch = request.getAttribute(RouteMatch.ATTRIBUTE);
+        event.route = routeMatch instanceof RouteMatch ? ((RouteMatch) routeMatch).getPattern() : null;
+        // The first X-Forwarded-For entry is picked out by the writer, which is not in a hurry
+        event.forwardedFor = request.getHeader("X-Forwarded-For");
+        event.remoteAddr = request.getRemoteAddr();
+        Object tokenInfo = request.getAttribute(TokenInfo.ATTRIBUTE);
+        event.userId = tokenInfo instanceof TokenInfo ? ((TokenInfo) tokenInfo).getUserId() : null;
+        published.lazySet(slot, sequence);
+        return true;
+    }
+
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    public long pending() {
+        return claimed.get() - consumed.get();
+    }
+
+    private void writeLoop() {
+        long next = 0;
+        long idleParkNs = TimeUnit.MILLISECONDS.toNanos(idleParkMs);
+        while (true) {
+            int slot = (int) next & mask;
+            if (published.get(slot) == next) {
+                Event event = events[slot];
+                if (WRITE_BUFFER_BYTES - position < MAX_LINE_BYTES) {
+                    flush();
+                }
+                format(event);
+                event.clear();
+                consumed.lazySet(++next);
+                written.incrementAndGet();
+                continue;
+            }
+            if (next < claimed.get()) {
+                // Claimed but still being filled in, which takes a few nanoseconds
+                Thread.onSpinWait();
+                continue;
+            }
+            flush();
+            if (!running) {
+                // Lines may have been queued while the flush was writing
+                if (next < claimed.get()) {
+                    continue;
+                }
+                return;
+            }
+            LockSupport.parkNanos(idleParkNs);
+        }
+    }
+
+    private void flush() {
+        if (position == 0) {
+            return;
+        }
+        try {
+            out.write(buffer, 0, position);
+            out.flush();
+        } catch (IOException e) {
+            logger.warn("Failed to write access log: {}", e.getMessage());
+        }
+        position = 0;
+    }
+
+    private void format(Event event) {
+        append("{\"ts\":");
+        appendNumber(event.timestamp);
+        appendString(",\"method\":", event.method);
+        appendString(",\"path\":", event.path);
+        append(",\"status\":");
+        appendNumber(event.status);
+        append(",\"duration_us\":");
+        appendNumber(event.durationNanos / 1000);
+        if (event.upstreamNanos >= 0) {
+            append(",\"upstream_us\":");
+            appendNumber(event.upstreamNanos / 1000);
+        }
+        if (event.route != null) {
+            appendString(",\"route\":", event.route);
+        }
+        appendClient(event);
+        if (event.userId != null) {
+            appendString(",\"user\":", event.userId);
+        }
+        append("}\n");
+    }
+
+    private void appendClient(Event event) {
+        String forwardedFor = event.forwardedFor;
+        if (forwardedFor != null && !forwardedFor.isEmpty()) {
+            int comma = forwardedFor.indexOf(',');
+            int end = comma >= 0 ? comma : forwardedFor.length();
+            int start = 0;
+            while (start < end && forwardedFor.charAt(start) == ' ') {
+                start++;
+            }
+            while (end > start && forwardedFor.charAt(end - 1) == ' ') {
+                end--;
+            }
+            append(",\"client\":\"");
+            appendEscaped(forwardedFor, start, end);
+            buffer[position++] = '"';
+        } else if (event.remoteAddr != null) {
+            appendString(",\"client\":", event.remoteAddr);
+        }
+    }
+
+    private void appendString(String prefix, String value) {
+        append(prefix);
+        if (value == null) {
+            append("null");
+            return;
+        }
+        buffer[position++] = '"';
+        appendEscaped(value, 0, value.length());
+        buffer[position++] = '"';
+    }
+
+    // JSON string contents, ASCII only: anything else is written as a \\u escape
+    private void appendEscaped(String value, int start, int end) {
+        end = Math.min(end, start + MAX_FIELD_CHARS);
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer[position++] = '\\';
+                buffer[position++] = (byte) c;
+            } else if (c >= 0x20 && c < 0x7f) {
+                buffer[position++] = (byte) c;
+            } else {
+                buffer[position++] = '\\';
+                buffer[position++] = 'u';
+                buffer[position++] = HEX[(c >> 12) & 0xf];
+                buffer[position++] = HEX[(c >> 8) & 0xf];
+                buffer[position++] = HEX[(c >> 4) & 0xf];
+                buffer[position++] = HEX[c & 0xf];
+            }
+        }
+    }
+
+    // Only called with ASCII literals
+    private void append(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            buffer[position++] = (byte) literal.charAt(i);
+        }
+    }
+
+    private void appendNumber(long value) {
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int digitsStart = position;
+        do {
+            buffer[position++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        for (int i = digitsStart, j = position - 1; i < j; i++, j--) {
+            byte swap = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = swap;
+        }
+    }
+
+    /** One slot of the ring; written by a request thread, then read and cleared by the writer. */
+    private static final class Event {
+        long timestamp;
+        String method;
+        String path;
+        int status;
+        long durationNanos;
+        long upstreamNanos;
+        String route;
+        String forwardedFor;
+        String remoteAddr;
+        String userId;
+
+        // Drops references so a slot does not keep a finished request's strings alive
+        void clear() {
+            method = null;
+            path = null;
+            route = null;
+            forwardedFor = null;
+            remoteAddr = null;
+            userId = null;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.stockfellow.gateway.metrics;
+
+import com.stockfellow.gateway.routing.RouteTable;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+/**
+ * Latency histograms per matched route, published through the meter registry
+ * (scraped by Prometheus at {@code /actuator/prometheus} on the management port).
+ *
+ * {@code gateway.request.duration} is tagged with route pattern, method and
+ * status class; {@code gateway.request.phase} with route pattern and phase
+ * ({@link RequestTimings.Phase}), so phases do not multiply the series by every
+ * status and method. Both use the fixed buckets in {@code histogram-buckets-ms}.
+ */
+@Component
+public class RequestMetrics {
+
+    // Anything else is tagged OTHER, so clients cannot create series at will
+    private static final Set<String> METHODS = Set.of("GET", "POST", "PUT", "DELETE", "PATCH", "HEAD", "OPTIONS");
+
+    private final RouteTable routeTable;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.metrics.histogram-buckets-ms:5,10,25,50,100,250,500,1000,2500,5000,10000,30000}")
+    private long[] histogramBucketsMs;
+
+    private Duration[] buckets;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public RequestMetrics(RouteTable routeTable, MeterRegistry meterRegistry) {
+        this.routeTable = routeTable;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        buckets = new Duration[histogramBucketsMs.length];
+        for (int i = 0; i < histogramBucketsMs.length; i++) {
+            buckets[i] = Duration.ofMillis(histogramBucketsMs[i]);
+        }
+    }
+
+    /** Records a completed request: its total time and each phase it reached. */
+    public void record(HttpServletRequest request, int status, RequestTimings timings) {
+        String route = route(request);
+        String method = METHODS.contains(request.getMethod()) ? request.getMethod() : "OTHER";
+        String statusClass = status >= 100 && status < 600 ? (status / 100) + "xx" : "unknown";
+
+        timer("gateway.request.duration", route, method + ' ' + statusClass, builder -> builder
+                .tag("method", method)
+                .tag("status", statusClass))
+            .record(timings.elapsedNanos(), TimeUnit.NANOSECONDS);
+        for (RequestTimings.Phase phase : RequestTimings.Phase.values()) {
+            long nanos = timings.nanos(phase);
+            if (nanos >= 0) {
+                timer("gateway.request.phase", route, phase.metricName(), builder -> builder
+                        .tag("phase", phase.metricName()))
+                    .record(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private String route(HttpServletRequest request) {
+        String pattern = routeTable.match(request).getPattern();
+        return pattern != null ? pattern : "none";
+    }
+
+    // Cached, since building the tags for every request would cost more than recording
+    private Timer timer(String name, String route, String tagValues, UnaryOperator<Timer.Builder> tags) {
+        String key = name + ' ' + route + ' ' + tagValues;
+        Timer timer = timers.get(key);
+        if (timer != null) {
+            return timer;
+        }
+        return timers.computeIfAbsent(key, k -> tags.apply(Timer.builder(name)
+                .tag("route", route)
+                .serviceLevelObjectives(buckets))
+            .register(meterRegistry));
+    }
+}
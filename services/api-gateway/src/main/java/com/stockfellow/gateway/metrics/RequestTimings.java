@@ -0,0 +1,106 @@
+package com.stockfellow.gateway.metrics;
+
+import javax.servlet.ServletRequest;
+import java.util.Locale;
+
+/**
+ * Where one request's time went inside the gateway. Started by the logging
+ * filter, filled in by the auth and rate-limit filters and the proxy, and kept
+ * on the request under {@link #ATTRIBUTE}.
+ *
+ * The static helpers do nothing for requests that carry no timings, so filters
+ * and the proxy also work outside the full filter chain.
+ */
+public final class RequestTimings {
+
+    public static final String ATTRIBUTE = RequestTimings.class.getName();
+
+    public enum Phase {
+        // Token validation in AuthFilter
+        AUTH("auth"),
+        // Rate limit check in RateLimitFilter
+        RATE_LIMIT("ratelimit"),
+        // From sending the upstream request until its response headers arrive
+        UPSTREAM("upstream");
+
+        private final String metricName;
+
+        Phase(String metricName) {
+            this.metricName = metricName;
+        }
+
+        /** Name used for the phase tag and in Server-Timing. */
+        public String metricName() {
+            return metricName;
+        }
+    }
+
+    private final long startNanos;
+    // Written by the request thread or, for async proxying, the proxy I/O thread that finishes it
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private final boolean[] recorded = new boolean[Phase.values().length];
+
+    public RequestTimings(long startNanos) {
+        this.startNanos = startNanos;
+    }
+
+    public static RequestTimings start(ServletRequest request) {
+        RequestTimings timings = new RequestTimings(System.nanoTime());
+        request.setAttribute(ATTRIBUTE, timings);
+        return timings;
+    }
+
+    /** The request's timings, or null when it did not pass the logging filter. */
+    public static RequestTimings of(ServletRequest request) {
+        return (RequestTimings) request.getAttribute(ATTRIBUTE);
+    }
+
+    public static void record(ServletRequest request, Phase phase, long nanos) {
+        RequestTimings timings = of(request);
+        if (timings != null) {
+            timings.record(phase, nanos);
+        }
+    }
+
+    public synchronized void record(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()] += nanos;
+        recorded[phase.ordinal()] = true;
+    }
+
+    /** Time spent in the phase, or -1 if the request never reached it. */
+    public synchronized long nanos(Phase phase) {
+        return recorded[phase.ordinal()] ? phaseNanos[phase.ordinal()] : -1;
+    }
+
+    public long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Server-Timing header value for the phases so far, plus {@code total} for
+     * the time since the request arrived, in milliseconds.
+     */
+    public String serverTiming() {
+        StringBuilder value = new StringBuilder(96);
+        for (Phase phase : Phase.values()) {
+            long nanos = nanos(phase);
+            if (nanos >= 0) {
+                appendMetric(value, phase.metricName(), nanos);
+            }
+        }
+        appendMetric(value, "total", elapsedNanos());
+        return value.toString();
+    }
+
+    private static void appendMetric(StringBuilder value, String name, long nanos) {
+        if (value.length() > 0) {
+            value.append(", ");
+        }
+        value.append(name).append(";dur=").append(formatMillis(nanos));
+    }
+
+    /** Milliseconds with microsecond precision, as Server-Timing and X-Response-Time carry them. */
+    public static String formatMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+}
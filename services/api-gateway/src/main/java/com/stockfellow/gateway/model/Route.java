@@ -1,10 +1,17 @@
 package com.stockfellow.gateway.model;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 public class Route {
     private String url;
     private boolean auth;
     private RateLimit rateLimit;
     private Proxy proxy;
+    private ResponseCache responseCache;
+    private Coalescing coalescing;
+    private Hedging hedging;
 
     public Route() {}
 
@@ -15,6 +22,23 @@ public class Route {
         this.proxy = proxy;
     }
 
+    public Route(String url, boolean auth, RateLimit rateLimit, Proxy proxy, ResponseCache responseCache) {
+        this(url, auth, rateLimit, proxy);
+        this.responseCache = responseCache;
+    }
+
+    public Route(String url, boolean auth, RateLimit rateLimit, Proxy proxy, ResponseCache responseCache,
+            Coalescing coalescing) {
+        this(url, auth, rateLimit, proxy, responseCache);
+        this.coalescing = coalescing;
+    }
+
+    public Route(String url, boolean auth, RateLimit rateLimit, Proxy proxy, ResponseCache responseCache,
+            Coalescing coalescing, Hedging hedging) {
+        this(url, auth, rateLimit, proxy, responseCache, coalescing);
+        this.hedging = hedging;
+    }
+
     public String getUrl() { return url; }
     public void setUrl(String url) { this.url = url; }
     
@@ -26,6 +50,18 @@ public class Route {
     
     public Proxy getProxy() { return proxy; }
     public void setProxy(Proxy proxy) { this.proxy = proxy; }
+    
+    // Null means GET responses on this route are never cached
+    public ResponseCache getResponseCache() { return responseCache; }
+    public void setResponseCache(ResponseCache responseCache) { this.responseCache = responseCache; }
+    
+    // Null means concurrent identical GETs each go to the upstream
+    public Coalescing getCoalescing() { return coalescing; }
+    public void setCoalescing(Coalescing coalescing) { this.coalescing = coalescing; }
+    
+    // Null means a slow GET is waited out rather than hedged
+    public Hedging getHedging() { return hedging; }
+    public void setHedging(Hedging hedging) { this.hedging = hedging; }
 
     public static class RateLimit {
         private long windowMs;
@@ -48,6 +84,8 @@ public class Route {
     public static class Proxy {
         private String target;
         private boolean changeOrigin;
+        private ConnectionPool connectionPool;
+        private Isolation isolation;
         
         public Proxy() {}
         
@@ -56,11 +94,164 @@ public class Route {
             this.changeOrigin = changeOrigin;
         }
         
+        public Proxy(String target, boolean changeOrigin, ConnectionPool connectionPool) {
+            this.target = target;
+            this.changeOrigin = changeOrigin;
+            this.connectionPool = connectionPool;
+        }
+        
+        public Proxy(String target, boolean changeOrigin, ConnectionPool connectionPool, Isolation isolation) {
+            this(target, changeOrigin, connectionPool);
+            this.isolation = isolation;
+        }
+        
         public String getTarget() { return target; }
         public void setTarget(String target) { this.target = target; }
         
         public boolean isChangeOrigin() { return changeOrigin; }
         public void setChangeOrigin(boolean changeOrigin) { this.changeOrigin = changeOrigin; }
+        
+        // Null means the app.proxy.pool defaults
+        public ConnectionPool getConnectionPool() { return connectionPool; }
+        public void setConnectionPool(ConnectionPool connectionPool) { this.connectionPool = connectionPool; }
+        
+        // Null means the app.proxy.isolation defaults
+        public Isolation getIsolation() { return isolation; }
+        public void setIsolation(Isolation isolation) { this.isolation = isolation; }
     }
 
+    // Keep-alive connections to one upstream; routes sharing a target share the pool
+    public static class ConnectionPool {
+        private int maxConnections;
+        private int connectTimeoutMs;
+        private int readTimeoutMs;
+        
+        public ConnectionPool() {}
+        
+        public ConnectionPool(int maxConnections, int connectTimeoutMs, int readTimeoutMs) {
+            this.maxConnections = maxConnections;
+            this.connectTimeoutMs = connectTimeoutMs;
+            this.readTimeoutMs = readTimeoutMs;
+        }
+        
+        public int getMaxConnections() { return maxConnections; }
+        public void setMaxConnections(int maxConnections) { this.maxConnections = maxConnections; }
+        
+        public int getConnectTimeoutMs() { return connectTimeoutMs; }
+        public void setConnectTimeoutMs(int connectTimeoutMs) { this.connectTimeoutMs = connectTimeoutMs; }
+        
+        public int getReadTimeoutMs() { return readTimeoutMs; }
+        public void setReadTimeoutMs(int readTimeoutMs) { this.readTimeoutMs = readTimeoutMs; }
+    }
+
+    // Bulkhead and circuit breaker for one upstream; see UpstreamGuard in the resilience package
+    public static class Isolation {
+        private int maxConcurrent;
+        private int failureRateThreshold;
+        private long slowCallMs;
+        private String fallbackBody;
+        
+        public Isolation() {}
+        
+        public Isolation(int maxConcurrent, int failureRateThreshold, long slowCallMs) {
+            this.maxConcurrent = maxConcurrent;
+            this.failureRateThreshold = failureRateThreshold;
+            this.slowCallMs = slowCallMs;
+        }
+        
+        public Isolation(int maxConcurrent, int failureRateThreshold, long slowCallMs, String fallbackBody) {
+            this(maxConcurrent, failureRateThreshold, slowCallMs);
+            this.fallbackBody = fallbackBody;
+        }
+        
+        // Requests in flight to the upstream at once; more are rejected straight away
+        public int getMaxConcurrent() { return maxConcurrent; }
+        public void setMaxConcurrent(int maxConcurrent) { this.maxConcurrent = maxConcurrent; }
+        
+        // Percentage of failed calls in the window that opens the breaker
+        public int getFailureRateThreshold() { return failureRateThreshold; }
+        public void setFailureRateThreshold(int failureRateThreshold) { this.failureRateThreshold = failureRateThreshold; }
+        
+        // Calls slower than this count towards the slow-call threshold
+        public long getSlowCallMs() { return slowCallMs; }
+        public void setSlowCallMs(long slowCallMs) { this.slowCallMs = slowCallMs; }
+        
+        // JSON served with 200 to GETs the upstream could not answer; null means a 503/5xx error instead
+        public String getFallbackBody() { return fallbackBody; }
+        public void setFallbackBody(String fallbackBody) { this.fallbackBody = fallbackBody; }
+    }
+
+    // Gateway-side caching of GET responses; see ResponseCache in the cache package
+    public static class ResponseCache {
+        private long ttlMs;
+        private boolean perUser = true;
+        private List<String> paths = new ArrayList<>();
+        
+        public ResponseCache() {}
+        
+        public ResponseCache(long ttlMs, boolean perUser, String... paths) {
+            this.ttlMs = ttlMs;
+            this.perUser = perUser;
+            this.paths = new ArrayList<>(Arrays.asList(paths));
+        }
+        
+        public long getTtlMs() { return ttlMs; }
+        public void setTtlMs(long ttlMs) { this.ttlMs = ttlMs; }
+        
+        // Responses differ per caller, so entries are keyed by user id
+        public boolean isPerUser() { return perUser; }
+        public void setPerUser(boolean perUser) { this.perUser = perUser; }
+        
+        // Paths under the route that may be cached ("*" matches one segment); empty means all of them
+        public List<String> getPaths() { return paths; }
+        public void setPaths(List<String> paths) { this.paths = paths; }
+    }
+
+    // Concurrent identical GETs share one upstream call; see RequestCoalescer in the cache package
+    public static class Coalescing {
+        private boolean perUser = true;
+        private List<String> paths = new ArrayList<>();
+        
+        public Coalescing() {}
+        
+        public Coalescing(boolean perUser, String... paths) {
+            this.perUser = perUser;
+            this.paths = new ArrayList<>(Arrays.asList(paths));
+        }
+        
+        // Responses differ per caller, so only the same user's requests are shared
+        public boolean isPerUser() { return perUser; }
+        public void setPerUser(boolean perUser) { this.perUser = perUser; }
+        
+        // Paths under the route to coalesce ("*" matches one segment); empty means all of them
+        public List<String> getPaths() { return paths; }
+        public void setPaths(List<String> paths) { this.paths = paths; }
+    }
+
+    // A GET still unanswered after the route's recent latency percentile is sent again; see RequestHedger
+    public static class Hedging {
+        private int percentile;
+        private int budgetPercent;
+        private List<String> paths = new ArrayList<>();
+        
+        public Hedging() {}
+        
+        public Hedging(int percentile, int budgetPercent, String... paths) {
+            this.percentile = percentile;
+            this.budgetPercent = budgetPercent;
+            this.paths = new ArrayList<>(Arrays.asList(paths));
+        }
+        
+        // Percentile of recent response times to wait before sending the second request
+        public int getPercentile() { return percentile; }
+        public void setPercentile(int percentile) { this.percentile = percentile; }
+        
+        // Second requests allowed, as a percentage of the route's hedgeable requests
+        public int getBudgetPercent() { return budgetPercent; }
+        public void setBudgetPercent(int budgetPercent) { this.budgetPercent = budgetPercent; }
+        
+        // Paths under the route to hedge ("*" matches one segment); empty means all of them
+        public List<String> getPaths() { return paths; }
+        public void setPaths(List<String> paths) { this.paths = paths; }
+    }
 }
@@ -1,5 +1,6 @@
 package com.stockfellow.gateway.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import java.util.Map;
@@ -7,6 +8,10 @@ import java.util.Set;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class TokenInfo {
+
+    // Request attribute holding the validated token of an authenticated request
+    public static final String ATTRIBUTE = TokenInfo.class.getName();
+
     private boolean valid;
     private boolean expired;
     private String userId;
@@ -14,6 +19,8 @@ public class TokenInfo {
     private Set<String> roles;
     private long expiresIn; // seconds until expiry
     private Map<String, Object> claims;
+    // Joined once; cached tokens serve many requests
+    private volatile String rolesHeader;
     
     // Default constructor
     public TokenInfo() {}
@@ -123,6 +130,18 @@ public class TokenInfo {
     
     public void setRoles(Set<String> roles) {
         this.roles = roles;
+        this.rolesHeader = null;
+    }
+    
+    /** Roles as the comma-separated X-User-Roles header value, or null without roles. */
+    @JsonIgnore
+    public String getRolesHeader() {
+        String header = rolesHeader;
+        if (header == null && roles != null && !roles.isEmpty()) {
+            header = String.join(",", roles);
+            rolesHeader = header;
+        }
+        return header;
     }
     
     public long getExpiresIn() {
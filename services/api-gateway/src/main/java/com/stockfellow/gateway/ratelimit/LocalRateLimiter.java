@@ -0,0 +1,185 @@
+package com.stockfellow.gateway.ratelimit;
+
+import com.stockfellow.gateway.model.Route;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-process GCRA limiter. Limits apply per gateway instance, so it is used on
+ * its own only when a single instance runs, and otherwise as the fallback for
+ * {@link RedisRateLimiter} while Redis is unreachable.
+ *
+ * GCRA keeps one timestamp per key, the theoretical arrival time (TAT) of the
+ * next request. Each accepted request pushes it forward by
+ * {@code windowMs / max}; a request is rejected while the TAT is more than
+ * {@code windowMs} minus one interval ahead of now. This allows a burst of
+ * {@code max} and then a steady {@code max} per window, without the double
+ * burst a fixed window allows at its edges.
+ *
+ * Buckets are updated with a compare-and-set on the TAT. A bucket whose TAT has
+ * passed is indistinguishable from a new one, so such idle buckets are dropped
+ * by a periodic sweep without changing any decision. If the map still exceeds
+ * {@code maxBuckets}, arbitrary buckets are dropped down to 90% of capacity,
+ * which hands those clients a fresh burst.
+ */
+@Component
+public class LocalRateLimiter implements RateLimiter, MeterBinder {
+
+    private static final int DEFAULT_MAX_BUCKETS = 100_000;
+    private static final long IDLE_SWEEP_INTERVAL_NS = TimeUnit.SECONDS.toNanos(10);
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final ReentrantLock sweepLock = new ReentrantLock();
+    private final AtomicLong idleEvictions = new AtomicLong();
+    private final AtomicLong capacityEvictions = new AtomicLong();
+    // Bucket times are relative to this, so a new bucket's TAT of 0 is always in the past
+    private final long epoch = System.nanoTime();
+    private final int maxBuckets;
+    private volatile long nextIdleSweep = IDLE_SWEEP_INTERVAL_NS;
+
+    public LocalRateLimiter() {
+        this(DEFAULT_MAX_BUCKETS);
+    }
+
+    @Autowired
+    public LocalRateLimiter(@Value("${app.rate-limit.local.max-buckets:100000}") int maxBuckets) {
+        if (maxBuckets <= 0) {
+            throw new IllegalArgumentException("maxBuckets must be positive");
+        }
+        this.maxBuckets = maxBuckets;
+    }
+
+    @Override
+    public boolean tryAcquire(String key, Route.RateLimit rateLimit) {
+        long intervalNs = rateLimit.getWindowMs() * 1_000_000L / rateLimit.getMax();
+        long toleranceNs = rateLimit.getWindowMs() * 1_000_000L - intervalNs;
+        long now = System.nanoTime() - epoch;
+
+        while (true) {
+            boolean inserted = false;
+            Bucket bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new Bucket();
+                Bucket existing = buckets.putIfAbsent(key, bucket);
+                if (existing != null) {
+                    bucket = existing;
+                } else {
+                    inserted = true;
+                }
+            }
+
+            int result = bucket.tryAcquire(intervalNs, toleranceNs, now);
+            if (result != Bucket.EVICTED) {
+                if (inserted) {
+                    afterInsert(now);
+                }
+                return result == Bucket.ALLOWED;
+            }
+            // Lost a race with the sweeper; make sure the dead bucket is gone and retry
+            buckets.remove(key, bucket);
+        }
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    public long evictionCount() {
+        return idleEvictions.get() + capacityEvictions.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("gateway.ratelimit.buckets", buckets, Map::size).register(registry);
+        FunctionCounter.builder("gateway.ratelimit.buckets.evicted", idleEvictions, AtomicLong::get)
+                .tag("reason", "idle")
+                .register(registry);
+        FunctionCounter.builder("gateway.ratelimit.buckets.evicted", capacityEvictions, AtomicLong::get)
+                .tag("reason", "capacity")
+                .register(registry);
+    }
+
+    private void afterInsert(long now) {
+        if (buckets.size() > maxBuckets || now >= nextIdleSweep) {
+            sweep(now);
+        }
+    }
+
+    private void sweep(long now) {
+        // Another thread is already sweeping; let this insert overshoot briefly
+        if (!sweepLock.tryLock()) {
+            return;
+        }
+        try {
+            nextIdleSweep = now + IDLE_SWEEP_INTERVAL_NS;
+
+            Iterator<Bucket> it = buckets.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().evictIfIdle(now)) {
+                    it.remove();
+                    idleEvictions.incrementAndGet();
+                }
+            }
+
+            int target = Math.max(1, maxBuckets * 9 / 10);
+            it = buckets.values().iterator();
+            while (buckets.size() > target && it.hasNext()) {
+                it.next().evict();
+                it.remove();
+                capacityEvictions.incrementAndGet();
+            }
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    private static final class Bucket {
+        static final int REJECTED = 0;
+        static final int ALLOWED = 1;
+        static final int EVICTED = 2;
+
+        private static final long DEAD = Long.MAX_VALUE;
+        private static final AtomicLongFieldUpdater<Bucket> TAT =
+                AtomicLongFieldUpdater.newUpdater(Bucket.class, "tat");
+
+        private volatile long tat;
+
+        int tryAcquire(long intervalNs, long toleranceNs, long now) {
+            while (true) {
+                long current = tat;
+                if (current == DEAD) {
+                    return EVICTED;
+                }
+                long start = Math.max(current, now);
+                if (start - now > toleranceNs) {
+                    return REJECTED;
+                }
+                if (TAT.compareAndSet(this, current, start + intervalNs)) {
+                    return ALLOWED;
+                }
+            }
+        }
+
+        boolean evictIfIdle(long now) {
+            long current = tat;
+            return current <= now && TAT.compareAndSet(this, current, DEAD);
+        }
+
+        void evict() {
+            tat = DEAD;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.stockfellow.gateway.ratelimit;
+
+import com.stockfellow.gateway.model.Route;
+
+/**
+ * Decides whether one more request under {@code key} fits the route's
+ * {@link Route.RateLimit}: at most {@code max} requests per {@code windowMs}.
+ */
+public interface RateLimiter {
+
+    boolean tryAcquire(String key, Route.RateLimit rateLimit);
+}
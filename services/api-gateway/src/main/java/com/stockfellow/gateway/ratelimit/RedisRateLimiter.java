@@ -0,0 +1,163 @@
+package com.stockfellow.gateway.ratelimit;
+
+import com.stockfellow.gateway.model.Route;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * GCRA limiter shared by all gateway instances. Each check is one call of
+ * {@code scripts/gcra.lua}, which reads and advances the key's TAT atomically
+ * in Redis ({@code rate_limit:<key>}), so N instances enforce one limit rather
+ * than N of them.
+ *
+ * With {@code prefetch} above 1, a check reserves up to that many tokens at
+ * once and keeps the spares in a short-lived local lease, so a hot client only
+ * reaches Redis once per batch. Spares not used within {@code prefetch-ttl-ms}
+ * are dropped, which can only make the limit stricter.
+ *
+ * When Redis fails, checks go to a {@link LocalRateLimiter} (per-instance
+ * limits) and Redis is retried after {@code fallback-retry-ms}.
+ */
+@Component
+public class RedisRateLimiter implements RateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisRateLimiter.class);
+
+    static final String KEY_PREFIX = "rate_limit:";
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final LocalRateLimiter fallback;
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+
+    @Value("${app.rate-limit.redis.prefetch:1}")
+    private int prefetch;
+
+    @Value("${app.rate-limit.redis.prefetch-ttl-ms:1000}")
+    private long prefetchTtlMs;
+
+    @Value("${app.rate-limit.redis.fallback-retry-ms:5000}")
+    private long fallbackRetryMs;
+
+    private RedisScript<List> script;
+    private volatile long redisRetryAt;
+
+    private Counter redisChecks;
+    private Counter leaseHits;
+    private Counter fallbacks;
+
+    public RedisRateLimiter(RedisTemplate<String, String> redisTemplate,
+            LocalRateLimiter fallback,
+            MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.fallback = fallback;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        script = RedisScript.of(new ClassPathResource("scripts/gcra.lua"), List.class);
+
+        redisChecks = Counter.builder("gateway.ratelimit.checks").tag("source", "redis").register(meterRegistry);
+        leaseHits = Counter.builder("gateway.ratelimit.checks").tag("source", "lease").register(meterRegistry);
+        fallbacks = Counter.builder("gateway.ratelimit.checks").tag("source", "fallback").register(meterRegistry);
+        Gauge.builder("gateway.ratelimit.leases", leases, Map::size).register(meterRegistry);
+    }
+
+    @Override
+    public boolean tryAcquire(String key, Route.RateLimit rateLimit) {
+        long now = System.currentTimeMillis();
+
+        Lease lease = leases.get(key);
+        if (lease != null && lease.tryTake(now)) {
+            leaseHits.increment();
+            return true;
+        }
+
+        if (now < redisRetryAt) {
+            fallbacks.increment();
+            return fallback.tryAcquire(key, rateLimit);
+        }
+
+        long granted;
+        try {
+            granted = reserve(key, rateLimit, Math.min(prefetch, rateLimit.getMax()));
+            redisChecks.increment();
+        } catch (RuntimeException e) {
+            if (redisRetryAt == 0) {
+                logger.warn("Redis rate limiting unavailable, using per-instance limits: {}", e.getMessage());
+            }
+            redisRetryAt = now + fallbackRetryMs;
+            fallbacks.increment();
+            return fallback.tryAcquire(key, rateLimit);
+        }
+
+        if (redisRetryAt != 0) {
+            logger.info("Redis rate limiting restored");
+            redisRetryAt = 0;
+        }
+
+        if (granted > 1) {
+            leases.put(key, new Lease((int) granted - 1, now + prefetchTtlMs));
+        }
+        return granted > 0;
+    }
+
+    @Scheduled(fixedDelayString = "${app.rate-limit.redis.prefetch-ttl-ms:1000}")
+    public void evictExpiredLeases() {
+        long now = System.currentTimeMillis();
+        leases.values().removeIf(lease -> lease.expiresAt <= now);
+    }
+
+    private long reserve(String key, Route.RateLimit rateLimit, int tokens) {
+        double intervalMs = (double) rateLimit.getWindowMs() / rateLimit.getMax();
+        double toleranceMs = rateLimit.getWindowMs() - intervalMs;
+
+        List<?> result = redisTemplate.execute(script, Collections.singletonList(KEY_PREFIX + key),
+                Double.toString(intervalMs), Double.toString(toleranceMs), Integer.toString(Math.max(tokens, 1)));
+        if (result == null || result.isEmpty()) {
+            throw new IllegalStateException("Empty rate limit script result");
+        }
+        return ((Number) result.get(0)).longValue();
+    }
+
+    private static final class Lease {
+        private final AtomicInteger remaining;
+        private final long expiresAt;
+
+        Lease(int tokens, long expiresAt) {
+            this.remaining = new AtomicInteger(tokens);
+            this.expiresAt = expiresAt;
+        }
+
+        boolean tryTake(long now) {
+            if (now >= expiresAt) {
+                return false;
+            }
+            int left;
+            do {
+                left = remaining.get();
+                if (left <= 0) {
+                    return false;
+                }
+            } while (!remaining.compareAndSet(left, left - 1));
+            return true;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.stockfellow.gateway.registration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The downstream calls behind each {@link RegistrationJob.Step}. A call that
+ * returns normally succeeded; one that throws is retried, unless it throws
+ * {@link StepRejectedException}.
+ *
+ * Every call carries the step's {@code Idempotency-Key}. A 409 naming the
+ * job's own user id means the record already exists and counts as created (a
+ * 409 for an email held by another user does not), and the transaction
+ * service's sync is an upsert, so those two are safe to repeat; the
+ * notification service sends one notification per key.
+ */
+@Service
+public class ProvisioningClient {
+
+    static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${services.user-service.url}")
+    private String userServiceUrl;
+
+    @Value("${services.transaction-service.url}")
+    private String transactionServiceUrl;
+
+    @Value("${services.notification-service.url}")
+    private String notificationServiceUrl;
+
+    public ProvisioningClient(RestTemplate restTemplate, ObjectMapper objectMapper) {
+        this.restTemplate = restTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    public void provision(RegistrationJob job, RegistrationJob.Step step) {
+        switch (step) {
+            case USER_RECORD:
+                createUserRecord(job);
+                break;
+            case TRANSACTION_SYNC:
+                syncTransactionUser(job);
+                break;
+            case WELCOME_NOTIFICATION:
+                sendWelcomeNotification(job);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown step " + step);
+        }
+    }
+
+    private void createUserRecord(RegistrationJob job) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("userId", job.getUserId());
+        body.put("username", job.getUsername());
+        body.put("email", job.getEmail());
+        body.put("firstName", job.getFirstName());
+        body.put("lastName", job.getLastName());
+
+        ResponseEntity<Map> response = post(userServiceUrl + "/api/users/register", body, job,
+                RegistrationJob.Step.USER_RECORD);
+        // Created by an earlier attempt whose response was lost. The user service
+        // echoes the user id only for that conflict, not for an email already in use.
+        if (response.getStatusCodeValue() == HttpStatus.CONFLICT.value() && response.getBody() != null
+                && job.getUserId().equals(response.getBody().get("userId"))) {
+            return;
+        }
+        check("user-service", response);
+    }
+
+    private void syncTransactionUser(RegistrationJob job) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("userId", job.getUserId());
+        body.put("email", job.getEmail());
+        body.put("firstName", job.getFirstName());
+        body.put("lastName", job.getLastName());
+
+        check("transaction-service", post(transactionServiceUrl + "/api/users/sync", body, job,
+                RegistrationJob.Step.TRANSACTION_SYNC));
+    }
+
+    private void sendWelcomeNotification(RegistrationJob job) {
+        String name = job.getFirstName() != null && !job.getFirstName().isEmpty()
+                ? job.getFirstName() : job.getUsername();
+        Map<String, Object> body = new HashMap<>();
+        body.put("userId", job.getUserId());
+        body.put("type", "WELCOME");
+        body.put("title", "Welcome to StockFellow");
+        body.put("message", "Hi " + name + ", your account is ready. Join or start a stokvel group to begin saving.");
+        body.put("channel", "IN_APP");
+        body.put("priority", "NORMAL");
+
+        check("notification-service", post(notificationServiceUrl + "/api/notifications/send", body, job,
+                RegistrationJob.Step.WELCOME_NOTIFICATION));
+    }
+
+    private ResponseEntity<Map> post(String url, Map<String, Object> body, RegistrationJob job,
+                                     RegistrationJob.Step step) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("X-Gateway-Request", "true");
+        headers.set("X-Service-Auth", "gateway-service");
+        headers.set(IDEMPOTENCY_KEY, job.idempotencyKey(step));
+        try {
+            return restTemplate.postForEntity(url, new HttpEntity<>(body, headers), Map.class);
+        } catch (HttpStatusCodeException e) {
+            // The shared RestTemplate throws for 4xx and 5xx; classify them like any other answer
+            return ResponseEntity.status(e.getRawStatusCode()).body(errorBody(e));
+        }
+    }
+
+    private Map<?, ?> errorBody(HttpStatusCodeException e) {
+        try {
+            return objectMapper.readValue(e.getResponseBodyAsByteArray(), Map.class);
+        } catch (IOException notJson) {
+            return null;
+        }
+    }
+
+    private static void check(String service, ResponseEntity<?> response) {
+        int status = response.getStatusCodeValue();
+        if (status >= 200 && status < 300) {
+            return;
+        }
+        String message = service + " returned " + status;
+        // Anything but timeouts and throttling will be refused again
+        if (status >= 400 && status < 500 && status != 408 && status != 429) {
+            throw new StepRejectedException(message);
+        }
+        throw new IllegalStateException(message);
+    }
+
+    /** A call the service refused outright, which a retry would not change. */
+    public static class StepRejectedException extends RuntimeException {
+        public StepRejectedException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.stockfellow.gateway.registration;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Provisioning of one registered user in the downstream services, as kept in
+ * the {@link RegistrationJournal}. Each step is tracked, retried and finished
+ * on its own, once its prerequisite has completed.
+ */
+public class RegistrationJob {
+
+    public enum Step {
+        USER_RECORD(null),
+        // Both need the user to exist in the user service
+        TRANSACTION_SYNC(USER_RECORD),
+        WELCOME_NOTIFICATION(USER_RECORD);
+
+        private final Step prerequisite;
+
+        Step(Step prerequisite) {
+            this.prerequisite = prerequisite;
+        }
+
+        /** Step that must complete before this one runs, or null. */
+        public Step getPrerequisite() {
+            return prerequisite;
+        }
+    }
+
+    public enum Status {
+        PENDING,
+        COMPLETED,
+        FAILED
+    }
+
+    private String registrationId;
+    private String userId;
+    private String username;
+    private String email;
+    private String firstName;
+    private String lastName;
+    private long createdAt;
+    private Map<Step, StepState> steps = new EnumMap<>(Step.class);
+
+    public RegistrationJob() {}
+
+    public RegistrationJob(String registrationId, String userId, String username, String email,
+                           String firstName, String lastName, long createdAt) {
+        this.registrationId = registrationId;
+        this.userId = userId;
+        this.username = username;
+        this.email = email;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.createdAt = createdAt;
+        for (Step step : Step.values()) {
+            steps.put(step, new StepState());
+        }
+    }
+
+    /** Failed once any step has given up, completed once every step has succeeded. */
+    @JsonIgnore
+    public Status getStatus() {
+        boolean pending = false;
+        for (StepState state : steps.values()) {
+            if (state.getStatus() == Status.FAILED) {
+                return Status.FAILED;
+            }
+            pending |= state.getStatus() == Status.PENDING;
+        }
+        return pending ? Status.PENDING : Status.COMPLETED;
+    }
+
+    /** Latest time any step finished, or 0 while one is still pending. */
+    @JsonIgnore
+    public long getFinishedAt() {
+        long finishedAt = 0;
+        for (StepState state : steps.values()) {
+            if (state.getStatus() == Status.PENDING) {
+                return 0;
+            }
+            finishedAt = Math.max(finishedAt, state.getFinishedAt());
+        }
+        return finishedAt;
+    }
+
+    /** Sent with every attempt of a step, so a retry of a call that did get through is recognised. */
+    public String idempotencyKey(Step step) {
+        return registrationId + ":" + step.name().toLowerCase(Locale.ROOT);
+    }
+
+    public StepState step(Step step) {
+        return steps.get(step);
+    }
+
+    // Getters and setters
+    public String getRegistrationId() {
+        return registrationId;
+    }
+
+    public void setRegistrationId(String registrationId) {
+        this.registrationId = registrationId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public void setFirstName(String firstName) {
+        this.firstName = firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public void setLastName(String lastName) {
+        this.lastName = lastName;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Map<Step, StepState> getSteps() {
+        return steps;
+    }
+
+    public void setSteps(Map<Step, StepState> steps) {
+        this.steps = new EnumMap<>(steps);
+    }
+
+    public static class StepState {
+        private Status status = Status.PENDING;
+        private int attempts;
+        // Epoch millis; 0 runs the step as soon as a worker is free
+        private long nextAttemptAt;
+        private long finishedAt;
+        private String lastError;
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public void setStatus(Status status) {
+            this.status = status;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public void setAttempts(int attempts) {
+            this.attempts = attempts;
+        }
+
+        public long getNextAttemptAt() {
+            return nextAttemptAt;
+        }
+
+        public void setNextAttemptAt(long nextAttemptAt) {
+            this.nextAttemptAt = nextAttemptAt;
+        }
+
+        public long getFinishedAt() {
+            return finishedAt;
+        }
+
+        public void setFinishedAt(long finishedAt) {
+            this.finishedAt = finishedAt;
+        }
+
+        public String getLastError() {
+            return lastError;
+        }
+
+        public void setLastError(String lastError) {
+            this.lastError = lastError;
+        }
+    }
+}
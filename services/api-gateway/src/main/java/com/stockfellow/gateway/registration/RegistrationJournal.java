@@ -0,0 +1,122 @@
+package com.stockfellow.gateway.registration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Append-only file of {@link RegistrationJob} snapshots, one JSON object per
+ * line; the last line for a registration is its current state.
+ *
+ * Every change is appended (and, with {@code fsync}, forced to disk) before
+ * the step it records is acted on, so a restarted gateway picks up exactly the
+ * unfinished steps. A line cut short by a crash is skipped on replay.
+ * {@link #compact} rewrites the file with only the given jobs, through a
+ * temporary file that replaces it atomically.
+ *
+ * Not thread-safe; {@link RegistrationPipeline} serialises access.
+ */
+public class RegistrationJournal implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegistrationJournal.class);
+
+    private final Path file;
+    private final ObjectMapper objectMapper;
+    private final boolean fsync;
+    private FileChannel channel;
+    private long records;
+
+    public RegistrationJournal(Path file, ObjectMapper objectMapper, boolean fsync) {
+        this.file = file;
+        this.objectMapper = objectMapper;
+        this.fsync = fsync;
+    }
+
+    /** Reads the latest state of every job in the file, then opens it for appending. */
+    public Map<String, RegistrationJob> open() throws IOException {
+        Map<String, RegistrationJob> jobs = new LinkedHashMap<>();
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    records++;
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        RegistrationJob job = objectMapper.readValue(line, RegistrationJob.class);
+                        jobs.put(job.getRegistrationId(), job);
+                    } catch (IOException e) {
+                        logger.warn("Skipping unreadable registration journal line {}", records);
+                    }
+                }
+            }
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        return jobs;
+    }
+
+    public void append(RegistrationJob job) throws IOException {
+        write(channel, job);
+        if (fsync) {
+            channel.force(false);
+        }
+        records++;
+    }
+
+    /** Replaces the file with one line per job in {@code live}. */
+    public void compact(Collection<RegistrationJob> live) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (RegistrationJob job : live) {
+                write(out, job);
+            }
+            out.force(false);
+        }
+        channel.close();
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        records = live.size();
+    }
+
+    /** Lines in the file, including superseded ones. */
+    public long records() {
+        return records;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void write(FileChannel target, RegistrationJob job) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(job);
+        ByteBuffer line = ByteBuffer.allocate(json.length + 1).put(json).put((byte) '\n');
+        line.flip();
+        while (line.hasRemaining()) {
+            target.write(line);
+        }
+    }
+}
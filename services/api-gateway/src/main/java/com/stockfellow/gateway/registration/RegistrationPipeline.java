@@ -0,0 +1,379 @@
+package com.stockfellow.gateway.registration;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Downstream provisioning of newly registered users, run after the
+ * registration response has been sent.
+ *
+ * {@link #submit} records a {@link RegistrationJob} in the local
+ * {@link RegistrationJournal} and returns; its steps then run on
+ * {@code workers} threads. The user-service record goes first; once it is
+ * created, the transaction-service sync and welcome notification run
+ * concurrently, and if it fails they are skipped. A failed step is retried
+ * with exponential backoff and jitter, up to {@code max-attempts}; a step the
+ * service refuses outright fails at once. Jobs still pending when the gateway
+ * stops resume from the journal on the next start. Finished jobs can be
+ * looked up through {@link #status} for {@code status-retention-ms}, after
+ * which they are dropped and compacted out of the journal, together with the
+ * personal details they held.
+ *
+ * The journal is per instance: a job is only resumed by the gateway that
+ * accepted it. Its status, which holds no personal details, is also written
+ * to Redis as {@code registration_status:<id>} on every change, so any
+ * instance can answer for it.
+ *
+ * Step outcomes are counted in {@code gateway.registration.steps}, tagged by
+ * step and {@code completed}, {@code retried}, {@code failed} or
+ * {@code skipped}, and the number of unfinished jobs is
+ * {@code gateway.registration.pending}.
+ */
+@Service
+public class RegistrationPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegistrationPipeline.class);
+
+    static final String STATUS_PREFIX = "registration_status:";
+
+    private final ProvisioningClient provisioningClient;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    // Keep on a volume so pending provisioning survives a container restart
+    @Value("${app.registration.queue.file:data/registration-queue.jsonl}")
+    private String queueFile;
+
+    // Force each journal write to disk before acting on it
+    @Value("${app.registration.queue.fsync:true}")
+    private boolean fsync;
+
+    @Value("${app.registration.workers:4}")
+    private int workers;
+
+    @Value("${app.registration.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${app.registration.initial-backoff-ms:1000}")
+    private long initialBackoffMs;
+
+    @Value("${app.registration.max-backoff-ms:300000}")
+    private long maxBackoffMs;
+
+    @Value("${app.registration.status-retention-ms:86400000}")
+    private long statusRetentionMs;
+
+    // Superseded journal lines tolerated before the journal is rewritten
+    @Value("${app.registration.compact-after-records:10000}")
+    private long compactAfterRecords;
+
+    private final Map<String, RegistrationJob> jobs = new ConcurrentHashMap<>();
+    // Guards job state and the journal; downstream calls run outside it
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Counter> stepCounters = new ConcurrentHashMap<>();
+    private RegistrationJournal journal;
+    private ScheduledExecutorService executor;
+
+    public RegistrationPipeline(ProvisioningClient provisioningClient,
+            RedisTemplate<String, String> redisTemplate,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry) {
+        this.provisioningClient = provisioningClient;
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        journal = new RegistrationJournal(Paths.get(queueFile), objectMapper, fsync);
+        jobs.putAll(journal.open());
+
+        AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newScheduledThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "registration-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        int resumed = 0;
+        long now = System.currentTimeMillis();
+        for (RegistrationJob job : jobs.values()) {
+            boolean skipped = false;
+            for (RegistrationJob.Step step : RegistrationJob.Step.values()) {
+                RegistrationJob.StepState state = job.step(step);
+                if (state.getStatus() != RegistrationJob.Status.PENDING) {
+                    continue;
+                }
+                RegistrationJob.Status prerequisite = step.getPrerequisite() != null
+                        ? job.step(step.getPrerequisite()).getStatus()
+                        : RegistrationJob.Status.COMPLETED;
+                if (prerequisite == RegistrationJob.Status.COMPLETED) {
+                    schedule(job, step, Math.max(0, state.getNextAttemptAt() - now));
+                    resumed++;
+                } else if (prerequisite == RegistrationJob.Status.FAILED) {
+                    skip(job, step, now);
+                    skipped = true;
+                }
+                // Otherwise started once its prerequisite completes
+            }
+            if (skipped) {
+                journal.append(job);
+            }
+        }
+        if (resumed > 0) {
+            logger.info("Resumed {} pending registration steps from {}", resumed, queueFile);
+        }
+
+        Gauge.builder("gateway.registration.pending", jobs,
+                all -> all.values().stream().filter(job -> job.getStatus() == RegistrationJob.Status.PENDING).count())
+                .register(meterRegistry);
+        executor.scheduleWithFixedDelay(this::cleanUp, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /** Pending steps stay in the journal and run again on the next start. */
+    @PreDestroy
+    public void shutdown() throws IOException {
+        executor.shutdownNow();
+        lock.lock();
+        try {
+            journal.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records the provisioning of a user that now exists in Keycloak and starts
+     * its steps. The job is on disk when this returns.
+     */
+    public RegistrationJob submit(String userId, String username, String email, String firstName, String lastName) {
+        RegistrationJob job = new RegistrationJob(UUID.randomUUID().toString(), userId, username, email,
+                firstName, lastName, System.currentTimeMillis());
+        lock.lock();
+        try {
+            journal.append(job);
+            jobs.put(job.getRegistrationId(), job);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to record registration " + job.getRegistrationId(), e);
+        } finally {
+            lock.unlock();
+        }
+        publish(job);
+        for (RegistrationJob.Step step : RegistrationJob.Step.values()) {
+            if (step.getPrerequisite() == null) {
+                schedule(job, step, 0);
+            }
+        }
+        return job;
+    }
+
+    /**
+     * Overall and per-step progress of a registration, from this instance or, for
+     * one accepted elsewhere, from Redis; null once neither knows it.
+     *
+     * @throws StatusUnavailableException if the registration is not known here and
+     *         Redis cannot be asked
+     */
+    public Map<String, Object> status(String registrationId) {
+        RegistrationJob job = jobs.get(registrationId);
+        if (job != null) {
+            return view(job);
+        }
+        try {
+            String shared = redisTemplate.opsForValue().get(STATUS_PREFIX + registrationId);
+            return shared != null ? objectMapper.readValue(shared, new TypeReference<Map<String, Object>>() { }) : null;
+        } catch (Exception e) {
+            throw new StatusUnavailableException("Status of registration " + registrationId + " is unavailable", e);
+        }
+    }
+
+    private Map<String, Object> view(RegistrationJob job) {
+        lock.lock();
+        try {
+            Map<String, Object> steps = new LinkedHashMap<>();
+            for (RegistrationJob.Step step : RegistrationJob.Step.values()) {
+                RegistrationJob.StepState state = job.step(step);
+                Map<String, Object> view = new LinkedHashMap<>();
+                view.put("status", state.getStatus().name().toLowerCase(Locale.ROOT));
+                view.put("attempts", state.getAttempts());
+                if (state.getStatus() != RegistrationJob.Status.COMPLETED && state.getLastError() != null) {
+                    view.put("lastError", state.getLastError());
+                }
+                steps.put(step.name().toLowerCase(Locale.ROOT), view);
+            }
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("registrationId", job.getRegistrationId());
+            status.put("userId", job.getUserId());
+            status.put("status", job.getStatus().name().toLowerCase(Locale.ROOT));
+            status.put("steps", steps);
+            return status;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void schedule(RegistrationJob job, RegistrationJob.Step step, long delayMs) {
+        executor.schedule(() -> run(job, step), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Writes the job's status for other instances; a failure only costs them the answer
+    private void publish(RegistrationJob job) {
+        // One job's writes in order, each with its latest state
+        synchronized (job) {
+            try {
+                redisTemplate.opsForValue().set(STATUS_PREFIX + job.getRegistrationId(),
+                        objectMapper.writeValueAsString(view(job)), Duration.ofMillis(statusRetentionMs));
+            } catch (Exception e) {
+                logger.warn("Failed to share the status of registration {}: {}",
+                        job.getRegistrationId(), e.getMessage());
+            }
+        }
+    }
+
+    private void run(RegistrationJob job, RegistrationJob.Step step) {
+        String error = null;
+        boolean retryable = true;
+        try {
+            provisioningClient.provision(job, step);
+        } catch (ProvisioningClient.StepRejectedException e) {
+            error = e.getMessage();
+            retryable = false;
+        } catch (Exception e) {
+            error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        }
+
+        long retryInMs = -1;
+        String outcome;
+        List<RegistrationJob.Step> unblocked = new ArrayList<>();
+        lock.lock();
+        try {
+            RegistrationJob.StepState state = job.step(step);
+            long now = System.currentTimeMillis();
+            state.setAttempts(state.getAttempts() + 1);
+            state.setLastError(error);
+            if (error == null) {
+                state.setStatus(RegistrationJob.Status.COMPLETED);
+                state.setFinishedAt(now);
+                outcome = "completed";
+            } else if (!retryable || state.getAttempts() >= maxAttempts) {
+                state.setStatus(RegistrationJob.Status.FAILED);
+                state.setFinishedAt(now);
+                outcome = "failed";
+            } else {
+                retryInMs = backoffMs(state.getAttempts());
+                state.setNextAttemptAt(now + retryInMs);
+                outcome = "retried";
+            }
+            for (RegistrationJob.Step dependent : RegistrationJob.Step.values()) {
+                if (dependent.getPrerequisite() != step
+                        || job.step(dependent).getStatus() != RegistrationJob.Status.PENDING) {
+                    continue;
+                }
+                if (state.getStatus() == RegistrationJob.Status.COMPLETED) {
+                    unblocked.add(dependent);
+                } else if (state.getStatus() == RegistrationJob.Status.FAILED) {
+                    skip(job, dependent, now);
+                }
+            }
+            try {
+                journal.append(job);
+            } catch (IOException e) {
+                // Still right in memory; after a restart the step may run again, which its idempotency key allows
+                logger.error("Failed to record registration step {} for {}", step, job.getRegistrationId(), e);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        stepCounter(step, outcome).increment();
+        publish(job);
+        for (RegistrationJob.Step dependent : unblocked) {
+            schedule(job, dependent, 0);
+        }
+        if (retryInMs >= 0) {
+            logger.warn("Registration step {} for user {} failed, retrying in {}ms: {}",
+                    step, job.getUserId(), retryInMs, error);
+            schedule(job, step, retryInMs);
+        } else if (error != null) {
+            logger.error("Registration step {} for user {} gave up: {}", step, job.getUserId(), error);
+        }
+    }
+
+    // Fails a step whose prerequisite failed, without running it; called holding the lock
+    private void skip(RegistrationJob job, RegistrationJob.Step step, long now) {
+        RegistrationJob.StepState state = job.step(step);
+        state.setStatus(RegistrationJob.Status.FAILED);
+        state.setFinishedAt(now);
+        state.setLastError("Skipped: " + step.getPrerequisite().name().toLowerCase(Locale.ROOT) + " failed");
+        stepCounter(step, "skipped").increment();
+    }
+
+    // Exponential with equal jitter, so retries after an outage do not arrive together
+    private long backoffMs(int attempts) {
+        long ceiling = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempts - 1, 30));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    private void cleanUp() {
+        long cutoff = System.currentTimeMillis() - statusRetentionMs;
+        lock.lock();
+        try {
+            jobs.values().removeIf(job -> {
+                long finishedAt = job.getFinishedAt();
+                return finishedAt > 0 && finishedAt < cutoff;
+            });
+            if (journal.records() > Math.max(compactAfterRecords, 2L * jobs.size())) {
+                journal.compact(new ArrayList<>(jobs.values()));
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to compact the registration journal", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Counter stepCounter(RegistrationJob.Step step, String outcome) {
+        String stepName = step.name().toLowerCase(Locale.ROOT);
+        return stepCounters.computeIfAbsent(stepName + ":" + outcome, key -> Counter.builder("gateway.registration.steps")
+                .tag("step", stepName)
+                .tag("outcome", outcome)
+                .register(meterRegistry));
+    }
+
+    /** The status of a registration accepted by another instance cannot be read from Redis. */
+    public static class StatusUnavailableException extends RuntimeException {
+        public StatusUnavailableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.stockfellow.gateway.resilience;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Vegas-style concurrency limit for one upstream, learned from response times.
+ *
+ * The lowest response time seen stands for the upstream with no queue. From a
+ * sample's response time {@code rtt}, the requests queued at the upstream are
+ * estimated as {@code limit * (1 - noLoadRtt / rtt)}. Below {@code 3 * step}
+ * queued requests the limit grows, above {@code 6 * step} it shrinks, so
+ * in-flight requests settle just past what the upstream serves without
+ * queueing. The step is {@code log10(limit)}, at least 1.
+ * A failed call shrinks the limit. Samples taken while fewer than half of the
+ * limit were in flight only ever shrink it, since they say nothing about how
+ * far the upstream could go.
+ *
+ * The no-load time is renewed every {@code probeIntervalMs} from a call made
+ * with at most {@code minLimit} in flight, so an upstream that became slower
+ * for good is not compared against a stale best. Taking it from a loaded call
+ * instead would count the queue as the new baseline and ratchet the limit up.
+ * If the upstream stays busy past the interval, admissions are held to
+ * {@code minLimit} until such a call completes, which takes a few response
+ * times. Critical requests keep the reserve they have over normal ones on
+ * top of that.
+ *
+ * Each {@link RequestPriority} may fill its own share of the limit; requests
+ * over their share are shed.
+ *
+ * {@link RequestPriority#BULK} calls take their share of the limit but are
+ * left out of the estimate: they give no samples and are not counted in the
+ * in-flight numbers samples and probes go by. Exports and reports are slow by
+ * design, and their times would read as a queue and drive the limit down for
+ * every other call. No new bulk call is admitted while probing.
+ */
+public final class AdaptiveConcurrencyLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double normalShare;
+    private final double bulkShare;
+    private final long probeIntervalNs;
+    private final LongSupplier nanoClock;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger bulkInFlight = new AtomicInteger();
+    // Read without the lock by tryAcquire
+    private volatile int limit;
+    private volatile boolean probing;
+
+    private double estimatedLimit;
+    private long noLoadRttNs;
+    private long nextProbeAt;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit,
+            double normalShare, double bulkShare, long probeIntervalMs) {
+        this(initialLimit, minLimit, maxLimit, normalShare, bulkShare, probeIntervalMs, System::nanoTime);
+    }
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit,
+            double normalShare, double bulkShare, long probeIntervalMs, LongSupplier nanoClock) {
+        if (minLimit <= 0 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 0 < minLimit <= maxLimit");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.normalShare = normalShare;
+        this.bulkShare = bulkShare;
+        this.probeIntervalNs = probeIntervalMs * 1_000_000L;
+        this.nanoClock = nanoClock;
+        this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.limit = (int) estimatedLimit;
+        this.nextProbeAt = nanoClock.getAsLong() + probeIntervalNs;
+    }
+
+    /** Takes an in-flight slot unless the priority's share of the limit is used up. */
+    public boolean tryAcquire(RequestPriority priority) {
+        boolean bulk = priority == RequestPriority.BULK;
+        if (bulk && probing) {
+            return false;
+        }
+        int allowed = allowed(priority);
+        while (true) {
+            int current = inFlight.get();
+            // A probe waits for the calls in the estimate to drain, so it holds those alone
+            int counted = probing ? current - bulkInFlight.get() : current;
+            if (counted >= allowed) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                if (bulk) {
+                    bulkInFlight.incrementAndGet();
+                }
+                return true;
+            }
+        }
+    }
+
+    public void release(RequestPriority priority) {
+        if (priority == RequestPriority.BULK) {
+            bulkInFlight.decrementAndGet();
+        }
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Adjusts the limit after a call.
+     *
+     * @param priority the priority the call was admitted with
+     * @param rttNs    the call's response time
+     * @param inFlight {@link #inFlight()} when the call was admitted, itself included
+     * @param failed   whether the call failed or timed out
+     */
+    public synchronized void onSample(RequestPriority priority, long rttNs, int inFlight, boolean failed) {
+        if (rttNs <= 0) {
+            return;
+        }
+        // A failure's response time says nothing about the queue; a refused connection is fast
+        if (failed) {
+            setLimit(estimatedLimit - log10(estimatedLimit));
+            return;
+        }
+        if (priority == RequestPriority.BULK) {
+            return;
+        }
+        long now = nanoClock.getAsLong();
+        if (inFlight <= minLimit && (probing || now >= nextProbeAt)) {
+            noLoadRttNs = rttNs;
+            nextProbeAt = now + probeIntervalNs;
+            probing = false;
+            return;
+        }
+        if (!probing && now >= nextProbeAt) {
+            probing = true;
+        }
+        if (probing) {
+            return;
+        }
+        if (noLoadRttNs == 0 || rttNs < noLoadRttNs) {
+            noLoadRttNs = rttNs;
+            return;
+        }
+
+        double step = log10(estimatedLimit);
+        double queued = Math.ceil(estimatedLimit * (1 - (double) noLoadRttNs / rttNs));
+        if (queued > 6 * step) {
+            setLimit(estimatedLimit - step);
+        } else if (inFlight * 2 < estimatedLimit) {
+            return;
+        } else if (queued <= step) {
+            setLimit(estimatedLimit + 6 * step);
+        } else if (queued < 3 * step) {
+            setLimit(estimatedLimit + step);
+        }
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    /** Calls in flight that count for the estimate, which leaves out bulk ones. */
+    public int inFlight() {
+        return inFlight.get() - bulkInFlight.get();
+    }
+
+    private int allowed(RequestPriority priority) {
+        int current = limit;
+        if (probing) {
+            return priority == RequestPriority.CRITICAL
+                    ? minLimit + Math.max(1, current - (int) (current * normalShare))
+                    : minLimit;
+        }
+        switch (priority) {
+            case CRITICAL:
+                return current;
+            case BULK:
+                return Math.max(1, (int) (current * bulkShare));
+            default:
+                return Math.max(1, (int) (current * normalShare));
+        }
+    }
+
+    private void setLimit(double newLimit) {
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+
+    private static double log10(double limit) {
+        return Math.max(1, Math.floor(Math.log10(limit)));
+    }
+}
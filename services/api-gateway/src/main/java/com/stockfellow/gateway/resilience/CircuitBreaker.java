@@ -0,0 +1,179 @@
+package com.stockfellow.gateway.resilience;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Count-based circuit breaker for one upstream.
+ *
+ * The outcomes of the last {@code windowSize} calls are kept in a ring. Once
+ * at least {@code minimumCalls} are recorded, the breaker opens when the share
+ * of failed calls reaches {@code failureRateThreshold} percent, or the share of
+ * calls slower than {@code slowCallMs} reaches {@code slowCallRateThreshold}
+ * percent. While open, calls are refused. After {@code openMs} the next
+ * {@code halfOpenCalls} calls are let through as trials: one failed or slow
+ * trial opens the breaker again, and all of them succeeding closes it with an
+ * empty window.
+ */
+public final class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long slowCallNs;
+    private final long openNs;
+    private final int halfOpenCalls;
+    private final LongSupplier nanoClock;
+
+    private final byte[] outcomes;
+    private int next;
+    private int recorded;
+    private int failures;
+    private int slowCalls;
+
+    // Read without the lock on the closed fast path
+    private volatile State state = State.CLOSED;
+    private long openedAt;
+    private int trialsLeft;
+    private int trialSuccesses;
+
+    public CircuitBreaker(int windowSize, int minimumCalls, int failureRateThreshold, int slowCallRateThreshold,
+            long slowCallMs, long openMs, int halfOpenCalls) {
+        this(windowSize, minimumCalls, failureRateThreshold, slowCallRateThreshold, slowCallMs, openMs,
+                halfOpenCalls, System::nanoTime);
+    }
+
+    public CircuitBreaker(int windowSize, int minimumCalls, int failureRateThreshold, int slowCallRateThreshold,
+            long slowCallMs, long openMs, int halfOpenCalls, LongSupplier nanoClock) {
+        if (windowSize <= 0 || halfOpenCalls <= 0) {
+            throw new IllegalArgumentException("windowSize and halfOpenCalls must be positive");
+        }
+        this.outcomes = new byte[windowSize];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, windowSize));
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNs = slowCallMs * 1_000_000L;
+        this.openNs = openMs * 1_000_000L;
+        this.halfOpenCalls = halfOpenCalls;
+        this.nanoClock = nanoClock;
+    }
+
+    /** Whether a call may go to the upstream now; a true in half-open state uses up one trial. */
+    public boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        synchronized (this) {
+            if (state == State.OPEN) {
+                if (nanoClock.getAsLong() - openedAt < openNs) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialsLeft = halfOpenCalls;
+                trialSuccesses = 0;
+            }
+            if (state == State.HALF_OPEN) {
+                if (trialsLeft == 0) {
+                    return false;
+                }
+                trialsLeft--;
+            }
+            return true;
+        }
+    }
+
+    /** Records the outcome of a call that {@link #tryAcquire()} let through. */
+    public synchronized void record(long durationNs, boolean failed) {
+        boolean slow = durationNs >= slowCallNs;
+        switch (state) {
+            case HALF_OPEN:
+                if (failed || slow) {
+                    open();
+                } else if (++trialSuccesses >= halfOpenCalls) {
+                    close();
+                }
+                return;
+            case OPEN:
+                // Admitted before the breaker opened; the window no longer matters
+                return;
+            default:
+                add((byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0)));
+                if (recorded >= minimumCalls
+                        && (failures * 100 >= failureRateThreshold * recorded
+                            || slowCalls * 100 >= slowCallRateThreshold * recorded)) {
+                    open();
+                }
+        }
+    }
+
+    /** Gives back a call {@link #tryAcquire()} let through that ended without an outcome. */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN && trialsLeft < halfOpenCalls) {
+            trialsLeft++;
+        }
+    }
+
+    public State state() {
+        return state;
+    }
+
+    /** Milliseconds until an open breaker lets trial calls through, 0 otherwise. */
+    public synchronized long retryAfterMs() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, (openedAt + openNs - nanoClock.getAsLong()) / 1_000_000L);
+    }
+
+    public synchronized float failureRate() {
+        return recorded == 0 ? 0 : failures * 100f / recorded;
+    }
+
+    public synchronized float slowCallRate() {
+        return recorded == 0 ? 0 : slowCalls * 100f / recorded;
+    }
+
+    public synchronized int bufferedCalls() {
+        return recorded;
+    }
+
+    private void add(byte outcome) {
+        if (recorded == outcomes.length) {
+            byte evicted = outcomes[next];
+            if ((evicted & FAILED) != 0) {
+                failures--;
+            }
+            if ((evicted & SLOW) != 0) {
+                slowCalls--;
+            }
+        } else {
+            recorded++;
+        }
+        outcomes[next] = outcome;
+        next = (next + 1) % outcomes.length;
+        if ((outcome & FAILED) != 0) {
+            failures++;
+        }
+        if ((outcome & SLOW) != 0) {
+            slowCalls++;
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = nanoClock.getAsLong();
+        trialsLeft = 0;
+    }
+
+    private void close() {
+        next = 0;
+        recorded = 0;
+        failures = 0;
+        slowCalls = 0;
+        state = State.CLOSED;
+    }
+}
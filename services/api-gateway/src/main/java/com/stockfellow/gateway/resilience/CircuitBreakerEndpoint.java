@@ -0,0 +1,27 @@
+package com.stockfellow.gateway.resilience;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * {@code /actuator/circuitbreakers}: breaker state, failure and slow-call rates,
+ * bulkhead usage and rejection counts for each upstream.
+ */
+@Component
+@Endpoint(id = "circuitbreakers")
+public class CircuitBreakerEndpoint {
+
+    private final UpstreamGuard upstreamGuard;
+
+    public CircuitBreakerEndpoint(UpstreamGuard upstreamGuard) {
+        this.upstreamGuard = upstreamGuard;
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, Object>> circuitBreakers() {
+        return upstreamGuard.snapshot();
+    }
+}
@@ -0,0 +1,317 @@
+package com.stockfellow.gateway.resilience;
+
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.routing.PathPattern;
+import com.stockfellow.gateway.routing.RouteTable;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/**
+ * Hedged GETs on routes with a {@link Route.Hedging}.
+ *
+ * Each call is sent once; if it has not answered within the route's configured
+ * percentile of recent upstream latency, a second identical call is sent. The
+ * caller sends it on a connection of its own (and so, behind a load-balanced
+ * service address, usually to another instance). Whichever succeeds first is
+ * used and the other is cancelled; a response the caller does not count as a
+ * success, such as a 5xx, only wins when the other call fails too. Until
+ * {@code min-samples} calls have been seen the percentile is unknown and
+ * nothing is hedged.
+ *
+ * Second calls are capped by a per-route budget: every hedgeable call earns
+ * {@code budgetPercent} hundredths of a hedge, up to {@code max-burst} hedges
+ * saved, so a slow upstream gets at most that share of extra load.
+ */
+@Component
+public class RequestHedger {
+
+    private final RouteTable routeTable;
+    private final MeterRegistry meterRegistry;
+
+    // Off: hedging policies on routes are ignored
+    @Value("${app.proxy.hedging.enabled:true}")
+    private boolean enabled;
+
+    // Recent calls per route the percentile is taken over
+    @Value("${app.proxy.hedging.window-size:1000}")
+    private int windowSize;
+
+    // Calls seen before the percentile is trusted
+    @Value("${app.proxy.hedging.min-samples:100}")
+    private int minSamples;
+
+    // Floor for the hedge delay, so fast upstreams are not hedged on noise
+    @Value("${app.proxy.hedging.min-delay-ms:5}")
+    private long minDelayMs;
+
+    // Hedges a route can save up while its upstream is healthy
+    @Value("${app.proxy.hedging.max-burst:10}")
+    private int maxBurst;
+
+    private final Map<Route, Policy> policies = new IdentityHashMap<>();
+
+    public RequestHedger(RouteTable routeTable, MeterRegistry meterRegistry) {
+        this.routeTable = routeTable;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        for (Route route : routeTable.routes()) {
+            if (route.getHedging() != null) {
+                policies.put(route, new Policy(route, this));
+            }
+        }
+    }
+
+    /** Starts one call; {@code hedge} is true for the second one. */
+    @FunctionalInterface
+    public interface Attempt<T> {
+        CompletableFuture<T> start(boolean hedge);
+    }
+
+    /** Whether GETs of this path on this route may be sent twice. */
+    public boolean isHedged(Route route, String path) {
+        Policy policy = policies.get(route);
+        return policy != null && PathPattern.matchesAny(policy.paths, path);
+    }
+
+    /** Current wait before a second call, or -1 while there are too few samples. */
+    public long hedgeDelayNanos(Route route) {
+        Policy policy = policies.get(route);
+        return policy != null ? policy.window.percentileNanos() : -1;
+    }
+
+    /**
+     * Starts {@code attempt} and, if it is still running after the hedge delay
+     * and the budget allows, starts it again, returning the first successful
+     * result. Each attempt must release what it holds when its future is
+     * cancelled. Fails only when every attempt started has failed.
+     *
+     * @param succeeded whether a result may win over a call still running;
+     *                  when neither call succeeds, a result is still preferred
+     *                  over an error
+     */
+    public <T> T execute(Route route, Attempt<T> attempt, Predicate<T> succeeded) {
+        Policy policy = policies.get(route);
+        policy.budget.deposit();
+        CompletableFuture<T> primary = timed(policy, attempt, false);
+
+        long delayNanos = policy.window.percentileNanos();
+        if (delayNanos < 0) {
+            return await(primary);
+        }
+        try {
+            return primary.get(delayNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // Still running: hedge below
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            primary.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for an upstream call", e);
+        }
+
+        if (!policy.budget.tryWithdraw()) {
+            policy.budgetExhausted.increment();
+            return await(primary);
+        }
+        CompletableFuture<T> hedge;
+        try {
+            hedge = timed(policy, attempt, true);
+        } catch (UpstreamRejectedException e) {
+            // The upstream's limits say no more load; the first call may still answer
+            policy.rejected.increment();
+            return await(primary);
+        }
+        policy.hedged.increment();
+
+        try {
+            T result = await(firstSuccessful(primary, hedge, succeeded));
+            if (!hedge.isCompletedExceptionally() && result == hedge.getNow(null)) {
+                policy.hedgeWon.increment();
+            }
+            return result;
+        } finally {
+            primary.cancel(true);
+            hedge.cancel(true);
+        }
+    }
+
+    // Starts an attempt and adds its time to the window when it completes or is cancelled
+    private static <T> CompletableFuture<T> timed(Policy policy, Attempt<T> attempt, boolean hedge) {
+        long start = System.nanoTime();
+        CompletableFuture<T> call = attempt.start(hedge);
+        call.whenComplete((result, error) -> policy.window.add(System.nanoTime() - start));
+        return call;
+    }
+
+    private static <T> CompletableFuture<T> firstSuccessful(CompletableFuture<T> first, CompletableFuture<T> second,
+            Predicate<T> succeeded) {
+        CompletableFuture<T> winner = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        AtomicReference<T> failedResult = new AtomicReference<>();
+        for (CompletableFuture<T> call : Arrays.asList(first, second)) {
+            call.whenComplete((result, error) -> {
+                if (error == null && succeeded.test(result)) {
+                    winner.complete(result);
+                    return;
+                }
+                if (error == null) {
+                    failedResult.compareAndSet(null, result);
+                }
+                if (failures.incrementAndGet() == 2) {
+                    // Both failed: the upstream's own answer tells the client more than an exception
+                    T answer = failedResult.get();
+                    if (answer != null) {
+                        winner.complete(answer);
+                    } else {
+                        winner.completeExceptionally(error);
+                    }
+                }
+            });
+        }
+        return winner;
+    }
+
+    private static <T> T await(CompletableFuture<T> call) {
+        try {
+            return call.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            call.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for an upstream call", e);
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable cause) {
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof RuntimeException ? (RuntimeException) cause : new CompletionException(cause);
+    }
+
+    private static final class Policy {
+        private final PathPattern[] paths;
+        private final LatencyWindow window;
+        private final Budget budget;
+        private final Counter hedged;
+        private final Counter hedgeWon;
+        private final Counter budgetExhausted;
+        private final Counter rejected;
+
+        Policy(Route route, RequestHedger hedger) {
+            Route.Hedging hedging = route.getHedging();
+            paths = PathPattern.compileAll(hedging.getPaths());
+            window = new LatencyWindow(hedger.windowSize, hedger.minSamples, hedging.getPercentile(),
+                    TimeUnit.MILLISECONDS.toNanos(hedger.minDelayMs));
+            budget = new Budget(hedging.getBudgetPercent(), hedger.maxBurst);
+
+            MeterRegistry registry = hedger.meterRegistry;
+            hedged = counter(registry, route, "hedged");
+            hedgeWon = counter(registry, route, "hedge_won");
+            budgetExhausted = counter(registry, route, "budget_exhausted");
+            rejected = counter(registry, route, "rejected");
+            Gauge.builder("gateway.hedging.delay", window, w -> w.percentileNanos() / 1_000_000.0)
+                    .tag("route", route.getUrl())
+                    .baseUnit("milliseconds")
+                    .register(registry);
+        }
+
+        private static Counter counter(MeterRegistry registry, Route route, String outcome) {
+            return Counter.builder("gateway.hedging.requests")
+                    .tag("route", route.getUrl()).tag("outcome", outcome)
+                    .register(registry);
+        }
+    }
+
+    /**
+     * The last {@code size} call times of a route. The percentile is recomputed
+     * every tenth of a window rather than per call, since it needs a sort.
+     */
+    static final class LatencyWindow {
+        private final long[] samples;
+        private final int minSamples;
+        private final int percentile;
+        private final long floorNanos;
+        private final int recomputeEvery;
+        private int next;
+        private long count;
+        private volatile long percentileNanos = -1;
+
+        LatencyWindow(int size, int minSamples, int percentile, long floorNanos) {
+            this.samples = new long[Math.max(1, size)];
+            this.minSamples = Math.max(1, Math.min(minSamples, samples.length));
+            this.percentile = Math.max(1, Math.min(100, percentile));
+            this.floorNanos = floorNanos;
+            this.recomputeEvery = Math.max(1, samples.length / 10);
+        }
+
+        synchronized void add(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            count++;
+            if (count >= minSamples && (count == minSamples || count % recomputeEvery == 0)) {
+                int filled = (int) Math.min(count, samples.length);
+                long[] sorted = Arrays.copyOf(samples, filled);
+                Arrays.sort(sorted);
+                int rank = (int) Math.ceil(percentile / 100.0 * filled) - 1;
+                percentileNanos = Math.max(floorNanos, sorted[Math.max(0, rank)]);
+            }
+        }
+
+        long percentileNanos() {
+            return percentileNanos;
+        }
+    }
+
+    /** Hedges earned per call, in hundredths of a hedge. */
+    static final class Budget {
+        private final long earnPerCall;
+        private final long capacity;
+        private final AtomicLong balance = new AtomicLong();
+
+        Budget(int percent, int maxBurst) {
+            this.earnPerCall = Math.max(0, percent);
+            this.capacity = 100L * Math.max(1, maxBurst);
+        }
+
+        void deposit() {
+            balance.getAndUpdate(current -> Math.min(capacity, current + earnPerCall));
+        }
+
+        boolean tryWithdraw() {
+            long current;
+            do {
+                current = balance.get();
+                if (current < 100) {
+                    return false;
+                }
+            } while (!balance.compareAndSet(current, current - 100));
+            return true;
+        }
+    }
+}
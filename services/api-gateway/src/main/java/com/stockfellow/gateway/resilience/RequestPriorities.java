@@ -0,0 +1,31 @@
+package com.stockfellow.gateway.resilience;
+
+import com.stockfellow.gateway.routing.PathPattern;
+
+import java.util.List;
+
+/**
+ * Assigns a {@link RequestPriority} by request path; paths matching neither
+ * list are {@link RequestPriority#NORMAL}.
+ */
+public final class RequestPriorities {
+
+    private final PathPattern[] critical;
+    private final PathPattern[] bulk;
+
+    public RequestPriorities(List<String> criticalPaths, List<String> bulkPaths) {
+        this.critical = PathPattern.compileAll(criticalPaths);
+        this.bulk = PathPattern.compileAll(bulkPaths);
+    }
+
+    public RequestPriority classify(String path) {
+        // An empty list would match every path, so check for patterns first
+        if (critical.length > 0 && PathPattern.matchesAny(critical, path)) {
+            return RequestPriority.CRITICAL;
+        }
+        if (bulk.length > 0 && PathPattern.matchesAny(bulk, path)) {
+            return RequestPriority.BULK;
+        }
+        return RequestPriority.NORMAL;
+    }
+}
@@ -0,0 +1,14 @@
+package com.stockfellow.gateway.resilience;
+
+/**
+ * How readily a request is shed when its upstream is at its concurrency
+ * limit: each class may only fill its share of the limit, so bulk work is
+ * turned away first and critical requests last.
+ */
+public enum RequestPriority {
+    // Sign-in and registration flows
+    CRITICAL,
+    NORMAL,
+    // Heavy reports and analysis that clients can retry later
+    BULK
+}
@@ -0,0 +1,352 @@
+package com.stockfellow.gateway.resilience;
+
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.routing.RouteTable;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Keeps one slow or failing upstream from taking the whole gateway with it.
+ *
+ * Each upstream (proxy target) gets a bulkhead, a cap on requests in flight to
+ * it, and a {@link CircuitBreaker}. Both fail fast: a request over the cap, or
+ * to an upstream whose breaker is open, is rejected with
+ * {@link UpstreamRejectedException} instead of waiting for a worker thread or
+ * connection. Routes sharing a target share its bulkhead and breaker, sized by
+ * the first of them with a {@link Route.Isolation}, or the
+ * {@code app.proxy.isolation} defaults.
+ *
+ * Inside the bulkhead, an {@link AdaptiveConcurrencyLimiter} learns how many
+ * requests the upstream serves before it starts queueing them, and sheds the
+ * rest before they are sent, lowest {@link RequestPriority} first.
+ *
+ * A call counts as failed when it throws or the upstream answers with a 5xx.
+ * One the client gave up on before the upstream answered counts as neither.
+ */
+@Component
+public class UpstreamGuard {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamGuard.class);
+
+    private final RouteTable routeTable;
+    private final RequestPriorities requestPriorities;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.proxy.isolation.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.proxy.isolation.max-concurrent:100}")
+    private int defaultMaxConcurrent;
+
+    @Value("${app.proxy.isolation.failure-rate-threshold:50}")
+    private int defaultFailureRateThreshold;
+
+    @Value("${app.proxy.isolation.slow-call-ms:10000}")
+    private long defaultSlowCallMs;
+
+    @Value("${app.proxy.isolation.slow-call-rate-threshold:80}")
+    private int slowCallRateThreshold;
+
+    @Value("${app.proxy.isolation.window-size:50}")
+    private int windowSize;
+
+    @Value("${app.proxy.isolation.minimum-calls:20}")
+    private int minimumCalls;
+
+    @Value("${app.proxy.isolation.open-ms:10000}")
+    private long openMs;
+
+    @Value("${app.proxy.isolation.half-open-calls:3}")
+    private int halfOpenCalls;
+
+    @Value("${app.proxy.adaptive-limit.enabled:true}")
+    private boolean adaptiveLimitEnabled;
+
+    @Value("${app.proxy.adaptive-limit.initial-limit:20}")
+    private int initialLimit;
+
+    @Value("${app.proxy.adaptive-limit.min-limit:4}")
+    private int minLimit;
+
+    @Value("${app.proxy.adaptive-limit.normal-share:0.9}")
+    private double normalShare;
+
+    @Value("${app.proxy.adaptive-limit.bulk-share:0.5}")
+    private double bulkShare;
+
+    @Value("${app.proxy.adaptive-limit.probe-interval-ms:10000}")
+    private long probeIntervalMs;
+
+    @Value("${app.proxy.adaptive-limit.retry-after-seconds:1}")
+    private long overloadRetryAfterSeconds;
+
+    private final Map<String, Upstream> upstreams = new LinkedHashMap<>();
+    private final Map<Route, Upstream> routeUpstreams = new IdentityHashMap<>();
+
+    public UpstreamGuard(RouteTable routeTable, RequestPriorities requestPriorities, MeterRegistry meterRegistry) {
+        this.routeTable = routeTable;
+        this.requestPriorities = requestPriorities;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        Map<String, Route.Isolation> configs = new LinkedHashMap<>();
+        for (Route route : routeTable.routes()) {
+            Route.Isolation isolation = route.getProxy().getIsolation();
+            if (isolation != null) {
+                configs.putIfAbsent(route.getProxy().getTarget(), isolation);
+            }
+        }
+        for (Route route : routeTable.routes()) {
+            String target = route.getProxy().getTarget();
+            Upstream upstream = upstreams.computeIfAbsent(target, name -> new Upstream(name, configs.get(name)));
+            routeUpstreams.put(route, upstream);
+        }
+    }
+
+    /**
+     * Reserves a slot for one call to the route's upstream. The permit must be
+     * closed once the call is over, after the outcome has been reported.
+     *
+     * @param path the request path, which decides the request's priority
+     * @throws UpstreamRejectedException when the upstream is at its adaptive limit,
+     *         the bulkhead is full or the breaker is open
+     */
+    public Permit acquire(Route route, String path) {
+        Upstream upstream = routeUpstreams.get(route);
+        if (upstream == null) {
+            return Permit.NONE;
+        }
+        AdaptiveConcurrencyLimiter limiter = upstream.limiter;
+        RequestPriority priority = RequestPriority.NORMAL;
+        int inFlight = 0;
+        if (limiter != null) {
+            priority = requestPriorities.classify(path);
+            if (!limiter.tryAcquire(priority)) {
+                upstream.overloadRejections.increment();
+                upstream.shed[priority.ordinal()].increment();
+                throw new UpstreamRejectedException(upstream.name, UpstreamRejectedException.OVERLOADED,
+                        overloadRetryAfterSeconds);
+            }
+            inFlight = limiter.inFlight();
+        }
+        if (!upstream.bulkhead.tryAcquire()) {
+            upstream.releaseLimiter(priority);
+            upstream.bulkheadRejections.increment();
+            throw new UpstreamRejectedException(upstream.name, UpstreamRejectedException.BULKHEAD_FULL, 1);
+        }
+        if (!upstream.breaker.tryAcquire()) {
+            upstream.releaseLimiter(priority);
+            upstream.bulkhead.release();
+            upstream.circuitRejections.increment();
+            long retryAfterSeconds = Math.max(1, (upstream.breaker.retryAfterMs() + 999) / 1000);
+            throw new UpstreamRejectedException(upstream.name, UpstreamRejectedException.CIRCUIT_OPEN,
+                    retryAfterSeconds);
+        }
+        return new Permit(upstream, priority, System.nanoTime(), inFlight);
+    }
+
+    /** The route's fallback body for GETs its upstream could not answer, or null. */
+    public String fallbackBody(Route route) {
+        Route.Isolation isolation = route.getProxy().getIsolation();
+        return isolation != null ? isolation.getFallbackBody() : null;
+    }
+
+    /** Breaker, bulkhead and concurrency limit state per upstream, for the circuitbreakers actuator endpoint. */
+    public Map<String, Map<String, Object>> snapshot() {
+        Map<String, Map<String, Object>> snapshot = new LinkedHashMap<>();
+        upstreams.forEach((name, upstream) -> {
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("state", upstream.breaker.state().name());
+            details.put("failureRate", upstream.breaker.failureRate());
+            details.put("slowCallRate", upstream.breaker.slowCallRate());
+            details.put("bufferedCalls", upstream.breaker.bufferedCalls());
+            details.put("inFlight", upstream.inFlight());
+            details.put("maxConcurrent", upstream.maxConcurrent);
+            if (upstream.limiter != null) {
+                details.put("concurrencyLimit", upstream.limiter.limit());
+                details.put("rejectedOverloaded", (long) upstream.overloadRejections.count());
+            }
+            details.put("rejectedCircuitOpen", (long) upstream.circuitRejections.count());
+            details.put("rejectedBulkheadFull", (long) upstream.bulkheadRejections.count());
+            snapshot.put(name, details);
+        });
+        return snapshot;
+    }
+
+    /** One call's hold on its upstream's bulkhead; reports the outcome to the breaker. */
+    public static class Permit implements AutoCloseable {
+
+        static final Permit NONE = new Permit(null, RequestPriority.NORMAL, 0, 0);
+
+        private final Upstream upstream;
+        private final RequestPriority priority;
+        private final long startedAt;
+        private final int inFlight;
+        private boolean recorded;
+        private boolean clientAborted;
+        private boolean released;
+
+        Permit(Upstream upstream, RequestPriority priority, long startedAt, int inFlight) {
+            this.upstream = upstream;
+            this.priority = priority;
+            this.startedAt = startedAt;
+            this.inFlight = inFlight;
+        }
+
+        /** Records the upstream's status; call once its response headers are in. */
+        public void onResponse(int status) {
+            record(status >= 500);
+        }
+
+        public void onError() {
+            record(true);
+        }
+
+        /** A hedged call given up for a faster one: not a failure, though its time so far still counts. */
+        public void onCancelled() {
+            record(false);
+        }
+
+        /**
+         * The client hung up or stopped sending before the upstream answered. Says
+         * nothing about the upstream, so neither the breaker nor the concurrency
+         * limit learns from it.
+         */
+        public synchronized void onClientAbort() {
+            if (upstream == null || recorded) {
+                return;
+            }
+            recorded = true;
+            clientAborted = true;
+        }
+
+        /** Frees the bulkhead slot; a call that never reported an outcome counts as failed. */
+        // Synchronized since a hedged call can be cancelled while its response is being handled
+        @Override
+        public synchronized void close() {
+            if (upstream == null || released) {
+                return;
+            }
+            record(true);
+            released = true;
+            if (clientAborted) {
+                upstream.breaker.release();
+            }
+            upstream.bulkhead.release();
+            upstream.releaseLimiter(priority);
+        }
+
+        private synchronized void record(boolean failed) {
+            if (upstream == null || recorded) {
+                return;
+            }
+            recorded = true;
+            upstream.record(priority, System.nanoTime() - startedAt, inFlight, failed);
+        }
+    }
+
+    private final class Upstream {
+        private final String name;
+        private final int maxConcurrent;
+        private final Semaphore bulkhead;
+        private final CircuitBreaker breaker;
+        private final AdaptiveConcurrencyLimiter limiter;
+        private final Counter successes;
+        private final Counter failures;
+        private final Counter circuitRejections;
+        private final Counter bulkheadRejections;
+        private final Counter overloadRejections;
+        private final Counter[] shed = new Counter[RequestPriority.values().length];
+
+        Upstream(String name, Route.Isolation config) {
+            this.name = name;
+            this.maxConcurrent = config != null ? config.getMaxConcurrent() : defaultMaxConcurrent;
+            this.bulkhead = new Semaphore(maxConcurrent);
+            this.breaker = new CircuitBreaker(windowSize, minimumCalls,
+                    config != null ? config.getFailureRateThreshold() : defaultFailureRateThreshold,
+                    slowCallRateThreshold,
+                    config != null ? config.getSlowCallMs() : defaultSlowCallMs,
+                    openMs, halfOpenCalls);
+            this.limiter = adaptiveLimitEnabled
+                    ? new AdaptiveConcurrencyLimiter(Math.min(initialLimit, maxConcurrent),
+                            Math.min(minLimit, maxConcurrent), maxConcurrent, normalShare, bulkShare,
+                            probeIntervalMs)
+                    : null;
+
+            successes = Counter.builder("gateway.circuitbreaker.calls")
+                    .tag("upstream", name).tag("outcome", "success")
+                    .register(meterRegistry);
+            failures = Counter.builder("gateway.circuitbreaker.calls")
+                    .tag("upstream", name).tag("outcome", "failure")
+                    .register(meterRegistry);
+            circuitRejections = Counter.builder("gateway.upstream.rejected")
+                    .tag("upstream", name).tag("reason", UpstreamRejectedException.CIRCUIT_OPEN)
+                    .register(meterRegistry);
+            bulkheadRejections = Counter.builder("gateway.upstream.rejected")
+                    .tag("upstream", name).tag("reason", UpstreamRejectedException.BULKHEAD_FULL)
+                    .register(meterRegistry);
+            overloadRejections = Counter.builder("gateway.upstream.rejected")
+                    .tag("upstream", name).tag("reason", UpstreamRejectedException.OVERLOADED)
+                    .register(meterRegistry);
+            for (RequestPriority priority : RequestPriority.values()) {
+                shed[priority.ordinal()] = Counter.builder("gateway.concurrency.shed")
+                        .tag("upstream", name).tag("priority", priority.name().toLowerCase())
+                        .register(meterRegistry);
+            }
+            if (limiter != null) {
+                Gauge.builder("gateway.concurrency.limit", limiter, AdaptiveConcurrencyLimiter::limit)
+                        .tag("upstream", name)
+                        .register(meterRegistry);
+            }
+            for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+                Gauge.builder("gateway.circuitbreaker.state", breaker, b -> b.state() == state ? 1 : 0)
+                        .tag("upstream", name).tag("state", state.name().toLowerCase())
+                        .register(meterRegistry);
+            }
+            Gauge.builder("gateway.bulkhead.inflight", this, Upstream::inFlight)
+                    .tag("upstream", name)
+                    .register(meterRegistry);
+        }
+
+        int inFlight() {
+            return maxConcurrent - bulkhead.availablePermits();
+        }
+
+        void releaseLimiter(RequestPriority priority) {
+            if (limiter != null) {
+                limiter.release(priority);
+            }
+        }
+
+        void record(RequestPriority priority, long durationNs, int inFlight, boolean failed) {
+            if (limiter != null) {
+                limiter.onSample(priority, durationNs, inFlight, failed);
+            }
+            CircuitBreaker.State before = breaker.state();
+            breaker.record(durationNs, failed);
+            (failed ? failures : successes).increment();
+
+            CircuitBreaker.State after = breaker.state();
+            if (after != before) {
+                logger.warn("Circuit breaker for {} is now {} (failure rate {}%, slow calls {}%)",
+                        name, after, breaker.failureRate(), breaker.slowCallRate());
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.stockfellow.gateway.resilience;
+
+/**
+ * Thrown by {@link UpstreamGuard#acquire} when a request is not sent to its
+ * upstream, because the upstream is at its adaptive concurrency limit, its
+ * bulkhead is full or its breaker is open. The async proxy engine also uses it
+ * for a response shed because its I/O pool is backed up.
+ */
+public class UpstreamRejectedException extends RuntimeException {
+
+    public static final String CIRCUIT_OPEN = "circuit_open";
+    public static final String BULKHEAD_FULL = "bulkhead_full";
+    public static final String OVERLOADED = "overloaded";
+    public static final String PROXY_BUSY = "proxy_busy";
+
+    private final String reason;
+    private final long retryAfterSeconds;
+
+    public UpstreamRejectedException(String upstream, String reason, long retryAfterSeconds) {
+        super("Request to " + upstream + " rejected: " + reason);
+        this.reason = reason;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,68 @@
+package com.stockfellow.gateway.routing;
+
+import java.util.List;
+
+/**
+ * Path filter for per-route features that apply to only some paths under a
+ * route. {@code "*"} matches exactly one segment anywhere in the pattern and a
+ * trailing {@code "/**"} matches the rest of the path. Matching allocates
+ * nothing.
+ */
+public final class PathPattern {
+
+    private final String[] segments;
+    private final boolean subtree;
+
+    public PathPattern(String pattern) {
+        String trimmed = pattern.endsWith("/**") ? pattern.substring(0, pattern.length() - 3) : pattern;
+        this.subtree = trimmed.length() != pattern.length();
+        this.segments = trimmed.replaceAll("^/+", "").split("/+");
+    }
+
+    public static PathPattern[] compileAll(List<String> patterns) {
+        PathPattern[] compiled = new PathPattern[patterns == null ? 0 : patterns.size()];
+        for (int i = 0; i < compiled.length; i++) {
+            compiled[i] = new PathPattern(patterns.get(i));
+        }
+        return compiled;
+    }
+
+    /** True if any pattern matches; an empty array stands for "every path". */
+    public static boolean matchesAny(PathPattern[] patterns, String path) {
+        if (patterns.length == 0) {
+            return true;
+        }
+        for (PathPattern pattern : patterns) {
+            if (pattern.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean matches(String path) {
+        int start = 0;
+        int length = path.length();
+        for (String segment : segments) {
+            while (start < length && path.charAt(start) == '/') {
+                start++;
+            }
+            if (start >= length) {
+                return segment.isEmpty();
+            }
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (!segment.equals("*")
+                    && (segment.length() != end - start || !path.regionMatches(start, segment, 0, end - start))) {
+                return false;
+            }
+            start = end;
+        }
+        while (start < length && path.charAt(start) == '/') {
+            start++;
+        }
+        return subtree || start >= length;
+    }
+}
@@ -0,0 +1,45 @@
+package com.stockfellow.gateway.routing;
+
+import com.stockfellow.gateway.model.Route;
+
+/**
+ * Result of a {@link RouteTable} lookup for one request path. Computed once per
+ * request and stored under {@link #ATTRIBUTE} so later filters and the proxy
+ * reuse it instead of matching again.
+ */
+public final class RouteMatch {
+
+    public static final String ATTRIBUTE = RouteMatch.class.getName();
+
+    private final String path;
+    private final Route route;
+    private final boolean publicEndpoint;
+    private final Route.RateLimit rateLimit;
+    private final String rateLimitPattern;
+
+    RouteMatch(String path, Route route, boolean publicEndpoint, Route rateLimitSource) {
+        this.path = path;
+        this.route = route;
+        this.publicEndpoint = publicEndpoint;
+        this.rateLimit = rateLimitSource != null ? rateLimitSource.getRateLimit() : null;
+        this.rateLimitPattern = rateLimitSource != null ? rateLimitSource.getUrl() : null;
+    }
+
+    public String getPath() { return path; }
+
+    /** The route to proxy to, or null when no route pattern matches the path. */
+    public Route getRoute() { return route; }
+
+    public String getPattern() { return route != null ? route.getUrl() : null; }
+
+    /** Public endpoints are served without a token; everything else needs one. */
+    public boolean isPublic() { return publicEndpoint; }
+
+    public boolean isAuthRequired() { return !publicEndpoint; }
+
+    /** Policy of the matched route, else of the closest enclosing route; null if unlimited. */
+    public Route.RateLimit getRateLimit() { return rateLimit; }
+
+    /** Pattern of the route {@link #getRateLimit()} comes from; requests under it share one limit. */
+    public String getRateLimitPattern() { return rateLimitPattern; }
+}
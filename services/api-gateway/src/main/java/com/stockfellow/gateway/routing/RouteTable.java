@@ -0,0 +1,234 @@
+package com.stockfellow.gateway.routing;
+
+import com.stockfellow.gateway.model.Route;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable path trie compiled once from the configured routes and public
+ * endpoints, so every request is matched by a single walk over its segments.
+ *
+ * Route patterns:
+ * <ul>
+ *   <li>{@code /a/b} matches exactly {@code /a/b}</li>
+ *   <li>{@code /a/*} matches one segment below {@code /a}</li>
+ *   <li>{@code /a/**} matches {@code /a} and anything below it</li>
+ * </ul>
+ * An exact pattern beats {@code /*}, which beats {@code /**}; of two {@code /**}
+ * patterns the longer one wins, and of two identical patterns the first one
+ * configured. Paths that match no route still take the rate limit of the closest
+ * route above them (e.g. {@code /api}). Public endpoints cover themselves and
+ * everything below them. Empty segments are ignored, so {@code /api/users/}
+ * matches like {@code /api/users}.
+ */
+public final class RouteTable {
+
+    private final List<Route> routes;
+    private final Node root;
+
+    private RouteTable(List<Route> routes, Node root) {
+        this.routes = routes;
+        this.root = root;
+    }
+
+    public static RouteTable compile(List<Route> routes) {
+        return compile(routes, Collections.emptyList());
+    }
+
+    public static RouteTable compile(List<Route> routes, Collection<String> publicEndpoints) {
+        Node root = new Node();
+
+        for (Route route : routes) {
+            String url = route.getUrl();
+            List<String> segments = segments(url);
+            String last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+
+            if ("**".equals(last) || "*".equals(last)) {
+                Node node = root.descend(segments.subList(0, segments.size() - 1), url);
+                if ("**".equals(last)) {
+                    node.subtree = node.subtree != null ? node.subtree : route;
+                } else {
+                    node.single = node.single != null ? node.single : route;
+                }
+            } else {
+                Node node = root.descend(segments, url);
+                node.exact = node.exact != null ? node.exact : route;
+            }
+        }
+
+        for (String endpoint : publicEndpoints) {
+            root.descend(segments(endpoint), endpoint).publicEndpoint = true;
+        }
+
+        root.freeze();
+        return new RouteTable(Collections.unmodifiableList(new ArrayList<>(routes)), root);
+    }
+
+    public List<Route> routes() {
+        return routes;
+    }
+
+    /**
+     * Returns the match stored on the request by an earlier filter, or matches the
+     * request URI and stores the result.
+     */
+    public RouteMatch match(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        Object stored = request.getAttribute(RouteMatch.ATTRIBUTE);
+        // A forward changes the URI, so only reuse a match made for the same path
+        if (stored instanceof RouteMatch && ((RouteMatch) stored).getPath().equals(path)) {
+            return (RouteMatch) stored;
+        }
+
+        RouteMatch match = match(path);
+        request.setAttribute(RouteMatch.ATTRIBUTE, match);
+        return match;
+    }
+
+    public RouteMatch match(String path) {
+        if (path == null) {
+            path = "";
+        }
+
+        Node node = root;
+        int depth = 0;
+        boolean publicEndpoint = root.publicEndpoint;
+        Route subtree = root.subtree;
+        int subtreeDepth = 0;
+        Route single = null;
+        Route enclosing = root.exact;
+
+        int length = path.length();
+        int start = skipSlashes(path, 0);
+        while (start < length) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            int next = skipSlashes(path, end);
+
+            if (node.single != null && next == length) {
+                single = node.single;
+            }
+
+            node = node.child(path, start, end);
+            if (node == null) {
+                break;
+            }
+            depth++;
+            publicEndpoint |= node.publicEndpoint;
+            if (node.subtree != null) {
+                subtree = node.subtree;
+                subtreeDepth = depth;
+            }
+            if (node.exact != null) {
+                enclosing = node.exact;
+            }
+            start = next;
+        }
+
+        Route route;
+        boolean walkedWholePath = node != null;
+        if (walkedWholePath && node.exact != null) {
+            route = node.exact;
+        } else if (walkedWholePath && subtree != null && subtreeDepth == depth) {
+            route = subtree;
+        } else if (single != null) {
+            route = single;
+        } else {
+            route = subtree;
+        }
+
+        Route policySource = route != null ? route : enclosing;
+        return new RouteMatch(path, route, publicEndpoint, policySource);
+    }
+
+    private static int skipSlashes(String path, int index) {
+        while (index < path.length() && path.charAt(index) == '/') {
+            index++;
+        }
+        return index;
+    }
+
+    private static List<String> segments(String pattern) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : pattern.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(segment);
+            }
+        }
+        return segments;
+    }
+
+    // Compares a literal segment with path[start, end) in String.compareTo order
+    private static int compare(String label, String path, int start, int end) {
+        int length = end - start;
+        int common = Math.min(label.length(), length);
+        for (int i = 0; i < common; i++) {
+            int diff = label.charAt(i) - path.charAt(start + i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return label.length() - length;
+    }
+
+    private static final class Node {
+        private static final String[] NO_LABELS = new String[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        // Only used while compiling; replaced by the sorted arrays in freeze()
+        private Map<String, Node> building = new TreeMap<>();
+
+        private String[] labels = NO_LABELS;
+        private Node[] children = NO_CHILDREN;
+
+        private Route exact;
+        private Route single;
+        private Route subtree;
+        private boolean publicEndpoint;
+
+        private Node descend(List<String> segments, String pattern) {
+            Node node = this;
+            for (String segment : segments) {
+                if (segment.contains("*")) {
+                    throw new IllegalArgumentException("Unsupported route pattern: " + pattern);
+                }
+                node = node.building.computeIfAbsent(segment, s -> new Node());
+            }
+            return node;
+        }
+
+        private void freeze() {
+            labels = building.keySet().toArray(NO_LABELS);
+            children = building.values().toArray(NO_CHILDREN);
+            building = null;
+            for (Node child : children) {
+                child.freeze();
+            }
+        }
+
+        private Node child(String path, int start, int end) {
+            int low = 0;
+            int high = labels.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compare(labels[mid], path, start, end);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return children[mid];
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.stockfellow.gateway.service;
+
+import com.stockfellow.gateway.model.Route;
+import org.apache.catalina.connector.ClientAbortException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking upstream client for the "async" proxy engine.
+ *
+ * Requests go out through the JDK {@link HttpClient}, so no thread waits while
+ * the upstream works on a response. Request bodies are read with servlet
+ * non-blocking I/O, as the client bytes arrive. Once the response headers
+ * arrive, the body is copied to the client on the {@link #ioExecutor()} pool,
+ * whose queue is bounded: when it is full the pool rejects the copy and the
+ * caller sheds the request instead of letting the backlog grow.
+ *
+ * With {@code app.proxy.http2.enabled} the client asks upstreams for cleartext
+ * HTTP/2 (h2c) and then multiplexes every request to a service over a single
+ * connection, up to the service's max concurrent streams. Services that do not
+ * upgrade keep being spoken to over HTTP/1.1. Hedged calls go out through
+ * {@link #sendOnOwnConnection}, which stays on HTTP/1.1.
+ */
+@Component
+public class AsyncProxyClient {
+
+    private static final int BODY_CHUNK_BYTES = 16 * 1024;
+
+    // Headers the JDK client sets itself and refuses to accept from callers
+    private static final Set<String> RESTRICTED_HEADERS = Set.of(
+            "connection", "content-length", "date", "expect", "from", "host", "upgrade", "via", "warning");
+
+    @Value("${app.proxy.async.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+
+    // For routes without a read timeout of their own
+    @Value("${app.proxy.async.response-timeout-ms:30000}")
+    private long responseTimeoutMs;
+
+    @Value("${app.proxy.async.io-threads:32}")
+    private int ioThreads;
+
+    // Response copies waiting for an I/O thread before new ones are rejected
+    @Value("${app.proxy.async.io-queue-capacity:256}")
+    private int ioQueueCapacity = 256;
+
+    @Value("${app.proxy.http2.enabled:false}")
+    private boolean http2Enabled;
+
+    // Response bytes an upstream may send on one stream before the gateway reads them
+    @Value("${app.proxy.http2.stream-window-bytes:1048576}")
+    private int http2StreamWindowBytes;
+
+    // The same across all streams of a connection
+    @Value("${app.proxy.http2.connection-window-bytes:16777216}")
+    private int http2ConnectionWindowBytes;
+
+    private HttpClient httpClient;
+    // HTTP/1.1 only, so concurrent requests never share a connection
+    private HttpClient http1Client;
+    private ThreadPoolExecutor ioExecutor;
+
+    @PostConstruct
+    public void init() {
+        if (http2Enabled) {
+            // The JDK client only takes its HTTP/2 windows from system properties, which apply to
+            // every JDK client in the process; values given on the command line are kept
+            setIfAbsent("jdk.httpclient.windowsize", http2StreamWindowBytes);
+            setIfAbsent("jdk.httpclient.connectionWindowSize", http2ConnectionWindowBytes);
+        }
+        http1Client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+        httpClient = http2Enabled
+                ? HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_2)
+                        .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                        .followRedirects(HttpClient.Redirect.NEVER)
+                        .build()
+                : http1Client;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ioExecutor = new ThreadPoolExecutor(ioThreads, ioThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(ioQueueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "proxy-io-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ioExecutor.shutdown();
+    }
+
+    /**
+     * Sends the request; the future completes once the upstream status and headers
+     * are in, with the body left as a stream to copy.
+     *
+     * @param body          request body of a request in async mode, read without blocking;
+     *                      null when there is none
+     * @param contentLength body length, or -1 to send it chunked
+     * @param route         route whose read timeout bounds the wait for the response headers;
+     *                      null for {@code app.proxy.async.response-timeout-ms}
+     */
+    public CompletableFuture<HttpResponse<InputStream>> send(HttpMethod method, URI uri, HttpHeaders headers,
+            ServletInputStream body, long contentLength, Route route) {
+        return httpClient.sendAsync(request(method, uri, headers, bodyPublisher(body, contentLength), route),
+                HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    /**
+     * Sends a request without a body over HTTP/1.1 on a connection no other
+     * request is using at the time. Over h2c a second call to a service would
+     * be one more stream on the first call's connection: same instance, same
+     * TCP window, same head-of-line stalls. A connection of its own is spread
+     * across instances by a load-balanced service address (a Kubernetes or
+     * Swarm VIP, or an L4 balancer). Where the address resolves to a single
+     * instance, or DNS answers are cached, it still reaches the same one.
+     */
+    public CompletableFuture<HttpResponse<InputStream>> sendOnOwnConnection(HttpMethod method, URI uri,
+            HttpHeaders headers, Route route) {
+        return http1Client.sendAsync(request(method, uri, headers, HttpRequest.BodyPublishers.noBody(), route),
+                HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    /**
+     * Pool for copying response bodies. Its queue is bounded, so {@code execute}
+     * throws {@link RejectedExecutionException} when it is full; hand work to it
+     * directly rather than through a {@link CompletableFuture} async stage, which
+     * would never complete after a rejection.
+     */
+    public ExecutorService ioExecutor() {
+        return ioExecutor;
+    }
+
+    private HttpRequest request(HttpMethod method, URI uri, HttpHeaders headers, HttpRequest.BodyPublisher body,
+            Route route) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(responseTimeout(route))
+                .method(method.name(), body);
+
+        headers.forEach((name, values) -> {
+            if (!RESTRICTED_HEADERS.contains(name.toLowerCase())) {
+                values.forEach(value -> builder.header(name, value));
+            }
+        });
+        return builder.build();
+    }
+
+    private Duration responseTimeout(Route route) {
+        Route.ConnectionPool pool = route != null && route.getProxy() != null
+                ? route.getProxy().getConnectionPool()
+                : null;
+        return Duration.ofMillis(pool != null && pool.getReadTimeoutMs() > 0
+                ? pool.getReadTimeoutMs()
+                : responseTimeoutMs);
+    }
+
+    private static void setIfAbsent(String property, int value) {
+        if (System.getProperty(property) == null) {
+            System.setProperty(property, String.valueOf(value));
+        }
+    }
+
+    private HttpRequest.BodyPublisher bodyPublisher(ServletInputStream body, long contentLength) {
+        if (body == null) {
+            return HttpRequest.BodyPublishers.noBody();
+        }
+
+        ServletBodyPublisher publisher = new ServletBodyPublisher(body);
+        return contentLength > 0
+                ? HttpRequest.BodyPublishers.fromPublisher(publisher, contentLength)
+                : HttpRequest.BodyPublishers.fromPublisher(publisher);
+    }
+
+    /**
+     * Publishes a request body as the client sends it. Reads only happen while
+     * {@link ServletInputStream#isReady()} says they will not block, and only as
+     * far as the upstream connection has asked for; the container calls
+     * {@link #onDataAvailable()} once more bytes arrive.
+     */
+    private static final class ServletBodyPublisher implements Flow.Publisher<ByteBuffer> {
+
+        private final ServletInputStream in;
+        private final AtomicBoolean subscribed = new AtomicBoolean();
+
+        ServletBodyPublisher(ServletInputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            if (!subscribed.compareAndSet(false, true)) {
+                // The body is read once; a retried request has nothing left to send
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) { }
+
+                    @Override
+                    public void cancel() { }
+                });
+                subscriber.onError(new IllegalStateException("Request body has already been sent"));
+                return;
+            }
+            BodySubscription subscription = new BodySubscription(in, subscriber);
+            // Registered first: isReady() may only be called once a listener is set
+            in.setReadListener(subscription);
+            subscriber.onSubscribe(subscription);
+        }
+    }
+
+    private static final class BodySubscription implements Flow.Subscription, ReadListener {
+
+        private final ServletInputStream in;
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        // Serializes reads and signals between container callbacks and the client's requests
+        private final AtomicInteger work = new AtomicInteger();
+        private volatile boolean allRead;
+        private volatile Throwable error;
+        private volatile boolean done;
+
+        BodySubscription(ServletInputStream in, Flow.Subscriber<? super ByteBuffer> subscriber) {
+            this.in = in;
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Non-positive request: " + n);
+            } else {
+                demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+        }
+
+        @Override
+        public void onDataAvailable() {
+            drain();
+        }
+
+        @Override
+        public void onAllDataRead() {
+            allRead = true;
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = clientAbort(t);
+            drain();
+        }
+
+        private void drain() {
+            if (work.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                try {
+                    readAvailable();
+                } catch (IOException e) {
+                    error = clientAbort(e);
+                    signalEnd();
+                }
+            } while (work.decrementAndGet() != 0);
+        }
+
+        private void readAvailable() throws IOException {
+            while (!done) {
+                if (error != null || allRead) {
+                    signalEnd();
+                    return;
+                }
+                if (demand.get() == 0 || !in.isReady()) {
+                    // Resumed by request() or onDataAvailable()
+                    return;
+                }
+                byte[] chunk = new byte[BODY_CHUNK_BYTES];
+                int n = in.read(chunk);
+                if (n == -1) {
+                    allRead = true;
+                } else if (n > 0) {
+                    demand.decrementAndGet();
+                    subscriber.onNext(ByteBuffer.wrap(n == chunk.length ? chunk : Arrays.copyOf(chunk, n)));
+                }
+            }
+        }
+
+        // Anything that goes wrong reading the body is on the client's side of the connection
+        private static Throwable clientAbort(Throwable t) {
+            return t instanceof ClientAbortException ? t : new ClientAbortException(t);
+        }
+
+        private void signalEnd() {
+            if (done) {
+                return;
+            }
+            done = true;
+            if (error != null) {
+                subscriber.onError(error);
+            } else {
+                subscriber.onComplete();
+            }
+        }
+    }
+}
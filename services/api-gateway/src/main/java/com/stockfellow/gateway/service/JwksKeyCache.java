@@ -0,0 +1,244 @@
+package com.stockfellow.gateway.service;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the realm's JSON Web Key Set so access tokens can be verified without
+ * calling Keycloak. The key set is fetched once, refreshed in the background and
+ * re-fetched (at most once per {@code min-refetch-interval-ms}) when a token
+ * arrives signed with a key id we have not seen yet, e.g. after a key rotation.
+ *
+ * Fetches run one at a time on a background thread with their own connect and
+ * read timeouts. Request threads never fetch: the one that meets an unknown key
+ * id waits at most {@code unknown-key-wait-ms} for the fetch, and every other
+ * request keeps using the keys already loaded.
+ */
+@Component
+public class JwksKeyCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(JwksKeyCache.class);
+
+    private final RestTemplate restTemplate;
+
+    @Value("${keycloak.auth-server-url}")
+    private String keycloakServerUrl;
+
+    @Value("${keycloak.realm}")
+    private String realm;
+
+    @Value("${app.auth.jwks.uri:}")
+    private String jwksUri;
+
+    @Value("${app.auth.jwks.min-refetch-interval-ms:10000}")
+    private long minRefetchIntervalMs;
+
+    @Value("${app.auth.jwks.unknown-key-wait-ms:1000}")
+    private long unknownKeyWaitMs = 1000;
+
+    @Value("${app.auth.validation-mode:local}")
+    private String validationMode;
+
+    // Verifiers are built once per key on refresh and swapped in atomically
+    private volatile Map<String, JWSVerifier> verifiers = Collections.emptyMap();
+    private volatile long lastFetchAttempt;
+
+    // The fetch in progress, shared by everyone who asks for one meanwhile
+    private final AtomicReference<CompletableFuture<Boolean>> inFlight = new AtomicReference<>();
+    private final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "jwks-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public JwksKeyCache(@Value("${app.auth.jwks.connect-timeout-ms:2000}") int connectTimeoutMs,
+                        @Value("${app.auth.jwks.read-timeout-ms:3000}") int readTimeoutMs) {
+        this(new RestTemplate(requestFactory(connectTimeoutMs, readTimeoutMs)));
+    }
+
+    public JwksKeyCache(RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
+    /**
+     * Returns the verifier for the given key id, re-fetching the key set once if
+     * the id is unknown. Returns null if no such key exists, or if the fetch
+     * did not finish within {@code unknown-key-wait-ms}.
+     */
+    public JWSVerifier getVerifier(String keyId) {
+        if (keyId == null) {
+            return null;
+        }
+
+        JWSVerifier verifier = verifiers.get(keyId);
+        if (verifier == null) {
+            CompletableFuture<Boolean> refresh = refreshIfStale();
+            if (refresh != null && awaitRefresh(refresh)) {
+                verifier = verifiers.get(keyId);
+            }
+        }
+        return verifier;
+    }
+
+    public boolean hasKeys() {
+        return !verifiers.isEmpty();
+    }
+
+    public int size() {
+        return verifiers.size();
+    }
+
+    @Scheduled(fixedDelayString = "${app.auth.jwks.refresh-interval-ms:300000}")
+    public void scheduledRefresh() {
+        if ("introspection".equalsIgnoreCase(validationMode)) {
+            return;
+        }
+        refresh();
+    }
+
+    /**
+     * Fetches the key set from Keycloak and replaces the cached verifiers, or
+     * joins the fetch already running. Keeps the previous keys if it fails.
+     */
+    public boolean refresh() {
+        return refreshAsync().join();
+    }
+
+    private CompletableFuture<Boolean> refreshAsync() {
+        while (true) {
+            CompletableFuture<Boolean> current = inFlight.get();
+            if (current != null) {
+                return current;
+            }
+            CompletableFuture<Boolean> started = new CompletableFuture<>();
+            if (inFlight.compareAndSet(null, started)) {
+                lastFetchAttempt = System.currentTimeMillis();
+                refreshExecutor.execute(() -> {
+                    try {
+                        started.complete(fetch());
+                    } finally {
+                        inFlight.set(null);
+                    }
+                });
+                return started;
+            }
+        }
+    }
+
+    private CompletableFuture<Boolean> refreshIfStale() {
+        CompletableFuture<Boolean> current = inFlight.get();
+        if (current != null) {
+            return current;
+        }
+        if (System.currentTimeMillis() - lastFetchAttempt < minRefetchIntervalMs) {
+            return null;
+        }
+        return refreshAsync();
+    }
+
+    private boolean awaitRefresh(CompletableFuture<Boolean> refresh) {
+        try {
+            return refresh.get(unknownKeyWaitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Left to finish in the background; the next token with this key id will find it
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    private boolean fetch() {
+        String uri = resolveJwksUri();
+
+        try {
+            String body = restTemplate.getForObject(uri, String.class);
+            if (body == null) {
+                logger.warn("Empty JWKS response from {}", uri);
+                return false;
+            }
+
+            verifiers = buildVerifiers(JWKSet.parse(body));
+            logger.debug("Loaded {} signing keys from {}", verifiers.size(), uri);
+            return true;
+
+        } catch (Exception e) {
+            logger.warn("Failed to fetch JWKS from {}: {}", uri, e.getMessage());
+            return false;
+        }
+    }
+
+    private Map<String, JWSVerifier> buildVerifiers(JWKSet jwkSet) {
+        Map<String, JWSVerifier> result = new HashMap<>();
+
+        for (JWK jwk : jwkSet.getKeys()) {
+            if (jwk.getKeyID() == null) {
+                continue;
+            }
+            // Keycloak also publishes encryption keys; only signature keys are relevant here
+            if (jwk.getKeyUse() != null && !KeyUse.SIGNATURE.equals(jwk.getKeyUse())) {
+                continue;
+            }
+
+            try {
+                if (jwk instanceof RSAKey) {
+                    result.put(jwk.getKeyID(), new RSASSAVerifier((RSAKey) jwk));
+                } else if (jwk instanceof ECKey) {
+                    result.put(jwk.getKeyID(), new ECDSAVerifier((ECKey) jwk));
+                }
+            } catch (JOSEException e) {
+                logger.warn("Skipping unusable JWK {}: {}", jwk.getKeyID(), e.getMessage());
+            }
+        }
+
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static SimpleClientHttpRequestFactory requestFactory(int connectTimeoutMs, int readTimeoutMs) {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(connectTimeoutMs);
+        requestFactory.setReadTimeout(readTimeoutMs);
+        return requestFactory;
+    }
+
+    private String resolveJwksUri() {
+        if (jwksUri != null && !jwksUri.isEmpty()) {
+            return jwksUri;
+        }
+        return realmUrl(keycloakServerUrl, realm) + "/protocol/openid-connect/certs";
+    }
+
+    static String realmUrl(String serverUrl, String realm) {
+        String base = serverUrl.endsWith("/") ? serverUrl.substring(0, serverUrl.length() - 1) : serverUrl;
+        return base + "/realms/" + realm;
+    }
+}
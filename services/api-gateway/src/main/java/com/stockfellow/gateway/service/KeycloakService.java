@@ -21,6 +21,7 @@ import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 import org.apache.commons.codec.digest.DigestUtils;
 
@@ -36,6 +37,8 @@ public class KeycloakService {
     private final RestTemplate restTemplate;
     private final RedisTemplate<String, String> redisTemplate;
     private final ObjectMapper objectMapper;
+    private final TokenCache tokenCache;
+    private final TokenRevocationService tokenRevocationService;
 
     @Value("${keycloak.auth-server-url}")
     private String keycloakServerUrl;
@@ -73,10 +76,14 @@ public class KeycloakService {
 
     public KeycloakService(RestTemplate restTemplate,
             RedisTemplate<String, String> redisTemplate,
-            ObjectMapper objectMapper) {
+            ObjectMapper objectMapper,
+            TokenCache tokenCache,
+            TokenRevocationService tokenRevocationService) {
         this.restTemplate = restTemplate;
         this.redisTemplate = redisTemplate;
         this.objectMapper = objectMapper;
+        this.tokenCache = tokenCache;
+        this.tokenRevocationService = tokenRevocationService;
     }
 
     // Authenticate user with username/password
@@ -197,59 +204,36 @@ public class KeycloakService {
         }
     }
 
-    // Validate token using Keycloak introspection
+    // Validate token using Keycloak introspection (caching is done by TokenCache).
+    // Throws RestClientException when Keycloak gives no answer (unreachable, 4xx/5xx, empty body),
+    // so an outage is never mistaken for, and cached as, an invalid token.
     public TokenInfo validateToken(String accessToken) {
-        try {
-            // First check cache
-            String cacheKey = "token_info:" + DigestUtils.sha256Hex(accessToken);
-            String cachedInfo = redisTemplate.opsForValue().get(cacheKey);
-
-            if (cachedInfo != null) {
-                TokenInfo tokenInfo = objectMapper.readValue(cachedInfo, TokenInfo.class);
-                if (tokenInfo.getExpiresIn() > System.currentTimeMillis() / 1000) {
-                    return tokenInfo;
-                }
-            }
-
-            // Validate with Keycloak introspection endpoint
-            String introspectionUrl = String.format("%s/realms/%s/protocol/openid-connect/token/introspect",
-                    keycloakServerUrl, realm);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
-
-            if (gatewayClientSecret != null && !gatewayClientSecret.isEmpty()) {
-                headers.setBasicAuth(gatewayClientId, gatewayClientSecret);
-            }
-
-            MultiValueMap<String, String> body = new LinkedMultiValueMap<>();
-            body.add("token", accessToken);
-            body.add("token_type_hint", "access_token");
-            if (gatewayClientSecret == null || gatewayClientSecret.isEmpty()) {
-                body.add("client_id", gatewayClientId);
-            }
+        // Validate with Keycloak introspection endpoint
+        String introspectionUrl = String.format("%s/realms/%s/protocol/openid-connect/token/introspect",
+                keycloakServerUrl, realm);
 
-            HttpEntity<MultiValueMap<String, String>> request = new HttpEntity<>(body, headers);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
 
-            ResponseEntity<Map> response = restTemplate.postForEntity(introspectionUrl, request, Map.class);
+        if (gatewayClientSecret != null && !gatewayClientSecret.isEmpty()) {
+            headers.setBasicAuth(gatewayClientId, gatewayClientSecret);
+        }
 
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                TokenInfo tokenInfo = parseIntrospectionResponse(response.getBody());
+        MultiValueMap<String, String> body = new LinkedMultiValueMap<>();
+        body.add("token", accessToken);
+        body.add("token_type_hint", "access_token");
+        if (gatewayClientSecret == null || gatewayClientSecret.isEmpty()) {
+            body.add("client_id", gatewayClientId);
+        }
 
-                // Cache valid token info
-                if (tokenInfo.isValid()) {
-                    cacheTokenInfo(accessToken, tokenInfo);
-                }
+        HttpEntity<MultiValueMap<String, String>> request = new HttpEntity<>(body, headers);
 
-                return tokenInfo;
-            } else {
-                return TokenInfo.invalid();
-            }
+        ResponseEntity<Map> response = restTemplate.postForEntity(introspectionUrl, request, Map.class);
 
-        } catch (Exception e) {
-            logger.error("Token validation failed", e);
-            return TokenInfo.invalid();
+        if (response.getBody() == null) {
+            throw new RestClientException("Empty introspection response from Keycloak");
         }
+        return parseIntrospectionResponse(response.getBody());
     }
 
     public RefreshTokenResponse refreshToken(String refreshToken) {
@@ -297,13 +281,13 @@ public class KeycloakService {
     // Logout user by blacklisting token
     public void logoutUser(String accessToken) {
         try {
-            // Add token to blacklist
-            String key = "blacklisted_token:" + DigestUtils.sha256Hex(accessToken);
-            redisTemplate.opsForValue().set(key, "true", Duration.ofHours(24));
+            String tokenHash = DigestUtils.sha256Hex(accessToken);
+
+            // Add token to blacklist and notify the other gateway instances
+            tokenRevocationService.revoke(accessToken, tokenHash);
 
             // Remove from cache
-            String cacheKey = "token_info:" + DigestUtils.sha256Hex(accessToken);
-            redisTemplate.delete(cacheKey);
+            tokenCache.invalidate(tokenHash);
 
             logger.info("User logged out successfully");
 
@@ -314,20 +298,7 @@ public class KeycloakService {
 
     // Check if token is blacklisted
     public boolean isTokenBlacklisted(String token) {
-        String key = "blacklisted_token:" + DigestUtils.sha256Hex(token);
-        return Boolean.TRUE.equals(redisTemplate.hasKey(key));
-    }
-
-    private void cacheTokenInfo(String token, TokenInfo tokenInfo) {
-        try {
-            String key = "token_info:" + DigestUtils.sha256Hex(token);
-            String value = objectMapper.writeValueAsString(tokenInfo);
-            // Cache for shorter duration than token expiry
-            long cacheSeconds = Math.max(60, tokenInfo.getExpiresIn() - 300); // 5 min buffer
-            redisTemplate.opsForValue().set(key, value, Duration.ofSeconds(cacheSeconds));
-        } catch (Exception e) {
-            logger.warn("Failed to cache token info", e);
-        }
+        return tokenRevocationService.isRevoked(DigestUtils.sha256Hex(token));
     }
 
     private TokenInfo parseIntrospectionResponse(Map<String, Object> introspectionData) {
@@ -362,7 +333,7 @@ public class KeycloakService {
     }
 
     @SuppressWarnings("unchecked")
-    private Set<String> extractRoles(Map<String, Object> introspectionData) {
+    static Set<String> extractRoles(Map<String, Object> introspectionData) {
         Set<String> roles = new HashSet<>();
 
         // Extract realm roles
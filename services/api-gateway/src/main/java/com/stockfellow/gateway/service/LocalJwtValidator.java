@@ -0,0 +1,175 @@
+package com.stockfellow.gateway.service;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.stockfellow.gateway.model.TokenInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Verifies Keycloak access tokens in-process: RS256/ES256 signature against the
+ * cached JWKS, then exp/nbf (with clock skew), iss and optionally aud.
+ */
+@Component
+public class LocalJwtValidator {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalJwtValidator.class);
+
+    private static final Set<JWSAlgorithm> ALLOWED_ALGORITHMS = Set.of(JWSAlgorithm.RS256, JWSAlgorithm.ES256);
+
+    private final JwksKeyCache jwksKeyCache;
+
+    @Value("${keycloak.auth-server-url}")
+    private String keycloakServerUrl;
+
+    @Value("${keycloak.realm}")
+    private String realm;
+
+    @Value("${app.auth.jwt.issuer:}")
+    private String issuer;
+
+    @Value("${app.auth.jwt.audience:}")
+    private String audience;
+
+    @Value("${app.auth.jwt.clock-skew-seconds:30}")
+    private long clockSkewSeconds;
+
+    private Set<String> acceptedIssuers = Collections.emptySet();
+    private Set<String> acceptedAudiences = Collections.emptySet();
+
+    public LocalJwtValidator(JwksKeyCache jwksKeyCache) {
+        this.jwksKeyCache = jwksKeyCache;
+    }
+
+    @PostConstruct
+    public void init() {
+        acceptedIssuers = issuer == null || issuer.isEmpty()
+                ? Set.of(JwksKeyCache.realmUrl(keycloakServerUrl, realm))
+                : splitList(issuer);
+        acceptedAudiences = audience == null ? Collections.emptySet() : splitList(audience);
+    }
+
+    /**
+     * Validates the token locally.
+     *
+     * @return the token info (valid, expired or invalid), or null if the token
+     *         cannot be judged locally because it is not a JWS or no signing key
+     *         for its kid is available (for instance just after a key rotation).
+     *         Callers may fall back to introspection in that case.
+     */
+    public TokenInfo validate(String token) {
+        SignedJWT jwt;
+        try {
+            jwt = SignedJWT.parse(token);
+        } catch (Exception e) {
+            logger.debug("Token is not a signed JWT, cannot validate locally");
+            return null;
+        }
+
+        try {
+            JWSAlgorithm algorithm = jwt.getHeader().getAlgorithm();
+            if (!ALLOWED_ALGORITHMS.contains(algorithm)) {
+                logger.warn("Rejecting token signed with unsupported algorithm {}", algorithm);
+                return TokenInfo.invalid();
+            }
+
+            JWSVerifier verifier = jwksKeyCache.getVerifier(jwt.getHeader().getKeyID());
+            if (verifier == null) {
+                // Not a verdict: the key set may not have caught up with a rotation yet
+                logger.warn("No signing key found for kid {}", jwt.getHeader().getKeyID());
+                return null;
+            }
+
+            if (!jwt.verify(verifier)) {
+                logger.warn("Token signature verification failed");
+                return TokenInfo.invalid();
+            }
+
+            return verifyClaims(jwt.getJWTClaimsSet());
+
+        } catch (Exception e) {
+            logger.warn("Local token validation failed: {}", e.getMessage());
+            return TokenInfo.invalid();
+        }
+    }
+
+    private TokenInfo verifyClaims(JWTClaimsSet claims) {
+        long now = System.currentTimeMillis() / 1000;
+
+        Date exp = claims.getExpirationTime();
+        if (exp == null) {
+            return TokenInfo.invalid();
+        }
+        long expSeconds = exp.getTime() / 1000;
+        if (expSeconds + clockSkewSeconds < now) {
+            return TokenInfo.expired();
+        }
+
+        Date nbf = claims.getNotBeforeTime();
+        if (nbf != null && nbf.getTime() / 1000 - clockSkewSeconds > now) {
+            logger.warn("Token used before its nbf time");
+            return TokenInfo.invalid();
+        }
+
+        if (!acceptedIssuers.contains(claims.getIssuer())) {
+            logger.warn("Token issuer {} is not accepted", claims.getIssuer());
+            return TokenInfo.invalid();
+        }
+
+        if (!acceptedAudiences.isEmpty() && !containsAny(claims.getAudience(), acceptedAudiences)) {
+            logger.warn("Token audience {} is not accepted", claims.getAudience());
+            return TokenInfo.invalid();
+        }
+
+        // Keycloak signs ID tokens with the same keys; only access tokens may be used as bearer tokens
+        Object type = claims.getClaim("typ");
+        if (type != null && !"Bearer".equals(type)) {
+            logger.warn("Rejecting token of type {}", type);
+            return TokenInfo.invalid();
+        }
+
+        Map<String, Object> claimMap = claims.toJSONObject();
+
+        return TokenInfo.builder()
+                .valid(true)
+                .expired(false)
+                .userId(claims.getSubject())
+                .username((String) claimMap.get("preferred_username"))
+                .roles(KeycloakService.extractRoles(claimMap))
+                .expiresIn(expSeconds - now)
+                .claims(claimMap)
+                .build();
+    }
+
+    private static boolean containsAny(List<String> values, Set<String> accepted) {
+        if (values == null) {
+            return false;
+        }
+        for (String value : values) {
+            if (accepted.contains(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> splitList(String value) {
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,150 @@
+package com.stockfellow.gateway.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stockfellow.gateway.model.TokenInfo;
+import com.stockfellow.gateway.util.ExpiringCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+
+/**
+ * Two-tier cache of validated tokens, keyed by the SHA-256 of the token.
+ *
+ * L1 is a bounded in-process map of parsed {@link TokenInfo}; L2 is Redis
+ * ({@code token_info:<hash>}), shared between gateway instances. Invalid and
+ * expired results are cached too, for {@code negative-ttl-seconds}, so a client
+ * retrying a bad token does not reach Keycloak on every attempt.
+ */
+@Component
+public class TokenCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenCache.class);
+
+    static final String TOKEN_INFO_PREFIX = "token_info:";
+    static final String BLACKLIST_PREFIX = "blacklisted_token:";
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.auth.token-cache.l1-max-entries:10000}")
+    private int l1MaxEntries;
+
+    @Value("${app.auth.token-cache.max-ttl-seconds:300}")
+    private long maxTtlSeconds;
+
+    @Value("${app.auth.token-cache.negative-ttl-seconds:30}")
+    private long negativeTtlSeconds;
+
+    private ExpiringCache<String, TokenInfo> l1;
+
+    private Counter l1Hits;
+    private Counter l1Misses;
+    private Counter l2Hits;
+    private Counter l2Misses;
+
+    public TokenCache(RedisTemplate<String, String> redisTemplate,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        l1 = new ExpiringCache<>(l1MaxEntries);
+
+        l1Hits = cacheCounter("l1", "hit");
+        l1Misses = cacheCounter("l1", "miss");
+        l2Hits = cacheCounter("l2", "hit");
+        l2Misses = cacheCounter("l2", "miss");
+
+        Gauge.builder("gateway.token.cache.size", l1, ExpiringCache::size)
+                .tag("tier", "l1")
+                .register(meterRegistry);
+        FunctionCounter.builder("gateway.token.cache.evictions", l1, ExpiringCache::evictionCount)
+                .tag("tier", "l1")
+                .register(meterRegistry);
+    }
+
+    public TokenInfo getLocal(String tokenHash) {
+        TokenInfo tokenInfo = l1.get(tokenHash);
+        (tokenInfo != null ? l1Hits : l1Misses).increment();
+        return tokenInfo;
+    }
+
+    public void putLocal(String tokenHash, TokenInfo tokenInfo) {
+        l1.put(tokenHash, tokenInfo, ttlSeconds(tokenInfo) * 1000);
+    }
+
+    public TokenInfo getRemote(String tokenHash) {
+        TokenInfo tokenInfo = null;
+        String value = redisTemplate.opsForValue().get(TOKEN_INFO_PREFIX + tokenHash);
+
+        if (value != null) {
+            try {
+                tokenInfo = objectMapper.readValue(value, TokenInfo.class);
+                if (tokenInfo.isValid() && remainingSeconds(tokenInfo) <= 0) {
+                    tokenInfo = null;
+                }
+            } catch (Exception e) {
+                logger.warn("Discarding unreadable cached token info", e);
+            }
+        }
+
+        (tokenInfo != null ? l2Hits : l2Misses).increment();
+        return tokenInfo;
+    }
+
+    public void putRemote(String tokenHash, TokenInfo tokenInfo) {
+        long ttl = ttlSeconds(tokenInfo);
+        if (ttl <= 0) {
+            return;
+        }
+        try {
+            String value = objectMapper.writeValueAsString(tokenInfo);
+            redisTemplate.opsForValue().set(TOKEN_INFO_PREFIX + tokenHash, value, Duration.ofSeconds(ttl));
+        } catch (Exception e) {
+            logger.warn("Failed to cache token info", e);
+        }
+    }
+
+    public void invalidate(String tokenHash) {
+        l1.invalidate(tokenHash);
+        redisTemplate.delete(TOKEN_INFO_PREFIX + tokenHash);
+    }
+
+    // Valid tokens live until they expire (capped); failures only briefly
+    private long ttlSeconds(TokenInfo tokenInfo) {
+        if (!tokenInfo.isValid()) {
+            return negativeTtlSeconds;
+        }
+        return Math.min(remainingSeconds(tokenInfo), maxTtlSeconds);
+    }
+
+    // expiresIn is relative to when the info was built, so prefer the absolute exp claim
+    private long remainingSeconds(TokenInfo tokenInfo) {
+        Object exp = tokenInfo.getClaims() != null ? tokenInfo.getClaims().get("exp") : null;
+        if (exp instanceof Number) {
+            return ((Number) exp).longValue() - System.currentTimeMillis() / 1000;
+        }
+        return tokenInfo.getExpiresIn();
+    }
+
+    private Counter cacheCounter(String tier, String result) {
+        return Counter.builder("gateway.token.cache.requests")
+                .tag("tier", tier)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
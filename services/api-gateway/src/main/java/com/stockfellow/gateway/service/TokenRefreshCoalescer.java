@@ -0,0 +1,204 @@
+package com.stockfellow.gateway.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stockfellow.gateway.model.RefreshTokenResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-flight for token refreshes, keyed by the SHA-256 of the refresh token.
+ *
+ * Keycloak rotates refresh tokens, so when a client sends the same refresh token
+ * several times at once only the first Keycloak call succeeds. Here, concurrent
+ * refreshes on one instance wait for the first one, and across instances a
+ * {@code token_refresh_lock:<hash>} key in Redis picks the one that calls
+ * Keycloak. Its result is kept as {@code token_refresh:<hash>} for
+ * {@code result-ttl-ms}, so the others, and duplicates arriving slightly later,
+ * get the same new token pair. Only successful refreshes are kept; after a
+ * failure the next waiter tries Keycloak itself.
+ *
+ * A waiter on another instance calls Keycloak itself after {@code max-wait-ms},
+ * and so does every caller while Redis is unreachable. Outcomes are counted in
+ * {@code gateway.token.refresh}, tagged {@code keycloak}, {@code local}
+ * (joined a refresh on this instance), {@code shared} (result from Redis),
+ * {@code timeout} or {@code redis_error}.
+ */
+@Service
+public class TokenRefreshCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenRefreshCoalescer.class);
+
+    static final String RESULT_PREFIX = "token_refresh:";
+    static final String LOCK_PREFIX = "token_refresh_lock:";
+
+    private final KeycloakService keycloakService;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.auth.refresh.coalescing-enabled:true}")
+    private boolean enabled;
+
+    // How long a new token pair is handed to duplicates of the refresh that produced it
+    @Value("${app.auth.refresh.result-ttl-ms:10000}")
+    private long resultTtlMs;
+
+    // Longer than a Keycloak token call, so the lock outlives the refresh it guards
+    @Value("${app.auth.refresh.lock-ttl-ms:5000}")
+    private long lockTtlMs;
+
+    @Value("${app.auth.refresh.max-wait-ms:3000}")
+    private long maxWaitMs;
+
+    @Value("${app.auth.refresh.poll-interval-ms:50}")
+    private long pollIntervalMs;
+
+    private final String instanceId = UUID.randomUUID().toString();
+    private final Map<String, CompletableFuture<RefreshTokenResponse>> inFlight = new ConcurrentHashMap<>();
+
+    private Counter keycloak;
+    private Counter local;
+    private Counter shared;
+    private Counter timeout;
+    private Counter redisError;
+
+    public TokenRefreshCoalescer(KeycloakService keycloakService,
+            RedisTemplate<String, String> redisTemplate,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry) {
+        this.keycloakService = keycloakService;
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        keycloak = outcomeCounter("keycloak");
+        local = outcomeCounter("local");
+        shared = outcomeCounter("shared");
+        timeout = outcomeCounter("timeout");
+        redisError = outcomeCounter("redis_error");
+    }
+
+    public RefreshTokenResponse refresh(String refreshToken) {
+        if (!enabled) {
+            return callKeycloak(refreshToken);
+        }
+
+        String tokenHash = DigestUtils.sha256Hex(refreshToken);
+        CompletableFuture<RefreshTokenResponse> mine = new CompletableFuture<>();
+        CompletableFuture<RefreshTokenResponse> leader = inFlight.putIfAbsent(tokenHash, mine);
+        if (leader != null) {
+            local.increment();
+            return leader.join();
+        }
+
+        try {
+            RefreshTokenResponse response = refreshShared(tokenHash, refreshToken);
+            mine.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(tokenHash, mine);
+        }
+    }
+
+    private RefreshTokenResponse refreshShared(String tokenHash, String refreshToken) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        while (true) {
+            RefreshTokenResponse stored;
+            boolean leader;
+            try {
+                stored = readResult(tokenHash);
+                leader = stored == null && Boolean.TRUE.equals(redisTemplate.opsForValue()
+                        .setIfAbsent(LOCK_PREFIX + tokenHash, instanceId, Duration.ofMillis(lockTtlMs)));
+            } catch (RuntimeException e) {
+                redisError.increment();
+                logger.warn("Token refresh not shared through Redis: {}", e.getMessage());
+                return callKeycloak(refreshToken);
+            }
+
+            if (stored != null) {
+                shared.increment();
+                return stored;
+            }
+            if (leader) {
+                return refreshAsLeader(tokenHash, refreshToken);
+            }
+
+            // Another instance is refreshing this token
+            if (System.nanoTime() - deadline >= 0) {
+                timeout.increment();
+                logger.warn("Gave up waiting for another instance's token refresh");
+                return callKeycloak(refreshToken);
+            }
+            try {
+                Thread.sleep(pollIntervalMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return callKeycloak(refreshToken);
+            }
+        }
+    }
+
+    private RefreshTokenResponse refreshAsLeader(String tokenHash, String refreshToken) {
+        RefreshTokenResponse response = callKeycloak(refreshToken);
+        if (response.isSuccess()) {
+            try {
+                redisTemplate.opsForValue().set(RESULT_PREFIX + tokenHash,
+                        objectMapper.writeValueAsString(response), Duration.ofMillis(resultTtlMs));
+            } catch (Exception e) {
+                logger.warn("Failed to share refreshed tokens", e);
+            }
+        } else {
+            // Let a waiter try instead of having it wait out the lock
+            try {
+                redisTemplate.delete(LOCK_PREFIX + tokenHash);
+            } catch (Exception e) {
+                logger.warn("Failed to release token refresh lock", e);
+            }
+        }
+        return response;
+    }
+
+    private RefreshTokenResponse readResult(String tokenHash) {
+        String value = redisTemplate.opsForValue().get(RESULT_PREFIX + tokenHash);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(value, RefreshTokenResponse.class);
+        } catch (Exception e) {
+            logger.warn("Discarding unreadable shared refresh result", e);
+            return null;
+        }
+    }
+
+    private RefreshTokenResponse callKeycloak(String refreshToken) {
+        keycloak.increment();
+        return keycloakService.refreshToken(refreshToken);
+    }
+
+    private Counter outcomeCounter(String outcome) {
+        return Counter.builder("gateway.token.refresh")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
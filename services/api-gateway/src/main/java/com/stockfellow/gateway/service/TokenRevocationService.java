@@ -0,0 +1,208 @@
+package com.stockfellow.gateway.service;
+
+import com.nimbusds.jwt.JWTParser;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a local copy of the revoked (logged out) tokens that have not expired yet,
+ * so the revocation check on every request needs no Redis round trip.
+ *
+ * Redis ({@code blacklisted_token:<hash>}) stays the source of truth. The local
+ * set is seeded from it at startup, updated through the {@code token_revocations}
+ * pub/sub channel when any instance logs a user out, and reconciled periodically
+ * to pick up messages missed while the subscription was down. Until the first
+ * successful seed, checks go to Redis directly.
+ */
+@Service
+public class TokenRevocationService implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationService.class);
+
+    static final String CHANNEL = "token_revocations";
+    private static final Duration DEFAULT_REVOCATION_TTL = Duration.ofHours(24);
+    // Keep revocations slightly past exp so clock skew cannot revive a token
+    private static final long EXPIRY_MARGIN_MS = 60_000;
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final MeterRegistry meterRegistry;
+
+    // token hash -> epoch millis after which the entry can be dropped
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+    private volatile boolean synced;
+
+    private Counter received;
+    private Counter reconciled;
+    private Counter redisFallbacks;
+
+    @Value("${app.auth.revocation.local-enabled:true}")
+    private boolean localEnabled;
+
+    public TokenRevocationService(RedisTemplate<String, String> redisTemplate,
+            RedisMessageListenerContainer listenerContainer,
+            MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        received = Counter.builder("gateway.token.revocations.received").register(meterRegistry);
+        reconciled = Counter.builder("gateway.token.revocations.reconciled").register(meterRegistry);
+        redisFallbacks = Counter.builder("gateway.token.revocations.redis.checks").register(meterRegistry);
+        Gauge.builder("gateway.token.revocations.size", revoked, Map::size).register(meterRegistry);
+
+        if (!localEnabled) {
+            return;
+        }
+
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+        reconcile();
+    }
+
+    public boolean isRevoked(String tokenHash) {
+        if (localEnabled && synced) {
+            Long expiresAt = revoked.get(tokenHash);
+            return expiresAt != null && expiresAt > System.currentTimeMillis();
+        }
+
+        redisFallbacks.increment();
+        return Boolean.TRUE.equals(redisTemplate.hasKey(TokenCache.BLACKLIST_PREFIX + tokenHash));
+    }
+
+    /**
+     * Records the revocation in Redis and tells every gateway instance about it.
+     */
+    public void revoke(String token, String tokenHash) {
+        long expiresAt = revocationExpiry(token);
+        long ttlMs = Math.max(1000, expiresAt - System.currentTimeMillis());
+
+        redisTemplate.opsForValue().set(TokenCache.BLACKLIST_PREFIX + tokenHash, "true", Duration.ofMillis(ttlMs));
+        revoked.put(tokenHash, expiresAt);
+
+        try {
+            redisTemplate.convertAndSend(CHANNEL, tokenHash + ":" + expiresAt);
+        } catch (Exception e) {
+            // Other instances will pick it up on their next reconciliation
+            logger.warn("Failed to publish token revocation", e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.lastIndexOf(':');
+        if (separator <= 0) {
+            logger.warn("Ignoring malformed revocation message");
+            return;
+        }
+
+        try {
+            revoked.put(body.substring(0, separator), Long.parseLong(body.substring(separator + 1)));
+            received.increment();
+        } catch (NumberFormatException e) {
+            logger.warn("Ignoring malformed revocation message");
+        }
+    }
+
+    /**
+     * Drops expired entries and adds any revocation present in Redis but missing
+     * locally (a pub/sub message that never arrived).
+     */
+    @Scheduled(fixedDelayString = "${app.auth.revocation.reconcile-interval-ms:60000}",
+            initialDelayString = "${app.auth.revocation.reconcile-interval-ms:60000}")
+    public void reconcile() {
+        if (!localEnabled) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        revoked.values().removeIf(expiresAt -> expiresAt <= now);
+
+        try {
+            Map<String, Long> stored = loadFromRedis();
+            int missing = 0;
+            for (Map.Entry<String, Long> entry : stored.entrySet()) {
+                if (revoked.putIfAbsent(entry.getKey(), entry.getValue()) == null) {
+                    missing++;
+                }
+            }
+
+            // Entries missing after the first seed mean a pub/sub message was lost
+            if (synced && missing > 0) {
+                reconciled.increment(missing);
+                logger.warn("Reconciliation found {} revocations missing locally", missing);
+            }
+            synced = true;
+
+        } catch (Exception e) {
+            logger.warn("Failed to reconcile token revocations from Redis: {}", e.getMessage());
+        }
+    }
+
+    public int size() {
+        return revoked.size();
+    }
+
+    private Map<String, Long> loadFromRedis() {
+        return redisTemplate.execute((RedisCallback<Map<String, Long>>) connection -> {
+            Map<String, Long> result = new HashMap<>();
+            long now = System.currentTimeMillis();
+            ScanOptions options = ScanOptions.scanOptions()
+                    .match(TokenCache.BLACKLIST_PREFIX + "*")
+                    .count(500)
+                    .build();
+
+            try (Cursor<byte[]> cursor = connection.scan(options)) {
+                while (cursor.hasNext()) {
+                    byte[] key = cursor.next();
+                    Long ttl = connection.pTtl(key);
+                    if (ttl == null || ttl == -2) {
+                        continue;
+                    }
+                    long expiresAt = ttl < 0 ? now + DEFAULT_REVOCATION_TTL.toMillis() : now + ttl;
+                    String name = new String(key, StandardCharsets.UTF_8);
+                    result.put(name.substring(TokenCache.BLACKLIST_PREFIX.length()), expiresAt);
+                }
+            }
+            return result;
+        });
+    }
+
+    // A revoked token only needs remembering until it would have expired anyway
+    private long revocationExpiry(String token) {
+        try {
+            Date exp = JWTParser.parse(token).getJWTClaimsSet().getExpirationTime();
+            if (exp != null) {
+                return exp.getTime() + EXPIRY_MARGIN_MS;
+            }
+        } catch (Exception e) {
+            logger.debug("Token expiry unknown, using default revocation TTL");
+        }
+        return System.currentTimeMillis() + DEFAULT_REVOCATION_TTL.toMillis();
+    }
+}
@@ -1,84 +1,97 @@
 package com.stockfellow.gateway.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.stockfellow.gateway.model.TokenInfo;
 import com.stockfellow.gateway.model.TokenValidationResult;
-import com.stockfellow.gateway.service.TokenValidationService;
+import com.stockfellow.gateway.routing.RouteMatch;
+import com.stockfellow.gateway.routing.RouteTable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.apache.commons.codec.digest.DigestUtils;
 
-import java.time.Duration;
-import java.util.Set;
-
 @Component
 public class TokenValidationService {
 
     private static final Logger logger = LoggerFactory.getLogger(TokenValidationService.class);
 
     private final KeycloakService keycloakService;
-    private final RedisTemplate<String, String> redisTemplate;
-    private final ObjectMapper objectMapper;
-
-    // Endpoints that don't require authentication
-    private final Set<String> PUBLIC_ENDPOINTS = Set.of(
-        "/api/auth/login",
-        "/api/auth/test/login", 
-        "/api/auth/verify-mfa",
-        "/api/auth/register",
-        "/api/auth/refresh",
-        "/auth/login",          
-        "/auth/test/login",
-        "/auth/verify-mfa", 
-        "/auth/register",      
-        "/auth/refresh",
-        "/api/health",
-        "/actuator/health",
-        "/actuator/info",
-        "/health",
-        "/favicon.ico",
-        "/error");
+    private final LocalJwtValidator localJwtValidator;
+    private final TokenCache tokenCache;
+    private final TokenRevocationService tokenRevocationService;
+    private final RouteTable routeTable;
+
+    // "local" verifies JWTs against the cached JWKS, "introspection" asks Keycloak every time
+    @Value("${app.auth.validation-mode:local}")
+    private String validationMode;
+
+    // Fall back to introspection for opaque tokens or when no signing keys are available
+    @Value("${app.auth.introspection-fallback:true}")
+    private boolean introspectionFallback;
 
     public TokenValidationService(KeycloakService keycloakService,
-            RedisTemplate<String, String> redisTemplate,
-            ObjectMapper objectMapper) {
+            LocalJwtValidator localJwtValidator,
+            TokenCache tokenCache,
+            TokenRevocationService tokenRevocationService,
+            RouteTable routeTable) {
         this.keycloakService = keycloakService;
-        this.redisTemplate = redisTemplate;
-        this.objectMapper = objectMapper;
+        this.localJwtValidator = localJwtValidator;
+        this.tokenCache = tokenCache;
+        this.tokenRevocationService = tokenRevocationService;
+        this.routeTable = routeTable;
     }
 
     public TokenValidationResult validateRequest(String path, String authHeader) {
+        return validateRequest(routeTable.match(path), authHeader);
+    }
+
+    public TokenValidationResult validateRequest(RouteMatch routeMatch, String authHeader) {
+        String path = routeMatch.getPath();
         logger.debug("Validating request for path: {}", path);
         logger.debug("Auth header present: {}", authHeader != null);
 
         // Skip validation for public endpoints
-        if (isPublicEndpoint(path)) {
+        if (routeMatch.isPublic()) {
             logger.debug("Path {} is public, skipping validation", path);
             return TokenValidationResult.success();
         }
 
         if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-            logger.warn("Missing or invalid authorization header for path: {}", path);
+            logger.debug("Missing or invalid authorization header for path: {}", path);
             return TokenValidationResult.unauthorized("Missing or invalid authorization header");
         }
 
         String token = authHeader.substring(7);
         logger.debug("Extracted token (first 20 chars): {}", token.substring(0, Math.min(20, token.length())));
 
+        String tokenHash = hashToken(token);
+
         try {
-            // First check if token is blacklisted
-            if (isTokenBlacklisted(token)) {
-                return TokenValidationResult.unauthorized("Token has been revoked");
-            }
+            TokenInfo tokenInfo = tokenCache.getLocal(tokenHash);
 
-            // Validate token with Keycloak
-            TokenInfo tokenInfo = keycloakService.validateToken(token);
+            if (tokenInfo != null) {
+                // L1 hit: only a valid token still needs the revocation check
+                if (tokenInfo.isValid() && tokenRevocationService.isRevoked(tokenHash)) {
+                    return TokenValidationResult.unauthorized("Token has been revoked");
+                }
+            } else {
+                // Revocations are replicated locally, so this is normally an in-memory lookup
+                if (tokenRevocationService.isRevoked(tokenHash)) {
+                    return TokenValidationResult.unauthorized("Token has been revoked");
+                }
+
+                tokenInfo = tokenCache.getRemote(tokenHash);
+                if (tokenInfo == null) {
+                    tokenInfo = verifyToken(token, tokenHash);
+                }
+                if (tokenInfo == null) {
+                    // No verdict (unknown signing key, no introspection fallback); nothing to cache
+                    return TokenValidationResult.unauthorized("Token cannot be verified");
+                }
+                tokenCache.putLocal(tokenHash, tokenInfo);
+            }
 
             if (tokenInfo.isValid()) {
-                // Cache valid token info for faster subsequent requests
-                cacheTokenInfo(token, tokenInfo);
                 return TokenValidationResult.success(tokenInfo);
             } else if (tokenInfo.isExpired()) {
                 return TokenValidationResult.expired("Access token has expired");
@@ -87,60 +100,33 @@ public class TokenValidationService {
             }
 
         } catch (Exception e) {
+            // Keycloak unavailable or similar: fail this request only, cache nothing
             logger.error("Token validation failed", e);
             return TokenValidationResult.unauthorized("Token validation failed");
         }
     }
 
-    private boolean isPublicEndpoint(String path) {
-        logger.info("Checking if path '{}' is public", path);
-        
-        // Check exact matches first
-        if (PUBLIC_ENDPOINTS.contains(path)) {
-            logger.info("Path '{}' found in public endpoints", path);
-            return true;
-        }
-        
-        // Check if path starts with any public endpoint
-        boolean isPublic = PUBLIC_ENDPOINTS.stream().anyMatch(endpoint -> {
-            boolean matches = path.startsWith(endpoint) || endpoint.startsWith(path);
-            if (matches) {
-                logger.info("Path '{}' matches public endpoint '{}'", path, endpoint);
+    /**
+     * Returns a definitive result (valid, expired or invalid) that may be cached,
+     * or null if the token cannot be judged locally and introspection is disabled.
+     * Throws if Keycloak cannot be asked, so an outage is never cached as invalid.
+     */
+    private TokenInfo verifyToken(String token, String tokenHash) {
+        if (!"introspection".equalsIgnoreCase(validationMode)) {
+            TokenInfo tokenInfo = localJwtValidator.validate(token);
+            if (tokenInfo != null) {
+                return tokenInfo;
             }
-            return matches;
-        });
-        
-        // Also check without /api prefix if path starts with /api
-        if (!isPublic && path.startsWith("/api")) {
-            String pathWithoutApi = path.substring(4); // Remove "/api"
-            isPublic = PUBLIC_ENDPOINTS.stream().anyMatch(endpoint -> {
-                boolean matches = pathWithoutApi.startsWith(endpoint) || endpoint.contains(pathWithoutApi);
-                if (matches) {
-                    logger.info("Path '{}' (without /api: '{}') matches public endpoint '{}'", path, pathWithoutApi, endpoint);
-                }
-                return matches;
-            });
+            if (!introspectionFallback) {
+                return null;
+            }
+            logger.debug("Token cannot be verified locally, falling back to introspection");
         }
-        
-        logger.info("Path '{}' is public: {}", path, isPublic);
-        return isPublic;
-    }
 
-    private boolean isTokenBlacklisted(String token) {
-        String key = "blacklisted_token:" + hashToken(token);
-        return Boolean.TRUE.equals(redisTemplate.hasKey(key));
-    }
-
-    private void cacheTokenInfo(String token, TokenInfo tokenInfo) {
-        try {
-            String key = "token_info:" + hashToken(token);
-            String value = objectMapper.writeValueAsString(tokenInfo);
-            // Cache for shorter duration than token expiry
-            long cacheSeconds = Math.max(60, tokenInfo.getExpiresIn() - 300); // 5 min buffer
-            redisTemplate.opsForValue().set(key, value, Duration.ofSeconds(cacheSeconds));
-        } catch (Exception e) {
-            logger.warn("Failed to cache token info", e);
-        }
+        // Share introspection answers (including inactive tokens) with the other gateway instances
+        TokenInfo tokenInfo = keycloakService.validateToken(token);
+        tokenCache.putRemote(tokenHash, tokenInfo);
+        return tokenInfo;
     }
 
     private String hashToken(String token) {
@@ -1,20 +1,19 @@
 package com.stockfellow.gateway.service;
 
+import com.stockfellow.gateway.util.SizeLimitedInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
-import org.springframework.web.multipart.MultipartFile;
 
-import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -25,11 +24,16 @@ public class UserServiceClient {
 
     private final RestTemplate restTemplate;
 
-    @Value("${services.user-service.url")
+    // Pooled client with request buffering off, so uploads are written as they are read
+    private final RestTemplate uploadRestTemplate;
+
+    @Value("${services.user-service.url}")
     private String userServiceUrl;
 
-    public UserServiceClient(RestTemplate restTemplate) {
+    public UserServiceClient(RestTemplate restTemplate,
+            @Qualifier("proxyRestTemplate") RestTemplate uploadRestTemplate) {
         this.restTemplate = restTemplate;
+        this.uploadRestTemplate = uploadRestTemplate;
     }
 
     /**
@@ -133,37 +137,32 @@ public class UserServiceClient {
     }
 
     /**
-     * Forwards the ID verification request to the user service
+     * Forwards an ID verification upload to the user service. The client's
+     * multipart body is copied through as it arrives, with its own Content-Type
+     * (and boundary), so the document is never held in gateway memory. It goes
+     * through the proxy's pooled client, which does not buffer request bodies.
+     *
+     * @param contentLength body length, or -1 to send it chunked
+     * @throws SizeLimitedInputStream.LimitExceededException if {@code body} is a
+     *         {@link SizeLimitedInputStream} whose limit was reached on the way
      */
-    public Map<String, Object> verifyUserID(MultipartFile file, String userId, String authHeader) {
+    public Map<String, Object> verifyUserID(InputStream body, String contentType, long contentLength,
+            String userId, String authHeader) throws SizeLimitedInputStream.LimitExceededException {
         try {
             String url = userServiceUrl + "/api/users/verifyID";
 
-            // Prepare multipart request
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.MULTIPART_FORM_DATA);
-            headers.set("Authorization", authHeader);
-            headers.set("X-User-Id", userId);
-
-            // Create multipart body
-            MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
-
-            // Add file as ByteArrayResource to preserve filename and content type
-            ByteArrayResource fileResource = new ByteArrayResource(file.getBytes()) {
-                @Override
-                public String getFilename() {
-                    return file.getOriginalFilename();
-                }
-            };
-
-            body.add("file", fileResource);
-            body.add("userId", userId);
-
-            HttpEntity<MultiValueMap<String, Object>> requestEntity = new HttpEntity<>(body, headers);
-
             logger.info("Forwarding ID verification request to user service for userId: {}", userId);
 
-            ResponseEntity<Map> response = restTemplate.postForEntity(url, requestEntity, Map.class);
+            ResponseEntity<Map> response = uploadRestTemplate.execute(url, HttpMethod.POST, request -> {
+                HttpHeaders headers = request.getHeaders();
+                headers.set(HttpHeaders.CONTENT_TYPE, contentType);
+                if (contentLength >= 0) {
+                    headers.setContentLength(contentLength);
+                }
+                headers.set("Authorization", authHeader);
+                headers.set("X-User-Id", userId);
+                ((StreamingHttpOutputMessage) request).setBody(out -> StreamUtils.copy(body, out));
+            }, uploadRestTemplate.responseEntityExtractor(Map.class));
 
             if (response.getStatusCode().is2xxSuccessful()) {
                 logger.info("ID verification request processed successfully by user service for userId: {}", userId);
@@ -176,11 +175,17 @@ public class UserServiceClient {
                         "message", "User service returned error: " + response.getStatusCode());
             }
 
-        } catch (IOException e) {
-            logger.error("Error reading file content for ID verification, userId: {}", userId, e);
+        } catch (ResourceAccessException e) {
+            // Wrapped once more by HttpClient when it gives up on the unrepeatable body
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof SizeLimitedInputStream.LimitExceededException) {
+                    throw (SizeLimitedInputStream.LimitExceededException) cause;
+                }
+            }
+            logger.error("Error forwarding ID verification request to user service for userId: {}", userId, e);
             return Map.of(
-                    "error", "file_processing_error",
-                    "message", "Error processing the uploaded file");
+                    "error", "service_communication_error",
+                    "message", "Failed to communicate with user service");
         } catch (Exception e) {
             logger.error("Error forwarding ID verification request to user service for userId: {}", userId, e);
             return Map.of(
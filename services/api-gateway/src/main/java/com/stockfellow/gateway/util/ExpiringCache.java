@@ -0,0 +1,112 @@
+package com.stockfellow.gateway.util;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Small bounded in-process cache with a per-entry time to live.
+ *
+ * Reads are lock free. When a write pushes the cache over {@code maxEntries} one
+ * writer sweeps it down to 90% of capacity, dropping expired entries first and
+ * then arbitrary ones, so eviction cost is amortised over many writes.
+ */
+public class ExpiringCache<K, V> {
+
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final ReentrantLock sweepLock = new ReentrantLock();
+    private final AtomicLong evictions = new AtomicLong();
+    private final int maxEntries;
+
+    public ExpiringCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    public V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt <= System.currentTimeMillis()) {
+            if (entries.remove(key, entry)) {
+                evictions.incrementAndGet();
+            }
+            return null;
+        }
+        return entry.value;
+    }
+
+    public void put(K key, V value, long ttlMillis) {
+        if (ttlMillis <= 0) {
+            return;
+        }
+        entries.put(key, new Entry<>(value, System.currentTimeMillis() + ttlMillis));
+        if (entries.size() > maxEntries) {
+            sweep();
+        }
+    }
+
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int maxEntries() {
+        return maxEntries;
+    }
+
+    /** Entries removed because they expired or the cache was full. */
+    public long evictionCount() {
+        return evictions.get();
+    }
+
+    private void sweep() {
+        // Another writer is already sweeping; let this write overshoot briefly
+        if (!sweepLock.tryLock()) {
+            return;
+        }
+        try {
+            int target = Math.max(1, maxEntries * 9 / 10);
+            long now = System.currentTimeMillis();
+
+            Iterator<Map.Entry<K, Entry<V>>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                if (it.next().getValue().expiresAt <= now) {
+                    it.remove();
+                    evictions.incrementAndGet();
+                }
+            }
+
+            it = entries.entrySet().iterator();
+            while (entries.size() > target && it.hasNext()) {
+                it.next();
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
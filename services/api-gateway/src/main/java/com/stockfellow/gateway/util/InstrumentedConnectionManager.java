@@ -0,0 +1,127 @@
+package com.stockfellow.gateway.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Pooling connection manager that records, per upstream ({@code host:port}), how
+ * long callers wait to lease a connection ({@code gateway.proxy.pool.lease}) and
+ * how often the wait times out because the pool is exhausted
+ * ({@code gateway.proxy.pool.exhausted}). Leased, available and pending counts
+ * are exported as gauges for the upstreams passed in.
+ */
+public class InstrumentedConnectionManager implements HttpClientConnectionManager {
+
+    private final PoolingHttpClientConnectionManager delegate;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> leaseTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> exhaustedCounters = new ConcurrentHashMap<>();
+
+    public InstrumentedConnectionManager(PoolingHttpClientConnectionManager delegate,
+            MeterRegistry meterRegistry,
+            Collection<HttpRoute> upstreams) {
+        this.delegate = delegate;
+        this.meterRegistry = meterRegistry;
+
+        for (HttpRoute route : upstreams) {
+            poolGauge(route, "leased", PoolStats::getLeased);
+            poolGauge(route, "available", PoolStats::getAvailable);
+            poolGauge(route, "pending", PoolStats::getPending);
+            poolGauge(route, "max", PoolStats::getMax);
+        }
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+        ConnectionRequest request = delegate.requestConnection(route, state);
+        String upstream = route.getTargetHost().toHostString();
+
+        return new ConnectionRequest() {
+            @Override
+            public HttpClientConnection get(long timeout, TimeUnit timeUnit)
+                    throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                long start = System.nanoTime();
+                try {
+                    return request.get(timeout, timeUnit);
+                } catch (ConnectionPoolTimeoutException e) {
+                    exhaustedCounters.computeIfAbsent(upstream, u -> Counter.builder("gateway.proxy.pool.exhausted")
+                            .tag("upstream", u)
+                            .register(meterRegistry))
+                            .increment();
+                    throw e;
+                } finally {
+                    leaseTimers.computeIfAbsent(upstream, u -> Timer.builder("gateway.proxy.pool.lease")
+                            .tag("upstream", u)
+                            .register(meterRegistry))
+                            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+            }
+
+            @Override
+            public boolean cancel() {
+                return request.cancel();
+            }
+        };
+    }
+
+    @Override
+    public void releaseConnection(HttpClientConnection conn, Object newState, long validDuration, TimeUnit timeUnit) {
+        delegate.releaseConnection(conn, newState, validDuration, timeUnit);
+    }
+
+    @Override
+    public void connect(HttpClientConnection conn, HttpRoute route, int connectTimeout, HttpContext context)
+            throws IOException {
+        delegate.connect(conn, route, connectTimeout, context);
+    }
+
+    @Override
+    public void upgrade(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+        delegate.upgrade(conn, route, context);
+    }
+
+    @Override
+    public void routeComplete(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+        delegate.routeComplete(conn, route, context);
+    }
+
+    @Override
+    public void closeIdleConnections(long idleTime, TimeUnit timeUnit) {
+        delegate.closeIdleConnections(idleTime, timeUnit);
+    }
+
+    @Override
+    public void closeExpiredConnections() {
+        delegate.closeExpiredConnections();
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    private void poolGauge(HttpRoute route, String state, ToDoubleFunction<PoolStats> value) {
+        Gauge.builder("gateway.proxy.pool.connections", delegate, pool -> value.applyAsDouble(pool.getStats(route)))
+                .tag("upstream", route.getTargetHost().toHostString())
+                .tag("state", state)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,76 @@
+package com.stockfellow.gateway.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that fails as soon as more than {@code maxBytes} have been read
+ * through it, so an oversized upload is cut off while it is being forwarded
+ * instead of after it has been received in full.
+ */
+public class SizeLimitedInputStream extends FilterInputStream {
+
+    private final long maxBytes;
+    private long count;
+
+    public SizeLimitedInputStream(InputStream in, long maxBytes) {
+        super(in);
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            counted(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            counted(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        counted(skipped);
+        return skipped;
+    }
+
+    // Marking would let bytes be counted twice
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    private void counted(long bytes) throws LimitExceededException {
+        count += bytes;
+        if (count > maxBytes) {
+            throw new LimitExceededException(maxBytes);
+        }
+    }
+
+    public static class LimitExceededException extends IOException {
+        private final long maxBytes;
+
+        public LimitExceededException(long maxBytes) {
+            super("Body exceeds " + maxBytes + " bytes");
+            this.maxBytes = maxBytes;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+    }
+}
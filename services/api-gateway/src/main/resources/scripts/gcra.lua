@@ -0,0 +1,31 @@
+-- GCRA rate limit check, run atomically in Redis.
+--
+-- KEYS[1]  bucket key, holding the theoretical arrival time (TAT) in ms
+-- ARGV[1]  emission interval in ms (windowMs / max)
+-- ARGV[2]  burst tolerance in ms (windowMs - interval)
+-- ARGV[3]  tokens requested (more than 1 when the caller prefetches a batch)
+--
+-- Returns {granted, retryAfterMs}. Grants as many of the requested tokens as
+-- fit, so a prefetch never exceeds the limit. Time comes from the Redis server
+-- so every gateway instance uses the same clock.
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local interval = tonumber(ARGV[1])
+local tolerance = tonumber(ARGV[2])
+local requested = tonumber(ARGV[3])
+
+local tat = tonumber(redis.call('GET', KEYS[1]))
+if tat == nil or tat < now then
+    tat = now
+end
+
+local available = math.floor((tolerance - (tat - now)) / interval) + 1
+if available <= 0 then
+    return {0, math.ceil(tat - tolerance - now)}
+end
+
+local granted = math.min(requested, available)
+tat = tat + granted * interval
+redis.call('SET', KEYS[1], string.format('%.3f', tat), 'PX', math.ceil(tat - now))
+return {granted, 0}
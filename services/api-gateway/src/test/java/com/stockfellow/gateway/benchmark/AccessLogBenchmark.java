@@ -0,0 +1,115 @@
+package com.stockfellow.gateway.benchmark;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+import com.stockfellow.gateway.filter.LoggingFilter;
+import com.stockfellow.gateway.logging.AsyncAccessLog;
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.routing.RouteTable;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.servlet.FilterChain;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LoggingFilter with its synchronous SLF4J line per request against the
+ * {@link AsyncAccessLog} ring buffer, from several request threads at once.
+ *
+ * Both write to a discarding stream through the same kind of appender path
+ * they use in production (a logback console-style encoder for the former, the
+ * access log's own writer for the latter), so the numbers are what a request
+ * thread pays, not disk speed. Run with the GC profiler (as {@link #main}
+ * does) to compare {@code gc.alloc.rate.norm}. If {@code dropped} is above
+ * zero, the writer could not keep up with the offered rate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class AccessLogBenchmark {
+
+    private LoggingFilter synchronousFilter;
+    private LoggingFilter asyncFilter;
+    private AsyncAccessLog accessLog;
+    private RouteTable routeTable;
+    private final FilterChain chain = (request, response) -> { };
+
+    @Setup
+    public void setUp() {
+        // Console-style pattern as Spring Boot's default, into a stream that discards everything
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d{yyyy-MM-dd HH:mm:ss.SSS} %5p [%t] %logger{39} : %m%n");
+        encoder.start();
+        OutputStreamAppender<ILoggingEvent> appender = new OutputStreamAppender<>();
+        appender.setContext(context);
+        appender.setEncoder(encoder);
+        appender.setOutputStream(OutputStream.nullOutputStream());
+        appender.start();
+        Logger root = context.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+        root.detachAndStopAllAppenders();
+        root.addAppender(appender);
+        root.setLevel(ch.qos.logback.classic.Level.INFO);
+
+        routeTable = RouteTable.compile(List.of(
+                new Route("/api/groups/**", true, null, new Route.Proxy("http://group-service:4040", true))));
+
+        accessLog = new AsyncAccessLog(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(accessLog, "bufferSize", 8192);
+        ReflectionTestUtils.setField(accessLog, "idleParkMs", 1L);
+        accessLog.start(OutputStream.nullOutputStream());
+
+        synchronousFilter = new LoggingFilter();
+        asyncFilter = new LoggingFilter(null, accessLog);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        accessLog.shutdown();
+        System.out.println("dropped: " + accessLog.dropped());
+    }
+
+    @Benchmark
+    public Object synchronousLog() throws Exception {
+        return filter(synchronousFilter);
+    }
+
+    @Benchmark
+    public Object asyncAccessLog() throws Exception {
+        return filter(asyncFilter);
+    }
+
+    private Object filter(LoggingFilter filter) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/groups/user");
+        request.addHeader("X-Forwarded-For", "203.0.113.7");
+        routeTable.match(request);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(AccessLogBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,196 @@
+package com.stockfellow.gateway.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.stockfellow.gateway.config.RouteConfig;
+import com.stockfellow.gateway.filter.AuthFilter;
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.model.TokenInfo;
+import com.stockfellow.gateway.model.TokenValidationResult;
+import com.stockfellow.gateway.routing.RouteMatch;
+import com.stockfellow.gateway.routing.RouteTable;
+import com.stockfellow.gateway.service.JwksKeyCache;
+import com.stockfellow.gateway.service.LocalJwtValidator;
+import com.stockfellow.gateway.service.TokenCache;
+import com.stockfellow.gateway.service.TokenRevocationService;
+import com.stockfellow.gateway.service.TokenValidationService;
+import com.stockfellow.gateway.util.ExpiringCache;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import javax.servlet.FilterChain;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TokenValidationService on its own and behind AuthFilter, with a real signed
+ * access token, the real two-tier TokenCache over {@link InMemoryRedisTemplate}
+ * and a stub Keycloak serving the JWKS.
+ *
+ * {@code cache} picks where the token is found: {@code l1} is a warm
+ * in-process cache, the common case; {@code l2} misses L1 and reads the
+ * shared entry from Redis; {@code jwks} misses both and verifies the
+ * signature locally. Revocations are checked against the replicated local
+ * set, as they are once seeded.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthFilterBenchmark {
+
+    private static final String REALM = "bench";
+
+    @Param({"l1", "l2", "jwks"})
+    public String cache;
+
+    private HttpServer keycloak;
+    private RouteTable routeTable;
+    private TokenValidationService tokenValidationService;
+    private AuthFilter authFilter;
+    private String authHeader;
+    private final FilterChain next = (req, res) -> { };
+
+    @Setup
+    public void setUp() throws Exception {
+        RSAKey signingKey = new RSAKeyGenerator(2048).keyID("bench-key").generate();
+        byte[] jwks = new JWKSet(signingKey.toPublicJWK()).toString().getBytes(StandardCharsets.UTF_8);
+        keycloak = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        keycloak.createContext("/", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, jwks.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(jwks);
+            }
+        });
+        keycloak.start();
+        String serverUrl = "http://localhost:" + keycloak.getAddress().getPort();
+
+        JwksKeyCache jwksKeyCache = new JwksKeyCache(new RestTemplate());
+        ReflectionTestUtils.setField(jwksKeyCache, "keycloakServerUrl", serverUrl);
+        ReflectionTestUtils.setField(jwksKeyCache, "realm", REALM);
+        ReflectionTestUtils.setField(jwksKeyCache, "jwksUri", "");
+        jwksKeyCache.refresh();
+
+        LocalJwtValidator localJwtValidator = new LocalJwtValidator(jwksKeyCache);
+        ReflectionTestUtils.setField(localJwtValidator, "keycloakServerUrl", serverUrl);
+        ReflectionTestUtils.setField(localJwtValidator, "realm", REALM);
+        ReflectionTestUtils.setField(localJwtValidator, "issuer", "");
+        ReflectionTestUtils.setField(localJwtValidator, "audience", "");
+        ReflectionTestUtils.setField(localJwtValidator, "clockSkewSeconds", 30L);
+        localJwtValidator.init();
+
+        InMemoryRedisTemplate redis = new InMemoryRedisTemplate();
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        TokenCache tokenCache = new TokenCache(redis, objectMapper, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(tokenCache, "l1MaxEntries", 10000);
+        ReflectionTestUtils.setField(tokenCache, "maxTtlSeconds", 300L);
+        ReflectionTestUtils.setField(tokenCache, "negativeTtlSeconds", 30L);
+        tokenCache.init();
+        if (!"l1".equals(cache)) {
+            ReflectionTestUtils.setField(tokenCache, "l1", new ExpiringCache<String, TokenInfo>(1) {
+                @Override
+                public TokenInfo get(String key) {
+                    return null;
+                }
+
+                @Override
+                public void put(String key, TokenInfo value, long ttlMillis) {
+                }
+            });
+        }
+
+        // Started without a listener or seed, then marked seeded, as after a successful reconcile
+        TokenRevocationService tokenRevocationService = new TokenRevocationService(redis, null,
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(tokenRevocationService, "localEnabled", false);
+        tokenRevocationService.init();
+        ReflectionTestUtils.setField(tokenRevocationService, "localEnabled", true);
+        ReflectionTestUtils.setField(tokenRevocationService, "synced", true);
+
+        Route route = new Route("/api/groups/**", true, new Route.RateLimit(60_000L, 100),
+                new Route.Proxy("http://localhost:4040", true));
+        routeTable = RouteTable.compile(List.of(route), RouteConfig.PUBLIC_ENDPOINTS);
+
+        tokenValidationService = new TokenValidationService(null, localJwtValidator, tokenCache,
+                tokenRevocationService, routeTable);
+        ReflectionTestUtils.setField(tokenValidationService, "validationMode", "local");
+        ReflectionTestUtils.setField(tokenValidationService, "introspectionFallback", false);
+        authFilter = new AuthFilter(tokenValidationService, routeTable, objectMapper);
+
+        long exp = System.currentTimeMillis() / 1000 + 3600;
+        SignedJWT jwt = new SignedJWT(
+                new JWSHeader.Builder(JWSAlgorithm.RS256).keyID("bench-key").build(),
+                new JWTClaimsSet.Builder()
+                        .issuer(serverUrl + "/realms/" + REALM)
+                        .subject("8c4f2a6e-1b9d-4c33-9a57-0e6b2f1d7a90")
+                        .claim("preferred_username", "alice")
+                        .claim("typ", "Bearer")
+                        .claim("realm_access", Map.of("roles", List.of("user", "offline_access")))
+                        .expirationTime(new Date(exp * 1000))
+                        .build());
+        jwt.sign(new RSASSASigner(signingKey));
+        String token = jwt.serialize();
+        authHeader = "Bearer " + token;
+
+        if ("l2".equals(cache)) {
+            tokenCache.putRemote(DigestUtils.sha256Hex(token), localJwtValidator.validate(token));
+        }
+        TokenValidationResult result = tokenValidationService.validateRequest("/api/groups/user", authHeader);
+        if (!result.isSuccess()) {
+            throw new IllegalStateException("Benchmark token rejected: " + result.getMessage());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        keycloak.stop(0);
+    }
+
+    @Benchmark
+    public TokenValidationResult validateRequest() {
+        RouteMatch routeMatch = routeTable.match("/api/groups/user");
+        return tokenValidationService.validateRequest(routeMatch, authHeader);
+    }
+
+    @Benchmark
+    public Object authFilter() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/groups/user");
+        request.addHeader("Authorization", authHeader);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        authFilter.doFilter(request, response, next);
+        return response;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(AuthFilterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
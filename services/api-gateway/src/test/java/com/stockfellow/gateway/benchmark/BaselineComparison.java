@@ -0,0 +1,159 @@
+package com.stockfellow.gateway.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares a JMH JSON result ({@code -rf json}) with a recorded baseline,
+ * benchmark by benchmark (including its params and mode), and prints the change
+ * in score and in bytes allocated per operation ({@code gc.alloc.rate.norm}).
+ *
+ * A change for the worse beyond the threshold is marked REGRESSION: lower
+ * throughput, or higher time or allocation per operation. Run by the
+ * {@code benchmarks} Maven profile after the benchmarks; exits with 1 on a
+ * regression when {@code fail} is passed as the fourth argument.
+ *
+ * Scores are only comparable on the JDK the gateway is deployed with, so it
+ * also exits with 1 when there is no baseline, or when the baseline or the
+ * result was recorded on another major JDK version. With {@code record}, a
+ * result from that JDK is copied over the baseline instead.
+ *
+ * Usage: {@code BaselineComparison <baseline.json> <result.json> <threshold %> <report|fail> <record|compare> <JDK>}
+ */
+public final class BaselineComparison {
+
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    private BaselineComparison() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 6) {
+            System.err.println("Usage: BaselineComparison <baseline.json> <result.json> <threshold %> <report|fail>"
+                    + " <record|compare> <JDK>");
+            System.exit(2);
+        }
+        File baselineFile = new File(args[0]);
+        File resultFile = new File(args[1]);
+        double threshold = Double.parseDouble(args[2]);
+        boolean failOnRegression = "fail".equals(args[3]);
+        boolean record = "record".equals(args[4]);
+        int jdk = Integer.parseInt(args[5]);
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonNode resultRuns = objectMapper.readTree(resultFile);
+        requireJdk("This run", resultRuns, jdk);
+        if (record) {
+            Files.copy(resultFile.toPath(), baselineFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("Recorded " + baselineFile + "; commit it with the machine it was run on");
+            return;
+        }
+        if (!baselineFile.exists()) {
+            System.out.println("No baseline at " + baselineFile + ". Record one on the reference machine with JDK "
+                    + jdk + ": mvn -P benchmarks test -Djmh.baseline-mode=record");
+            System.exit(1);
+        }
+        JsonNode baselineRuns = objectMapper.readTree(baselineFile);
+        requireJdk("The baseline", baselineRuns, jdk);
+        Map<String, JsonNode> baseline = byKey(baselineRuns);
+        Map<String, JsonNode> results = byKey(resultRuns);
+
+        int regressions = 0;
+        System.out.printf("%-78s %14s %14s %9s%n", "Benchmark", "Baseline", "Result", "Change");
+        for (Map.Entry<String, JsonNode> entry : results.entrySet()) {
+            JsonNode before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-78s %14s%n", entry.getKey(), "(new)");
+                continue;
+            }
+            JsonNode after = entry.getValue();
+            String mode = after.path("mode").asText();
+            // Throughput is better higher; time per operation and allocation are better lower
+            regressions += report(entry.getKey(), primaryScore(before), primaryScore(after),
+                    after.path("primaryMetric").path("scoreUnit").asText(), "thrpt".equals(mode), threshold);
+            Double allocationBefore = allocation(before);
+            Double allocationAfter = allocation(after);
+            if (allocationBefore != null && allocationAfter != null) {
+                regressions += report(entry.getKey() + " alloc", allocationBefore, allocationAfter, "B/op",
+                        false, threshold);
+            }
+        }
+
+        System.out.printf("%d regression(s) beyond %.1f%%%n", regressions, threshold);
+        if (failOnRegression && regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    // Every run in the file must come from the given major JDK version
+    private static void requireJdk(String what, JsonNode runs, int jdk) {
+        for (JsonNode run : runs) {
+            String version = run.path("jdkVersion").asText();
+            if (majorVersion(version) != jdk) {
+                System.out.println(what + " is from JDK " + version + ", but results are only compared on JDK " + jdk
+                        + ", the one the gateway is deployed with");
+                System.exit(1);
+            }
+        }
+    }
+
+    // "11.0.22" is 11; the old "1.8.0_392" scheme is 8
+    private static int majorVersion(String version) {
+        String[] parts = version.split("[._+-]");
+        try {
+            int major = Integer.parseInt(parts[0]);
+            return major == 1 && parts.length > 1 ? Integer.parseInt(parts[1]) : major;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int report(String name, double before, double after, String unit, boolean higherIsBetter,
+                              double threshold) {
+        double change = before == 0 ? 0 : (after - before) * 100 / before;
+        boolean regression = higherIsBetter ? change < -threshold : change > threshold;
+        System.out.printf("%-78s %14.3f %14.3f %+8.1f%% %s%s%n", name, before, after, change, unit,
+                regression ? "  REGRESSION" : "");
+        return regression ? 1 : 0;
+    }
+
+    private static Map<String, JsonNode> byKey(JsonNode runs) {
+        Map<String, JsonNode> byKey = new LinkedHashMap<>();
+        for (JsonNode run : runs) {
+            StringBuilder key = new StringBuilder(run.path("benchmark").asText()
+                    .replace("com.stockfellow.gateway.benchmark.", ""));
+            Iterator<Map.Entry<String, JsonNode>> params = run.path("params").fields();
+            while (params.hasNext()) {
+                Map.Entry<String, JsonNode> param = params.next();
+                key.append(':').append(param.getKey()).append('=').append(param.getValue().asText());
+            }
+            key.append(" [").append(run.path("mode").asText()).append(']');
+            byKey.put(key.toString(), run);
+        }
+        return byKey;
+    }
+
+    private static double primaryScore(JsonNode run) {
+        return run.path("primaryMetric").path("score").asDouble();
+    }
+
+    // The GC profiler's key starts with a middle dot, so match on the name alone
+    private static Double allocation(JsonNode run) {
+        Iterator<Map.Entry<String, JsonNode>> metrics = run.path("secondaryMetrics").fields();
+        while (metrics.hasNext()) {
+            Map.Entry<String, JsonNode> metric = metrics.next();
+            if (metric.getKey().endsWith(ALLOCATION)) {
+                return metric.getValue().path("score").asDouble();
+            }
+        }
+        return null;
+    }
+}
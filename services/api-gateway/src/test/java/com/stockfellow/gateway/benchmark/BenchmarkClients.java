@@ -0,0 +1,113 @@
+package com.stockfellow.gateway.benchmark;
+
+import com.stockfellow.gateway.cache.HttpResponseCache;
+import com.stockfellow.gateway.cache.RequestCoalescer;
+import com.stockfellow.gateway.compression.ResponseCompressor;
+import com.stockfellow.gateway.config.ProxyClientConfig;
+import com.stockfellow.gateway.config.RouteConfig;
+import com.stockfellow.gateway.metrics.RequestMetrics;
+import com.stockfellow.gateway.resilience.RequestHedger;
+import com.stockfellow.gateway.resilience.RequestPriorities;
+import com.stockfellow.gateway.resilience.UpstreamGuard;
+import com.stockfellow.gateway.routing.RouteTable;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+
+/**
+ * The gateway's pooled proxy client, response cache, request coalescer,
+ * upstream guard, request hedger, response compressor and request metrics,
+ * configured with the application.yml
+ * defaults, for benchmarks that build ProxyController and the filters by hand.
+ */
+final class BenchmarkClients {
+
+    private BenchmarkClients() {
+    }
+
+    static RestTemplate proxyRestTemplate(RouteTable routeTable) {
+        ProxyClientConfig config = new ProxyClientConfig();
+        ReflectionTestUtils.setField(config, "maxTotal", 200);
+        ReflectionTestUtils.setField(config, "defaultMaxPerUpstream", 50);
+        ReflectionTestUtils.setField(config, "defaultConnectTimeoutMs", 2000);
+        ReflectionTestUtils.setField(config, "defaultReadTimeoutMs", 30000);
+        ReflectionTestUtils.setField(config, "leaseTimeoutMs", 1000);
+        ReflectionTestUtils.setField(config, "idleTimeoutMs", 30000L);
+        ReflectionTestUtils.setField(config, "validateAfterInactivityMs", 2000);
+        return config.proxyRestTemplate(config.proxyHttpClient(routeTable, new SimpleMeterRegistry()), routeTable);
+    }
+
+    static HttpResponseCache responseCache(RouteTable routeTable) {
+        HttpResponseCache responseCache = new HttpResponseCache(routeTable, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(responseCache, "maxBytes", 64L * 1024 * 1024);
+        ReflectionTestUtils.setField(responseCache, "maxEntryBytes", 1024 * 1024);
+        responseCache.init();
+        return responseCache;
+    }
+
+    static RequestCoalescer requestCoalescer(RouteTable routeTable) {
+        RequestCoalescer requestCoalescer = new RequestCoalescer(routeTable, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(requestCoalescer, "maxWaitMs", 2000L);
+        requestCoalescer.init();
+        return requestCoalescer;
+    }
+
+    static UpstreamGuard upstreamGuard(RouteTable routeTable) {
+        return upstreamGuard(routeTable, true);
+    }
+
+    static UpstreamGuard upstreamGuard(RouteTable routeTable, boolean adaptiveLimit) {
+        UpstreamGuard upstreamGuard = new UpstreamGuard(routeTable,
+                new RequestPriorities(RouteConfig.CRITICAL_ENDPOINTS, RouteConfig.BULK_ENDPOINTS),
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(upstreamGuard, "enabled", true);
+        ReflectionTestUtils.setField(upstreamGuard, "defaultMaxConcurrent", 100);
+        ReflectionTestUtils.setField(upstreamGuard, "defaultFailureRateThreshold", 50);
+        ReflectionTestUtils.setField(upstreamGuard, "defaultSlowCallMs", 10000L);
+        ReflectionTestUtils.setField(upstreamGuard, "slowCallRateThreshold", 80);
+        ReflectionTestUtils.setField(upstreamGuard, "windowSize", 50);
+        ReflectionTestUtils.setField(upstreamGuard, "minimumCalls", 20);
+        ReflectionTestUtils.setField(upstreamGuard, "openMs", 10000L);
+        ReflectionTestUtils.setField(upstreamGuard, "halfOpenCalls", 3);
+        ReflectionTestUtils.setField(upstreamGuard, "adaptiveLimitEnabled", adaptiveLimit);
+        ReflectionTestUtils.setField(upstreamGuard, "initialLimit", 20);
+        ReflectionTestUtils.setField(upstreamGuard, "minLimit", 4);
+        ReflectionTestUtils.setField(upstreamGuard, "normalShare", 0.9);
+        ReflectionTestUtils.setField(upstreamGuard, "bulkShare", 0.5);
+        ReflectionTestUtils.setField(upstreamGuard, "probeIntervalMs", 10000L);
+        ReflectionTestUtils.setField(upstreamGuard, "overloadRetryAfterSeconds", 1L);
+        upstreamGuard.init();
+        return upstreamGuard;
+    }
+
+    static RequestHedger requestHedger(RouteTable routeTable) {
+        RequestHedger requestHedger = new RequestHedger(routeTable, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(requestHedger, "enabled", true);
+        ReflectionTestUtils.setField(requestHedger, "windowSize", 1000);
+        ReflectionTestUtils.setField(requestHedger, "minSamples", 100);
+        ReflectionTestUtils.setField(requestHedger, "minDelayMs", 5L);
+        ReflectionTestUtils.setField(requestHedger, "maxBurst", 10);
+        requestHedger.init();
+        return requestHedger;
+    }
+
+    static ResponseCompressor responseCompressor() {
+        ResponseCompressor responseCompressor = new ResponseCompressor(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(responseCompressor, "enabled", true);
+        ReflectionTestUtils.setField(responseCompressor, "minSizeBytes", 1024);
+        ReflectionTestUtils.setField(responseCompressor, "mimeTypes", List.of("application/json", "text/plain"));
+        ReflectionTestUtils.setField(responseCompressor, "level", 6);
+        responseCompressor.init();
+        return responseCompressor;
+    }
+
+    static RequestMetrics requestMetrics(RouteTable routeTable) {
+        RequestMetrics requestMetrics = new RequestMetrics(routeTable, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(requestMetrics, "histogramBucketsMs",
+                new long[] {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000});
+        requestMetrics.init();
+        return requestMetrics;
+    }
+}
@@ -0,0 +1,99 @@
+package com.stockfellow.gateway.benchmark;
+
+import com.stockfellow.gateway.compression.ResponseCompressor;
+import com.stockfellow.gateway.model.Route;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost of gzipping a response at each deflate level, for a group list and a
+ * transaction page shaped like the services' JSON. The compressed size for each
+ * case is printed at teardown, so time can be weighed against bytes saved on
+ * the wire.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+
+    @Param({"1", "6", "9"})
+    private int level;
+
+    @Param({"groups", "transactions"})
+    private String payload;
+
+    private ResponseCompressor compressor;
+    private Route route;
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        compressor = new ResponseCompressor(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(compressor, "enabled", true);
+        ReflectionTestUtils.setField(compressor, "minSizeBytes", 1024);
+        ReflectionTestUtils.setField(compressor, "mimeTypes", List.of("application/json"));
+        ReflectionTestUtils.setField(compressor, "level", level);
+        compressor.init();
+        route = new Route("/api/groups/**", true, null, new Route.Proxy("http://group-service:4040", true));
+        body = ("groups".equals(payload) ? groups(50) : transactions(200)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.printf("%n%s level %d: %d -> %d bytes%n", payload, level, body.length,
+                compressor.compress(route, body).length);
+    }
+
+    @Benchmark
+    public byte[] gzip() {
+        return compressor.compress(route, body);
+    }
+
+    private static String groups(int count) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            json.append(i > 0 ? "," : "")
+                .append("{\"groupId\":\"grp-").append(100000 + i * 37)
+                .append("\",\"name\":\"Savings circle ").append(i)
+                .append("\",\"description\":\"Monthly stokvel for members saving towards year-end goals\"")
+                .append(",\"contributionAmount\":").append(500 + i * 25).append(".00")
+                .append(",\"contributionFrequency\":\"Monthly\",\"visibility\":\"Public\"")
+                .append(",\"maxMembers\":12,\"memberCount\":").append(3 + i % 9)
+                .append(",\"balance\":").append(12000 + i * 731).append(".50")
+                .append(",\"createdAt\":\"2025-0").append(1 + i % 9).append("-1").append(i % 10)
+                .append("T08:30:00Z\",\"adminIds\":[\"usr-").append(7000 + i).append("\"]}");
+        }
+        return json.append(']').toString();
+    }
+
+    private static String transactions(int count) {
+        StringBuilder json = new StringBuilder("{\"content\":[");
+        for (int i = 0; i < count; i++) {
+            json.append(i > 0 ? "," : "")
+                .append("{\"transactionId\":\"").append(UUID.nameUUIDFromBytes(new byte[] {(byte) i, 7}))
+                .append("\",\"cycleId\":\"cyc-").append(i / 12)
+                .append("\",\"amount\":").append(250 + (i * 97) % 1000).append(".00")
+                .append(",\"status\":\"").append(i % 5 == 0 ? "FAILED" : "COMPLETED")
+                .append("\",\"createdAt\":\"2025-08-").append(10 + i % 20).append("T1").append(i % 10)
+                .append(":00:00Z\"}");
+        }
+        return json.append("],\"page\":0,\"size\":").append(count).append(",\"totalElements\":4821}").toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(CompressionBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
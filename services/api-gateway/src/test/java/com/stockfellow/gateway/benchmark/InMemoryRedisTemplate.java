@@ -0,0 +1,132 @@
+package com.stockfellow.gateway.benchmark;
+
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis stand-in for benchmarks, held in a map in this JVM, so results show
+ * what the gateway does per request rather than the network round trip.
+ *
+ * Covers the commands on the request path: GET and SET (with expiry) through
+ * {@link #opsForValue()}, EXISTS, DEL, PUBLISH (dropped) and the GCRA rate
+ * limit script, which is run in Java with the same arithmetic as
+ * {@code scripts/gcra.lua}. Anything else throws
+ * {@link UnsupportedOperationException}.
+ */
+final class InMemoryRedisTemplate extends RedisTemplate<String, String> {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> valueOperations = (ValueOperations<String, String>) Proxy.newProxyInstance(
+            ValueOperations.class.getClassLoader(), new Class<?>[] {ValueOperations.class}, (proxy, method, args) -> {
+                int arity = args == null ? 0 : args.length;
+                if (method.getName().equals("get") && arity == 1) {
+                    return get((String) args[0]);
+                }
+                if (method.getName().equals("set") && arity >= 2) {
+                    long expiresAt = 0;
+                    if (arity == 3 && args[2] instanceof Duration) {
+                        expiresAt = System.currentTimeMillis() + ((Duration) args[2]).toMillis();
+                    } else if (arity == 4 && args[3] instanceof TimeUnit) {
+                        expiresAt = System.currentTimeMillis() + ((TimeUnit) args[3]).toMillis((Long) args[2]);
+                    } else if (arity != 2) {
+                        throw new UnsupportedOperationException("ValueOperations.set with " + arity + " arguments");
+                    }
+                    entries.put((String) args[0], new Entry((String) args[1], expiresAt));
+                    return null;
+                }
+                throw new UnsupportedOperationException("ValueOperations." + method.getName());
+            });
+
+    @Override
+    public ValueOperations<String, String> opsForValue() {
+        return valueOperations;
+    }
+
+    @Override
+    public Boolean hasKey(String key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Boolean delete(String key) {
+        return entries.remove(key) != null;
+    }
+
+    @Override
+    public void convertAndSend(String channel, Object message) {
+    }
+
+    @Override
+    public <T> T execute(RedisCallback<T> action) {
+        throw new UnsupportedOperationException("Connection-level commands");
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+        // The rate limiter's is the only script the gateway runs
+        if (keys.size() != 1 || !keys.get(0).startsWith("rate_limit:")) {
+            throw new UnsupportedOperationException("Script on " + keys);
+        }
+        return (T) gcra(keys.get(0), Double.parseDouble((String) args[0]), Double.parseDouble((String) args[1]),
+                Integer.parseInt((String) args[2]));
+    }
+
+    private List<Long> gcra(String key, double interval, double tolerance, int requested) {
+        long[] result = new long[2];
+        entries.compute(key, (k, entry) -> {
+            long now = System.currentTimeMillis();
+            double tat = entry == null || entry.isExpired(now) ? now : Math.max(now, Double.parseDouble(entry.value));
+
+            long available = (long) Math.floor((tolerance - (tat - now)) / interval) + 1;
+            if (available <= 0) {
+                result[1] = (long) Math.ceil(tat - tolerance - now);
+                return entry;
+            }
+
+            long granted = Math.min(requested, available);
+            tat += granted * interval;
+            result[0] = granted;
+            return new Entry(Double.toString(tat), now + (long) Math.ceil(tat - now));
+        });
+        return List.of(result[0], result[1]);
+    }
+
+    private String get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    private static final class Entry {
+        private final String value;
+        // Epoch millis; 0 for no expiry
+        private final long expiresAt;
+
+        Entry(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return expiresAt != 0 && expiresAt <= now;
+        }
+    }
+}
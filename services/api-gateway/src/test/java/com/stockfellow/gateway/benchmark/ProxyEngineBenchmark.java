@@ -0,0 +1,151 @@
+package com.stockfellow.gateway.benchmark;
+
+import com.stockfellow.gateway.controller.ProxyController;
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.routing.RouteTable;
+import com.stockfellow.gateway.service.AsyncProxyClient;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.catalina.Context;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.startup.Tomcat;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Blocking versus async proxy engine under a slow upstream.
+ *
+ * ProxyController runs in an embedded Tomcat limited to {@code maxThreads}
+ * request threads, in front of a stub upstream that answers after
+ * {@code latencyMs}. Each operation fires {@code concurrency} requests at once and
+ * waits for all of them. The blocking engine can only have {@code maxThreads}
+ * upstream calls in flight, so a batch takes roughly
+ * {@code concurrency / maxThreads * latencyMs}; the async engine should stay close
+ * to a single {@code latencyMs}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+// Otherwise the stub upstream's small writes wait out the client's delayed ACK, about 40ms each
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class ProxyEngineBenchmark {
+
+    @Param({"blocking", "async"})
+    private String engine;
+
+    @Param({"100"})
+    private int latencyMs;
+
+    @Param({"200"})
+    private int concurrency;
+
+    @Param({"16"})
+    private int maxThreads;
+
+    private HttpServer upstream;
+    private Tomcat tomcat;
+    private HttpClient client;
+    private URI gatewayUri;
+
+    @Setup
+    public void setUp() throws Exception {
+        byte[] body = "{\"groups\":[]}".getBytes();
+        upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+        upstream.setExecutor(Executors.newCachedThreadPool());
+        upstream.createContext("/", exchange -> {
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        upstream.start();
+
+        // Bulkhead sized to the batch, so every request reaches the upstream
+        Route route = new Route("/api/groups/**", true, null,
+                new Route.Proxy("http://localhost:" + upstream.getAddress().getPort(), true, null,
+                        new Route.Isolation(concurrency, 50, 10000)));
+
+        AsyncProxyClient asyncProxyClient = new AsyncProxyClient();
+        ReflectionTestUtils.setField(asyncProxyClient, "connectTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(asyncProxyClient, "responseTimeoutMs", 30000L);
+        ReflectionTestUtils.setField(asyncProxyClient, "ioThreads", 16);
+        asyncProxyClient.init();
+
+        RouteTable routeTable = RouteTable.compile(List.of(route));
+        ProxyController proxyController = new ProxyController(BenchmarkClients.proxyRestTemplate(routeTable),
+                routeTable, asyncProxyClient, BenchmarkClients.responseCache(routeTable),
+                BenchmarkClients.requestCoalescer(routeTable),
+                // Measures the engines, so nothing is shed while the limit is still being learned
+                BenchmarkClients.upstreamGuard(routeTable, false), BenchmarkClients.requestHedger(routeTable),
+                BenchmarkClients.responseCompressor());
+        ReflectionTestUtils.setField(proxyController, "proxyMode", "streaming");
+        ReflectionTestUtils.setField(proxyController, "proxyEngine", engine);
+
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(Files.createTempDirectory("proxy-engine-bench").toString());
+        tomcat.setPort(0);
+        tomcat.getConnector().setProperty("maxThreads", String.valueOf(maxThreads));
+        tomcat.getConnector().setProperty("acceptCount", "1000");
+
+        Context context = tomcat.addContext("", null);
+        Wrapper wrapper = Tomcat.addServlet(context, "proxy", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) {
+                proxyController.handleGetRequest(request, response);
+            }
+        });
+        wrapper.setAsyncSupported(true);
+        context.addServletMappingDecoded("/api/*", "proxy");
+        tomcat.start();
+
+        gatewayUri = URI.create("http://localhost:" + tomcat.getConnector().getLocalPort() + "/api/groups/user");
+        client = HttpClient.newBuilder().executor(Executors.newCachedThreadPool()).build();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        tomcat.stop();
+        tomcat.destroy();
+        upstream.stop(0);
+    }
+
+    @Benchmark
+    public void concurrentRequests() {
+        CompletableFuture<?>[] responses = new CompletableFuture<?>[concurrency];
+        HttpRequest request = HttpRequest.newBuilder(gatewayUri).GET().build();
+        for (int i = 0; i < concurrency; i++) {
+            responses[i] = client.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+        }
+        CompletableFuture.allOf(responses).join();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(ProxyEngineBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
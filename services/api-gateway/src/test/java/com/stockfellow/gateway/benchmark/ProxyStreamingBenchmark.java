@@ -0,0 +1,135 @@
+package com.stockfellow.gateway.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.stockfellow.gateway.controller.ProxyController;
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.routing.RouteTable;
+import com.stockfellow.gateway.service.AsyncProxyClient;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Proxies a POST with a body of {@code payloadBytes} to a stub upstream that
+ * answers with a body of the same size, in streaming and buffered mode.
+ *
+ * Run with the GC profiler (as {@link #main} does) and compare
+ * {@code gc.alloc.rate.norm}: the bytes allocated per proxied request. The stub
+ * discards what it receives and replays one preallocated response, so nearly all
+ * of the difference is the gateway's own buffering.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// Otherwise the stub upstream's small writes wait out the client's delayed ACK, about 40ms each
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class ProxyStreamingBenchmark {
+
+    @Param({"streaming", "buffered"})
+    private String mode;
+
+    @Param({"16384", "4194304"})
+    private int payloadBytes;
+
+    private HttpServer upstream;
+    private ProxyController proxyController;
+    private byte[] payload;
+
+    @Setup
+    public void setUp() throws Exception {
+        // Without a logging config logback logs at DEBUG, and HttpClient's wire log copies every body byte
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+
+        payload = new byte[payloadBytes];
+
+        upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        upstream.createContext("/", exchange -> {
+            byte[] sink = new byte[8192];
+            try (InputStream in = exchange.getRequestBody()) {
+                while (in.read(sink) != -1) {
+                    // discard
+                }
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/pdf");
+            exchange.sendResponseHeaders(200, payload.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(payload);
+            }
+        });
+        upstream.start();
+
+        Route route = new Route("/api/transaction/**", true, null,
+                new Route.Proxy("http://localhost:" + upstream.getAddress().getPort(), true));
+        RouteTable routeTable = RouteTable.compile(List.of(route));
+        proxyController = new ProxyController(BenchmarkClients.proxyRestTemplate(routeTable),
+                routeTable, new AsyncProxyClient(),
+                BenchmarkClients.responseCache(routeTable),
+                BenchmarkClients.requestCoalescer(routeTable), BenchmarkClients.upstreamGuard(routeTable),
+                BenchmarkClients.requestHedger(routeTable), BenchmarkClients.responseCompressor());
+        ReflectionTestUtils.setField(proxyController, "proxyMode", mode);
+    }
+
+    @TearDown
+    public void tearDown() {
+        upstream.stop(0);
+    }
+
+    @Benchmark
+    public Object proxyStatement() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/transaction/statements/upload");
+        request.setContentType("application/pdf");
+        request.setContent(payload);
+        return proxyController.handlePostRequest(request, new DiscardingResponse());
+    }
+
+    // Stands in for the client connection without keeping what is written to it
+    private static final class DiscardingResponse extends MockHttpServletResponse {
+        private final ServletOutputStream outputStream = new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return outputStream;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(ProxyStreamingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,99 @@
+package com.stockfellow.gateway.benchmark;
+
+import com.stockfellow.gateway.config.RouteConfig;
+import com.stockfellow.gateway.filter.RateLimitFilter;
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.ratelimit.LocalRateLimiter;
+import com.stockfellow.gateway.ratelimit.RateLimiter;
+import com.stockfellow.gateway.ratelimit.RedisRateLimiter;
+import com.stockfellow.gateway.routing.RouteTable;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.servlet.FilterChain;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RateLimitFilter alone, for requests from a spread of clients that AuthFilter
+ * has already matched to a route.
+ *
+ * {@code local} is the per-instance limiter; {@code redis} runs the GCRA
+ * script on every check and {@code redis-prefetch} reserves 16 tokens per
+ * call, both against {@link InMemoryRedisTemplate}, so the difference to
+ * {@code local} is the gateway's own cost of the shared limiter, not the
+ * round trip.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RateLimitBenchmark {
+
+    private static final int CLIENTS = 1024;
+
+    @Param({"local", "redis", "redis-prefetch"})
+    public String limiter;
+
+    private RateLimitFilter filter;
+    private MockHttpServletRequest[] requests;
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+    private final FilterChain next = (req, res) -> { };
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setUp() {
+        Route route = new Route("/api/groups/**", true, new Route.RateLimit(60_000L, Integer.MAX_VALUE),
+                new Route.Proxy("http://localhost:4040", true));
+        RouteTable routeTable = RouteTable.compile(List.of(route), RouteConfig.PUBLIC_ENDPOINTS);
+
+        filter = new RateLimitFilter(routeTable, rateLimiter());
+
+        requests = new MockHttpServletRequest[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/groups/user");
+            request.addHeader("X-Forwarded-For", "203.0." + (i >> 8) + "." + (i & 0xff));
+            routeTable.match(request);
+            requests[i] = request;
+        }
+    }
+
+    private RateLimiter rateLimiter() {
+        if ("local".equals(limiter)) {
+            return new LocalRateLimiter();
+        }
+        RedisRateLimiter redisRateLimiter = new RedisRateLimiter(new InMemoryRedisTemplate(),
+                new LocalRateLimiter(), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(redisRateLimiter, "prefetch", "redis-prefetch".equals(limiter) ? 16 : 1);
+        ReflectionTestUtils.setField(redisRateLimiter, "prefetchTtlMs", 1000L);
+        ReflectionTestUtils.setField(redisRateLimiter, "fallbackRetryMs", 5000L);
+        redisRateLimiter.init();
+        return redisRateLimiter;
+    }
+
+    @Benchmark
+    public Object check(Cursor cursor) throws Exception {
+        MockHttpServletRequest request = requests[cursor.next++ & (CLIENTS - 1)];
+        filter.doFilter(request, response, next);
+        return request;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(RateLimitBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
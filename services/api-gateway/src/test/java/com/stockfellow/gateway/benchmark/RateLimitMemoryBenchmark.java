@@ -0,0 +1,86 @@
+package com.stockfellow.gateway.benchmark;
+
+import com.stockfellow.gateway.filter.RateLimitFilter;
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.ratelimit.LocalRateLimiter;
+import com.stockfellow.gateway.routing.RouteTable;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The local rate limiter's memory bound: every call uses a path ({@code paths})
+ * or a client address ({@code clients}) not seen before, for tens of millions
+ * of calls per run.
+ *
+ * Buckets are keyed by client and route pattern and capped at
+ * {@link #MAX_BUCKETS}, so neither grows the heap. The fork runs with a small
+ * heap, where a bucket per path or per client would end in an
+ * OutOfMemoryError, and the run fails if the limiter holds more buckets than
+ * it should at the end.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx64m")
+public class RateLimitMemoryBenchmark {
+
+    private static final int MAX_BUCKETS = 10_000;
+
+    @Param({"paths", "clients"})
+    public String distinct;
+
+    private LocalRateLimiter rateLimiter;
+    private RateLimitFilter filter;
+    private final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/groups/user");
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+    private final FilterChain next = (req, res) -> { };
+    private long calls;
+
+    @Setup
+    public void setUp() {
+        Route route = new Route("/api/groups/**", true, new Route.RateLimit(60_000L, Integer.MAX_VALUE),
+                new Route.Proxy("http://localhost:4040", true));
+        rateLimiter = new LocalRateLimiter(MAX_BUCKETS);
+        filter = new RateLimitFilter(RouteTable.compile(List.of(route)), rateLimiter);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object check() throws Exception {
+        long call = calls++;
+        if ("paths".equals(distinct)) {
+            request.setRequestURI("/api/groups/" + call + "/view");
+        } else {
+            request.setRemoteAddr("10." + ((call >> 16) & 0xff) + "." + ((call >> 8) & 0xff) + "." + (call & 0xff));
+        }
+        filter.doFilter(request, response, next);
+        return request;
+    }
+
+    @TearDown
+    public void tearDown() {
+        // One client on one route pattern, or at most the cap with a new client every call
+        int expected = "paths".equals(distinct) ? 1 : MAX_BUCKETS;
+        if (rateLimiter.size() > expected || response.getStatus() != 200) {
+            throw new IllegalStateException("After " + calls + " calls the limiter holds " + rateLimiter.size()
+                    + " buckets (at most " + expected + " expected), last status " + response.getStatus());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(RateLimitMemoryBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,123 @@
+package com.stockfellow.gateway.benchmark;
+
+import com.stockfellow.gateway.config.RouteConfig;
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.routing.RouteMatch;
+import com.stockfellow.gateway.routing.RouteTable;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Route lookup cost per request: the compiled {@link RouteTable} versus the
+ * linear stream-and-substring scan ProxyController used to do, for the routes in
+ * {@link RouteConfig} and for a synthetic table of 500 routes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouteMatchingBenchmark {
+
+    @Param({"current", "synthetic500"})
+    private String routeSet;
+
+    private List<Route> routes;
+    private RouteTable routeTable;
+    private String[] paths;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        routes = "current".equals(routeSet) ? currentRoutes() : syntheticRoutes(500);
+        routeTable = RouteTable.compile(routes, RouteConfig.PUBLIC_ENDPOINTS);
+
+        // A mix of exact, deep wildcard, late-in-the-list and unrouted paths
+        List<String> samples = new ArrayList<>();
+        for (Route route : routes) {
+            String base = route.getUrl().replace("/**", "").replace("/*", "");
+            samples.add(route.getUrl().endsWith("*") ? base + "/123/details" : base);
+        }
+        samples.add("/api/auth/login");
+        samples.add("/api/unknown/path");
+        paths = samples.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public RouteMatch routeTable() {
+        return routeTable.match(nextPath());
+    }
+
+    @Benchmark
+    public Optional<Route> linearScan() {
+        return linearMatch(nextPath());
+    }
+
+    private String nextPath() {
+        String path = paths[next];
+        next = next + 1 == paths.length ? 0 : next + 1;
+        return path;
+    }
+
+    // The matcher ProxyController used before the route table
+    private Optional<Route> linearMatch(String requestPath) {
+        return routes.stream()
+            .filter(route -> {
+                String routeUrl = route.getUrl();
+                if (requestPath.equals(routeUrl)) {
+                    return true;
+                }
+                if (routeUrl.endsWith("/**")) {
+                    String basePath = routeUrl.substring(0, routeUrl.length() - 3);
+                    return requestPath.startsWith(basePath);
+                }
+                if (routeUrl.endsWith("/*")) {
+                    String basePath = routeUrl.substring(0, routeUrl.length() - 2);
+                    return requestPath.startsWith(basePath) &&
+                           requestPath.substring(basePath.length()).indexOf('/') == -1;
+                }
+                return false;
+            })
+            .findFirst();
+    }
+
+    private static List<Route> currentRoutes() {
+        RouteConfig routeConfig = new RouteConfig();
+        ReflectionTestUtils.setField(routeConfig, "userServiceUrl", "http://user-service:4020");
+        ReflectionTestUtils.setField(routeConfig, "groupServiceUrl", "http://group-service:4040");
+        ReflectionTestUtils.setField(routeConfig, "transactionServiceUrl", "http://transaction-service:4080");
+        ReflectionTestUtils.setField(routeConfig, "notificationServiceUrl", "http://notification-service:4050");
+        ReflectionTestUtils.setField(routeConfig, "mfaServiceUrl", "http://mfa-service:8087");
+        return routeConfig.routes();
+    }
+
+    // 50 services with 10 resources each, mixing the three pattern kinds
+    private static List<Route> syntheticRoutes(int count) {
+        List<Route> routes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String base = "/api/service" + (i / 10) + "/resource" + (i % 10);
+            String pattern = i % 3 == 0 ? base : i % 3 == 1 ? base + "/**" : base + "/*";
+            routes.add(new Route(pattern, true,
+                    new Route.RateLimit(15 * 60 * 1000L, 100),
+                    new Route.Proxy("http://service" + (i / 10) + ":8080", true)));
+        }
+        routes.add(new Route("/api", false,
+                new Route.RateLimit(15 * 60 * 1000L, 100),
+                new Route.Proxy("http://user-service:4020", true)));
+        return routes;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(RouteMatchingBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
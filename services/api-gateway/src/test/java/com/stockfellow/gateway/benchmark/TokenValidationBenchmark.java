@@ -0,0 +1,136 @@
+package com.stockfellow.gateway.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.stockfellow.gateway.model.TokenInfo;
+import com.stockfellow.gateway.service.JwksKeyCache;
+import com.stockfellow.gateway.service.KeycloakService;
+import com.stockfellow.gateway.service.LocalJwtValidator;
+import com.stockfellow.gateway.service.TokenCache;
+import com.stockfellow.gateway.service.TokenRevocationService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Validations per second for a Keycloak access token, verified locally against a
+ * cached JWKS versus introspected over HTTP (WireMock stands in for Keycloak, so
+ * the introspection numbers are a lower bound on the real network cost).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenValidationBenchmark {
+
+    private static final String REALM = "bench";
+
+    private WireMockServer keycloak;
+    private LocalJwtValidator localJwtValidator;
+    private KeycloakService keycloakService;
+    private String token;
+
+    @Setup
+    public void setUp() throws Exception {
+        RSAKey signingKey = new RSAKeyGenerator(2048).keyID("bench-key").generate();
+
+        keycloak = new WireMockServer(options().dynamicPort());
+        keycloak.start();
+        String serverUrl = "http://localhost:" + keycloak.port();
+        String issuer = serverUrl + "/realms/" + REALM;
+
+        long exp = System.currentTimeMillis() / 1000 + 3600;
+        keycloak.stubFor(get(urlEqualTo("/realms/" + REALM + "/protocol/openid-connect/certs"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(new JWKSet(signingKey.toPublicJWK()).toString())));
+        keycloak.stubFor(post(urlEqualTo("/realms/" + REALM + "/protocol/openid-connect/token/introspect"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("{\"active\":true,\"sub\":\"user-123\",\"preferred_username\":\"thabo\","
+                                + "\"exp\":" + exp + ",\"realm_access\":{\"roles\":[\"user\"]}}")));
+
+        RestTemplate restTemplate = new RestTemplate();
+
+        JwksKeyCache jwksKeyCache = new JwksKeyCache(restTemplate);
+        ReflectionTestUtils.setField(jwksKeyCache, "keycloakServerUrl", serverUrl);
+        ReflectionTestUtils.setField(jwksKeyCache, "realm", REALM);
+        ReflectionTestUtils.setField(jwksKeyCache, "jwksUri", "");
+        jwksKeyCache.refresh();
+
+        localJwtValidator = new LocalJwtValidator(jwksKeyCache);
+        ReflectionTestUtils.setField(localJwtValidator, "keycloakServerUrl", serverUrl);
+        ReflectionTestUtils.setField(localJwtValidator, "realm", REALM);
+        ReflectionTestUtils.setField(localJwtValidator, "issuer", "");
+        ReflectionTestUtils.setField(localJwtValidator, "audience", "");
+        ReflectionTestUtils.setField(localJwtValidator, "clockSkewSeconds", 30L);
+        localJwtValidator.init();
+
+        // KeycloakService.validateToken is uncached, so every call pays the HTTP round trip
+        @SuppressWarnings("unchecked")
+        RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+
+        keycloakService = new KeycloakService(restTemplate, redisTemplate, new ObjectMapper(),
+                mock(TokenCache.class), mock(TokenRevocationService.class));
+        ReflectionTestUtils.setField(keycloakService, "keycloakServerUrl", serverUrl);
+        ReflectionTestUtils.setField(keycloakService, "realm", REALM);
+        ReflectionTestUtils.setField(keycloakService, "gatewayClientId", "api-gateway-client");
+        ReflectionTestUtils.setField(keycloakService, "gatewayClientSecret", "secret");
+
+        SignedJWT jwt = new SignedJWT(
+                new JWSHeader.Builder(JWSAlgorithm.RS256).keyID("bench-key").build(),
+                new JWTClaimsSet.Builder()
+                        .issuer(issuer)
+                        .subject("user-123")
+                        .claim("preferred_username", "thabo")
+                        .claim("typ", "Bearer")
+                        .claim("realm_access", Map.of("roles", List.of("user")))
+                        .expirationTime(new Date(exp * 1000))
+                        .build());
+        jwt.sign(new RSASSASigner(signingKey));
+        token = jwt.serialize();
+    }
+
+    @TearDown
+    public void tearDown() {
+        keycloak.stop();
+    }
+
+    @Benchmark
+    public TokenInfo localJwks() {
+        return localJwtValidator.validate(token);
+    }
+
+    @Benchmark
+    public TokenInfo introspection() {
+        return keycloakService.validateToken(token);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(TokenValidationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,186 @@
+package com.stockfellow.gateway.benchmark;
+
+import com.stockfellow.gateway.service.AsyncProxyClient;
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.coyote.AbstractProtocol;
+import org.apache.coyote.http2.Http2Protocol;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Gateway-to-service hop over HTTP/1.1 versus cleartext HTTP/2 (h2c), at a fixed
+ * request rate.
+ *
+ * {@link AsyncProxyClient} sends {@code rps} GETs a second for
+ * {@code seconds}, on a schedule that does not wait for responses (open loop),
+ * to an embedded Tomcat with HTTP/2 enabled as the services configure it, which
+ * answers after {@code latencyMs}. Each request's latency is taken from when it
+ * was due to be sent, so queueing in the client counts. As the gateway's
+ * bulkhead does, at most {@code maxInFlight} requests are outstanding; it must
+ * stay below the upstream's max concurrent streams, or the JDK client fails the
+ * excess with "too many concurrent streams". The score is the time
+ * for the whole run; p50, p99 and the most connections the upstream had open at
+ * once are printed after each iteration. HTTP/1.1 should need about
+ * {@code rps * latencyMs / 1000} connections, HTTP/2 one.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class UpstreamProtocolBenchmark {
+
+    @Param({"false", "true"})
+    private boolean http2;
+
+    @Param({"2000"})
+    private int rps;
+
+    @Param({"5"})
+    private int seconds;
+
+    @Param({"20"})
+    private int latencyMs;
+
+    @Param({"200"})
+    private int maxInFlight;
+
+    private Tomcat upstream;
+    private AbstractProtocol<?> upstreamProtocol;
+    private AsyncProxyClient client;
+    private URI uri;
+    private long[] latencies;
+    private final AtomicLong maxConnections = new AtomicLong();
+    private ScheduledExecutorService sampler;
+    private Semaphore inFlight;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        byte[] body = "{\"groups\":[{\"groupId\":\"grp-1\",\"name\":\"Savings circle\"}]}".getBytes();
+        upstream = new Tomcat();
+        upstream.setBaseDir(Files.createTempDirectory("upstream-protocol-bench").toString());
+        upstream.setPort(0);
+        upstream.getConnector().setProperty("maxThreads", "400");
+        upstream.getConnector().setProperty("maxKeepAliveRequests", "-1");
+        // As the services' Http2Config sets it
+        Http2Protocol http2Protocol = new Http2Protocol();
+        http2Protocol.setMaxConcurrentStreams(256);
+        http2Protocol.setInitialWindowSize(1048576);
+        upstream.getConnector().addUpgradeProtocol(http2Protocol);
+
+        Context context = upstream.addContext("", null);
+        Tomcat.addServlet(context, "service", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(latencyMs));
+                response.setContentType("application/json");
+                response.setContentLength(body.length);
+                try (OutputStream out = response.getOutputStream()) {
+                    out.write(body);
+                }
+            }
+        });
+        context.addServletMappingDecoded("/*", "service");
+        upstream.start();
+        upstreamProtocol = (AbstractProtocol<?>) upstream.getConnector().getProtocolHandler();
+        uri = URI.create("http://localhost:" + upstream.getConnector().getLocalPort() + "/api/groups/user");
+
+        client = new AsyncProxyClient();
+        ReflectionTestUtils.setField(client, "connectTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(client, "responseTimeoutMs", 30000L);
+        ReflectionTestUtils.setField(client, "ioThreads", 32);
+        ReflectionTestUtils.setField(client, "http2Enabled", http2);
+        ReflectionTestUtils.setField(client, "http2StreamWindowBytes", 1048576);
+        ReflectionTestUtils.setField(client, "http2ConnectionWindowBytes", 16777216);
+        client.init();
+
+        latencies = new long[rps * seconds];
+        inFlight = new Semaphore(maxInFlight);
+        sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> maxConnections.accumulateAndGet(upstreamProtocol.getConnectionCount(),
+                Math::max), 0, 10, TimeUnit.MILLISECONDS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        sampler.shutdownNow();
+        client.shutdown();
+        upstream.stop();
+        upstream.destroy();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetConnections() {
+        maxConnections.set(0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void report() {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%n%s at %d rps: p50 %.2f ms, p99 %.2f ms, max %.2f ms, upstream connections %d%n",
+                http2 ? "h2c" : "HTTP/1.1", rps, millis(sorted, 0.50), millis(sorted, 0.99),
+                sorted[sorted.length - 1] / 1e6, maxConnections.get());
+    }
+
+    @Benchmark
+    public void fixedRate() {
+        int total = latencies.length;
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rps;
+        CompletableFuture<?>[] calls = new CompletableFuture<?>[total];
+        long start = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            long due = start + i * intervalNanos;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            int index = i;
+            inFlight.acquireUninterruptibly();
+            calls[i] = client.send(HttpMethod.GET, uri, new HttpHeaders(), null, -1, null)
+                .thenAcceptAsync(response -> {
+                    try (InputStream body = response.body()) {
+                        body.transferTo(OutputStream.nullOutputStream());
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    latencies[index] = System.nanoTime() - due;
+                }, client.ioExecutor())
+                .whenComplete((result, error) -> inFlight.release());
+        }
+        CompletableFuture.allOf(calls).join();
+    }
+
+    private static double millis(long[] sorted, double quantile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1)] / 1e6;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(UpstreamProtocolBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -1,6 +1,7 @@
 package com.stockfellow.gateway.integration;
 
 import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.autoconfigure.web.server.LocalManagementPort;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
@@ -22,6 +23,9 @@ class BasicGatewayIntegrationTest {
     
     @LocalServerPort
     private int port;
+
+    @LocalManagementPort
+    private int managementPort;
     
     @Autowired
     private TestRestTemplate restTemplate;
@@ -34,9 +38,9 @@ class BasicGatewayIntegrationTest {
     
     @Test
     void shouldRespondToHealthCheck() {
-        // Test that actuator health endpoint works
+        // Test that actuator health endpoint works on the management port
         ResponseEntity<String> response = restTemplate.getForEntity(
-            "http://localhost:" + port + "/actuator/health", String.class);
+            "http://localhost:" + managementPort + "/actuator/health", String.class);
         
         assertTrue(response.getStatusCode().is2xxSuccessful(), 
             "Health check should return 2xx status: " + response.getStatusCode());
@@ -76,7 +80,7 @@ class BasicGatewayIntegrationTest {
         
         // Try to make a simple request to verify the server is responding
         ResponseEntity<String> response = restTemplate.getForEntity(
-            "http://localhost:" + port + "/actuator/info", String.class);
+            "http://localhost:" + managementPort + "/actuator/info", String.class);
         
         // Should get some kind of response (even if 404)
         assertNotNull(response);
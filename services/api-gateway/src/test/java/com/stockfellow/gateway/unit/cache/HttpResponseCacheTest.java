@@ -0,0 +1,155 @@
+package com.stockfellow.gateway.unit.cache;
+
+import com.stockfellow.gateway.cache.HttpResponseCache;
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.routing.RouteTable;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpResponseCacheTest {
+
+    private static final byte[] BODY = "{\"unread\":3}".getBytes();
+
+    private Route groups;
+    private Route notifications;
+    private Route transactions;
+    private MeterRegistry meterRegistry;
+    private HttpResponseCache cache;
+
+    @BeforeEach
+    void setUp() {
+        groups = new Route("/api/groups/**", true, null, new Route.Proxy("http://group-service:4040", true),
+                new Route.ResponseCache(60_000L, true, "/api/groups/search", "/api/groups/*/view"));
+        notifications = new Route("/api/notifications/**", true, null,
+                new Route.Proxy("http://notification-service:4050", true),
+                new Route.ResponseCache(60_000L, false));
+        transactions = new Route("/api/transaction/**", true, null,
+                new Route.Proxy("http://transaction-service:4080", true));
+
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new HttpResponseCache(RouteTable.compile(List.of(groups, notifications, transactions)), meterRegistry);
+        ReflectionTestUtils.setField(cache, "maxBytes", 64L * 1024);
+        ReflectionTestUtils.setField(cache, "maxEntryBytes", 8 * 1024);
+        cache.init();
+    }
+
+    @Test
+    void shouldOnlyCacheConfiguredPaths() {
+        assertTrue(cache.isCacheable(groups, "/api/groups/search"));
+        assertTrue(cache.isCacheable(groups, "/api/groups/abc123/view"));
+        assertFalse(cache.isCacheable(groups, "/api/groups/abc123/members"));
+        assertFalse(cache.isCacheable(groups, "/api/groups/view"));
+        assertTrue(cache.isCacheable(notifications, "/api/notifications/user/count"));
+        assertFalse(cache.isCacheable(transactions, "/api/transaction/cards"));
+    }
+
+    @Test
+    void shouldKeyPerUserOnPerUserRoutes() {
+        assertNotEquals(cache.key(groups, "alice", "/api/groups/search", "q=x"),
+                cache.key(groups, "bob", "/api/groups/search", "q=x"));
+        assertNotEquals(cache.key(groups, "alice", "/api/groups/search", "q=x"),
+                cache.key(groups, "alice", "/api/groups/search", "q=y"));
+        assertEquals(cache.key(notifications, "alice", "/api/notifications/user/count", null),
+                cache.key(notifications, "bob", "/api/notifications/user/count", null));
+    }
+
+    @Test
+    void shouldServeStoredResponseWithStrongEtagAndCountSavings() {
+        String key = cache.key(groups, "alice", "/api/groups/search", null);
+        assertNull(cache.get(groups, key));
+
+        HttpResponseCache.CachedResponse stored = cache.put(groups, key, new HttpHeaders(), BODY);
+        assertNotNull(stored);
+        assertTrue(stored.getEtag().startsWith("\""));
+
+        HttpResponseCache.CachedResponse hit = cache.get(groups, key);
+        assertSame(stored, hit);
+        assertArrayEquals(BODY, hit.getBody());
+
+        assertEquals(1, requests("hit"));
+        assertEquals(1, requests("miss"));
+        assertEquals(BODY.length, meterRegistry.get("gateway.cache.bytes.saved")
+                .tag("route", "/api/groups/**").counter().count());
+    }
+
+    @Test
+    void shouldKeepUpstreamStrongEtag() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag("\"v42\"");
+
+        HttpResponseCache.CachedResponse stored = cache.put(groups, "key", headers, BODY);
+
+        assertEquals("\"v42\"", stored.getEtag());
+    }
+
+    @Test
+    void shouldRespectUpstreamCacheControl() {
+        assertNull(cache.put(groups, "a", headers("no-store"), BODY));
+        assertNull(cache.put(groups, "b", headers("no-cache"), BODY));
+        assertNull(cache.put(groups, "c", headers("max-age=0"), BODY));
+        // Shared entries must not hold private responses; per-user ones may
+        assertNull(cache.put(notifications, "d", headers("private"), BODY));
+        assertNotNull(cache.put(groups, "e", headers("private, max-age=30"), BODY));
+    }
+
+    @Test
+    void shouldNotStoreOversizedResponses() {
+        assertNull(cache.put(groups, "big", new HttpHeaders(), new byte[16 * 1024]));
+    }
+
+    @Test
+    void shouldStayWithinByteBudget() {
+        for (int i = 0; i < 1_000; i++) {
+            cache.put(groups, "key-" + i, new HttpHeaders(), new byte[4 * 1024]);
+        }
+
+        assertTrue(cache.bytes() <= 64L * 1024, "cache holds " + cache.bytes() + " bytes");
+        assertTrue(cache.entries() < 1_000);
+    }
+
+    @Test
+    void shouldMissAfterTheCallerWritesThroughTheRoute() {
+        String before = cache.key(groups, "alice", "/api/groups/abc/view", null);
+        cache.put(groups, before, new HttpHeaders(), BODY);
+
+        cache.invalidate(groups, "alice");
+
+        String after = cache.key(groups, "alice", "/api/groups/abc/view", null);
+        assertNotEquals(before, after);
+        assertNull(cache.get(groups, after));
+        // Other users keep their entries
+        assertEquals(cache.key(groups, "bob", "/api/groups/abc/view", null),
+                cache.key(groups, "bob", "/api/groups/abc/view", null));
+    }
+
+    @Test
+    void shouldMatchIfNoneMatchHeaders() {
+        assertTrue(HttpResponseCache.matches("\"abc\"", "\"abc\""));
+        assertTrue(HttpResponseCache.matches("\"x\", W/\"abc\"", "\"abc\""));
+        assertTrue(HttpResponseCache.matches("*", "\"abc\""));
+        assertFalse(HttpResponseCache.matches("\"abd\"", "\"abc\""));
+        assertFalse(HttpResponseCache.matches(null, "\"abc\""));
+    }
+
+    private double requests(String result) {
+        return meterRegistry.get("gateway.cache.requests")
+                .tag("route", "/api/groups/**")
+                .tag("result", result)
+                .counter()
+                .count();
+    }
+
+    private static HttpHeaders headers(String cacheControl) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl(cacheControl);
+        return headers;
+    }
+}
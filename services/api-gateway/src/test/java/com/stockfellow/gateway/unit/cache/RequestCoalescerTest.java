@@ -0,0 +1,156 @@
+package com.stockfellow.gateway.unit.cache;
+
+import com.stockfellow.gateway.cache.RequestCoalescer;
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.routing.RouteTable;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestCoalescerTest {
+
+    private static final String PATH = "/api/groups/abc/view";
+
+    private Route groups;
+    private MeterRegistry meterRegistry;
+    private RequestCoalescer coalescer;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        groups = new Route("/api/groups/**", true, null, new Route.Proxy("http://group-service:4040", true),
+                null, new Route.Coalescing(true, "/api/groups/*/view"));
+        Route transactions = new Route("/api/transaction/**", true, null,
+                new Route.Proxy("http://transaction-service:4080", true));
+
+        meterRegistry = new SimpleMeterRegistry();
+        coalescer = new RequestCoalescer(RouteTable.compile(List.of(groups, transactions)), meterRegistry);
+        ReflectionTestUtils.setField(coalescer, "maxWaitMs", 2000L);
+        coalescer.init();
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldOnlyCoalesceConfiguredPaths() {
+        assertTrue(coalescer.isCoalesced(groups, PATH));
+        assertFalse(coalescer.isCoalesced(groups, "/api/groups/abc/members"));
+    }
+
+    @Test
+    void shouldKeepUsersApartOnPerUserRoutes() {
+        assertNotEquals(coalescer.key(groups, "alice", PATH, null), coalescer.key(groups, "bob", PATH, null));
+        assertEquals(coalescer.key(groups, "alice", PATH, null), coalescer.key(groups, "alice", PATH, null));
+    }
+
+    @Test
+    void shouldShareOneUpstreamCallBetweenConcurrentRequests() throws Exception {
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<ResponseEntity<byte[]>> upstream = () -> {
+            upstreamCalls.incrementAndGet();
+            await(release);
+            return ResponseEntity.ok().header("X-Upstream", "1").body("{\"group\":{}}".getBytes());
+        };
+        String key = coalescer.key(groups, "alice", PATH, null);
+
+        List<Future<ResponseEntity<byte[]>>> responses = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            responses.add(executor.submit(() -> coalescer.execute(groups, key, upstream)));
+        }
+        // Let every request reach the coalescer before the upstream answers
+        Thread.sleep(200);
+        release.countDown();
+
+        List<ResponseEntity<byte[]>> results = new ArrayList<>();
+        for (Future<ResponseEntity<byte[]>> response : responses) {
+            results.add(response.get(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(1, upstreamCalls.get());
+        for (ResponseEntity<byte[]> result : results) {
+            assertEquals(200, result.getStatusCodeValue());
+            assertEquals("1", result.getHeaders().getFirst("X-Upstream"));
+        }
+        assertEquals(7, requests("coalesced"));
+        assertEquals(1, requests("upstream"));
+    }
+
+    @Test
+    void shouldCallUpstreamItselfAfterMaxWait() throws Exception {
+        ReflectionTestUtils.setField(coalescer, "maxWaitMs", 50L);
+        CountDownLatch release = new CountDownLatch(1);
+        String key = coalescer.key(groups, "alice", PATH, null);
+
+        Future<ResponseEntity<byte[]>> slow = executor.submit(() -> coalescer.execute(groups, key, () -> {
+            await(release);
+            return ResponseEntity.ok("slow".getBytes());
+        }));
+        Thread.sleep(100);
+
+        ResponseEntity<byte[]> own = coalescer.execute(groups, key, () -> ResponseEntity.ok("own".getBytes()));
+
+        assertEquals("own", new String(own.getBody()));
+        assertEquals(1, requests("timeout"));
+        release.countDown();
+        assertEquals("slow", new String(slow.get(5, TimeUnit.SECONDS).getBody()));
+    }
+
+    @Test
+    void shouldPropagateLeaderFailureToWaiters() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        String key = coalescer.key(groups, "alice", PATH, null);
+        Supplier<ResponseEntity<byte[]>> failing = () -> {
+            await(release);
+            throw new ResourceAccessException("upstream down");
+        };
+
+        Future<ResponseEntity<byte[]>> leader = executor.submit(() -> coalescer.execute(groups, key, failing));
+        Thread.sleep(100);
+        Future<ResponseEntity<byte[]>> follower = executor.submit(() -> coalescer.execute(groups, key, failing));
+        Thread.sleep(100);
+        release.countDown();
+
+        Exception leaderError = assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+        Exception followerError = assertThrows(Exception.class, () -> follower.get(5, TimeUnit.SECONDS));
+        assertTrue(leaderError.getCause() instanceof ResourceAccessException);
+        assertTrue(followerError.getCause() instanceof ResourceAccessException);
+    }
+
+    private double requests(String result) {
+        return meterRegistry.get("gateway.coalescing.requests")
+                .tag("route", "/api/groups/**")
+                .tag("result", result)
+                .counter()
+                .count();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.stockfellow.gateway.unit.compression;
+
+import com.stockfellow.gateway.compression.ResponseCompressor;
+import com.stockfellow.gateway.model.Route;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCompressorTest {
+
+    private MeterRegistry meterRegistry;
+    private ResponseCompressor compressor;
+    private Route route;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        compressor = new ResponseCompressor(meterRegistry);
+        ReflectionTestUtils.setField(compressor, "enabled", true);
+        ReflectionTestUtils.setField(compressor, "minSizeBytes", 1024);
+        ReflectionTestUtils.setField(compressor, "mimeTypes", List.of("application/json", "text/plain"));
+        ReflectionTestUtils.setField(compressor, "level", 6);
+        compressor.init();
+        route = new Route("/api/groups/**", true, null, new Route.Proxy("http://group-service:4040", true));
+    }
+
+    @Test
+    void shouldNegotiateGzipFromAcceptEncoding() {
+        assertTrue(compressor.acceptsGzip(request("gzip, deflate, br")));
+        assertTrue(compressor.acceptsGzip(request("br;q=1.0, gzip;q=0.8")));
+        assertTrue(compressor.acceptsGzip(request("*")));
+        assertFalse(compressor.acceptsGzip(request("gzip;q=0, *")));
+        assertFalse(compressor.acceptsGzip(request("identity")));
+        assertFalse(compressor.acceptsGzip(new MockHttpServletRequest("GET", "/api/groups/user")));
+
+        MockHttpServletRequest head = new MockHttpServletRequest("HEAD", "/api/groups/user");
+        head.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        assertFalse(compressor.acceptsGzip(head));
+    }
+
+    @Test
+    void shouldOnlyCompressLargeEnoughAllowedTypes() {
+        HttpHeaders json = headers("application/json;charset=UTF-8");
+        assertTrue(compressor.isCompressible(200, json, 4096));
+        assertFalse(compressor.isCompressible(200, json, 512));
+        // Unknown length, as for a chunked upstream response
+        assertTrue(compressor.isCompressible(200, json, -1));
+        assertFalse(compressor.isCompressible(204, json, 4096));
+        assertFalse(compressor.isCompressible(304, json, 4096));
+        assertFalse(compressor.isCompressible(200, headers("image/png"), 4096));
+        assertFalse(compressor.isCompressible(200, new HttpHeaders(), 4096));
+
+        HttpHeaders encoded = headers("application/json");
+        encoded.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        assertFalse(compressor.isCompressible(200, encoded, 4096));
+
+        HttpHeaders noTransform = headers("application/json");
+        noTransform.setCacheControl("private, no-transform");
+        assertFalse(compressor.isCompressible(200, noTransform, 4096));
+    }
+
+    @Test
+    void shouldRoundTripAndCountBytesPerRoute() {
+        byte[] body = "{\"groups\":[{\"name\":\"Savings circle\"}]}".repeat(200).getBytes(StandardCharsets.UTF_8);
+
+        byte[] compressed = compressor.compress(route, body);
+
+        assertTrue(compressed.length < body.length / 10, "compressed to " + compressed.length);
+        assertArrayEquals(body, ResponseCompressor.decompress(compressed));
+        assertEquals((double) body.length, counter("in"));
+        assertEquals((double) compressed.length, counter("out"));
+        assertEquals(1L, meterRegistry.get("gateway.compression.time").tag("route", "/api/groups/**").timer().count());
+    }
+
+    @Test
+    void shouldProduceValidGzipWhenStreamedInPiecesWithFlushes() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResponseCompressor.GzipOutputStream gzip = compressor.compressingStream(route, out);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            String line = "{\"event\":" + i + ",\"type\":\"contribution\"}\n";
+            expected.append(line);
+            gzip.write(line.getBytes(StandardCharsets.UTF_8));
+            if (i % 100 == 0) {
+                gzip.flush();
+            }
+        }
+        gzip.finish();
+
+        assertEquals(expected.toString(), new String(ResponseCompressor.decompress(out.toByteArray()),
+                StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void shouldFreeTheDeflaterWhenTheClientGoesAway() {
+        OutputStream brokenPipe = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+        ResponseCompressor.GzipOutputStream gzip = compressor.compressingStream(route, brokenPipe);
+        Deflater deflater = (Deflater) ReflectionTestUtils.getField(gzip, "deflater");
+
+        assertThrows(IOException.class, () -> {
+            try (ResponseCompressor.GzipOutputStream stream = gzip) {
+                stream.write(new byte[64 * 1024]);
+            }
+        });
+
+        // An ended deflater refuses to be used
+        assertThrows(NullPointerException.class, deflater::getBytesRead);
+    }
+
+    @Test
+    void shouldMarkHeadersForTheCompressedForm() {
+        HttpHeaders headers = headers("application/json");
+        headers.setContentLength(4096);
+        headers.setETag("\"abc\"");
+        headers.setVary(List.of("Origin"));
+
+        ResponseCompressor.markCompressed(headers, 512);
+
+        assertEquals("gzip", headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(512L, headers.getContentLength());
+        assertEquals("W/\"abc\"", headers.getETag());
+        assertEquals(List.of("Origin", "Accept-Encoding"), headers.getVary());
+
+        ResponseCompressor.markCompressed(headers, -1);
+        assertEquals(-1L, headers.getContentLength());
+        assertEquals("W/\"abc\"", headers.getETag());
+        assertEquals(List.of("Origin", "Accept-Encoding"), headers.getVary());
+    }
+
+    private static MockHttpServletRequest request(String acceptEncoding) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/groups/user");
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        return request;
+    }
+
+    private static HttpHeaders headers(String contentType) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_TYPE, contentType);
+        return headers;
+    }
+
+    private double counter(String stage) {
+        return meterRegistry.get("gateway.compression.bytes")
+                .tag("route", "/api/groups/**").tag("stage", stage)
+                .counter().count();
+    }
+}
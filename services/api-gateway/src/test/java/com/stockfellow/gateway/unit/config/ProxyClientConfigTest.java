@@ -0,0 +1,141 @@
+package com.stockfellow.gateway.unit.config;
+
+import com.stockfellow.gateway.cache.HttpResponseCache;
+import com.stockfellow.gateway.cache.RequestCoalescer;
+import com.stockfellow.gateway.compression.ResponseCompressor;
+import com.stockfellow.gateway.config.ProxyClientConfig;
+import com.stockfellow.gateway.controller.ProxyController;
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.resilience.RequestHedger;
+import com.stockfellow.gateway.resilience.RequestPriorities;
+import com.stockfellow.gateway.resilience.UpstreamGuard;
+import com.stockfellow.gateway.routing.RouteTable;
+import com.stockfellow.gateway.service.AsyncProxyClient;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProxyClientConfigTest {
+
+    private ProxyClientConfig proxyClientConfig;
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        proxyClientConfig = new ProxyClientConfig();
+        ReflectionTestUtils.setField(proxyClientConfig, "maxTotal", 200);
+        ReflectionTestUtils.setField(proxyClientConfig, "defaultMaxPerUpstream", 50);
+        ReflectionTestUtils.setField(proxyClientConfig, "defaultConnectTimeoutMs", 2000);
+        ReflectionTestUtils.setField(proxyClientConfig, "defaultReadTimeoutMs", 30000);
+        ReflectionTestUtils.setField(proxyClientConfig, "leaseTimeoutMs", 1000);
+        ReflectionTestUtils.setField(proxyClientConfig, "idleTimeoutMs", 30000L);
+        ReflectionTestUtils.setField(proxyClientConfig, "validateAfterInactivityMs", 2000);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void shouldSizeOnePoolPerUpstream() throws Exception {
+        RouteTable routeTable = RouteTable.compile(List.of(
+                route("/api/users/**", "http://user-service:4020", new Route.ConnectionPool(10, 1000, 5000)),
+                route("/api", "http://user-service:4020", new Route.ConnectionPool(30, 1000, 5000)),
+                route("/api/mfa/**", "http://mfa-service:8087", new Route.ConnectionPool(5, 1000, 5000)),
+                route("/api/groups/**", "http://group-service", null)));
+
+        try (CloseableHttpClient client = proxyClientConfig.proxyHttpClient(routeTable, meterRegistry)) {
+            // Routes sharing an upstream get the larger of their limits
+            assertEquals(30, poolGauge("user-service:4020", "max"));
+            assertEquals(5, poolGauge("mfa-service:8087", "max"));
+            // No pool on the route: defaults, with the scheme's port
+            assertEquals(50, poolGauge("group-service:80", "max"));
+            assertEquals(0, poolGauge("user-service:4020", "leased"));
+        }
+    }
+
+    @Test
+    void shouldRelayUpstreamErrorsInsteadOfThrowing() throws Exception {
+        RouteTable routeTable = RouteTable.compile(List.of(
+                route("/api/users/**", "http://user-service:4020", null)));
+
+        try (CloseableHttpClient client = proxyClientConfig.proxyHttpClient(routeTable, meterRegistry)) {
+            assertFalse(proxyClientConfig.proxyRestTemplate(client, routeTable).getErrorHandler()
+                    .hasError(new MockClientHttpResponse(new byte[0], HttpStatus.NOT_FOUND)));
+        }
+    }
+
+    @Test
+    void shouldStreamRequestBodiesThroughTheBlockingProxy() throws Exception {
+        byte[] payload = new byte[256 * 1024];
+        new Random(7).nextBytes(payload);
+        AtomicReference<byte[]> received = new AtomicReference<>();
+        AtomicReference<String> contentLength = new AtomicReference<>();
+
+        HttpServer upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        upstream.createContext("/", exchange -> {
+            contentLength.set(exchange.getRequestHeaders().getFirst("Content-Length"));
+            try (InputStream in = exchange.getRequestBody()) {
+                received.set(in.readAllBytes());
+            }
+            byte[] answer = "{\"status\":\"created\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(201, answer.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(answer);
+            }
+        });
+        upstream.start();
+
+        RouteTable routeTable = RouteTable.compile(List.of(route("/api/transaction/**",
+                "http://localhost:" + upstream.getAddress().getPort(), null)));
+        try (CloseableHttpClient client = proxyClientConfig.proxyHttpClient(routeTable, meterRegistry)) {
+            // The default blocking engine; the other collaborators stay idle without their configuration
+            ProxyController proxyController = new ProxyController(
+                    proxyClientConfig.proxyRestTemplate(client, routeTable), routeTable, new AsyncProxyClient(),
+                    new HttpResponseCache(routeTable, meterRegistry), new RequestCoalescer(routeTable, meterRegistry),
+                    new UpstreamGuard(routeTable, new RequestPriorities(List.of(), List.of()), meterRegistry),
+                    new RequestHedger(routeTable, meterRegistry), new ResponseCompressor(meterRegistry));
+
+            MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/transaction/statements/upload");
+            request.setContentType("application/octet-stream");
+            request.setContent(payload);
+            MockHttpServletResponse response = new MockHttpServletResponse();
+
+            assertNull(proxyController.handlePostRequest(request, response));
+            assertEquals(201, response.getStatus());
+            assertEquals("{\"status\":\"created\"}", response.getContentAsString());
+            assertArrayEquals(payload, received.get());
+            assertEquals(String.valueOf(payload.length), contentLength.get());
+        } finally {
+            upstream.stop(0);
+        }
+    }
+
+    private double poolGauge(String upstream, String state) {
+        return meterRegistry.get("gateway.proxy.pool.connections")
+                .tag("upstream", upstream)
+                .tag("state", state)
+                .gauge()
+                .value();
+    }
+
+    private Route route(String url, String target, Route.ConnectionPool pool) {
+        return new Route(url, true, new Route.RateLimit(60000L, 100), new Route.Proxy(target, true, pool));
+    }
+}
@@ -0,0 +1,98 @@
+package com.stockfellow.gateway.unit.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stockfellow.gateway.config.RouteConfig;
+import com.stockfellow.gateway.filter.AuthFilter;
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.model.TokenInfo;
+import com.stockfellow.gateway.model.TokenValidationResult;
+import com.stockfellow.gateway.routing.RouteMatch;
+import com.stockfellow.gateway.routing.RouteTable;
+import com.stockfellow.gateway.service.TokenValidationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class AuthFilterTest {
+
+    @Mock
+    private TokenValidationService tokenValidationService;
+
+    @Mock
+    private FilterChain filterChain;
+
+    private AuthFilter authFilter;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+
+        RouteTable routeTable = RouteTable.compile(List.of(
+                new Route("/api/groups/**", true, null, new Route.Proxy("http://group-service:4040", true))),
+                RouteConfig.PUBLIC_ENDPOINTS);
+        authFilter = new AuthFilter(tokenValidationService, routeTable, new ObjectMapper());
+
+        request = new MockHttpServletRequest("GET", "/api/groups/user");
+        request.addHeader("Authorization", "Bearer token");
+        response = new MockHttpServletResponse();
+    }
+
+    @Test
+    void shouldExposeValidatedTokenAsRequestAttribute() throws ServletException, IOException {
+        TokenInfo tokenInfo = TokenInfo.builder()
+                .valid(true)
+                .userId("user-1")
+                .username("alice")
+                .roles(Set.of("user"))
+                .build();
+        when(tokenValidationService.validateRequest(any(RouteMatch.class), anyString()))
+                .thenReturn(TokenValidationResult.success(tokenInfo));
+
+        authFilter.doFilter(request, response, filterChain);
+
+        // The original request goes down the chain; identity travels as an attribute
+        verify(filterChain).doFilter(request, response);
+        assertSame(tokenInfo, request.getAttribute(TokenInfo.ATTRIBUTE));
+        assertEquals("user", tokenInfo.getRolesHeader());
+    }
+
+    @Test
+    void shouldNotSetIdentityForPublicEndpoints() throws ServletException, IOException {
+        when(tokenValidationService.validateRequest(any(RouteMatch.class), any()))
+                .thenReturn(TokenValidationResult.success());
+
+        authFilter.doFilter(request, response, filterChain);
+
+        verify(filterChain).doFilter(request, response);
+        assertNull(request.getAttribute(TokenInfo.ATTRIBUTE));
+    }
+
+    @Test
+    void shouldRejectExpiredTokens() throws ServletException, IOException {
+        when(tokenValidationService.validateRequest(any(RouteMatch.class), anyString()))
+                .thenReturn(TokenValidationResult.expired("Token expired"));
+
+        authFilter.doFilter(request, response, filterChain);
+
+        verify(filterChain, never()).doFilter(any(), any());
+        assertEquals(401, response.getStatus());
+        assertTrue(response.getContentAsString().contains("token_expired"));
+        assertNull(request.getAttribute(TokenInfo.ATTRIBUTE));
+    }
+}
@@ -2,10 +2,14 @@ package com.stockfellow.gateway.unit.filter;
 
 import com.stockfellow.gateway.filter.RateLimitFilter;
 import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.ratelimit.LocalRateLimiter;
+import com.stockfellow.gateway.routing.RouteTable;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
@@ -140,4 +144,43 @@ class RateLimitFilterTest {
         verify(filterChain, times(2)).doFilter(request, response);
         verify(response, never()).setStatus(429);
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldShareOneLimitAcrossPathsOfARoute() throws ServletException, IOException {
+        when(request.getRemoteAddr()).thenReturn("127.0.0.1");
+        when(response.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+        
+        when(request.getRequestURI()).thenReturn("/api/user/profile");
+        rateLimitFilter.doFilter(request, response, filterChain);
+        when(request.getRequestURI()).thenReturn("/api/user/settings");
+        rateLimitFilter.doFilter(request, response, filterChain);
+        when(request.getRequestURI()).thenReturn("/api/user/123");
+        rateLimitFilter.doFilter(request, response, filterChain);
+        
+        verify(filterChain, times(2)).doFilter(request, response);
+        verify(response, times(1)).setStatus(429);
+    }
+    
+    @Test
+    void shouldKeepOneBucketAcrossDistinctPaths() throws ServletException, IOException {
+        Route groups = new Route("/api/groups/**", true,
+            new Route.RateLimit(60_000L, Integer.MAX_VALUE),
+            new Route.Proxy("http://group-service:4040", true));
+        LocalRateLimiter rateLimiter = new LocalRateLimiter();
+        RateLimitFilter filter = new RateLimitFilter(RouteTable.compile(Arrays.asList(groups)), rateLimiter);
+        
+        MockHttpServletRequest pathRequest = new MockHttpServletRequest("GET", "/");
+        MockHttpServletResponse pathResponse = new MockHttpServletResponse();
+        FilterChain noop = (req, res) -> { };
+        
+        for (int i = 0; i < 5_000; i++) {
+            pathRequest.setRequestURI("/api/groups/" + i + "/view");
+            filter.doFilter(pathRequest, pathResponse, noop);
+        }
+        
+        // Keyed by client and route pattern: one bucket, not one per path.
+        // RateLimitMemoryBenchmark checks the heap over millions of paths.
+        assertEquals(1, rateLimiter.size());
+        assertEquals(200, pathResponse.getStatus());
+    }
+}
@@ -0,0 +1,172 @@
+package com.stockfellow.gateway.unit.logging;
+
+import com.stockfellow.gateway.logging.AsyncAccessLog;
+import com.stockfellow.gateway.metrics.RequestTimings;
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.model.TokenInfo;
+import com.stockfellow.gateway.routing.RouteTable;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncAccessLogTest {
+
+    private MeterRegistry meterRegistry;
+    private AsyncAccessLog accessLog;
+    private ByteArrayOutputStream out;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        out = new ByteArrayOutputStream();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        accessLog.shutdown();
+    }
+
+    @Test
+    void shouldWriteOneJsonObjectPerRequest() throws Exception {
+        start(16, out);
+        RouteTable routeTable = RouteTable.compile(List.of(
+                new Route("/api/groups/**", true, null, new Route.Proxy("http://group-service:4040", true))));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/groups/user");
+        request.addHeader("X-Forwarded-For", " 203.0.113.7 , 10.0.0.1");
+        routeTable.match(request);
+        request.setAttribute(TokenInfo.ATTRIBUTE, TokenInfo.builder().valid(true).userId("user-1").build());
+        RequestTimings timings = new RequestTimings(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(3));
+        timings.record(RequestTimings.Phase.UPSTREAM, TimeUnit.MILLISECONDS.toNanos(2));
+
+        assertTrue(accessLog.log(request, 200, timings));
+        accessLog.shutdown();
+
+        String line = lines().get(0);
+        assertTrue(line.matches("\\{\"ts\":\\d+,\"method\":\"GET\",\"path\":\"/api/groups/user\",\"status\":200,"
+                + "\"duration_us\":\\d{4,},\"upstream_us\":2000,\"route\":\"/api/groups/\\*\\*\","
+                + "\"client\":\"203.0.113.7\",\"user\":\"user-1\"}"), line);
+    }
+
+    @Test
+    void shouldEscapeAndShortenUntrustedValues() throws Exception {
+        start(16, out);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/\"quoted\"\\caf\u00e9" + "x".repeat(5000));
+        request.setRemoteAddr("198.51.100.4");
+
+        accessLog.log(request, 404, new RequestTimings(System.nanoTime()));
+        accessLog.shutdown();
+
+        String line = lines().get(0);
+        assertTrue(line.contains("\"path\":\"/api/\\\"quoted\\\"\\\\caf\\u00e9xxx"), line);
+        assertTrue(line.length() < 1200, "length " + line.length());
+        assertTrue(line.endsWith("\"client\":\"198.51.100.4\"}"), line);
+        assertFalse(line.contains("upstream_us"), line);
+    }
+
+    @Test
+    void shouldDropAndCountWhenTheWriterFallsBehind() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        OutputStream stuck = new OutputStream() {
+            @Override
+            public void write(int b) {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                out.write(bytes, offset, length);
+            }
+        };
+        start(4, stuck);
+
+        // The writer takes the first line and then blocks writing it
+        assertTrue(accessLog.log(request(0), 200, new RequestTimings(System.nanoTime())));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (accessLog.pending() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        for (int i = 1; i <= 4; i++) {
+            assertTrue(accessLog.log(request(i), 200, new RequestTimings(System.nanoTime())));
+        }
+        assertFalse(accessLog.log(request(5), 200, new RequestTimings(System.nanoTime())));
+
+        release.countDown();
+        accessLog.shutdown();
+
+        assertEquals(1, accessLog.dropped());
+        assertEquals(1.0, meterRegistry.get("gateway.accesslog.dropped").functionCounter().count());
+        assertEquals(5, lines().size());
+        assertTrue(lines().get(4).contains("\"path\":\"/api/items/4\""));
+    }
+
+    @Test
+    void shouldKeepEveryLineFromConcurrentRequests() throws Exception {
+        start(1 << 16, out);
+        int threads = 4;
+        int perThread = 10_000;
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int offset = t * perThread;
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    accessLog.log(request(offset + i), 200, new RequestTimings(System.nanoTime()));
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        accessLog.shutdown();
+
+        List<String> lines = lines();
+        assertEquals(0, accessLog.dropped());
+        assertEquals(threads * perThread, lines.size());
+        boolean[] seen = new boolean[threads * perThread];
+        for (String line : lines) {
+            assertTrue(line.startsWith("{\"ts\":") && line.endsWith("}"), line);
+            int start = line.indexOf("/api/items/") + "/api/items/".length();
+            seen[Integer.parseInt(line.substring(start, line.indexOf('"', start)))] = true;
+        }
+        for (boolean item : seen) {
+            assertTrue(item);
+        }
+    }
+
+    private void start(int bufferSize, OutputStream output) {
+        accessLog = new AsyncAccessLog(meterRegistry);
+        ReflectionTestUtils.setField(accessLog, "bufferSize", bufferSize);
+        ReflectionTestUtils.setField(accessLog, "idleParkMs", 1L);
+        accessLog.start(output);
+    }
+
+    private static MockHttpServletRequest request(int item) {
+        return new MockHttpServletRequest("GET", "/api/items/" + item);
+    }
+
+    private List<String> lines() {
+        String written = new String(out.toByteArray(), StandardCharsets.US_ASCII);
+        return written.isEmpty() ? List.of() : List.of(written.split("\n"));
+    }
+}
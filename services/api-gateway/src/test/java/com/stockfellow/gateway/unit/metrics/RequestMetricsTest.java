@@ -0,0 +1,109 @@
+package com.stockfellow.gateway.unit.metrics;
+
+import com.stockfellow.gateway.filter.LoggingFilter;
+import com.stockfellow.gateway.metrics.RequestMetrics;
+import com.stockfellow.gateway.metrics.RequestTimings;
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.routing.RouteTable;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestMetricsTest {
+
+    private MeterRegistry meterRegistry;
+    private RequestMetrics requestMetrics;
+
+    @BeforeEach
+    void setUp() {
+        RouteTable routeTable = RouteTable.compile(List.of(
+                new Route("/api/groups/**", true, null, new Route.Proxy("http://group-service:4040", true))));
+        meterRegistry = new SimpleMeterRegistry();
+        requestMetrics = new RequestMetrics(routeTable, meterRegistry);
+        ReflectionTestUtils.setField(requestMetrics, "histogramBucketsMs", new long[] {5, 50, 500});
+        requestMetrics.init();
+    }
+
+    @Test
+    void shouldRecordDurationPerRouteMethodAndStatusClass() {
+        requestMetrics.record(new MockHttpServletRequest("GET", "/api/groups/abc/view"), 200, timings());
+        requestMetrics.record(new MockHttpServletRequest("GET", "/api/groups/def/view"), 204, timings());
+        requestMetrics.record(new MockHttpServletRequest("POST", "/api/groups/create"), 503, timings());
+        requestMetrics.record(new MockHttpServletRequest("GET", "/unknown"), 404, timings());
+
+        assertEquals(2, duration("/api/groups/**", "GET", "2xx").count());
+        assertEquals(1, duration("/api/groups/**", "POST", "5xx").count());
+        assertEquals(1, duration("none", "GET", "4xx").count());
+    }
+
+    @Test
+    void shouldNotTagUnknownMethods() {
+        requestMetrics.record(new MockHttpServletRequest("PROPFIND", "/api/groups/abc"), 405, timings());
+
+        assertEquals(1, duration("/api/groups/**", "OTHER", "4xx").count());
+    }
+
+    @Test
+    void shouldRecordOnlyThePhasesTheRequestReached() {
+        RequestTimings timings = timings();
+        timings.record(RequestTimings.Phase.AUTH, TimeUnit.MILLISECONDS.toNanos(2));
+
+        requestMetrics.record(new MockHttpServletRequest("GET", "/api/groups/abc"), 401, timings);
+
+        Timer auth = meterRegistry.find("gateway.request.phase").tags("route", "/api/groups/**", "phase", "auth").timer();
+        assertEquals(1, auth.count());
+        assertEquals(2.0, auth.totalTime(TimeUnit.MILLISECONDS), 0.001);
+        assertNull(meterRegistry.find("gateway.request.phase").tags("phase", "upstream").timer());
+    }
+
+    @Test
+    void shouldPublishConfiguredHistogramBuckets() {
+        RequestTimings timings = timings();
+        timings.record(RequestTimings.Phase.UPSTREAM, TimeUnit.MILLISECONDS.toNanos(30));
+
+        requestMetrics.record(new MockHttpServletRequest("GET", "/api/groups/abc"), 200, timings);
+
+        CountAtBucket[] buckets = meterRegistry.find("gateway.request.phase").tags("phase", "upstream").timer()
+                .takeSnapshot().histogramCounts();
+        assertEquals(3, buckets.length);
+        assertEquals(0, buckets[0].count());
+        assertEquals(1, buckets[1].count());
+        assertEquals(1, buckets[2].count());
+    }
+
+    @Test
+    void shouldRecordRequestsPassingTheLoggingFilter() throws Exception {
+        LoggingFilter loggingFilter = new LoggingFilter(requestMetrics);
+        MockHttpServletRequest request = new MockHttpServletRequest("DELETE", "/api/groups/abc");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        loggingFilter.doFilter(request, response, (req, res) -> {
+            assertNotNull(RequestTimings.of(req));
+            ((MockHttpServletResponse) res).setStatus(202);
+        });
+
+        assertEquals(1, duration("/api/groups/**", "DELETE", "2xx").count());
+    }
+
+    private Timer duration(String route, String method, String status) {
+        Timer timer = meterRegistry.find("gateway.request.duration")
+                .tags("route", route, "method", method, "status", status).timer();
+        assertNotNull(timer, route + " " + method + " " + status);
+        return timer;
+    }
+
+    private static RequestTimings timings() {
+        return new RequestTimings(System.nanoTime());
+    }
+}
@@ -0,0 +1,49 @@
+package com.stockfellow.gateway.unit.metrics;
+
+import com.stockfellow.gateway.metrics.RequestTimings;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestTimingsTest {
+
+    @Test
+    void shouldAddUpRepeatedPhases() {
+        RequestTimings timings = new RequestTimings(System.nanoTime());
+
+        timings.record(RequestTimings.Phase.UPSTREAM, 1_000);
+        timings.record(RequestTimings.Phase.UPSTREAM, 2_500);
+
+        assertEquals(3_500, timings.nanos(RequestTimings.Phase.UPSTREAM));
+        assertEquals(-1, timings.nanos(RequestTimings.Phase.AUTH));
+    }
+
+    @Test
+    void shouldListReachedPhasesAndTotalInServerTiming() {
+        RequestTimings timings = new RequestTimings(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(40));
+        timings.record(RequestTimings.Phase.AUTH, 1_250_000);
+        timings.record(RequestTimings.Phase.UPSTREAM, 35_000_000);
+
+        String serverTiming = timings.serverTiming();
+
+        assertTrue(serverTiming.startsWith("auth;dur=1.250, upstream;dur=35.000, total;dur="), serverTiming);
+        double total = Double.parseDouble(serverTiming.substring(serverTiming.lastIndexOf('=') + 1));
+        assertTrue(total >= 40, serverTiming);
+    }
+
+    @Test
+    void shouldIgnoreRequestsWithoutTimings() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/groups");
+
+        RequestTimings.record(request, RequestTimings.Phase.AUTH, 1_000);
+        assertNull(RequestTimings.of(request));
+
+        RequestTimings timings = RequestTimings.start(request);
+        RequestTimings.record(request, RequestTimings.Phase.AUTH, 1_000);
+        assertSame(timings, RequestTimings.of(request));
+        assertEquals(1_000, timings.nanos(RequestTimings.Phase.AUTH));
+    }
+}
@@ -0,0 +1,123 @@
+package com.stockfellow.gateway.unit.ratelimit;
+
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.ratelimit.LocalRateLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalRateLimiterTest {
+
+    private final LocalRateLimiter rateLimiter = new LocalRateLimiter();
+
+    @Test
+    void shouldAllowBurstUpToMax() {
+        Route.RateLimit rateLimit = new Route.RateLimit(60_000L, 5);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rateLimiter.tryAcquire("client:/api/user", rateLimit));
+        }
+        assertFalse(rateLimiter.tryAcquire("client:/api/user", rateLimit));
+    }
+
+    @Test
+    void shouldKeepKeysIndependent() {
+        Route.RateLimit rateLimit = new Route.RateLimit(60_000L, 1);
+
+        assertTrue(rateLimiter.tryAcquire("a:/api/user", rateLimit));
+        assertTrue(rateLimiter.tryAcquire("b:/api/user", rateLimit));
+        assertFalse(rateLimiter.tryAcquire("a:/api/user", rateLimit));
+    }
+
+    @Test
+    void shouldRefillOneTokenPerInterval() throws InterruptedException {
+        // One token every 50ms
+        Route.RateLimit rateLimit = new Route.RateLimit(200L, 4);
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(rateLimiter.tryAcquire("client", rateLimit));
+        }
+        assertFalse(rateLimiter.tryAcquire("client", rateLimit));
+
+        Thread.sleep(60);
+
+        assertTrue(rateLimiter.tryAcquire("client", rateLimit));
+        assertFalse(rateLimiter.tryAcquire("client", rateLimit));
+    }
+
+    @Test
+    void shouldDropIdleBucketsBeforeActiveOnes() throws InterruptedException {
+        LocalRateLimiter bounded = new LocalRateLimiter(10);
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        bounded.bindTo(meterRegistry);
+
+        Route.RateLimit shortWindow = new Route.RateLimit(5L, 1);
+        for (int i = 0; i < 10; i++) {
+            bounded.tryAcquire("idle-" + i, shortWindow);
+        }
+        Thread.sleep(20);
+
+        Route.RateLimit longWindow = new Route.RateLimit(60_000L, 1);
+        assertTrue(bounded.tryAcquire("active", longWindow));
+
+        assertEquals(1, bounded.size());
+        assertEquals(10, evicted(meterRegistry, "idle"));
+        assertEquals(0, evicted(meterRegistry, "capacity"));
+        // The surviving bucket still remembers its request
+        assertFalse(bounded.tryAcquire("active", longWindow));
+    }
+
+    @Test
+    void shouldStayWithinCapacityUnderManyClients() {
+        LocalRateLimiter bounded = new LocalRateLimiter(1_000);
+        Route.RateLimit rateLimit = new Route.RateLimit(60_000L, 10);
+
+        for (int i = 0; i < 5_000; i++) {
+            bounded.tryAcquire("10.0." + (i >> 8) + "." + (i & 0xff) + ":/api/groups/**", rateLimit);
+            assertTrue(bounded.size() <= 1_000);
+        }
+        assertTrue(bounded.evictionCount() >= 4_000);
+    }
+
+    @Test
+    void shouldNotOverAdmitUnderContention() throws Exception {
+        Route.RateLimit rateLimit = new Route.RateLimit(60_000L, 1_000);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                results.add(executor.submit(() -> {
+                    int allowed = 0;
+                    for (int i = 0; i < 1_000; i++) {
+                        if (rateLimiter.tryAcquire("shared", rateLimit)) {
+                            allowed++;
+                        }
+                    }
+                    return allowed;
+                }));
+            }
+
+            int total = 0;
+            for (Future<Integer> result : results) {
+                total += result.get(10, TimeUnit.SECONDS);
+            }
+            // One extra token per 60ms the run takes; it should take far less than 600ms
+            assertTrue(total >= 1_000 && total <= 1_010, "allowed " + total);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static double evicted(MeterRegistry meterRegistry, String reason) {
+        return meterRegistry.get("gateway.ratelimit.buckets.evicted").tag("reason", reason).functionCounter().count();
+    }
+}
@@ -0,0 +1,86 @@
+package com.stockfellow.gateway.unit.ratelimit;
+
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.ratelimit.LocalRateLimiter;
+import com.stockfellow.gateway.ratelimit.RedisRateLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RedisRateLimiterTest {
+
+    private static final Route.RateLimit LIMIT = new Route.RateLimit(60_000L, 100);
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    private RedisRateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+
+        rateLimiter = new RedisRateLimiter(redisTemplate, new LocalRateLimiter(), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(rateLimiter, "prefetch", 1);
+        ReflectionTestUtils.setField(rateLimiter, "prefetchTtlMs", 1000L);
+        ReflectionTestUtils.setField(rateLimiter, "fallbackRetryMs", 60_000L);
+        rateLimiter.init();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldFollowScriptDecision() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any()))
+                .thenReturn(List.of(1L, 0L))
+                .thenReturn(List.of(0L, 500L));
+
+        assertTrue(rateLimiter.tryAcquire("client:/api/user", LIMIT));
+        assertFalse(rateLimiter.tryAcquire("client:/api/user", LIMIT));
+
+        verify(redisTemplate, times(2)).execute(any(RedisScript.class), eq(List.of("rate_limit:client:/api/user")),
+                eq("600.0"), eq("59400.0"), eq("1"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldServePrefetchedTokensLocally() {
+        ReflectionTestUtils.setField(rateLimiter, "prefetch", 5);
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any()))
+                .thenReturn(List.of(5L, 0L))
+                .thenReturn(List.of(0L, 500L));
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rateLimiter.tryAcquire("client:/api/user", LIMIT));
+        }
+        assertFalse(rateLimiter.tryAcquire("client:/api/user", LIMIT));
+
+        verify(redisTemplate, times(2)).execute(any(RedisScript.class), anyList(), any(), any(), eq("5"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldFallBackToLocalLimitsWhenRedisFails() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any()))
+                .thenThrow(new RedisConnectionFailureException("down"));
+        Route.RateLimit rateLimit = new Route.RateLimit(60_000L, 2);
+
+        assertTrue(rateLimiter.tryAcquire("client:/api/user", rateLimit));
+        assertTrue(rateLimiter.tryAcquire("client:/api/user", rateLimit));
+        assertFalse(rateLimiter.tryAcquire("client:/api/user", rateLimit));
+
+        // Redis is not retried until fallback-retry-ms has passed
+        verify(redisTemplate, times(1)).execute(any(RedisScript.class), anyList(), any(), any(), any());
+    }
+}
@@ -0,0 +1,98 @@
+package com.stockfellow.gateway.unit.registration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stockfellow.gateway.registration.ProvisioningClient;
+import com.stockfellow.gateway.registration.RegistrationJob;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProvisioningClientTest {
+
+    private HttpServer userService;
+    private ProvisioningClient provisioningClient;
+    private volatile int status;
+    private volatile String answer;
+    private final AtomicReference<String> idempotencyKey = new AtomicReference<>();
+
+    private final RegistrationJob job =
+            new RegistrationJob("reg-1", "user-1", "jdoe", "jdoe@example.com", "John", "Doe", 1000L);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        userService = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        userService.createContext("/api/users/register", exchange -> {
+            idempotencyKey.set(exchange.getRequestHeaders().getFirst("Idempotency-Key"));
+            try (InputStream in = exchange.getRequestBody()) {
+                in.readAllBytes();
+            }
+            byte[] body = answer.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        userService.start();
+
+        // The gateway's shared RestTemplate: the default error handler throws for 4xx and 5xx
+        provisioningClient = new ProvisioningClient(new RestTemplate(), new ObjectMapper());
+        ReflectionTestUtils.setField(provisioningClient, "userServiceUrl",
+                "http://localhost:" + userService.getAddress().getPort());
+    }
+
+    @AfterEach
+    void tearDown() {
+        userService.stop(0);
+    }
+
+    @Test
+    void shouldCountTheSameUserAlreadyRegisteredAsCreated() {
+        respond(409, "{\"error\":\"User already exists\",\"userId\":\"user-1\"}");
+
+        assertDoesNotThrow(() -> provisioningClient.provision(job, RegistrationJob.Step.USER_RECORD));
+        assertEquals(job.idempotencyKey(RegistrationJob.Step.USER_RECORD), idempotencyKey.get());
+    }
+
+    @Test
+    void shouldRejectAnEmailHeldByAnotherUser() {
+        respond(409, "{\"error\":\"Email already in use\",\"message\":\"This email address is already registered\"}");
+
+        assertThrows(ProvisioningClient.StepRejectedException.class,
+                () -> provisioningClient.provision(job, RegistrationJob.Step.USER_RECORD));
+    }
+
+    @Test
+    void shouldRejectABadRequestWithoutRetrying() {
+        respond(400, "{\"error\":\"Invalid request\",\"message\":\"Username is required\"}");
+
+        assertThrows(ProvisioningClient.StepRejectedException.class,
+                () -> provisioningClient.provision(job, RegistrationJob.Step.USER_RECORD));
+    }
+
+    @Test
+    void shouldLeaveAnUnavailableServiceToBeRetried() {
+        respond(503, "");
+
+        RuntimeException failure = assertThrows(RuntimeException.class,
+                () -> provisioningClient.provision(job, RegistrationJob.Step.USER_RECORD));
+        assertFalse(failure instanceof ProvisioningClient.StepRejectedException);
+        assertEquals("user-service returned 503", failure.getMessage());
+    }
+
+    private void respond(int status, String answer) {
+        this.status = status;
+        this.answer = answer;
+    }
+}
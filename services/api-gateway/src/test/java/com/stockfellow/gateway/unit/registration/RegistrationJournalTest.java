@@ -0,0 +1,92 @@
+package com.stockfellow.gateway.unit.registration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stockfellow.gateway.registration.RegistrationJob;
+import com.stockfellow.gateway.registration.RegistrationJournal;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegistrationJournalTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private RegistrationJob job(String id) {
+        return new RegistrationJob(id, "user-" + id, "jdoe", "jdoe@example.com", "John", "Doe", 1000L);
+    }
+
+    @Test
+    void shouldReplayTheLatestStateOfEachJob() throws Exception {
+        Path file = Files.createTempDirectory("journal").resolve("queue.jsonl");
+        RegistrationJob job = job("a");
+        try (RegistrationJournal journal = new RegistrationJournal(file, objectMapper, false)) {
+            journal.open();
+            journal.append(job);
+            job.step(RegistrationJob.Step.USER_RECORD).setStatus(RegistrationJob.Status.COMPLETED);
+            job.step(RegistrationJob.Step.USER_RECORD).setAttempts(1);
+            journal.append(job);
+        }
+
+        Map<String, RegistrationJob> replayed = new RegistrationJournal(file, objectMapper, false).open();
+
+        assertEquals(1, replayed.size());
+        RegistrationJob restored = replayed.get("a");
+        assertEquals("user-a", restored.getUserId());
+        assertEquals(RegistrationJob.Status.COMPLETED, restored.step(RegistrationJob.Step.USER_RECORD).getStatus());
+        assertEquals(RegistrationJob.Status.PENDING, restored.step(RegistrationJob.Step.TRANSACTION_SYNC).getStatus());
+        assertEquals(RegistrationJob.Status.PENDING, restored.getStatus());
+    }
+
+    @Test
+    void shouldSkipALineCutShortByACrash() throws Exception {
+        Path file = Files.createTempDirectory("journal").resolve("queue.jsonl");
+        try (RegistrationJournal journal = new RegistrationJournal(file, objectMapper, true)) {
+            journal.open();
+            journal.append(job("a"));
+        }
+        Files.write(file, "{\"registrationId\":\"b\",\"us".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        Map<String, RegistrationJob> replayed = new RegistrationJournal(file, objectMapper, false).open();
+
+        assertEquals(1, replayed.size());
+        assertTrue(replayed.containsKey("a"));
+    }
+
+    @Test
+    void shouldCompactToOneLinePerLiveJob() throws Exception {
+        Path file = Files.createTempDirectory("journal").resolve("queue.jsonl");
+        RegistrationJob kept = job("kept");
+        try (RegistrationJournal journal = new RegistrationJournal(file, objectMapper, false)) {
+            journal.open();
+            journal.append(job("dropped"));
+            journal.append(kept);
+            journal.append(kept);
+            assertEquals(3, journal.records());
+
+            journal.compact(List.of(kept));
+            assertEquals(1, journal.records());
+            journal.append(kept);
+        }
+
+        assertEquals(2, Files.readAllLines(file).size());
+        Map<String, RegistrationJob> replayed = new RegistrationJournal(file, objectMapper, false).open();
+        assertEquals(1, replayed.size());
+        assertTrue(replayed.containsKey("kept"));
+    }
+
+    @Test
+    void shouldKeyEachStepSeparately() {
+        RegistrationJob job = job("a");
+
+        assertEquals("a:user_record", job.idempotencyKey(RegistrationJob.Step.USER_RECORD));
+        assertNotEquals(job.idempotencyKey(RegistrationJob.Step.USER_RECORD),
+                job.idempotencyKey(RegistrationJob.Step.WELCOME_NOTIFICATION));
+    }
+}
@@ -0,0 +1,132 @@
+package com.stockfellow.gateway.unit.registration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stockfellow.gateway.registration.ProvisioningClient;
+import com.stockfellow.gateway.registration.RegistrationJob;
+import com.stockfellow.gateway.registration.RegistrationPipeline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RegistrationPipelineTest {
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<RegistrationJob.Step> calls = new CopyOnWriteArrayList<>();
+    private volatile RegistrationJob.Step refused;
+    private RegistrationPipeline pipeline;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+
+        ProvisioningClient provisioningClient = new ProvisioningClient(new RestTemplate(), objectMapper) {
+            @Override
+            public void provision(RegistrationJob job, RegistrationJob.Step step) {
+                calls.add(step);
+                if (step == refused) {
+                    throw new StepRejectedException(step + " refused");
+                }
+            }
+        };
+        pipeline = new RegistrationPipeline(provisioningClient, redisTemplate, objectMapper, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(pipeline, "queueFile",
+                Files.createTempDirectory("registration").resolve("queue.jsonl").toString());
+        ReflectionTestUtils.setField(pipeline, "fsync", false);
+        ReflectionTestUtils.setField(pipeline, "workers", 2);
+        ReflectionTestUtils.setField(pipeline, "maxAttempts", 3);
+        ReflectionTestUtils.setField(pipeline, "initialBackoffMs", 10L);
+        ReflectionTestUtils.setField(pipeline, "maxBackoffMs", 10L);
+        ReflectionTestUtils.setField(pipeline, "statusRetentionMs", 60000L);
+        ReflectionTestUtils.setField(pipeline, "compactAfterRecords", 10000L);
+        pipeline.init();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        pipeline.shutdown();
+    }
+
+    @Test
+    void shouldRunTheOtherStepsOnlyOnceTheUserRecordExists() throws Exception {
+        RegistrationJob job = pipeline.submit("user-1", "jdoe", "jdoe@example.com", "John", "Doe");
+
+        Map<String, Object> status = awaitFinished(job.getRegistrationId());
+
+        assertEquals("completed", status.get("status"));
+        assertEquals(3, calls.size());
+        assertEquals(RegistrationJob.Step.USER_RECORD, calls.get(0));
+
+        // Other instances see the final state
+        verify(valueOperations, timeout(2000)).set(eq("registration_status:" + job.getRegistrationId()),
+                argThat(shared -> !shared.contains("\"pending\"")), eq(Duration.ofMillis(60000)));
+    }
+
+    @Test
+    void shouldSkipTheOtherStepsWhenTheUserRecordFails() throws Exception {
+        refused = RegistrationJob.Step.USER_RECORD;
+        RegistrationJob job = pipeline.submit("user-1", "jdoe", "jdoe@example.com", "John", "Doe");
+
+        Map<String, Object> status = awaitFinished(job.getRegistrationId());
+
+        assertEquals("failed", status.get("status"));
+        assertEquals(List.of(RegistrationJob.Step.USER_RECORD), calls);
+        Map<?, ?> transactionSync = (Map<?, ?>) ((Map<?, ?>) status.get("steps")).get("transaction_sync");
+        assertEquals("failed", transactionSync.get("status"));
+        assertEquals(0, transactionSync.get("attempts"));
+        assertEquals("Skipped: user_record failed", transactionSync.get("lastError"));
+    }
+
+    @Test
+    void shouldAnswerForRegistrationsAcceptedByAnotherInstance() {
+        when(valueOperations.get("registration_status:elsewhere"))
+                .thenReturn("{\"registrationId\":\"elsewhere\",\"status\":\"pending\"}");
+
+        assertEquals("pending", pipeline.status("elsewhere").get("status"));
+        assertNull(pipeline.status("unknown"));
+    }
+
+    @Test
+    void shouldNotReportARegistrationAsUnknownWhileRedisIsDown() {
+        when(valueOperations.get(anyString())).thenThrow(new RedisConnectionFailureException("Connection refused"));
+
+        assertThrows(RegistrationPipeline.StatusUnavailableException.class, () -> pipeline.status("elsewhere"));
+    }
+
+    private Map<String, Object> awaitFinished(String registrationId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            Map<String, Object> status = pipeline.status(registrationId);
+            Map<?, ?> steps = (Map<?, ?>) status.get("steps");
+            boolean pending = steps.values().stream().anyMatch(step -> "pending".equals(((Map<?, ?>) step).get("status")));
+            if (!pending || System.currentTimeMillis() > deadline) {
+                return status;
+            }
+            Thread.sleep(10);
+        }
+    }
+}
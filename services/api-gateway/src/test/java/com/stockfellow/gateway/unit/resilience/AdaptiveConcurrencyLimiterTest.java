@@ -0,0 +1,248 @@
+package com.stockfellow.gateway.unit.resilience;
+
+import com.stockfellow.gateway.resilience.AdaptiveConcurrencyLimiter;
+import com.stockfellow.gateway.resilience.RequestPriority;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    // Stub upstream: serves CAPACITY requests at once in BASE_LATENCY; beyond that
+    // they queue, so latency grows in proportion to the number in flight
+    private static final int CAPACITY = 20;
+    private static final long BASE_LATENCY_NS = TimeUnit.MILLISECONDS.toNanos(10);
+    // CAPACITY / BASE_LATENCY
+    private static final int UPSTREAM_THROUGHPUT = 2000;
+
+    @Test
+    void shouldSettleNearUpstreamCapacityUnderOverload() {
+        Simulation limited = new Simulation(limiter(), 7).run(2 * UPSTREAM_THROUGHPUT, 30, 0, 0);
+        Simulation unlimited = new Simulation(null, 7).run(2 * UPSTREAM_THROUGHPUT, 30, 0, 0);
+
+        // Vegas keeps a few requests queued at the upstream, so the limit sits around its capacity
+        assertTrue(limited.limiter.limit() >= CAPACITY / 2 && limited.limiter.limit() <= 2 * CAPACITY,
+                "limit " + limited.limiter.limit());
+        assertTrue(limited.percentile(0.99) <= 2 * BASE_LATENCY_NS, "p99 " + limited.percentile(0.99));
+        // Roughly the excess half of the offered load is shed, the rest is served
+        double shedRatio = (double) limited.shed() / limited.arrivals;
+        assertTrue(shedRatio > 0.4 && shedRatio < 0.6, "shed " + shedRatio);
+
+        // Without a limit the queue keeps growing
+        assertTrue(unlimited.percentile(0.99) > 20 * BASE_LATENCY_NS, "p99 " + unlimited.percentile(0.99));
+    }
+
+    @Test
+    void shouldNotShedBelowCapacity() {
+        Simulation simulation = new Simulation(limiter(), 11).run(UPSTREAM_THROUGHPUT / 4, 30, 0, 0);
+
+        // Only the odd burst during a probe, when admissions are held to the minimum limit
+        assertTrue(simulation.shed() <= simulation.arrivals / 100, "shed " + simulation.shed());
+        assertEquals(BASE_LATENCY_NS, simulation.percentile(0.99));
+    }
+
+    @Test
+    void shouldShedBulkFirstAndCriticalLast() {
+        // 10% critical, 30% bulk, the rest normal
+        Simulation simulation = new Simulation(limiter(), 13).run(2 * UPSTREAM_THROUGHPUT, 30, 0.1, 0.3);
+
+        double critical = simulation.shedRatio(RequestPriority.CRITICAL);
+        double normal = simulation.shedRatio(RequestPriority.NORMAL);
+        double bulk = simulation.shedRatio(RequestPriority.BULK);
+        assertTrue(critical < normal && normal < bulk, critical + " < " + normal + " < " + bulk);
+        assertTrue(bulk > 0.9, "bulk " + bulk);
+        assertTrue(critical < 0.1, "critical " + critical);
+    }
+
+    @Test
+    void shouldFollowAnUpstreamThatSlowsDown() {
+        Simulation simulation = new Simulation(limiter(), 17);
+        simulation.run(2 * UPSTREAM_THROUGHPUT, 20, 0, 0);
+
+        // Every request now takes twice as long, so the upstream serves half as many
+        simulation.latencyFactor = 2;
+        simulation.latencies.clear();
+        simulation.run(2 * UPSTREAM_THROUGHPUT, 40, 0, 0);
+
+        int limit = simulation.limiter.limit();
+        assertTrue(limit >= CAPACITY && limit <= 2 * CAPACITY, "limit " + limit);
+        assertTrue(simulation.percentile(0.99) < 4 * BASE_LATENCY_NS, "p99 " + simulation.percentile(0.99));
+    }
+
+    @Test
+    void shouldKeepSlowBulkCallsOutOfTheResponseTimes() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 4, 100, 0.9, 0.5, 10_000);
+        limiter.onSample(RequestPriority.NORMAL, BASE_LATENCY_NS, 1, false);
+
+        // Normal calls with a short queue, which holds the limit, between 20 s exports
+        for (int i = 0; i < 50; i++) {
+            limiter.onSample(RequestPriority.NORMAL, BASE_LATENCY_NS * 6 / 5, 10, false);
+            limiter.onSample(RequestPriority.BULK, TimeUnit.SECONDS.toNanos(20), 10, false);
+        }
+
+        // Counted as samples, each export would have read as a full queue and cut the limit to its minimum
+        assertEquals(20, limiter.limit());
+    }
+
+    @Test
+    void shouldKeepACriticalReserveWhileProbing() {
+        AtomicLong clock = new AtomicLong();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 4, 100, 0.9, 0.5, 1000, clock::get);
+        limiter.onSample(RequestPriority.NORMAL, BASE_LATENCY_NS, 1, false);
+        // A loaded call after the probe interval starts a probe
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        limiter.onSample(RequestPriority.NORMAL, BASE_LATENCY_NS, 20, false);
+
+        assertFalse(limiter.tryAcquire(RequestPriority.BULK));
+        int normal = 0;
+        while (limiter.tryAcquire(RequestPriority.NORMAL)) {
+            normal++;
+        }
+        assertEquals(4, normal);
+        // Critical keeps the two slots it has over normal at a limit of 20
+        assertTrue(limiter.tryAcquire(RequestPriority.CRITICAL));
+        assertTrue(limiter.tryAcquire(RequestPriority.CRITICAL));
+        assertFalse(limiter.tryAcquire(RequestPriority.CRITICAL));
+    }
+
+    @Test
+    void shouldLowerTheLimitOnFailures() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 4, 100, 0.9, 0.5, 10_000);
+
+        for (int i = 0; i < 5; i++) {
+            limiter.onSample(RequestPriority.NORMAL, BASE_LATENCY_NS, 20, true);
+        }
+
+        assertEquals(15, limiter.limit());
+    }
+
+    @Test
+    void shouldStayWithinMinAndMaxLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 4, 30, 0.9, 0.5, 10_000);
+        limiter.onSample(RequestPriority.NORMAL, BASE_LATENCY_NS, 1, false);
+
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample(RequestPriority.NORMAL, BASE_LATENCY_NS, 30, false);
+        }
+        assertEquals(30, limiter.limit());
+
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample(RequestPriority.NORMAL, BASE_LATENCY_NS, 30, true);
+        }
+        assertEquals(4, limiter.limit());
+    }
+
+    private static AdaptiveConcurrencyLimiter limiter() {
+        return new AdaptiveConcurrencyLimiter(10, 4, 200, 0.9, 0.5, 2000, Simulation.clock::get);
+    }
+
+    /**
+     * Discrete-event run of Poisson arrivals against the stub upstream, on a
+     * virtual clock shared with the limiter.
+     */
+    private static final class Simulation {
+        // Shared so limiter() can hand it to the limiter; each test runs its simulations one after another
+        static final VirtualClock clock = new VirtualClock();
+
+        final AdaptiveConcurrencyLimiter limiter;
+        final Random random;
+        final PriorityQueue<long[]> completions = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        final List<Long> latencies = new ArrayList<>();
+        final long[] offered = new long[RequestPriority.values().length];
+        final long[] shedCounts = new long[RequestPriority.values().length];
+        long arrivals;
+        int inFlight;
+        double latencyFactor = 1;
+
+        Simulation(AdaptiveConcurrencyLimiter limiter, long seed) {
+            this.limiter = limiter;
+            this.random = new Random(seed);
+        }
+
+        Simulation run(int arrivalsPerSecond, int seconds, double criticalShare, double bulkShare) {
+            long end = clock.get() + TimeUnit.SECONDS.toNanos(seconds);
+            // Latencies of the first quarter are left out while the limit is learned
+            long measureFrom = clock.get() + TimeUnit.SECONDS.toNanos(seconds) / 4;
+            double meanGapNs = 1e9 / arrivalsPerSecond;
+            long now = clock.get();
+
+            while (now < end) {
+                now += (long) (-Math.log(1 - random.nextDouble()) * meanGapNs);
+                completeUntil(now);
+                clock.set(now);
+
+                double draw = random.nextDouble();
+                RequestPriority priority = draw < criticalShare ? RequestPriority.CRITICAL
+                        : draw < criticalShare + bulkShare ? RequestPriority.BULK
+                        : RequestPriority.NORMAL;
+                arrivals++;
+                offered[priority.ordinal()]++;
+
+                if (limiter != null && !limiter.tryAcquire(priority)) {
+                    shedCounts[priority.ordinal()]++;
+                    continue;
+                }
+                inFlight++;
+                long latency = (long) (BASE_LATENCY_NS * latencyFactor * Math.max(1.0, (double) inFlight / CAPACITY));
+                // What UpstreamGuard hands back with the sample
+                int sampleInFlight = limiter != null ? limiter.inFlight() : inFlight;
+                completions.add(new long[] {now + latency, latency, sampleInFlight, priority.ordinal()});
+                if (now >= measureFrom) {
+                    latencies.add(latency);
+                }
+            }
+            return this;
+        }
+
+        void completeUntil(long time) {
+            while (!completions.isEmpty() && completions.peek()[0] <= time) {
+                long[] completion = completions.poll();
+                clock.set(completion[0]);
+                inFlight--;
+                if (limiter != null) {
+                    RequestPriority priority = RequestPriority.values()[(int) completion[3]];
+                    limiter.release(priority);
+                    limiter.onSample(priority, completion[1], (int) completion[2], false);
+                }
+            }
+        }
+
+        long percentile(double percentile) {
+            List<Long> sorted = new ArrayList<>(latencies);
+            Collections.sort(sorted);
+            return sorted.get((int) Math.min(sorted.size() - 1, Math.floor(percentile * sorted.size())));
+        }
+
+        long shed() {
+            long total = 0;
+            for (long count : shedCounts) {
+                total += count;
+            }
+            return total;
+        }
+
+        double shedRatio(RequestPriority priority) {
+            return (double) shedCounts[priority.ordinal()] / offered[priority.ordinal()];
+        }
+    }
+
+    private static final class VirtualClock {
+        private long nanos;
+
+        long get() {
+            return nanos;
+        }
+
+        void set(long nanos) {
+            this.nanos = nanos;
+        }
+    }
+}
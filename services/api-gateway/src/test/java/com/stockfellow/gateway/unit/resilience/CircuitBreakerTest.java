@@ -0,0 +1,111 @@
+package com.stockfellow.gateway.unit.resilience;
+
+import com.stockfellow.gateway.resilience.CircuitBreaker;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(2000);
+
+    private final AtomicLong clock = new AtomicLong();
+    // Window of 10, decisions after 5 calls, 50% failures or 50% slow calls open it for 1s, 2 trials
+    private final CircuitBreaker breaker = new CircuitBreaker(10, 5, 50, 50, 1000, 1000, 2, clock::get);
+
+    @Test
+    void shouldStayClosedBelowMinimumCalls() {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.record(FAST, true);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void shouldOpenAtFailureRateThreshold() {
+        record(3, FAST, false);
+        record(2, FAST, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+
+        record(1, FAST, true);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(1000, breaker.retryAfterMs());
+    }
+
+    @Test
+    void shouldOpenAtSlowCallRateThreshold() {
+        record(3, FAST, false);
+        record(3, SLOW, false);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    @Test
+    void shouldForgetOutcomesThatLeaveTheWindow() {
+        record(2, FAST, true);
+        record(10, FAST, false);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0f, breaker.failureRate());
+        assertEquals(10, breaker.bufferedCalls());
+    }
+
+    @Test
+    void shouldCloseAfterSuccessfulTrials() {
+        record(5, FAST, true);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        // Only two trials while half open
+        assertFalse(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+
+        breaker.record(FAST, false);
+        breaker.record(FAST, false);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0, breaker.bufferedCalls());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void shouldReopenWhenATrialFails() {
+        record(5, FAST, true);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+
+        assertTrue(breaker.tryAcquire());
+        breaker.record(SLOW, false);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void shouldHandBackTrialsThatEndedWithoutAnOutcome() {
+        record(5, FAST, true);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        breaker.release();
+
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+    }
+
+    private void record(int calls, long durationNs, boolean failed) {
+        for (int i = 0; i < calls; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.record(durationNs, failed);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.stockfellow.gateway.unit.resilience;
+
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.resilience.RequestHedger;
+import com.stockfellow.gateway.routing.RouteTable;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestHedgerTest {
+
+    private static final long MIN_DELAY_MS = 20;
+    private static final Predicate<String> ANY = result -> true;
+    // Results here are status codes
+    private static final Predicate<String> NOT_5XX = status -> !status.startsWith("5");
+
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void shouldOnlyHedgeConfiguredPaths() {
+        Route groups = groups(100);
+        Route users = new Route("/api/users/**", true, null, new Route.Proxy("http://user-service:4000", true));
+        RequestHedger hedger = hedger(1, groups, users);
+
+        assertTrue(hedger.isHedged(groups, "/api/groups/42/view"));
+        assertFalse(hedger.isHedged(groups, "/api/groups/42/members"));
+        assertFalse(hedger.isHedged(users, "/api/users/profile"));
+    }
+
+    @Test
+    void shouldNotHedgeUntilEnoughCallsWereSeen() throws Exception {
+        Route groups = groups(100);
+        RequestHedger hedger = hedger(1, groups);
+        warmUp(hedger, groups, 9);
+        List<CompletableFuture<String>> attempts = new ArrayList<>();
+        assertEquals(-1L, hedger.hedgeDelayNanos(groups));
+
+        String result = hedger.execute(groups, hedge -> {
+            attempts.add(CompletableFuture.supplyAsync(() -> sleep(3 * MIN_DELAY_MS, "slow")));
+            return attempts.get(attempts.size() - 1);
+        }, ANY);
+
+        assertEquals("slow", result);
+        assertEquals(1, attempts.size());
+    }
+
+    @Test
+    void shouldUseTheSecondCallAndCancelTheFirstWhenTheFirstIsSlow() throws Exception {
+        Route groups = groups(100);
+        RequestHedger hedger = hedger(1, groups);
+        warmUp(hedger, groups, 10);
+        CompletableFuture<String> stuck = new CompletableFuture<>();
+        List<CompletableFuture<String>> attempts = new ArrayList<>(List.of(stuck,
+                CompletableFuture.completedFuture("hedge")));
+        List<Boolean> hedges = new ArrayList<>();
+
+        long start = System.nanoTime();
+        String result = hedger.execute(groups, hedge -> {
+            hedges.add(hedge);
+            return attempts.remove(0);
+        }, ANY);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals("hedge", result);
+        assertTrue(stuck.isCancelled());
+        assertTrue(attempts.isEmpty());
+        assertEquals(List.of(false, true), hedges);
+        assertTrue(elapsedMs >= MIN_DELAY_MS, "hedged after " + elapsedMs + "ms");
+        assertEquals(1.0, count("hedged"));
+        assertEquals(1.0, count("hedge_won"));
+    }
+
+    @Test
+    void shouldWaitForTheOtherCallWhenOneFails() throws Exception {
+        Route groups = groups(100);
+        RequestHedger hedger = hedger(1, groups);
+        warmUp(hedger, groups, 10);
+        CompletableFuture<String> failing = new CompletableFuture<>();
+        CompletableFuture<String> slow = CompletableFuture.supplyAsync(() -> sleep(2 * MIN_DELAY_MS, "slow"));
+        List<CompletableFuture<String>> attempts = new ArrayList<>(List.of(slow, failing));
+
+        CompletableFuture.runAsync(() -> failing.completeExceptionally(
+                new UncheckedIOException(new IOException("connection reset"))),
+                CompletableFuture.delayedExecutor(MIN_DELAY_MS + 5, TimeUnit.MILLISECONDS));
+
+        assertEquals("slow", hedger.execute(groups, hedge -> attempts.remove(0), ANY));
+        assertEquals(0.0, count("hedge_won"));
+    }
+
+    @Test
+    void shouldNotLetAServerErrorWinOverTheOtherCall() throws Exception {
+        Route groups = groups(100);
+        RequestHedger hedger = hedger(1, groups);
+        warmUp(hedger, groups, 10);
+        CompletableFuture<String> slow = CompletableFuture.supplyAsync(() -> sleep(3 * MIN_DELAY_MS, "200"));
+        List<CompletableFuture<String>> attempts = new ArrayList<>(List.of(slow,
+                CompletableFuture.completedFuture("503")));
+
+        assertEquals("200", hedger.execute(groups, hedge -> attempts.remove(0), NOT_5XX));
+        assertEquals(0.0, count("hedge_won"));
+    }
+
+    @Test
+    void shouldAnswerWithTheServerErrorWhenTheOtherCallFails() throws Exception {
+        Route groups = groups(100);
+        RequestHedger hedger = hedger(1, groups);
+        warmUp(hedger, groups, 10);
+        CompletableFuture<String> failing = new CompletableFuture<>();
+        List<CompletableFuture<String>> attempts = new ArrayList<>(List.of(failing,
+                CompletableFuture.completedFuture("503")));
+        CompletableFuture.runAsync(() -> failing.completeExceptionally(
+                new UncheckedIOException(new IOException("connection reset"))),
+                CompletableFuture.delayedExecutor(2 * MIN_DELAY_MS, TimeUnit.MILLISECONDS));
+
+        assertEquals("503", hedger.execute(groups, hedge -> attempts.remove(0), NOT_5XX));
+    }
+
+    @Test
+    void shouldFailWhenTheOnlyCallFails() throws Exception {
+        Route groups = groups(100);
+        RequestHedger hedger = hedger(1, groups);
+        warmUp(hedger, groups, 10);
+
+        UncheckedIOException error = assertThrows(UncheckedIOException.class, () -> hedger.execute(groups,
+                hedge -> CompletableFuture.failedFuture(new UncheckedIOException(new IOException("refused"))), ANY));
+
+        assertEquals("refused", error.getCause().getMessage());
+        assertEquals(0.0, count("hedged"));
+    }
+
+    @Test
+    void shouldCapHedgesAtTheRoutesBudget() throws Exception {
+        // 10% of calls, with one hedge saved up at most
+        Route groups = groups(10);
+        RequestHedger hedger = hedger(1, groups);
+        warmUp(hedger, groups, 10);
+        int[] attempts = new int[1];
+
+        for (int i = 0; i < 20; i++) {
+            hedger.execute(groups, hedge -> {
+                attempts[0]++;
+                return CompletableFuture.supplyAsync(() -> sleep(2 * MIN_DELAY_MS, "slow"));
+            }, ANY);
+        }
+
+        // The saved hedge goes first, then one more earned over the next ten calls
+        assertEquals(2.0, count("hedged"));
+        assertEquals(18.0, count("budget_exhausted"));
+        assertEquals(22, attempts[0]);
+    }
+
+    private RequestHedger hedger(int maxBurst, Route... routes) {
+        RequestHedger hedger = new RequestHedger(RouteTable.compile(List.of(routes)), meterRegistry);
+        ReflectionTestUtils.setField(hedger, "enabled", true);
+        ReflectionTestUtils.setField(hedger, "windowSize", 1000);
+        ReflectionTestUtils.setField(hedger, "minSamples", 10);
+        ReflectionTestUtils.setField(hedger, "minDelayMs", MIN_DELAY_MS);
+        ReflectionTestUtils.setField(hedger, "maxBurst", maxBurst);
+        hedger.init();
+        return hedger;
+    }
+
+    private static Route groups(int budgetPercent) {
+        return new Route("/api/groups/**", true, null, new Route.Proxy("http://group-service:4040", true),
+                null, null, new Route.Hedging(95, budgetPercent, "/api/groups/*/view"));
+    }
+
+    // Fast calls, so the percentile settles on the minimum delay
+    private static void warmUp(RequestHedger hedger, Route route, int calls) {
+        for (int i = 0; i < calls; i++) {
+            hedger.execute(route, hedge -> CompletableFuture.completedFuture("fast"), ANY);
+        }
+    }
+
+    private double count(String outcome) {
+        return meterRegistry.get("gateway.hedging.requests").tag("outcome", outcome).counter().count();
+    }
+
+    private static String sleep(long millis, String result) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return result;
+    }
+}
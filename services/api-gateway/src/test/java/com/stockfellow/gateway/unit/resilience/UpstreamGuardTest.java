@@ -0,0 +1,204 @@
+package com.stockfellow.gateway.unit.resilience;
+
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.resilience.RequestPriorities;
+import com.stockfellow.gateway.resilience.UpstreamGuard;
+import com.stockfellow.gateway.resilience.UpstreamRejectedException;
+import com.stockfellow.gateway.routing.RouteTable;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpstreamGuardTest {
+
+    private static final String USER_SERVICE = "http://user-service:4020";
+    private static final String PROFILE = "/api/users/profile";
+
+    private Route users;
+    private Route register;
+    private Route groups;
+    private MeterRegistry meterRegistry;
+    private UpstreamGuard guard;
+
+    @BeforeEach
+    void setUp() {
+        users = new Route("/api/users/**", true, null,
+                new Route.Proxy(USER_SERVICE, true, null, new Route.Isolation(2, 50, 10000, "{\"users\":[]}")));
+        // Same upstream, no isolation of its own: shares the users bulkhead
+        register = new Route("/api/users/register", false, null, new Route.Proxy(USER_SERVICE, true));
+        groups = new Route("/api/groups/**", true, null, new Route.Proxy("http://group-service:4040", true));
+
+        meterRegistry = new SimpleMeterRegistry();
+        guard = guard(false);
+    }
+
+    private UpstreamGuard guard(boolean adaptiveLimit) {
+        UpstreamGuard guard = new UpstreamGuard(RouteTable.compile(List.of(register, users, groups)),
+                new RequestPriorities(List.of("/api/users/register", "/api/groups/*/join"),
+                        List.of("/api/users/stats", "/api/groups/search")),
+                meterRegistry);
+        ReflectionTestUtils.setField(guard, "enabled", true);
+        ReflectionTestUtils.setField(guard, "defaultMaxConcurrent", 100);
+        ReflectionTestUtils.setField(guard, "defaultFailureRateThreshold", 50);
+        ReflectionTestUtils.setField(guard, "defaultSlowCallMs", 10000L);
+        ReflectionTestUtils.setField(guard, "slowCallRateThreshold", 80);
+        ReflectionTestUtils.setField(guard, "windowSize", 10);
+        ReflectionTestUtils.setField(guard, "minimumCalls", 4);
+        ReflectionTestUtils.setField(guard, "openMs", 60000L);
+        ReflectionTestUtils.setField(guard, "halfOpenCalls", 1);
+        ReflectionTestUtils.setField(guard, "adaptiveLimitEnabled", adaptiveLimit);
+        ReflectionTestUtils.setField(guard, "initialLimit", 10);
+        ReflectionTestUtils.setField(guard, "minLimit", 4);
+        ReflectionTestUtils.setField(guard, "normalShare", 0.9);
+        ReflectionTestUtils.setField(guard, "bulkShare", 0.5);
+        ReflectionTestUtils.setField(guard, "probeIntervalMs", 10000L);
+        ReflectionTestUtils.setField(guard, "overloadRetryAfterSeconds", 2L);
+        guard.init();
+        return guard;
+    }
+
+    @Test
+    void shouldRejectOverTheBulkheadAndFreeSlotsOnClose() {
+        UpstreamGuard.Permit first = guard.acquire(users, PROFILE);
+        UpstreamGuard.Permit second = guard.acquire(register, "/api/users/register");
+
+        UpstreamRejectedException rejected = assertThrows(UpstreamRejectedException.class,
+                () -> guard.acquire(users, PROFILE));
+        assertEquals(UpstreamRejectedException.BULKHEAD_FULL, rejected.getReason());
+        // Other upstreams are unaffected
+        guard.acquire(groups, "/api/groups/user").close();
+
+        first.onResponse(200);
+        first.close();
+        guard.acquire(users, PROFILE).close();
+        second.close();
+
+        assertEquals(1, rejections("bulkhead_full"));
+    }
+
+    @Test
+    void shouldOpenTheBreakerOnUpstreamErrors() {
+        for (int i = 0; i < 4; i++) {
+            try (UpstreamGuard.Permit permit = guard.acquire(users, PROFILE)) {
+                permit.onResponse(i % 2 == 0 ? 503 : 200);
+            }
+        }
+
+        UpstreamRejectedException rejected = assertThrows(UpstreamRejectedException.class,
+                () -> guard.acquire(register, "/api/users/register"));
+        assertEquals(UpstreamRejectedException.CIRCUIT_OPEN, rejected.getReason());
+        assertEquals(60, rejected.getRetryAfterSeconds());
+        assertEquals(1, rejections("circuit_open"));
+        assertEquals(1.0, meterRegistry.get("gateway.circuitbreaker.state")
+                .tag("upstream", USER_SERVICE).tag("state", "open").gauge().value());
+    }
+
+    @Test
+    void shouldCountClientErrorsAsSuccesses() {
+        for (int i = 0; i < 10; i++) {
+            try (UpstreamGuard.Permit permit = guard.acquire(users, PROFILE)) {
+                permit.onResponse(404);
+            }
+        }
+
+        guard.acquire(users, PROFILE).close();
+    }
+
+    @Test
+    void shouldCountCallsWithoutAnOutcomeAsFailed() {
+        for (int i = 0; i < 4; i++) {
+            guard.acquire(users, PROFILE).close();
+        }
+
+        assertThrows(UpstreamRejectedException.class, () -> guard.acquire(users, PROFILE));
+    }
+
+    @Test
+    void shouldNotCountClientAbortsAgainstTheUpstream() {
+        // Four failures would open the breaker
+        for (int i = 0; i < 10; i++) {
+            try (UpstreamGuard.Permit permit = guard.acquire(users, PROFILE)) {
+                permit.onClientAbort();
+            }
+        }
+
+        assertEquals(0, meterRegistry.get("gateway.circuitbreaker.calls")
+                .tag("upstream", USER_SERVICE).tag("outcome", "failure").counter().count());
+    }
+
+    @Test
+    void shouldOnlyHaveFallbacksWhereConfigured() {
+        assertEquals("{\"users\":[]}", guard.fallbackBody(users));
+        assertNull(guard.fallbackBody(groups));
+    }
+
+    @Test
+    void shouldReportStatePerUpstream() {
+        UpstreamGuard.Permit permit = guard.acquire(users, PROFILE);
+
+        Map<String, Map<String, Object>> snapshot = guard.snapshot();
+
+        assertEquals(2, snapshot.size());
+        assertEquals("CLOSED", snapshot.get(USER_SERVICE).get("state"));
+        assertEquals(1, snapshot.get(USER_SERVICE).get("inFlight"));
+        assertEquals(2, snapshot.get(USER_SERVICE).get("maxConcurrent"));
+        permit.close();
+    }
+
+    @Test
+    void shouldShedBulkRequestsFirstAndCriticalOnesLast() {
+        // Groups has the default bulkhead of 100, so only the adaptive limit (initially 10) applies
+        UpstreamGuard adaptive = guard(true);
+        List<UpstreamGuard.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            permits.add(adaptive.acquire(groups, "/api/groups/user"));
+        }
+
+        // Bulk may fill half of the limit, normal 90% and critical all of it
+        UpstreamRejectedException rejected = assertThrows(UpstreamRejectedException.class,
+                () -> adaptive.acquire(groups, "/api/groups/search"));
+        assertEquals(UpstreamRejectedException.OVERLOADED, rejected.getReason());
+        assertEquals(2, rejected.getRetryAfterSeconds());
+
+        for (int i = 0; i < 4; i++) {
+            permits.add(adaptive.acquire(groups, "/api/groups/user"));
+        }
+        assertThrows(UpstreamRejectedException.class, () -> adaptive.acquire(groups, "/api/groups/user"));
+
+        permits.add(adaptive.acquire(groups, "/api/groups/abc/join"));
+        assertThrows(UpstreamRejectedException.class, () -> adaptive.acquire(groups, "/api/groups/abc/join"));
+
+        assertEquals(1, shed("bulk"));
+        assertEquals(1, shed("normal"));
+        assertEquals(1, shed("critical"));
+        for (UpstreamGuard.Permit permit : permits) {
+            permit.onResponse(200);
+            permit.close();
+        }
+        adaptive.acquire(groups, "/api/groups/search").close();
+    }
+
+    private double shed(String priority) {
+        return meterRegistry.get("gateway.concurrency.shed")
+                .tag("upstream", "http://group-service:4040")
+                .tag("priority", priority)
+                .counter()
+                .count();
+    }
+
+    private double rejections(String reason) {
+        return meterRegistry.get("gateway.upstream.rejected")
+                .tag("upstream", USER_SERVICE)
+                .tag("reason", reason)
+                .counter()
+                .count();
+    }
+}
@@ -0,0 +1,114 @@
+package com.stockfellow.gateway.unit.routing;
+
+import com.stockfellow.gateway.config.RouteConfig;
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.routing.RouteMatch;
+import com.stockfellow.gateway.routing.RouteTable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouteTableTest {
+
+    private RouteTable routeTable;
+
+    @BeforeEach
+    void setUp() {
+        RouteConfig routeConfig = new RouteConfig();
+        ReflectionTestUtils.setField(routeConfig, "userServiceUrl", "http://user-service:4020");
+        ReflectionTestUtils.setField(routeConfig, "groupServiceUrl", "http://group-service:4040");
+        ReflectionTestUtils.setField(routeConfig, "transactionServiceUrl", "http://transaction-service:4080");
+        ReflectionTestUtils.setField(routeConfig, "notificationServiceUrl", "http://notification-service:4050");
+        ReflectionTestUtils.setField(routeConfig, "mfaServiceUrl", "http://mfa-service:8087");
+
+        routeTable = routeConfig.routeTable();
+    }
+
+    @Test
+    void shouldPreferExactRouteOverWildcard() {
+        RouteMatch match = routeTable.match("/api/users/register");
+
+        assertEquals("/api/users/register", match.getPattern());
+        assertEquals(50, match.getRateLimit().getMax());
+    }
+
+    @Test
+    void shouldMatchSubtreeRoutes() {
+        assertEquals("/api/users/**", routeTable.match("/api/users/profile").getPattern());
+        assertEquals("/api/users/**", routeTable.match("/api/users").getPattern());
+        assertEquals("/api/users/**", routeTable.match("/api/users/").getPattern());
+        assertEquals("/api/groups/**", routeTable.match("/api/groups/123/members").getPattern());
+    }
+
+    @Test
+    void shouldMatchWholeSegmentsOnly() {
+        assertNull(routeTable.match("/api/usersettings").getRoute());
+        assertNull(routeTable.match("/api/groupsx/1").getRoute());
+    }
+
+    @Test
+    void shouldApplyEnclosingRateLimitToUnroutedPaths() {
+        RouteMatch match = routeTable.match("/api/auth/login");
+
+        assertNull(match.getRoute());
+        assertEquals(100, match.getRateLimit().getMax()); // from the default /api route
+        assertNull(routeTable.match("/actuator/health").getRateLimit());
+    }
+
+    @Test
+    void shouldResolvePublicEndpoints() {
+        assertTrue(routeTable.match("/api/auth/login").isPublic());
+        assertTrue(routeTable.match("/actuator/health/readiness").isPublic());
+        assertFalse(routeTable.match("/api/auth/logout").isPublic());
+        assertFalse(routeTable.match("/api").isPublic());
+        assertFalse(routeTable.match("/actuator/prometheus").isPublic()); // scraped on the management port
+        assertFalse(routeTable.match("/api/groups/1").isPublic());
+        assertTrue(routeTable.match("/api/groups/1").isAuthRequired());
+    }
+
+    @Test
+    void shouldMatchSingleSegmentWildcard() {
+        Route single = new Route("/api/items/*", true, null, new Route.Proxy("http://items", true));
+        Route nested = new Route("/api/items/special/**", true, null, new Route.Proxy("http://special", true));
+        RouteTable table = RouteTable.compile(List.of(single, nested));
+
+        assertSame(single, table.match("/api/items/42").getRoute());
+        assertNull(table.match("/api/items/42/parts").getRoute());
+        assertNull(table.match("/api/items").getRoute());
+        assertSame(nested, table.match("/api/items/special").getRoute());
+    }
+
+    @Test
+    void shouldKeepFirstRouteForDuplicatePatterns() {
+        Route first = new Route("/api/a/**", true, null, new Route.Proxy("http://first", true));
+        Route second = new Route("/api/a/**", true, null, new Route.Proxy("http://second", true));
+
+        assertSame(first, RouteTable.compile(List.of(first, second)).match("/api/a/b").getRoute());
+    }
+
+    @Test
+    void shouldRejectWildcardsInsidePatterns() {
+        Route route = new Route("/api/*/items", true, null, new Route.Proxy("http://items", true));
+
+        assertThrows(IllegalArgumentException.class, () -> RouteTable.compile(List.of(route)));
+    }
+
+    @Test
+    void shouldStoreMatchOnRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/groups/1");
+
+        RouteMatch first = routeTable.match(request);
+
+        assertSame(first, request.getAttribute(RouteMatch.ATTRIBUTE));
+        assertSame(first, routeTable.match(request));
+
+        // A forwarded request is matched again
+        request.setRequestURI("/api/transaction/1");
+        assertEquals("/api/transaction/**", routeTable.match(request).getPattern());
+    }
+}
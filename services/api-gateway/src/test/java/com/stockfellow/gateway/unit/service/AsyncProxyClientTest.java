@@ -0,0 +1,245 @@
+package com.stockfellow.gateway.unit.service;
+
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.service.AsyncProxyClient;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.catalina.connector.ClientAbortException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncProxyClientTest {
+
+    private HttpServer upstream;
+    private final ExecutorService upstreamThreads = Executors.newCachedThreadPool();
+    private AsyncProxyClient client;
+    private String upstreamUrl;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        upstream.setExecutor(upstreamThreads);
+        // Answers with the number of body bytes it received
+        upstream.createContext("/count", exchange -> {
+            long count = 0;
+            byte[] buffer = new byte[8192];
+            try (InputStream in = exchange.getRequestBody()) {
+                for (int n; (n = in.read(buffer)) != -1; ) {
+                    count += n;
+                }
+            }
+            byte[] answer = String.valueOf(count).getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, answer.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(answer);
+            }
+        });
+        upstream.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        upstream.start();
+        upstreamUrl = "http://localhost:" + upstream.getAddress().getPort();
+
+        client = new AsyncProxyClient();
+        ReflectionTestUtils.setField(client, "connectTimeoutMs", 2000L);
+        ReflectionTestUtils.setField(client, "responseTimeoutMs", 30000L);
+        ReflectionTestUtils.setField(client, "ioThreads", 1);
+        ReflectionTestUtils.setField(client, "ioQueueCapacity", 1);
+        client.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.shutdown();
+        upstream.stop(0);
+        upstreamThreads.shutdownNow();
+    }
+
+    @Test
+    void shouldReadRequestBodiesOnlyWhenTheyAreReady() throws Exception {
+        ArrivingBody body = new ArrivingBody(3, 100_000);
+
+        CompletableFuture<HttpResponse<InputStream>> call = client.send(HttpMethod.POST,
+                URI.create(upstreamUrl + "/count"), new HttpHeaders(), body, 300_000, null);
+        body.arrive();
+
+        HttpResponse<InputStream> response = call.get(5, TimeUnit.SECONDS);
+        assertEquals("300000", new String(response.body().readAllBytes(), StandardCharsets.UTF_8));
+        assertFalse(body.readWhileNotReady);
+    }
+
+    @Test
+    void shouldReportBrokenRequestBodiesAsClientAborts() {
+        ArrivingBody body = new ArrivingBody(3, 100_000);
+        body.failAfter = 1;
+
+        CompletableFuture<HttpResponse<InputStream>> call = client.send(HttpMethod.POST,
+                URI.create(upstreamUrl + "/count"), new HttpHeaders(), body, 300_000, null);
+        body.arrive();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> call.get(5, TimeUnit.SECONDS));
+        assertTrue(hasCause(e, ClientAbortException.class), String.valueOf(e.getCause()));
+    }
+
+    @Test
+    void shouldRejectCopiesOnceTheQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Runnable blocked = () -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        try {
+            client.ioExecutor().execute(blocked);
+            client.ioExecutor().execute(blocked);
+            assertThrows(RejectedExecutionException.class, () -> client.ioExecutor().execute(blocked));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void shouldWaitForHeadersOnlyAsLongAsTheRouteReadTimeout() {
+        Route route = new Route("/api/slow/**", true, null,
+                new Route.Proxy(upstreamUrl, true, new Route.ConnectionPool(10, 1000, 200)));
+
+        long start = System.nanoTime();
+        ExecutionException e = assertThrows(ExecutionException.class, () -> client.send(HttpMethod.GET,
+                URI.create(upstreamUrl + "/slow"), new HttpHeaders(), null, -1, route).get(5, TimeUnit.SECONDS));
+
+        assertTrue(e.getCause() instanceof HttpTimeoutException, String.valueOf(e.getCause()));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private static boolean hasCause(Throwable error, Class<? extends Throwable> type) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A client body that arrives in bursts: between them {@link #isReady()} is
+     * false and a read would block, until the "container" calls the listener.
+     */
+    private static final class ArrivingBody extends ServletInputStream {
+
+        private final int bursts;
+        private final int burstBytes;
+        private int burst;
+        private int remainingInBurst;
+        private volatile boolean ready;
+        private volatile boolean readWhileNotReady;
+        private volatile ReadListener listener;
+        // Bursts after which the client's connection breaks, or -1
+        private volatile int failAfter = -1;
+
+        ArrivingBody(int bursts, int burstBytes) {
+            this.bursts = bursts;
+            this.burstBytes = burstBytes;
+        }
+
+        // Delivers the bursts from a container-like thread, each once the last is drained
+        void arrive() {
+            Thread container = new Thread(() -> {
+                try {
+                    while (listener == null) {
+                        Thread.sleep(5);
+                    }
+                    for (int i = 0; i < bursts; i++) {
+                        while (ready) {
+                            Thread.sleep(5);
+                        }
+                        if (i == failAfter) {
+                            listener.onError(new IOException("Connection reset by peer"));
+                            return;
+                        }
+                        Thread.sleep(20);
+                        synchronized (this) {
+                            burst++;
+                            remainingInBurst = burstBytes;
+                            ready = true;
+                        }
+                        listener.onDataAvailable();
+                    }
+                    while (ready) {
+                        Thread.sleep(5);
+                    }
+                    listener.onAllDataRead();
+                } catch (Exception e) {
+                    listener.onError(e);
+                }
+            });
+            container.setDaemon(true);
+            container.start();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return burst == bursts && remainingInBurst == 0;
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            this.listener = readListener;
+        }
+
+        @Override
+        public int read() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public synchronized int read(byte[] buffer, int offset, int length) {
+            if (!ready) {
+                readWhileNotReady = true;
+                return 0;
+            }
+            int n = Math.min(length, remainingInBurst);
+            remainingInBurst -= n;
+            if (remainingInBurst == 0) {
+                ready = false;
+            }
+            return n;
+        }
+    }
+}
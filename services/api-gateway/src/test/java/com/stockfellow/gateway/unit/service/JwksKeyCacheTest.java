@@ -0,0 +1,94 @@
+package com.stockfellow.gateway.unit.service;
+
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.stockfellow.gateway.service.JwksKeyCache;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwksKeyCacheTest {
+
+    private HttpServer keycloak;
+    private final ExecutorService keycloakThreads = Executors.newCachedThreadPool();
+    private JwksKeyCache jwksKeyCache;
+    private final AtomicInteger fetches = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        RSAKey signingKey = new RSAKeyGenerator(2048).keyID("kid-1").generate();
+        byte[] jwks = new JWKSet(signingKey.toPublicJWK()).toString().getBytes(StandardCharsets.UTF_8);
+
+        // A Keycloak that holds every JWKS request until the test releases it
+        keycloak = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        keycloak.setExecutor(keycloakThreads);
+        keycloak.createContext("/realms/test/protocol/openid-connect/certs", exchange -> {
+            fetches.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, jwks.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(jwks);
+            }
+        });
+        keycloak.start();
+
+        jwksKeyCache = new JwksKeyCache(2000, 3000);
+        ReflectionTestUtils.setField(jwksKeyCache, "keycloakServerUrl",
+                "http://localhost:" + keycloak.getAddress().getPort());
+        ReflectionTestUtils.setField(jwksKeyCache, "realm", "test");
+        ReflectionTestUtils.setField(jwksKeyCache, "jwksUri", "");
+        ReflectionTestUtils.setField(jwksKeyCache, "unknownKeyWaitMs", 100L);
+        ReflectionTestUtils.setField(jwksKeyCache, "minRefetchIntervalMs", 10000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        keycloak.stop(0);
+        keycloakThreads.shutdownNow();
+    }
+
+    @Test
+    void shouldNotHoldRequestsBehindASlowFetch() throws Exception {
+        List<CompletableFuture<Object>> requests = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < 8; i++) {
+            requests.add(CompletableFuture.supplyAsync(() -> jwksKeyCache.getVerifier("kid-1")));
+        }
+        for (CompletableFuture<Object> request : requests) {
+            assertNull(request.get(2, TimeUnit.SECONDS));
+        }
+
+        // Each request gave up after its own bounded wait, and they shared one fetch
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertTrue(fetches.get() <= 1);
+
+        release.countDown();
+        assertTrue(jwksKeyCache.refresh());
+        assertNotNull(jwksKeyCache.getVerifier("kid-1"));
+        assertEquals(1, fetches.get());
+    }
+}
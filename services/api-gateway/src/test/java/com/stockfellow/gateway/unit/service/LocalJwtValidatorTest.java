@@ -0,0 +1,159 @@
+package com.stockfellow.gateway.unit.service;
+
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.stockfellow.gateway.model.TokenInfo;
+import com.stockfellow.gateway.service.JwksKeyCache;
+import com.stockfellow.gateway.service.LocalJwtValidator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class LocalJwtValidatorTest {
+
+    private static final String ISSUER = "http://keycloak:8080/realms/stockfellow";
+
+    @Mock
+    private JwksKeyCache jwksKeyCache;
+
+    private LocalJwtValidator validator;
+    private RSAKey signingKey;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+
+        signingKey = new RSAKeyGenerator(2048).keyID("kid-1").generate();
+        when(jwksKeyCache.getVerifier("kid-1")).thenReturn(new RSASSAVerifier(signingKey.toPublicJWK()));
+
+        validator = new LocalJwtValidator(jwksKeyCache);
+        ReflectionTestUtils.setField(validator, "keycloakServerUrl", "http://keycloak:8080/");
+        ReflectionTestUtils.setField(validator, "realm", "stockfellow");
+        ReflectionTestUtils.setField(validator, "issuer", "");
+        ReflectionTestUtils.setField(validator, "audience", "");
+        ReflectionTestUtils.setField(validator, "clockSkewSeconds", 30L);
+        validator.init();
+    }
+
+    @Test
+    void shouldAcceptValidToken() throws Exception {
+        String token = sign(claims(ISSUER, 300).build(), "kid-1", signingKey);
+
+        TokenInfo tokenInfo = validator.validate(token);
+
+        assertNotNull(tokenInfo);
+        assertTrue(tokenInfo.isValid());
+        assertEquals("user-123", tokenInfo.getUserId());
+        assertEquals("thabo", tokenInfo.getUsername());
+        assertTrue(tokenInfo.getRoles().contains("user"));
+        assertTrue(tokenInfo.getExpiresIn() > 0);
+    }
+
+    @Test
+    void shouldReportExpiredToken() throws Exception {
+        String token = sign(claims(ISSUER, -120).build(), "kid-1", signingKey);
+
+        TokenInfo tokenInfo = validator.validate(token);
+
+        assertFalse(tokenInfo.isValid());
+        assertTrue(tokenInfo.isExpired());
+    }
+
+    @Test
+    void shouldRejectForeignIssuer() throws Exception {
+        String token = sign(claims("http://evil/realms/stockfellow", 300).build(), "kid-1", signingKey);
+
+        TokenInfo tokenInfo = validator.validate(token);
+
+        assertFalse(tokenInfo.isValid());
+        assertFalse(tokenInfo.isExpired());
+    }
+
+    @Test
+    void shouldRejectTokenSignedWithAnotherKey() throws Exception {
+        RSAKey otherKey = new RSAKeyGenerator(2048).keyID("kid-1").generate();
+        String token = sign(claims(ISSUER, 300).build(), "kid-1", otherKey);
+
+        assertFalse(validator.validate(token).isValid());
+    }
+
+    @Test
+    void shouldDeferUnknownKeyId() throws Exception {
+        String token = sign(claims(ISSUER, 300).build(), "kid-unknown", signingKey);
+
+        // May be a key Keycloak rotated to after the last JWKS fetch; not a verdict to cache
+        assertNull(validator.validate(token));
+        verify(jwksKeyCache).getVerifier("kid-unknown");
+    }
+
+    @Test
+    void shouldRejectIdTokens() throws Exception {
+        String token = sign(claims(ISSUER, 300).claim("typ", "ID").build(), "kid-1", signingKey);
+
+        assertFalse(validator.validate(token).isValid());
+    }
+
+    @Test
+    void shouldEnforceAudienceWhenConfigured() throws Exception {
+        ReflectionTestUtils.setField(validator, "audience", "api-gateway-client");
+        validator.init();
+
+        String wrongAudience = sign(claims(ISSUER, 300).audience("account").build(), "kid-1", signingKey);
+        String rightAudience = sign(claims(ISSUER, 300).audience(List.of("account", "api-gateway-client")).build(),
+                "kid-1", signingKey);
+
+        assertFalse(validator.validate(wrongAudience).isValid());
+        assertTrue(validator.validate(rightAudience).isValid());
+    }
+
+    @Test
+    void shouldDeferOpaqueTokens() {
+        // Not a JWT - caller decides whether to fall back to introspection
+        assertNull(validator.validate("opaque-reference-token"));
+    }
+
+    @Test
+    void shouldDeferWhenNoKeysAreLoaded() throws Exception {
+        when(jwksKeyCache.getVerifier("kid-1")).thenReturn(null);
+
+        String token = sign(claims(ISSUER, 300).build(), "kid-1", signingKey);
+
+        assertNull(validator.validate(token));
+    }
+
+    private JWTClaimsSet.Builder claims(String issuer, long expiresInSeconds) {
+        long now = System.currentTimeMillis();
+        return new JWTClaimsSet.Builder()
+                .issuer(issuer)
+                .subject("user-123")
+                .claim("preferred_username", "thabo")
+                .claim("typ", "Bearer")
+                .claim("realm_access", Map.of("roles", List.of("user")))
+                .issueTime(new Date(now))
+                .expirationTime(new Date(now + expiresInSeconds * 1000));
+    }
+
+    private String sign(JWTClaimsSet claims, String keyId, RSAKey key) throws Exception {
+        SignedJWT jwt = new SignedJWT(
+                new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(keyId).type(JOSEObjectType.JWT).build(),
+                claims);
+        jwt.sign(new RSASSASigner(key));
+        return jwt.serialize();
+    }
+}
@@ -0,0 +1,164 @@
+package com.stockfellow.gateway.unit.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stockfellow.gateway.model.RefreshTokenResponse;
+import com.stockfellow.gateway.service.KeycloakService;
+import com.stockfellow.gateway.service.TokenRefreshCoalescer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TokenRefreshCoalescerTest {
+
+    private static final String REFRESH_TOKEN = "refresh-token";
+    private static final String RESULT_KEY = "token_refresh:" + DigestUtils.sha256Hex(REFRESH_TOKEN);
+    private static final String LOCK_KEY = "token_refresh_lock:" + DigestUtils.sha256Hex(REFRESH_TOKEN);
+
+    @Mock
+    private KeycloakService keycloakService;
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private MeterRegistry meterRegistry;
+    private TokenRefreshCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+
+        meterRegistry = new SimpleMeterRegistry();
+        coalescer = new TokenRefreshCoalescer(keycloakService, redisTemplate, objectMapper, meterRegistry);
+        ReflectionTestUtils.setField(coalescer, "enabled", true);
+        ReflectionTestUtils.setField(coalescer, "resultTtlMs", 10000L);
+        ReflectionTestUtils.setField(coalescer, "lockTtlMs", 5000L);
+        ReflectionTestUtils.setField(coalescer, "maxWaitMs", 200L);
+        ReflectionTestUtils.setField(coalescer, "pollIntervalMs", 10L);
+        coalescer.init();
+    }
+
+    @Test
+    void shouldCallKeycloakAndShareTheResultWhenItTakesTheLock() throws Exception {
+        when(valueOperations.setIfAbsent(eq(LOCK_KEY), anyString(), any(Duration.class))).thenReturn(true);
+        when(keycloakService.refreshToken(REFRESH_TOKEN)).thenReturn(tokens("access-2"));
+
+        RefreshTokenResponse response = coalescer.refresh(REFRESH_TOKEN);
+
+        assertEquals("access-2", response.getAccessToken());
+        verify(valueOperations).set(eq(RESULT_KEY), eq(objectMapper.writeValueAsString(tokens("access-2"))),
+                eq(Duration.ofMillis(10000)));
+        assertEquals(1.0, count("keycloak"));
+    }
+
+    @Test
+    void shouldReturnTheSharedResultWithoutCallingKeycloak() throws Exception {
+        when(valueOperations.get(RESULT_KEY)).thenReturn(objectMapper.writeValueAsString(tokens("access-2")));
+
+        RefreshTokenResponse response = coalescer.refresh(REFRESH_TOKEN);
+
+        assertEquals("access-2", response.getAccessToken());
+        assertEquals("refresh-2", response.getRefreshToken());
+        verify(keycloakService, never()).refreshToken(anyString());
+        assertEquals(1.0, count("shared"));
+    }
+
+    @Test
+    void shouldWaitForAnotherInstancesRefresh() throws Exception {
+        when(valueOperations.setIfAbsent(eq(LOCK_KEY), anyString(), any(Duration.class))).thenReturn(false);
+        when(valueOperations.get(RESULT_KEY))
+                .thenReturn(null, null, objectMapper.writeValueAsString(tokens("access-2")));
+
+        assertEquals("access-2", coalescer.refresh(REFRESH_TOKEN).getAccessToken());
+        verify(keycloakService, never()).refreshToken(anyString());
+    }
+
+    @Test
+    void shouldCallKeycloakItselfWhenTheOtherInstanceTakesTooLong() {
+        when(valueOperations.setIfAbsent(eq(LOCK_KEY), anyString(), any(Duration.class))).thenReturn(false);
+        when(keycloakService.refreshToken(REFRESH_TOKEN)).thenReturn(tokens("access-2"));
+
+        assertEquals("access-2", coalescer.refresh(REFRESH_TOKEN).getAccessToken());
+        assertEquals(1.0, count("timeout"));
+    }
+
+    @Test
+    void shouldNotShareFailuresAndReleaseTheLock() {
+        when(valueOperations.setIfAbsent(eq(LOCK_KEY), anyString(), any(Duration.class))).thenReturn(true);
+        when(keycloakService.refreshToken(REFRESH_TOKEN)).thenReturn(RefreshTokenResponse.failure("invalid_grant"));
+
+        assertFalse(coalescer.refresh(REFRESH_TOKEN).isSuccess());
+        verify(valueOperations, never()).set(anyString(), anyString(), any(Duration.class));
+        verify(redisTemplate).delete(LOCK_KEY);
+    }
+
+    @Test
+    void shouldCallKeycloakOncePerInstanceForConcurrentRefreshes() throws Exception {
+        CountDownLatch keycloakCalled = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(valueOperations.setIfAbsent(eq(LOCK_KEY), anyString(), any(Duration.class))).thenReturn(true);
+        when(keycloakService.refreshToken(REFRESH_TOKEN)).thenAnswer(invocation -> {
+            keycloakCalled.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return tokens("access-2");
+        });
+
+        CompletableFuture<RefreshTokenResponse> first =
+                CompletableFuture.supplyAsync(() -> coalescer.refresh(REFRESH_TOKEN));
+        assertTrue(keycloakCalled.await(5, TimeUnit.SECONDS));
+        CompletableFuture<RefreshTokenResponse> second =
+                CompletableFuture.supplyAsync(() -> coalescer.refresh(REFRESH_TOKEN));
+        while (count("local") < 1) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        assertEquals("access-2", first.get(5, TimeUnit.SECONDS).getAccessToken());
+        assertEquals("access-2", second.get(5, TimeUnit.SECONDS).getAccessToken());
+        verify(keycloakService, times(1)).refreshToken(REFRESH_TOKEN);
+    }
+
+    @Test
+    void shouldFallBackToKeycloakWhenRedisIsDown() {
+        when(valueOperations.get(RESULT_KEY)).thenThrow(new RedisConnectionFailureException("down"));
+        when(keycloakService.refreshToken(REFRESH_TOKEN)).thenReturn(tokens("access-2"));
+
+        assertEquals("access-2", coalescer.refresh(REFRESH_TOKEN).getAccessToken());
+        assertEquals(1.0, count("redis_error"));
+    }
+
+    private static RefreshTokenResponse tokens(String accessToken) {
+        return RefreshTokenResponse.builder()
+                .success(true)
+                .accessToken(accessToken)
+                .refreshToken("refresh-2")
+                .expiresIn(300)
+                .tokenType("Bearer")
+                .build();
+    }
+
+    private double count(String outcome) {
+        return meterRegistry.get("gateway.token.refresh").tag("outcome", outcome).counter().count();
+    }
+}
@@ -0,0 +1,112 @@
+package com.stockfellow.gateway.unit.service;
+
+import com.stockfellow.gateway.service.TokenRevocationService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TokenRevocationServiceTest {
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private RedisMessageListenerContainer listenerContainer;
+
+    private TokenRevocationService revocationService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(Map.of("seeded-hash", Long.MAX_VALUE));
+
+        revocationService = new TokenRevocationService(redisTemplate, listenerContainer, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(revocationService, "localEnabled", true);
+        revocationService.init();
+    }
+
+    @Test
+    void shouldSeedFromRedisAndAnswerLocally() {
+        assertTrue(revocationService.isRevoked("seeded-hash"));
+        assertFalse(revocationService.isRevoked("other-hash"));
+
+        verify(listenerContainer).addMessageListener(eq(revocationService), any(Topic.class));
+        verify(redisTemplate, never()).hasKey(anyString());
+    }
+
+    @Test
+    void shouldApplyRevocationsPublishedByOtherInstances() {
+        long expiresAt = System.currentTimeMillis() + 60_000;
+        revocationService.onMessage(message("remote-hash:" + expiresAt), null);
+
+        assertTrue(revocationService.isRevoked("remote-hash"));
+    }
+
+    @Test
+    void shouldIgnoreMalformedMessages() {
+        revocationService.onMessage(message("no-expiry"), null);
+        revocationService.onMessage(message("hash:not-a-number"), null);
+
+        assertEquals(1, revocationService.size());
+    }
+
+    @Test
+    void shouldForgetRevocationsOnceTheTokenHasExpired() {
+        revocationService.onMessage(message("old-hash:" + (System.currentTimeMillis() - 1000)), null);
+
+        assertFalse(revocationService.isRevoked("old-hash"));
+        revocationService.reconcile();
+        assertEquals(1, revocationService.size());
+    }
+
+    @Test
+    void shouldStoreAndPublishRevocation() {
+        revocationService.revoke("opaque-token", "local-hash");
+
+        assertTrue(revocationService.isRevoked("local-hash"));
+        verify(valueOperations).set(eq("blacklisted_token:local-hash"), eq("true"), any(Duration.class));
+        verify(redisTemplate).convertAndSend(eq("token_revocations"), startsWith("local-hash:"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldCheckRedisUntilTheFirstSeedSucceeds() {
+        when(redisTemplate.execute(any(RedisCallback.class))).thenThrow(new RuntimeException("Redis down"));
+        when(redisTemplate.hasKey("blacklisted_token:some-hash")).thenReturn(true);
+
+        TokenRevocationService unsynced = new TokenRevocationService(redisTemplate, listenerContainer,
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(unsynced, "localEnabled", true);
+        unsynced.init();
+
+        assertTrue(unsynced.isRevoked("some-hash"));
+        verify(redisTemplate).hasKey("blacklisted_token:some-hash");
+    }
+
+    private DefaultMessage message(String body) {
+        return new DefaultMessage("token_revocations".getBytes(StandardCharsets.UTF_8),
+                body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,191 @@
+package com.stockfellow.gateway.unit.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stockfellow.gateway.config.RouteConfig;
+import com.stockfellow.gateway.model.TokenInfo;
+import com.stockfellow.gateway.model.TokenValidationResult;
+import com.stockfellow.gateway.routing.RouteTable;
+import com.stockfellow.gateway.service.KeycloakService;
+import com.stockfellow.gateway.service.LocalJwtValidator;
+import com.stockfellow.gateway.service.TokenCache;
+import com.stockfellow.gateway.service.TokenRevocationService;
+import com.stockfellow.gateway.service.TokenValidationService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TokenValidationServiceTest {
+
+    private static final String PATH = "/api/groups/user";
+    private static final String AUTH_HEADER = "Bearer header.payload.signature";
+
+    @Mock
+    private KeycloakService keycloakService;
+
+    @Mock
+    private LocalJwtValidator localJwtValidator;
+
+    @Mock
+    private TokenRevocationService tokenRevocationService;
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    private TokenValidationService tokenValidationService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get(anyString())).thenReturn(null);
+        when(tokenRevocationService.isRevoked(anyString())).thenReturn(false);
+
+        TokenCache tokenCache = new TokenCache(redisTemplate, new ObjectMapper(), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(tokenCache, "l1MaxEntries", 100);
+        ReflectionTestUtils.setField(tokenCache, "maxTtlSeconds", 300L);
+        ReflectionTestUtils.setField(tokenCache, "negativeTtlSeconds", 30L);
+        tokenCache.init();
+
+        tokenValidationService = new TokenValidationService(keycloakService, localJwtValidator, tokenCache,
+                tokenRevocationService, RouteTable.compile(List.of(), RouteConfig.PUBLIC_ENDPOINTS));
+        ReflectionTestUtils.setField(tokenValidationService, "validationMode", "local");
+        ReflectionTestUtils.setField(tokenValidationService, "introspectionFallback", true);
+    }
+
+    @Test
+    void shouldServeRepeatedValidationFromLocalCache() {
+        when(localJwtValidator.validate(anyString())).thenReturn(validToken());
+
+        TokenValidationResult first = tokenValidationService.validateRequest(PATH, AUTH_HEADER);
+        TokenValidationResult second = tokenValidationService.validateRequest(PATH, AUTH_HEADER);
+
+        assertTrue(first.isSuccess());
+        assertTrue(second.isSuccess());
+        assertEquals("user-123", second.getTokenInfo().getUserId());
+
+        // Verified once, one Redis read on the miss, nothing remote on the hit
+        verify(localJwtValidator, times(1)).validate(anyString());
+        verify(valueOperations, times(1)).get(anyString());
+        verify(tokenRevocationService, times(2)).isRevoked(anyString());
+        verifyNoInteractions(keycloakService);
+    }
+
+    @Test
+    void shouldNegativeCacheInvalidTokens() {
+        when(localJwtValidator.validate(anyString())).thenReturn(null);
+        when(keycloakService.validateToken(anyString())).thenReturn(TokenInfo.invalid());
+
+        TokenValidationResult first = tokenValidationService.validateRequest(PATH, AUTH_HEADER);
+        TokenValidationResult second = tokenValidationService.validateRequest(PATH, AUTH_HEADER);
+
+        assertFalse(first.isSuccess());
+        assertFalse(second.isSuccess());
+
+        // The retry is answered from L1 without reaching Keycloak or Redis
+        verify(keycloakService, times(1)).validateToken(anyString());
+        verify(valueOperations, times(1)).get(anyString());
+        verify(tokenRevocationService, times(1)).isRevoked(anyString());
+    }
+
+    @Test
+    void shouldNotCacheWhenKeycloakIsUnavailable() {
+        when(localJwtValidator.validate(anyString())).thenReturn(null);
+        when(keycloakService.validateToken(anyString()))
+                .thenThrow(new ResourceAccessException("Connection refused"))
+                .thenReturn(validToken());
+
+        TokenValidationResult during = tokenValidationService.validateRequest(PATH, AUTH_HEADER);
+        TokenValidationResult after = tokenValidationService.validateRequest(PATH, AUTH_HEADER);
+
+        assertFalse(during.isSuccess());
+        assertTrue(after.isSuccess());
+        // Only the definitive answer was shared with the other instances
+        verify(keycloakService, times(2)).validateToken(anyString());
+        verify(valueOperations, times(1)).set(anyString(), anyString(), any(Duration.class));
+    }
+
+    @Test
+    void shouldNotCacheTokensThatCannotBeJudgedWithoutFallback() {
+        ReflectionTestUtils.setField(tokenValidationService, "introspectionFallback", false);
+        when(localJwtValidator.validate(anyString())).thenReturn(null, validToken());
+
+        TokenValidationResult unknownKey = tokenValidationService.validateRequest(PATH, AUTH_HEADER);
+        TokenValidationResult afterRefresh = tokenValidationService.validateRequest(PATH, AUTH_HEADER);
+
+        assertFalse(unknownKey.isSuccess());
+        assertTrue(afterRefresh.isSuccess());
+        verify(localJwtValidator, times(2)).validate(anyString());
+        verifyNoInteractions(keycloakService);
+    }
+
+    @Test
+    void shouldUseSharedCacheBeforeValidating() throws Exception {
+        String cached = new ObjectMapper().writeValueAsString(validToken());
+        when(valueOperations.get(anyString())).thenReturn(cached);
+
+        TokenValidationResult result = tokenValidationService.validateRequest(PATH, AUTH_HEADER);
+
+        assertTrue(result.isSuccess());
+        verifyNoInteractions(localJwtValidator, keycloakService);
+    }
+
+    @Test
+    void shouldRejectRevokedToken() {
+        when(tokenRevocationService.isRevoked(anyString())).thenReturn(true);
+
+        TokenValidationResult result = tokenValidationService.validateRequest(PATH, AUTH_HEADER);
+
+        assertFalse(result.isSuccess());
+        assertEquals("Token has been revoked", result.getMessage());
+        verifyNoInteractions(localJwtValidator, keycloakService);
+    }
+
+    @Test
+    void shouldReportExpiredTokens() {
+        when(localJwtValidator.validate(anyString())).thenReturn(TokenInfo.expired());
+
+        TokenValidationResult result = tokenValidationService.validateRequest(PATH, AUTH_HEADER);
+
+        assertFalse(result.isSuccess());
+        assertTrue(result.isExpired());
+    }
+
+    @Test
+    void shouldSkipValidationForPublicEndpoints() {
+        assertTrue(tokenValidationService.validateRequest("/api/auth/login", null).isSuccess());
+        assertTrue(tokenValidationService.validateRequest("/actuator/health/liveness", null).isSuccess());
+
+        // Prefixes of public endpoints are not public themselves
+        assertFalse(tokenValidationService.validateRequest("/api/auth", null).isSuccess());
+        assertFalse(tokenValidationService.validateRequest("/api/h", null).isSuccess());
+        verifyNoInteractions(localJwtValidator, keycloakService);
+    }
+
+    private TokenInfo validToken() {
+        return TokenInfo.builder()
+                .valid(true)
+                .expired(false)
+                .userId("user-123")
+                .username("thabo")
+                .roles(Set.of("user"))
+                .expiresIn(300)
+                .build();
+    }
+}
@@ -0,0 +1,149 @@
+package com.stockfellow.gateway.unit.service;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.stockfellow.gateway.config.ProxyClientConfig;
+import com.stockfellow.gateway.model.Route;
+import com.stockfellow.gateway.routing.RouteTable;
+import com.stockfellow.gateway.service.UserServiceClient;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserServiceClientTest {
+
+    private HttpServer userService;
+    private CloseableHttpClient httpClient;
+    private UserServiceClient userServiceClient;
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicReference<String> receivedUserId = new AtomicReference<>();
+    private final Logger wireLogger = (Logger) LoggerFactory.getLogger("org.apache.http");
+    private Level wireLevel;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // Wire logging writes (and allocates for) every chunk of the body
+        wireLevel = wireLogger.getLevel();
+        wireLogger.setLevel(Level.INFO);
+
+        userService = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        userService.createContext("/api/users/verifyID", exchange -> {
+            receivedUserId.set(exchange.getRequestHeaders().getFirst("X-User-Id"));
+            long count = 0;
+            byte[] buffer = new byte[8192];
+            try (InputStream in = exchange.getRequestBody()) {
+                for (int n; (n = in.read(buffer)) != -1; ) {
+                    count += n;
+                }
+            }
+            received.set(count);
+            byte[] answer = "{\"status\":\"verified\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, answer.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(answer);
+            }
+        });
+        userService.start();
+        String userServiceUrl = "http://localhost:" + userService.getAddress().getPort();
+
+        ProxyClientConfig proxyClientConfig = new ProxyClientConfig();
+        ReflectionTestUtils.setField(proxyClientConfig, "maxTotal", 200);
+        ReflectionTestUtils.setField(proxyClientConfig, "defaultMaxPerUpstream", 50);
+        ReflectionTestUtils.setField(proxyClientConfig, "defaultConnectTimeoutMs", 2000);
+        ReflectionTestUtils.setField(proxyClientConfig, "defaultReadTimeoutMs", 30000);
+        ReflectionTestUtils.setField(proxyClientConfig, "leaseTimeoutMs", 1000);
+        ReflectionTestUtils.setField(proxyClientConfig, "idleTimeoutMs", 30000L);
+        ReflectionTestUtils.setField(proxyClientConfig, "validateAfterInactivityMs", 2000);
+        RouteTable routeTable = RouteTable.compile(List.of(new Route("/api/users/**", true, null,
+                new Route.Proxy(userServiceUrl, true))));
+        httpClient = proxyClientConfig.proxyHttpClient(routeTable, new SimpleMeterRegistry());
+
+        userServiceClient = new UserServiceClient(new RestTemplate(),
+                proxyClientConfig.proxyRestTemplate(httpClient, routeTable));
+        ReflectionTestUtils.setField(userServiceClient, "userServiceUrl", userServiceUrl);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        httpClient.close();
+        userService.stop(0);
+        wireLogger.setLevel(wireLevel);
+    }
+
+    @Test
+    void shouldStreamVerifyIdUploadsWithoutBufferingThem() throws Exception {
+        // Warm up the client and its connection before measuring
+        upload(1 << 20);
+
+        long smallUpload = upload(1 << 20);
+        long largeUpload = upload(64 << 20);
+
+        // A buffered upload would allocate at least the whole 64 MB body on this thread
+        assertTrue(largeUpload - smallUpload < 4 << 20,
+                "1 MB upload allocated " + smallUpload + " bytes, 64 MB upload " + largeUpload);
+        assertEquals(64L << 20, received.get());
+        assertEquals("user-123", receivedUserId.get());
+    }
+
+    // Bytes allocated by this thread while forwarding an upload of the given size
+    private long upload(int size) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        Map<String, Object> result = userServiceClient.verifyUserID(document(size),
+                "multipart/form-data; boundary=upload", size, "user-123", "Bearer token");
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(Map.of("status", "verified"), result);
+        assertEquals(size, received.get());
+        return allocated;
+    }
+
+    // An upload body produced as it is read, so the test itself holds none of it
+    private static InputStream document(long size) {
+        return new InputStream() {
+            private long remaining = size;
+
+            @Override
+            public int read() {
+                if (remaining == 0) {
+                    return -1;
+                }
+                remaining--;
+                return 'x';
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) {
+                if (remaining == 0) {
+                    return -1;
+                }
+                int n = (int) Math.min(length, remaining);
+                Arrays.fill(buffer, offset, offset + n, (byte) 'x');
+                remaining -= n;
+                return n;
+            }
+        };
+    }
+}
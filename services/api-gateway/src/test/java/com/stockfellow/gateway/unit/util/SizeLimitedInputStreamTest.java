@@ -0,0 +1,57 @@
+package com.stockfellow.gateway.unit.util;
+
+import com.stockfellow.gateway.util.SizeLimitedInputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SizeLimitedInputStreamTest {
+
+    @Test
+    void shouldPassThroughBodiesUpToTheLimit() throws Exception {
+        byte[] body = new byte[10_000];
+        SizeLimitedInputStream in = new SizeLimitedInputStream(new ByteArrayInputStream(body), body.length);
+
+        assertArrayEquals(body, in.readAllBytes());
+        assertEquals(body.length, in.getCount());
+    }
+
+    @Test
+    void shouldFailOnTheReadThatCrossesTheLimit() throws Exception {
+        SizeLimitedInputStream in = new SizeLimitedInputStream(new ByteArrayInputStream(new byte[10_000]), 4096);
+        byte[] buffer = new byte[4096];
+
+        assertEquals(4096, in.read(buffer));
+        SizeLimitedInputStream.LimitExceededException error =
+                assertThrows(SizeLimitedInputStream.LimitExceededException.class, () -> in.read(buffer));
+        assertEquals(4096, error.getMaxBytes());
+    }
+
+    @Test
+    void shouldCountSingleByteReadsAndSkips() throws Exception {
+        SizeLimitedInputStream in = new SizeLimitedInputStream(new ByteArrayInputStream(new byte[100]), 10);
+
+        in.skip(9);
+        assertEquals(0, in.read());
+        assertThrows(SizeLimitedInputStream.LimitExceededException.class, in::read);
+    }
+
+    @Test
+    void shouldStopCopyingPartWayThroughALargeStream() {
+        InputStream endless = new InputStream() {
+            @Override
+            public int read() {
+                return 'a';
+            }
+        };
+        ByteArrayOutputStream copied = new ByteArrayOutputStream();
+
+        assertThrows(SizeLimitedInputStream.LimitExceededException.class,
+                () -> new SizeLimitedInputStream(endless, 1 << 20).transferTo(copied));
+        assertTrue(copied.size() <= 1 << 20);
+    }
+}
@@ -0,0 +1,117 @@
+package com.stockfellow.groupservice.config;
+
+import com.stockfellow.groupservice.model.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Backfills aggregateId and sequence on events written before they existed.
+ *
+ * Each group's unsequenced events are numbered after its current last
+ * sequence, in timestamp order (ties broken by _id, which follows insert
+ * order). Events without data.groupId belong to no group and are left alone.
+ *
+ * A one-off job, not part of a normal start: the service started with the
+ * backfill-sequences profile runs it without serving requests, then exits
+ * (non-zero if a group could not be backfilled). Run it once all instances
+ * on the old code are stopped and before the new code starts. An event an
+ * old instance writes later would be numbered after events appended since,
+ * out of order. The job only touches unsequenced events, so it is safe to
+ * run again after a failure.
+ *
+ * The unique (aggregateId, sequence) index still guards each batch: a
+ * conflicting write stops it, and the group is retried from its new head.
+ */
+@Component
+@Profile("backfill-sequences")
+class EventSequenceMigration implements ApplicationRunner {
+    private static final Logger logger = LoggerFactory.getLogger(EventSequenceMigration.class);
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final MongoTemplate mongoTemplate;
+    private final ApplicationContext context;
+
+    EventSequenceMigration(MongoTemplate mongoTemplate, ApplicationContext context) {
+        this.mongoTemplate = mongoTemplate;
+        this.context = context;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        migrate();
+        System.exit(SpringApplication.exit(context));
+    }
+
+    void migrate() {
+        Query unsequenced = new Query(Criteria.where("sequence").exists(false).and("data.groupId").exists(true));
+        List<String> groupIds = mongoTemplate.findDistinct(unsequenced, "data.groupId", Event.class, String.class);
+        if (groupIds.isEmpty()) {
+            return;
+        }
+
+        logger.info("Backfilling event sequences for {} groups", groupIds.size());
+        int migrated = 0;
+        for (String groupId : groupIds) {
+            migrated += migrateGroup(groupId);
+        }
+        logger.info("Backfilled sequences on {} events", migrated);
+    }
+
+    private int migrateGroup(String groupId) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return migrateBatch(groupId);
+            } catch (DataAccessException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    // Reads now go by aggregateId, so a group left half-migrated would lose its history
+                    throw new IllegalStateException("Could not backfill event sequences for group " + groupId, e);
+                }
+                logger.warn("Sequence conflict backfilling group {}, retrying: {}", groupId, e.getMessage());
+            }
+        }
+    }
+
+    private int migrateBatch(String groupId) {
+        Query query = new Query(Criteria.where("data.groupId").is(groupId).and("sequence").exists(false))
+                .with(Sort.by(Sort.Order.asc("timestamp"), Sort.Order.asc("_id")));
+        query.fields().include("_id");
+        List<Event> events = mongoTemplate.find(query, Event.class);
+        if (events.isEmpty()) {
+            return 0;
+        }
+
+        long sequence = lastSequence(groupId);
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, Event.class);
+        for (Event event : events) {
+            bulk.updateOne(
+                    new Query(Criteria.where("_id").is(event.getId()).and("sequence").exists(false)),
+                    new Update().set("aggregateId", groupId).set("sequence", ++sequence));
+        }
+        bulk.execute();
+        return events.size();
+    }
+
+    private long lastSequence(String groupId) {
+        Query query = new Query(Criteria.where("aggregateId").is(groupId).and("sequence").exists(true))
+                .with(Sort.by(Sort.Direction.DESC, "sequence"))
+                .limit(1);
+        Event last = mongoTemplate.findOne(query, Event.class);
+        return last == null ? 0 : last.getSequence();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,44 @@
+package com.stockfellow.groupservice.config;
+
+import org.apache.catalina.connector.Connector;
+import org.apache.coyote.UpgradeProtocol;
+import org.apache.coyote.http2.Http2Protocol;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Limits for the HTTP/2 that server.http2.enabled turns on. Without TLS, Tomcat
+ * accepts it as cleartext h2c, which is how the API gateway multiplexes its
+ * requests over one connection; HTTP/1.1 clients are unaffected.
+ */
+@Configuration
+@ConditionalOnProperty(name = "server.http2.enabled", havingValue = "true")
+public class Http2Config {
+
+    // Requests the gateway may have in flight on its connection; keep above its bulkhead for this service
+    @Value("${server.http2.max-concurrent-streams:256}")
+    private long maxConcurrentStreams;
+
+    // Request body bytes a client may send on one stream before Tomcat reads them
+    @Value("${server.http2.initial-window-size:1048576}")
+    private int initialWindowSize;
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> http2LimitsCustomizer() {
+        return factory -> factory.addConnectorCustomizers(this::applyLimits);
+    }
+
+    private void applyLimits(Connector connector) {
+        for (UpgradeProtocol protocol : connector.findUpgradeProtocols()) {
+            if (protocol instanceof Http2Protocol) {
+                Http2Protocol http2 = (Http2Protocol) protocol;
+                http2.setMaxConcurrentStreams(maxConcurrentStreams);
+                http2.setInitialWindowSize(initialWindowSize);
+            }
+        }
+    }
+}
@@ -3,14 +3,18 @@ package com.stockfellow.groupservice.config;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.stockfellow.groupservice.model.Event;
+import org.bson.Document;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.CompoundIndexDefinition;
 import org.springframework.data.mongodb.core.index.IndexOperations;
 import org.springframework.data.mongodb.core.index.IndexResolver;
 import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
 import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Criteria;
 
 @Configuration
 public class MongoConfig {
@@ -24,6 +28,20 @@ public class MongoConfig {
         IndexResolver resolver = new MongoPersistentEntityIndexResolver(context);
         IndexOperations indexOps = template.indexOps(Event.class);
         resolver.resolveIndexFor(Event.class).forEach(indexOps::ensureIndex);
+
+        // One event per position in a group's stream; appends rely on this to detect a concurrent writer.
+        // Partial so events not yet backfilled (no sequence) don't all collide on a null key.
+        PartialIndexFilter sequenced = PartialIndexFilter.of(Criteria.where("sequence").exists(true));
+        indexOps.ensureIndex(new CompoundIndexDefinition(new Document("aggregateId", 1).append("sequence", 1))
+                .named("aggregate_sequence")
+                .unique()
+                .partial(sequenced));
+        // Event type lookups within a group, e.g. the join rejection checks
+        indexOps.ensureIndex(new CompoundIndexDefinition(
+                new Document("aggregateId", 1).append("eventType", 1).append("sequence", 1))
+                .named("aggregate_type_sequence")
+                .partial(sequenced));
+        // Events from before sequencing are backfilled once, by EventSequenceMigration, not here
         return template;
     }
 
@@ -16,6 +16,11 @@
        private String eventType;
        private Map<String, Object> data;
        private Date timestamp;
+
+       // The group this event belongs to and its position in that group's stream (1, 2, 3...),
+       // unique together. See MongoConfig for the index and EventStoreService for appends.
+       private String aggregateId;
+       private Long sequence;
    
        public Event() {
            this.timestamp = new Date();
@@ -6,22 +6,24 @@ import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface EventRepository extends MongoRepository<Event, String> {
     
-    // Query by groupId in the event data (works with your existing data structure)
-    @Query(value = "{ 'data.groupId': ?0 }", sort = "{ 'timestamp': 1 }")
-    List<Event> findByGroupIdOrderByTimestampAsc(String groupId);
+    // A group's stream in order; served by the (aggregateId, sequence) index
+    List<Event> findByAggregateIdOrderBySequenceAsc(String aggregateId);
     
-    @Query(value = "{ 'data.groupId': ?0, 'eventType': ?1 }", sort = "{ 'timestamp': 1 }")
-    List<Event> findByGroupIdAndEventTypeOrderByTimestampAsc(String groupId, String eventType);
+    // Served by the (aggregateId, eventType, sequence) index
+    List<Event> findByAggregateIdAndEventTypeOrderBySequenceAsc(String aggregateId, String eventType);
     
-    @Query(value = "{ 'data.groupId': { $in: ?0 } }", sort = "{ 'timestamp': 1 }")
-    List<Event> findByGroupIdInOrderByTimestampAsc(List<String> groupIds);
+    // Several groups interleaved, so ordered by time rather than by any one group's sequence
+    List<Event> findByAggregateIdInOrderByTimestampAsc(List<String> aggregateIds);
     
-    @Query(value = "{ 'data.groupId': ?0 }", count = true)
-    long countByGroupId(String groupId);
+    long countByAggregateId(String aggregateId);
+    
+    // The group's latest event, whose sequence the next append must follow
+    Optional<Event> findFirstByAggregateIdOrderBySequenceDesc(String aggregateId);
     
     @Query(value = "{}", sort = "{ 'timestamp': 1 }")
     List<Event> findAllByOrderByTimestampAsc();
@@ -4,6 +4,8 @@ import com.stockfellow.groupservice.model.Event;
 import com.stockfellow.groupservice.repository.EventRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 
 import java.util.HashMap;
@@ -13,6 +15,9 @@ import java.util.Map;
 @Service
 public class EventStoreService {
     private static final Logger logger = LoggerFactory.getLogger(EventStoreService.class);
+
+    // Attempts for saveEvent when other writers keep moving the group's stream on
+    private static final int MAX_APPEND_ATTEMPTS = 5;
     
     private final EventRepository eventRepository;
 
@@ -21,25 +26,58 @@ public class EventStoreService {
     }
 
     /**
-     * Save an event for a specific group and return the event ID
+     * Save an event at the end of a group's stream and return the event ID.
+     * If another event is appended to the group at the same time, the event
+     * is retried after it.
      * 
      * @param groupId The ID of the group this event belongs to
      * @param event The event to save
      * @return The ID of the saved event
      */
     public String saveEvent(String groupId, Event event) {
-        // Add the groupId to the event data (matches your existing data structure)
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return appendEvent(groupId, event, getLastSequence(groupId));
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= MAX_APPEND_ATTEMPTS) {
+                    throw e;
+                }
+                logger.debug("Concurrent append to group {}, retrying {}", groupId, event.getEventType());
+            }
+        }
+    }
+
+    /**
+     * Append an event only if the group's stream is still at the expected
+     * sequence, i.e. nothing was appended since the caller read it.
+     * 
+     * @param groupId The ID of the group this event belongs to
+     * @param event The event to save
+     * @param expectedSequence The sequence of the group's last event, 0 for a new group
+     * @return The ID of the saved event
+     * @throws OptimisticLockingFailureException if another event took the next sequence first
+     */
+    public String appendEvent(String groupId, Event event, long expectedSequence) {
         if (event.getData() == null) {
             event.setData(new HashMap<>());
         }
         
-        // Ensure the group ID is stored in the event data for querying
+        // Still kept in the data for anything reading the raw documents
         event.getData().put("groupId", groupId);
+        event.setAggregateId(groupId);
+        event.setSequence(expectedSequence + 1);
         
-        Event savedEvent = eventRepository.save(event);
+        Event savedEvent;
+        try {
+            // insert, not save: a new event must never overwrite one
+            savedEvent = eventRepository.insert(event);
+        } catch (DuplicateKeyException e) {
+            throw new OptimisticLockingFailureException(
+                    "Group " + groupId + " has events after sequence " + expectedSequence, e);
+        }
         
-        logger.debug("Saved event {} for group {}: {}", 
-                    savedEvent.getId(), groupId, savedEvent.getEventType());
+        logger.debug("Saved event {} for group {} at sequence {}: {}", 
+                    savedEvent.getId(), groupId, savedEvent.getSequence(), savedEvent.getEventType());
         
         return savedEvent.getId();
     }
@@ -58,13 +96,25 @@ public class EventStoreService {
     }
 
     /**
-     * Get all events for a specific group ordered by timestamp
+     * Get the sequence of a group's last event
+     * 
+     * @param groupId The ID of the group
+     * @return The last sequence, or 0 if the group has no events
+     */
+    public long getLastSequence(String groupId) {
+        return eventRepository.findFirstByAggregateIdOrderBySequenceDesc(groupId)
+                .map(Event::getSequence)
+                .orElse(0L);
+    }
+
+    /**
+     * Get all events for a specific group in the order they were appended
      * 
      * @param groupId The ID of the group
-     * @return List of events ordered by timestamp
+     * @return List of events ordered by sequence
      */
     public List<Event> getEvents(String groupId) {
-        return eventRepository.findByGroupIdOrderByTimestampAsc(groupId);
+        return eventRepository.findByAggregateIdOrderBySequenceAsc(groupId);
     }
 
     /**
@@ -72,10 +122,10 @@ public class EventStoreService {
      * 
      * @param groupId The ID of the group
      * @param eventType The type of events to retrieve
-     * @return List of events of the specified type
+     * @return List of events of the specified type, ordered by sequence
      */
     public List<Event> getEventsByType(String groupId, String eventType) {
-        return eventRepository.findByGroupIdAndEventTypeOrderByTimestampAsc(groupId, eventType);
+        return eventRepository.findByAggregateIdAndEventTypeOrderBySequenceAsc(groupId, eventType);
     }
 
     /**
@@ -91,10 +141,10 @@ public class EventStoreService {
      * Get events for multiple groups (useful for user dashboards)
      * 
      * @param groupIds List of group IDs
-     * @return List of events for all specified groups
+     * @return List of events for all specified groups, ordered by timestamp
      */
     public List<Event> getEventsForGroups(List<String> groupIds) {
-        return eventRepository.findByGroupIdInOrderByTimestampAsc(groupIds);
+        return eventRepository.findByAggregateIdInOrderByTimestampAsc(groupIds);
     }
 
     /**
@@ -104,6 +154,6 @@ public class EventStoreService {
      * @return Number of events for the group
      */
     public long countEvents(String groupId) {
-        return eventRepository.countByGroupId(groupId);
+        return eventRepository.countByAggregateId(groupId);
     }
 }
\ No newline at end of file
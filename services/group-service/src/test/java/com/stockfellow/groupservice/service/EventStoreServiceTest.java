@@ -0,0 +1,89 @@
+package com.stockfellow.groupservice.service;
+
+import com.stockfellow.groupservice.model.Event;
+import com.stockfellow.groupservice.repository.EventRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.util.HashMap;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class EventStoreServiceTest {
+
+    @Mock
+    private EventRepository eventRepository;
+
+    @InjectMocks
+    private EventStoreService eventStoreService;
+
+    @Test
+    public void appendEvent_NextSequence_SetsAggregateAndSequence() {
+        when(eventRepository.insert(any(Event.class))).thenAnswer(invocation -> {
+            Event event = invocation.getArgument(0);
+            event.setId("event_1");
+            return event;
+        });
+
+        Event event = new Event("MemberAdded", new HashMap<>());
+        String id = eventStoreService.appendEvent("group_123", event, 4);
+
+        assertEquals("event_1", id);
+        assertEquals("group_123", event.getAggregateId());
+        assertEquals(5L, event.getSequence());
+        assertEquals("group_123", event.getData().get("groupId"));
+    }
+
+    @Test
+    public void appendEvent_SequenceTaken_ThrowsOptimisticLockingFailure() {
+        when(eventRepository.insert(any(Event.class))).thenThrow(new DuplicateKeyException("E11000"));
+
+        Event event = new Event("MemberAdded", new HashMap<>());
+
+        assertThrows(OptimisticLockingFailureException.class,
+                () -> eventStoreService.appendEvent("group_123", event, 4));
+    }
+
+    @Test
+    public void saveEvent_ConcurrentAppend_RetriesAtNewHead() {
+        Event head = new Event("GroupCreated", new HashMap<>());
+        head.setSequence(2L);
+        Event newHead = new Event("MemberAdded", new HashMap<>());
+        newHead.setSequence(3L);
+        when(eventRepository.findFirstByAggregateIdOrderBySequenceDesc("group_123"))
+                .thenReturn(Optional.of(head), Optional.of(newHead));
+        when(eventRepository.insert(any(Event.class)))
+                .thenThrow(new DuplicateKeyException("E11000"))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        Event event = new Event("MemberAdded", new HashMap<>());
+        eventStoreService.saveEvent("group_123", event);
+
+        assertEquals(4L, event.getSequence());
+        verify(eventRepository, times(2)).insert(any(Event.class));
+    }
+
+    @Test
+    public void saveEvent_NewGroup_StartsAtOne() {
+        when(eventRepository.findFirstByAggregateIdOrderBySequenceDesc("group_new")).thenReturn(Optional.empty());
+        when(eventRepository.insert(any(Event.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Event event = new Event("GroupCreated", null);
+        eventStoreService.saveEvent("group_new", event);
+
+        assertEquals(1L, event.getSequence());
+        assertEquals("group_new", event.getData().get("groupId"));
+    }
+}
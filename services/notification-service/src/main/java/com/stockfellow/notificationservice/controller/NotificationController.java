@@ -87,9 +87,15 @@ public class NotificationController {
                 return ResponseEntity.badRequest().body(Map.of("error", "Invalid notification type"));
             }
             
+            // Callers that retry (the gateway's registration pipeline) send one key per notification
+            String idempotencyKey = httpRequest.getHeader("Idempotency-Key");
+            if (idempotencyKey != null && idempotencyKey.trim().isEmpty()) {
+                idempotencyKey = null;
+            }
+            
             String notificationId = notificationService.sendNotification(
                 userId, groupId, type.toUpperCase(), title, message, 
-                channel.toUpperCase(), priority.toUpperCase(), metadata
+                channel.toUpperCase(), priority.toUpperCase(), metadata, idempotencyKey
             );
             
             logger.info("Notification sent successfully: {}", notificationId);
@@ -6,6 +6,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.jms.annotation.JmsListener;
 import org.springframework.jms.core.JmsTemplate;
 import org.springframework.scheduling.annotation.Async;
@@ -14,6 +15,7 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
@@ -47,8 +49,27 @@ public class NotificationService {
      */
     public String sendNotification(String userId, String groupId, String type, String title, 
                                  String message, String channel, String priority, Map<String, Object> metadata) {
+        return sendNotification(userId, groupId, type, title, message, channel, priority, metadata, null);
+    }
+    
+    /**
+     * Send notification to queue for processing, at most once per idempotency key.
+     * A repeated key returns the ID of the notification already sent for it.
+     */
+    public String sendNotification(String userId, String groupId, String type, String title, 
+                                 String message, String channel, String priority, Map<String, Object> metadata,
+                                 String idempotencyKey) {
         try {
-            String notificationId = "notif_" + System.currentTimeMillis() + "_" + UUID.randomUUID().toString().substring(0, 8);
+            String notificationId;
+            if (idempotencyKey != null) {
+                notificationId = "notif_" + UUID.nameUUIDFromBytes(idempotencyKey.getBytes(StandardCharsets.UTF_8));
+                if (notificationRepository.findByNotificationId(notificationId).isPresent()) {
+                    logger.info("Notification already sent for idempotency key: {}", notificationId);
+                    return notificationId;
+                }
+            } else {
+                notificationId = "notif_" + System.currentTimeMillis() + "_" + UUID.randomUUID().toString().substring(0, 8);
+            }
             
             Notification notification = new Notification(notificationId, userId, groupId, type, title, message, channel, priority);
             if (metadata != null) {
@@ -56,7 +77,15 @@ public class NotificationService {
             }
             
             // Save to database
-            notificationRepository.save(notification);
+            try {
+                notificationRepository.save(notification);
+            } catch (DataIntegrityViolationException e) {
+                // A concurrent request with the same key saved it first and queues it
+                if (idempotencyKey == null) {
+                    throw e;
+                }
+                return notificationId;
+            }
             
             // Send to queue for processing
             Map<String, Object> notificationData = Map.of(
@@ -667,8 +667,10 @@ public class UserController {
             HttpServletRequest httpRequest) {
 
         try {
-            if (userId == null || userId.isEmpty()) {
-                userId = httpRequest.getHeader("X-User-Id");
+            // Set by the gateway from the token; the form it passes through may carry its own userId
+            String gatewayUserId = httpRequest.getHeader("X-User-Id");
+            if (gatewayUserId != null && !gatewayUserId.isEmpty()) {
+                userId = gatewayUserId;
             }
 
             if (userId == null || userId.isEmpty()) {